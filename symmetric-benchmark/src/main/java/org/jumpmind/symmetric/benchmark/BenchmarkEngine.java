@@ -0,0 +1,162 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.benchmark;
+
+import java.util.Properties;
+
+import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.sql.DmlStatement;
+import org.jumpmind.db.sql.DmlStatement.DmlType;
+import org.jumpmind.db.sql.ISqlTransaction;
+import org.jumpmind.symmetric.ClientSymmetricEngine;
+import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.common.Constants;
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.model.Node;
+import org.jumpmind.symmetric.model.NodeGroupLink;
+import org.jumpmind.symmetric.model.NodeGroupLinkAction;
+import org.jumpmind.symmetric.model.Router;
+import org.jumpmind.symmetric.model.Trigger;
+import org.jumpmind.symmetric.model.TriggerRouter;
+import org.jumpmind.symmetric.service.INodeService;
+import org.jumpmind.symmetric.service.ITriggerRouterService;
+
+/**
+ * Starts a registration server engine on an in-memory H2 database with a
+ * single triggered table that is routed to a configurable number of target
+ * nodes.
+ */
+public class BenchmarkEngine {
+
+    public static final String SOURCE_NODE_GROUP = "corp";
+
+    public static final String TARGET_NODE_GROUP = "store";
+
+    public static final String SOURCE_TABLE = "bench_item";
+
+    protected String name;
+
+    protected int targetNodeCount;
+
+    protected ISymmetricEngine engine;
+
+    protected SyntheticBatchGenerator generator;
+
+    protected long nextId;
+
+    public BenchmarkEngine(String name, int targetNodeCount, int columnCount) {
+        this.name = name;
+        this.targetNodeCount = targetNodeCount;
+        this.generator = new SyntheticBatchGenerator(SOURCE_TABLE, columnCount, 1);
+    }
+
+    public ISymmetricEngine start() {
+        Properties properties = new Properties();
+        properties.setProperty(ParameterConstants.ENGINE_NAME, name);
+        properties.setProperty(ParameterConstants.NODE_GROUP_ID, SOURCE_NODE_GROUP);
+        properties.setProperty(ParameterConstants.EXTERNAL_ID, "000");
+        properties.setProperty(ParameterConstants.SYNC_URL, "http://localhost:31415/sync/" + name);
+        properties.setProperty(ParameterConstants.REGISTRATION_URL, "");
+        properties.setProperty("db.driver", "org.h2.Driver");
+        properties.setProperty("db.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=60000");
+        properties.setProperty("db.user", "sa");
+        properties.setProperty("db.password", "");
+        properties.setProperty(ParameterConstants.SYNCHRONIZE_ALL_JOBS, "true");
+        properties.setProperty(ParameterConstants.CLUSTER_LOCKING_ENABLED, "false");
+        engine = new ClientSymmetricEngine(properties, false);
+        engine.start(false);
+        configure();
+        return engine;
+    }
+
+    protected void configure() {
+        IDatabasePlatform platform = engine.getDatabasePlatform();
+        platform.createTables(false, false, generator.getTable());
+
+        INodeService nodeService = engine.getNodeService();
+        String identityNodeId = nodeService.findIdentityNodeId();
+        nodeService.insertNodeGroup(TARGET_NODE_GROUP, null);
+        engine.getConfigurationService().saveNodeGroupLink(
+                new NodeGroupLink(SOURCE_NODE_GROUP, TARGET_NODE_GROUP, NodeGroupLinkAction.W));
+        for (int i = 1; i <= targetNodeCount; i++) {
+            Node node = new Node(String.format("%05d", i), TARGET_NODE_GROUP);
+            node.setCreatedAtNodeId(identityNodeId);
+            nodeService.save(node);
+        }
+
+        ITriggerRouterService triggerRouterService = engine.getTriggerRouterService();
+        Router router = new Router(SOURCE_NODE_GROUP + "_2_" + TARGET_NODE_GROUP,
+                SOURCE_NODE_GROUP, TARGET_NODE_GROUP, "default");
+        triggerRouterService.saveRouter(router);
+        Trigger trigger = new Trigger(SOURCE_TABLE, Constants.CHANNEL_DEFAULT);
+        triggerRouterService.saveTrigger(trigger);
+        triggerRouterService.saveTriggerRouter(new TriggerRouter(trigger, router));
+        engine.syncTriggers();
+    }
+
+    /**
+     * Inserts rows into the triggered table so they are captured in sym_data.
+     */
+    public void insertRows(int rowCount) {
+        IDatabasePlatform platform = engine.getDatabasePlatform();
+        Table table = platform.getTableFromCache(SOURCE_TABLE, false);
+        DmlStatement statement = platform.createDmlStatement(DmlType.INSERT, table, null);
+        Column[] columns = statement.getMetaData();
+
+        ISqlTransaction transaction = null;
+        try {
+            transaction = engine.getSqlTemplate().startSqlTransaction();
+            transaction.setInBatchMode(true);
+            transaction.prepare(statement.getSql());
+            for (int i = 0; i < rowCount; i++) {
+                transaction.addRow(null, platform.getObjectValues(engine.getSymmetricDialect()
+                        .getBinaryEncoding(), generator.nextRow(nextId++), columns), statement
+                        .getTypes());
+            }
+            transaction.flush();
+            transaction.commit();
+        } catch (RuntimeException ex) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw ex;
+        } finally {
+            if (transaction != null) {
+                transaction.close();
+            }
+        }
+    }
+
+    public void stop() {
+        if (engine != null) {
+            engine.stop();
+            engine.destroy();
+            engine = null;
+        }
+    }
+
+    public ISymmetricEngine getEngine() {
+        return engine;
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.benchmark;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.common.Constants;
+import org.jumpmind.symmetric.model.Data;
+import org.jumpmind.symmetric.model.DataGap;
+import org.jumpmind.symmetric.model.NodeChannel;
+import org.jumpmind.symmetric.route.ChannelRouterContext;
+import org.jumpmind.symmetric.route.DataGapRouteReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how fast {@link DataGapRouteReader} selects captured data through
+ * a single open data gap. The reader runs on the calling thread because jobs
+ * are synchronized in the {@link BenchmarkEngine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataGapRouteReaderBenchmark {
+
+    static final int ROW_COUNT = 10000;
+
+    @Param({ "10", "50" })
+    public int columnCount;
+
+    protected BenchmarkEngine benchmarkEngine;
+
+    protected ISymmetricEngine engine;
+
+    protected NodeChannel channel;
+
+    @Setup
+    public void setup() {
+        benchmarkEngine = new BenchmarkEngine("reader_benchmark", 1, columnCount);
+        engine = benchmarkEngine.start();
+        benchmarkEngine.insertRows(ROW_COUNT);
+        channel = engine.getConfigurationService().getNodeChannel(Constants.CHANNEL_DEFAULT,
+                false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkEngine.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void read(Blackhole blackhole) throws SQLException, InterruptedException {
+        ChannelRouterContext context = new ChannelRouterContext(engine.getNodeService()
+                .findIdentityNodeId(), channel, engine.getSqlTemplate().startSqlTransaction());
+        try {
+            context.setDataGaps(Collections.singletonList(new DataGap(0, Long.MAX_VALUE - 1)));
+            DataGapRouteReader reader = new DataGapRouteReader(context, engine);
+            reader.run();
+            Data data = null;
+            while ((data = reader.take()) != null) {
+                blackhole.consume(data);
+            }
+        } finally {
+            context.cleanup();
+        }
+    }
+
+}
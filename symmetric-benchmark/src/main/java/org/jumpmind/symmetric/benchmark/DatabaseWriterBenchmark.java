@@ -0,0 +1,154 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.db.model.Table;
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.platform.JdbcDatabasePlatformFactory;
+import org.jumpmind.db.sql.SqlTemplateSettings;
+import org.jumpmind.db.util.BasicDataSourceFactory;
+import org.jumpmind.db.util.BasicDataSourcePropertyConstants;
+import org.jumpmind.db.util.BinaryEncoding;
+import org.jumpmind.properties.TypedProperties;
+import org.jumpmind.symmetric.io.data.Batch;
+import org.jumpmind.symmetric.io.data.Batch.BatchType;
+import org.jumpmind.symmetric.io.data.CsvData;
+import org.jumpmind.symmetric.io.data.DataContext;
+import org.jumpmind.symmetric.io.data.writer.DatabaseWriterSettings;
+import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the insert and update paths of {@link DefaultDatabaseWriter}
+ * against an in-memory H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseWriterBenchmark {
+
+    static final int ROW_COUNT = 1000;
+
+    @Param({ "10", "50" })
+    public int columnCount;
+
+    protected IDatabasePlatform platform;
+
+    protected SyntheticBatchGenerator generator;
+
+    protected Table table;
+
+    protected long nextId;
+
+    protected long batchId;
+
+    protected List<CsvData> updates;
+
+    @Setup
+    public void setup() {
+        platform = createPlatform("writer_benchmark");
+        generator = new SyntheticBatchGenerator("writer_table", columnCount, 1);
+        table = generator.getTable();
+        platform.createTables(false, false, table);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        platform.getSqlTemplate().update("delete from " + table.getQualifiedTableName(
+                platform.getDatabaseInfo().getDelimiterToken(),
+                platform.getDatabaseInfo().getCatalogSeparator(),
+                platform.getDatabaseInfo().getSchemaSeparator()));
+        nextId = 0;
+        write(generator.buildInserts(nextId, ROW_COUNT));
+        updates = generator.buildUpdates(nextId, ROW_COUNT);
+        nextId += ROW_COUNT;
+    }
+
+    @TearDown
+    public void tearDown() {
+        platform.dropTables(true, table);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void insert() {
+        List<CsvData> inserts = generator.buildInserts(nextId, ROW_COUNT);
+        nextId += ROW_COUNT;
+        write(inserts);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void update() {
+        write(updates);
+    }
+
+    protected void write(List<CsvData> datas) {
+        DefaultDatabaseWriter writer = new DefaultDatabaseWriter(platform,
+                new DatabaseWriterSettings());
+        writer.open(new DataContext());
+        try {
+            Batch batch = new Batch(BatchType.LOAD, ++batchId, SyntheticBatchGenerator.CHANNEL_ID,
+                    BinaryEncoding.BASE64, SyntheticBatchGenerator.SOURCE_NODE_ID, "00001", false);
+            writer.start(batch);
+            if (writer.start(table)) {
+                for (CsvData data : datas) {
+                    writer.write(data);
+                }
+                writer.end(table);
+            }
+            writer.end(batch, false);
+        } finally {
+            writer.close();
+        }
+    }
+
+    protected static IDatabasePlatform createPlatform(String databaseName) {
+        TypedProperties properties = new TypedProperties();
+        properties.setProperty(BasicDataSourcePropertyConstants.DB_POOL_DRIVER, "org.h2.Driver");
+        properties.setProperty(BasicDataSourcePropertyConstants.DB_POOL_URL, "jdbc:h2:mem:"
+                + databaseName + ";DB_CLOSE_DELAY=-1");
+        properties.setProperty(BasicDataSourcePropertyConstants.DB_POOL_USER, "sa");
+        properties.setProperty(BasicDataSourcePropertyConstants.DB_POOL_PASSWORD, "");
+        return JdbcDatabasePlatformFactory.createNewPlatformInstance(
+                BasicDataSourceFactory.create(properties), new SqlTemplateSettings(), true, false);
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.symmetric.service.IRouterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link IRouterService#routeData(boolean)} for freshly captured
+ * rows routed with the default router to every target node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterServiceBenchmark {
+
+    static final int ROW_COUNT = 1000;
+
+    @Param({ "1", "100" })
+    public int targetNodeCount;
+
+    protected BenchmarkEngine benchmarkEngine;
+
+    protected IRouterService routerService;
+
+    @Setup
+    public void setup() {
+        benchmarkEngine = new BenchmarkEngine("router_benchmark", targetNodeCount, 10);
+        routerService = benchmarkEngine.start().getRouterService();
+        routerService.routeData(true);
+    }
+
+    @Setup(Level.Invocation)
+    public void captureRows() {
+        benchmarkEngine.insertRows(ROW_COUNT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkEngine.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public long routeData() {
+        return routerService.routeData(true);
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.jumpmind.symmetric.io.stage.IStagedResource;
+import org.jumpmind.symmetric.io.stage.IStagedResource.State;
+import org.jumpmind.symmetric.io.stage.StagedResource;
+import org.jumpmind.symmetric.io.stage.StagingManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures writing and reading a staged batch through {@link StagedResource},
+ * both when it stays in memory and when it spills to a file.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StagedResourceBenchmark {
+
+    static final int ROW_COUNT = 5000;
+
+    /**
+     * A memory threshold of 0 forces every resource to a file
+     */
+    @Param({ "0", "100000000" })
+    public long memoryThresholdInBytes;
+
+    protected File directory;
+
+    protected StagingManager stagingManager;
+
+    protected String batch;
+
+    protected IStagedResource readResource;
+
+    protected long batchId;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(FileUtils.getTempDirectory(), "symmetric-staging-benchmark-"
+                + System.nanoTime());
+        stagingManager = new StagingManager(directory.getAbsolutePath());
+        batch = new SyntheticBatchGenerator("staged_table", 20, 1).buildProtocolBatch(1,
+                ROW_COUNT, 0);
+        readResource = write(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Benchmark
+    public IStagedResource writeAndDelete() throws IOException {
+        IStagedResource resource = write(++batchId);
+        resource.delete();
+        return resource;
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        BufferedReader reader = readResource.getReader();
+        try {
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                blackhole.consume(line);
+            }
+        } finally {
+            readResource.close();
+        }
+    }
+
+    protected IStagedResource write(long batchId) throws IOException {
+        IStagedResource resource = stagingManager.create(memoryThresholdInBytes, "outgoing",
+                "00001", batchId);
+        BufferedWriter writer = resource.getWriter();
+        writer.write(batch);
+        resource.close();
+        resource.setState(State.READY);
+        return resource;
+    }
+
+}
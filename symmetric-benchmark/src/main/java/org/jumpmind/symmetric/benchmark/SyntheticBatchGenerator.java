@@ -0,0 +1,181 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.benchmark;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
+import org.jumpmind.db.util.BinaryEncoding;
+import org.jumpmind.symmetric.io.data.CsvConstants;
+import org.jumpmind.symmetric.io.data.CsvData;
+import org.jumpmind.symmetric.io.data.CsvUtils;
+import org.jumpmind.symmetric.io.data.DataEventType;
+
+/**
+ * Builds repeatable synthetic tables, rows and protocol batches so that the
+ * benchmarks do not depend on any external data.
+ */
+public class SyntheticBatchGenerator {
+
+    public static final String SOURCE_NODE_ID = "00000";
+
+    public static final String CHANNEL_ID = "default";
+
+    protected Table table;
+
+    protected Random random;
+
+    public SyntheticBatchGenerator(String tableName, int columnCount, long seed) {
+        this.table = buildTable(tableName, columnCount);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * The table has an integer primary key followed by a rotation of varchar,
+     * integer and decimal columns.
+     */
+    protected Table buildTable(String tableName, int columnCount) {
+        Table table = new Table(tableName);
+        table.addColumn(new Column("id", true, Types.INTEGER, 0, 0));
+        for (int i = 1; i < columnCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    table.addColumn(new Column("decimal_value_" + i, false, Types.DECIMAL, 18, 2));
+                    break;
+                case 1:
+                    table.addColumn(new Column("string_value_" + i, false, Types.VARCHAR, 100, 0));
+                    break;
+                default:
+                    table.addColumn(new Column("integer_value_" + i, false, Types.INTEGER, 0, 0));
+                    break;
+            }
+        }
+        return table;
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
+    public String[] nextRow(long id) {
+        Column[] columns = table.getColumns();
+        String[] row = new String[columns.length];
+        row[0] = Long.toString(id);
+        for (int i = 1; i < columns.length; i++) {
+            switch (columns[i].getMappedTypeCode()) {
+                case Types.DECIMAL:
+                    row[i] = random.nextInt(1000000) + "." + (10 + random.nextInt(90));
+                    break;
+                case Types.INTEGER:
+                    row[i] = Integer.toString(random.nextInt());
+                    break;
+                default:
+                    row[i] = nextString(10 + random.nextInt(60));
+                    break;
+            }
+        }
+        return row;
+    }
+
+    protected String nextString(int length) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(40);
+            if (c == 0) {
+                value.append(',');
+            } else if (c == 1) {
+                value.append('"');
+            } else if (c == 2) {
+                value.append(' ');
+            } else {
+                value.append((char) ('a' + (c % 26)));
+            }
+        }
+        return value.toString();
+    }
+
+    public List<CsvData> buildInserts(long startId, int rowCount) {
+        List<CsvData> datas = new ArrayList<CsvData>(rowCount);
+        for (long id = startId; id < startId + rowCount; id++) {
+            datas.add(new CsvData(DataEventType.INSERT, nextRow(id)));
+        }
+        return datas;
+    }
+
+    public List<CsvData> buildUpdates(long startId, int rowCount) {
+        List<CsvData> datas = new ArrayList<CsvData>(rowCount);
+        for (long id = startId; id < startId + rowCount; id++) {
+            datas.add(new CsvData(DataEventType.UPDATE, new String[] { Long.toString(id) },
+                    nextRow(id)));
+        }
+        return datas;
+    }
+
+    /**
+     * @return plain csv records, one per row, with no protocol tokens
+     */
+    public String buildCsvRecords(int rowCount) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < rowCount; i++) {
+            csv.append(CsvUtils.escapeCsvData(nextRow(i))).append("\n");
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return a complete protocol payload with a single batch for the table.
+     *         A fraction of the rows, given by updateRatio, are written as
+     *         updates of earlier inserts.
+     */
+    public String buildProtocolBatch(long batchId, int rowCount, double updateRatio) {
+        StringBuilder csv = new StringBuilder();
+        csv.append(CsvConstants.NODEID).append(",").append(SOURCE_NODE_ID).append("\n");
+        csv.append(CsvConstants.BINARY).append(",").append(BinaryEncoding.BASE64).append("\n");
+        csv.append(CsvConstants.CHANNEL).append(",").append(CHANNEL_ID).append("\n");
+        csv.append(CsvConstants.BATCH).append(",").append(batchId).append("\n");
+        csv.append(CsvConstants.SCHEMA).append(",\n");
+        csv.append(CsvConstants.CATALOG).append(",\n");
+        csv.append(CsvConstants.TABLE).append(",").append(table.getName()).append("\n");
+        csv.append(CsvConstants.KEYS).append(",")
+                .append(Table.getCommaDeliminatedColumns(table.getPrimaryKeyColumns())).append("\n");
+        csv.append(CsvConstants.COLUMNS).append(",")
+                .append(Table.getCommaDeliminatedColumns(table.getColumns())).append("\n");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0 && random.nextDouble() < updateRatio) {
+                long id = random.nextInt(i);
+                csv.append(CsvConstants.UPDATE).append(",")
+                        .append(CsvUtils.escapeCsvData(nextRow(id))).append(",")
+                        .append(CsvUtils.escapeCsvData(new String[] { Long.toString(id) }))
+                        .append("\n");
+            } else {
+                csv.append(CsvConstants.INSERT).append(",")
+                        .append(CsvUtils.escapeCsvData(nextRow(i))).append("\n");
+            }
+        }
+        csv.append(CsvConstants.COMMIT).append(",").append(batchId).append("\n");
+        return csv.toString();
+    }
+
+}
@@ -67,6 +67,10 @@ public class DbExportCommand extends AbstractCommandLauncher {
     
     private static final String OPTION_WHERE = "where";
 
+    private static final String OPTION_THREADS = "threads";
+
+    private static final String OPTION_ROWS_PER_FILE = "rows-per-file";
+
     public DbExportCommand() {
         super("dbexport", "[tablename...]", "DbExport.Option.");
     }
@@ -110,6 +114,8 @@ public class DbExportCommand extends AbstractCommandLauncher {
         addOption(options, null, OPTION_NO_QUALIFIERS, false);
         addOption(options, null, OPTION_SQL, true);
         addOption(options, null, OPTION_WHERE, true);
+        addOption(options, null, OPTION_THREADS, true);
+        addOption(options, null, OPTION_ROWS_PER_FILE, true);
         addOption(options, "i", OPTION_COMMENTS, false);
     }
     
@@ -178,6 +184,12 @@ public class DbExportCommand extends AbstractCommandLauncher {
         if (line.hasOption(OPTION_WHERE)) {
             dbExport.setWhereClause(line.getOptionValue(OPTION_WHERE));
         }        
+        if (line.hasOption(OPTION_THREADS)) {
+            dbExport.setThreadCount(Integer.parseInt(line.getOptionValue(OPTION_THREADS)));
+        }
+        if (line.hasOption(OPTION_ROWS_PER_FILE)) {
+            dbExport.setRowsPerFile(Long.parseLong(line.getOptionValue(OPTION_ROWS_PER_FILE)));
+        }
  
         String[] args = line.getArgs();  
         if (line.hasOption(OPTION_SQL)) {
@@ -66,6 +66,12 @@ public class DbFillCommand extends AbstractCommandLauncher {
     private static final String OPTION_COMMIT_DELAY = "commit-delay";
     
     private static final String OPTION_ROLLBACK = "rollback";
+    
+    private static final String OPTION_THREADS = "threads";
+    
+    private static final String OPTION_RATE = "rate";
+    
+    private static final String OPTION_DURATION = "duration";
 
     public DbFillCommand() {
         super("dbfill", "[tablename...]", "DbFill.Option.");
@@ -111,6 +117,9 @@ public class DbFillCommand extends AbstractCommandLauncher {
         addOption(options, null, OPTION_COMMIT, true);
         addOption(options, null, OPTION_COMMIT_DELAY, true);
         addOption(options, null, OPTION_ROLLBACK, true);
+        addOption(options, null, OPTION_THREADS, true);
+        addOption(options, null, OPTION_RATE, true);
+        addOption(options, null, OPTION_DURATION, true);
     }
 
     @Override
@@ -181,6 +190,15 @@ public class DbFillCommand extends AbstractCommandLauncher {
         if (line.hasOption(OPTION_ROLLBACK)) {
             dbFill.setPercentRollback(Integer.parseInt(line.getOptionValue(OPTION_ROLLBACK)));
         }
+        if (line.hasOption(OPTION_THREADS)) {
+            dbFill.setThreadCount(Integer.parseInt(line.getOptionValue(OPTION_THREADS)));
+        }
+        if (line.hasOption(OPTION_RATE)) {
+            dbFill.setRate(Integer.parseInt(line.getOptionValue(OPTION_RATE)));
+        }
+        if (line.hasOption(OPTION_DURATION)) {
+            dbFill.setDuration(Long.parseLong(line.getOptionValue(OPTION_DURATION)) * 1000);
+        }
         // Ignore the Symmetric config tables.
         getSymmetricEngine();
         IParameterService parameterService = engine.getParameterService();
@@ -64,6 +64,10 @@ public class DbImportCommand extends AbstractCommandLauncher {
     
     private static final String OPTION_ALTER_CASE = "alter-case";
 
+    private static final String OPTION_THREADS = "threads";
+
+    private static final String OPTION_BATCH = "batch";
+
     public DbImportCommand() {
         super("dbimport", "[file...]", "DbImport.Option.");
     }
@@ -106,6 +110,8 @@ public class DbImportCommand extends AbstractCommandLauncher {
         addOption(options, null, OPTION_FILTER_CLASSES, true);
         addOption(options, null, OPTION_DROP_IF_EXISTS, false);
         addOption(options, null, OPTION_ALTER_CASE, false);
+        addOption(options, null, OPTION_THREADS, true);
+        addOption(options, null, OPTION_BATCH, false);
     }
     
     @Override
@@ -174,6 +180,14 @@ public class DbImportCommand extends AbstractCommandLauncher {
             dbImport.setIgnoreCollisions(true);
         }
 
+        if (line.hasOption(OPTION_THREADS)) {
+            dbImport.setThreadCount(Integer.parseInt(line.getOptionValue(OPTION_THREADS)));
+        }
+
+        if (line.hasOption(OPTION_BATCH)) {
+            dbImport.setUseBatching(true);
+        }
+
         String[] args = line.getArgs();
         if (args.length == 0) {
             dbImport.importTables(System.in, line.getOptionValue(OPTION_TABLE));
@@ -183,6 +197,17 @@ public class DbImportCommand extends AbstractCommandLauncher {
                     throw new RuntimeException("Cannot find file " + fileName);
                 }
             }
+            if (args.length == 1 && new File(args[0]).isDirectory()) {
+                dbImport.importTables(new File(args[0]).listFiles());
+                return true;
+            } else if (dbImport.getThreadCount() > 1 && !line.hasOption(OPTION_TABLE)) {
+                File[] files = new File[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    files[i] = new File(args[i]);
+                }
+                dbImport.importTables(files);
+                return true;
+            }
             for (String fileName : args) {
                 BufferedInputStream in = new BufferedInputStream(new FileInputStream(fileName));
                 dbImport.importTables(in, line.getOptionValue(OPTION_TABLE));
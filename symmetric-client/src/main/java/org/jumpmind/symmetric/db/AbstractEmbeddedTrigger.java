@@ -25,14 +25,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.jumpmind.symmetric.db.h2.H2Trigger;
@@ -50,13 +55,37 @@ import org.jumpmind.symmetric.db.hsqldb.HsqlDbTrigger;
 abstract public class AbstractEmbeddedTrigger {
 
     protected static final char[] HEX = "0123456789abcdef".toCharArray();
-    protected static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
+    protected static final ThreadLocal<SimpleDateFormat> DATE_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
+        }
+    };
     protected static final String KEY_CONDITION_SQL = "CONDITION_SQL";
     protected static final String KEY_INSERT_DATA_SQL = "INSERT_DATA_SQL";
     protected static final String TEMPLATE_TABLE_SUFFIX = "_CONFIG";
+    protected static final int MAX_CACHED_SESSIONS = 64;
     protected String triggerName;
     protected String schemaName;
     protected Map<String, String> templates = null;
+    protected String[] conditionSqlTokens;
+    protected String[] insertDataSqlTokens;
+    protected String[] columnTypes;
+
+    /*
+     * Prepared statements by connection key, least recently used first. An
+     * evicted entry is only dropped from the cache, because its session may
+     * still be using the statements, and the database closes them with the
+     * session.
+     */
+    protected Map<Object, PreparedStatement[]> statementCache = new LinkedHashMap<Object, PreparedStatement[]>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, PreparedStatement[]> eldest) {
+            return size() > MAX_CACHED_SESSIONS;
+        }
+    };
 
     /**
      * This method should be called by the database engine once when
@@ -75,6 +104,13 @@ abstract public class AbstractEmbeddedTrigger {
             this.schemaName = schemaName;
             this.triggerName = triggerName;
             this.templates = getTemplates(conn);
+            if (templates.size() > 0) {
+                this.conditionSqlTokens = prepareTemplate(templates.get(KEY_CONDITION_SQL)).split("\\?", -1);
+                this.insertDataSqlTokens = prepareTemplate(templates.get(KEY_INSERT_DATA_SQL)).split("\\?", -1);
+                if (isUsePreparedStatements()) {
+                    this.columnTypes = getColumnTypes(conn, schemaName, tableName);
+                }
+            }
         }
         if (templates == null || templates.size() == 0) {
             throw new IllegalStateException(String.format(
@@ -82,6 +118,31 @@ abstract public class AbstractEmbeddedTrigger {
         }
     }
 
+    /**
+     * Change a template before it is parsed, once when the trigger is
+     * initialized.
+     */
+    protected String prepareTemplate(String sql) {
+        return sql;
+    }
+
+    /**
+     * @return true to capture data with prepared statements that bind the
+     *         virtual table values, or false to build literal SQL for each row
+     */
+    protected boolean isUsePreparedStatements() {
+        return false;
+    }
+
+    /**
+     * @return the object that identifies the database session of the
+     *         connection, so prepared statements are only reused in the
+     *         session that prepared them
+     */
+    protected Object getStatementCacheKey(Connection conn) {
+        return conn;
+    }
+
     /**
      * This method is called for each triggered action.
      * 
@@ -95,17 +156,49 @@ abstract public class AbstractEmbeddedTrigger {
      *             if the operation must be undone
      */
     public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        int columnCount = oldRow != null ? oldRow.length : newRow.length;
+        Object[] values = new Object[columnCount * 2];
+        for (int i = 0; i < columnCount; i++) {
+            if (newRow != null) {
+                newRow[i] = readVirtualTableValue(newRow[i]);
+                values[i] = newRow[i];
+            }
+            if (oldRow != null) {
+                oldRow[i] = readVirtualTableValue(oldRow[i]);
+                values[columnCount + i] = oldRow[i];
+            }
+        }
+
         String sql = null;
         try {
-            Statement stmt = conn.createStatement();
-            sql = fillVirtualTableSql(templates.get(KEY_CONDITION_SQL), oldRow, newRow);
-            ResultSet rs = stmt.executeQuery(sql);
-            if (rs.next() && rs.getInt(1) > 0) {
+            if (isUsePreparedStatements() && columnTypes != null && columnTypes.length == columnCount) {
+                String[] types = new String[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    types[i] = columnTypes[i % columnCount];
+                }
+                PreparedStatement[] statements = getPreparedStatements(conn, types);
+                sql = templates.get(KEY_CONDITION_SQL);
+                setVirtualTableValues(statements[0], values, types);
+                ResultSet rs = statements[0].executeQuery();
+                boolean capture = rs.next() && rs.getInt(1) > 0;
+                rs.close();
+                if (capture) {
+                    sql = templates.get(KEY_INSERT_DATA_SQL);
+                    setVirtualTableValues(statements[1], values, types);
+                    statements[1].executeUpdate();
+                }
+            } else {
+                Statement stmt = conn.createStatement();
+                sql = fillVirtualTableSql(conditionSqlTokens, values);
+                ResultSet rs = stmt.executeQuery(sql);
+                boolean capture = rs.next() && rs.getInt(1) > 0;
                 rs.close();
-                sql = fillVirtualTableSql(templates.get(KEY_INSERT_DATA_SQL), oldRow, newRow);
-                stmt.executeUpdate(sql);
+                if (capture) {
+                    sql = fillVirtualTableSql(insertDataSqlTokens, values);
+                    stmt.executeUpdate(sql);
+                }
+                stmt.close();
             }
-            stmt.close();
         } catch (SQLException ex) {
             System.err.println("This sql failed: " + sql);
             Throwable rootException = ex;
@@ -117,40 +210,182 @@ abstract public class AbstractEmbeddedTrigger {
         }
     }
 
-    protected String fillVirtualTableSql(String sql, Object[] oldRow, Object[] newRow) throws SQLException {
-        int columnCount = oldRow != null ? oldRow.length : newRow.length;
+    /**
+     * @return the virtual table type of each column of the table, in the
+     *         order that the database passes the row values to the trigger
+     */
+    protected String[] getColumnTypes(Connection conn, String schemaName, String tableName) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            String schemaPrefix = schemaName != null && schemaName.length() > 0 ? "\"" + schemaName + "\"." : "";
+            ResultSet rs = stmt.executeQuery(String.format("select * from %s\"%s\" where 1=0", schemaPrefix, tableName));
+            ResultSetMetaData metaData = rs.getMetaData();
+            String[] types = new String[metaData.getColumnCount()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = getVirtualTableColumnType(metaData.getColumnType(i + 1));
+            }
+            rs.close();
+            return types;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    protected PreparedStatement[] getPreparedStatements(Connection conn, String[] types) throws SQLException {
+        Object key = getStatementCacheKey(conn);
+        synchronized (statementCache) {
+            PreparedStatement[] statements = statementCache.get(key);
+            if (statements == null) {
+                removeClosedStatements();
+                statements = new PreparedStatement[] {
+                        conn.prepareStatement(fillVirtualTableParameters(conditionSqlTokens, types)),
+                        conn.prepareStatement(fillVirtualTableParameters(insertDataSqlTokens, types)) };
+                statementCache.put(key, statements);
+            }
+            return statements;
+        }
+    }
+
+    protected void removeClosedStatements() {
+        Iterator<PreparedStatement[]> iterator = statementCache.values().iterator();
+        while (iterator.hasNext()) {
+            PreparedStatement[] statements = iterator.next();
+            boolean closed = false;
+            try {
+                closed = statements[0].getConnection().isClosed();
+            } catch (SQLException ex) {
+                closed = true;
+            }
+            if (closed) {
+                for (PreparedStatement statement : statements) {
+                    try {
+                        statement.close();
+                    } catch (SQLException ex) {
+                    }
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    protected String fillVirtualTableParameters(String[] tokens, String[] types) {
         StringBuilder out = new StringBuilder();
-        String[] tokens = sql.split("\\?");
-        int tokenIndex = 0;
-        tokenIndex = forEachColumn(columnCount, newRow, out, tokenIndex, tokens);
-        tokenIndex = forEachColumn(columnCount, oldRow, out, tokenIndex, tokens);
-        out.append(tokens[tokenIndex]);
+        for (int i = 0; i < types.length; i++) {
+            out.append(tokens[i]).append("CAST(? AS ").append(types[i]).append(")");
+        }
+        out.append(tokens[types.length]);
         return out.toString();
     }
 
-    private int forEachColumn(int columnCount, Object[] data, StringBuilder out, int tokenIndex, String[] tokens) {
-        for (int i = 0; i < columnCount; i++) {
-            out.append(tokens[tokenIndex++]);
-            if (data != null) {
-                data[i] = appendVirtualTableStringValue(data[i], out);
+    protected void setVirtualTableValues(PreparedStatement ps, Object[] values, String[] types) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                ps.setNull(i + 1, getVirtualTableSqlType(types[i]));
+            } else if (value instanceof Date) {
+                ps.setString(i + 1, DATE_FORMATTER.get().format(value));
+            } else if (value instanceof Number && !(value instanceof BigDecimal)
+                    && "DECIMAL".equals(getVirtualTableValueType(value))) {
+                ps.setBigDecimal(i + 1, new BigDecimal(value.toString()));
             } else {
-                out.append("null");
+                ps.setObject(i + 1, value);
             }
         }
-        return tokenIndex;
     }
 
-    protected Object appendVirtualTableStringValue(Object value, StringBuilder out) {
-        if (value == null) {
-            out.append("null");
-        } else if (value instanceof String || value instanceof Reader) {
+    /**
+     * @return the type that a literal of a value read from a column of the
+     *         given JDBC type would have
+     */
+    protected String getVirtualTableColumnType(int jdbcType) {
+        switch (jdbcType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return "BOOLEAN";
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return "INT";
+            case Types.BIGINT:
+                return "BIGINT";
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return "DECIMAL";
+            default:
+                return "VARCHAR";
+        }
+    }
+
+    protected int getVirtualTableSqlType(String type) {
+        if ("BOOLEAN".equals(type)) {
+            return Types.BOOLEAN;
+        } else if ("INT".equals(type)) {
+            return Types.INTEGER;
+        } else if ("BIGINT".equals(type)) {
+            return Types.BIGINT;
+        } else if ("DECIMAL".equals(type)) {
+            return Types.DECIMAL;
+        } else {
+            return Types.VARCHAR;
+        }
+    }
+
+    /**
+     * @return the SQL type that a literal of the value would have, so the
+     *         virtual table has the same column types as the literal SQL
+     */
+    protected String getVirtualTableValueType(Object value) {
+        if (value == null || value instanceof String || value instanceof Date) {
+            return "VARCHAR";
+        } else if (value instanceof Boolean) {
+            return "BOOLEAN";
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return "INT";
+        } else if (value instanceof Long) {
+            return "BIGINT";
+        } else if (value instanceof Number) {
+            return "DECIMAL";
+        } else {
+            throw new IllegalStateException(String.format("Type not supported: %s", value.getClass().getName()));
+        }
+    }
+
+    protected String fillVirtualTableSql(String[] tokens, Object[] values) throws SQLException {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            out.append(tokens[i]);
+            appendVirtualTableStringValue(values[i], out);
+        }
+        out.append(tokens[values.length]);
+        return out.toString();
+    }
+
+    /**
+     * Read a stream value into a string so it can be used by both the
+     * condition and the insert statement.
+     */
+    protected Object readVirtualTableValue(Object value) {
+        try {
             if (value instanceof Reader) {
-                try {
-                    value = readStringAndClose((Reader) value, -1);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+                return readStringAndClose((Reader) value, -1);
+            } else if (value instanceof InputStream) {
+                return convertBytesToString(readBytesAndClose((InputStream) value, -1));
+            } else if (value instanceof byte[]) {
+                return convertBytesToString((byte[]) value);
             }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return value;
+    }
+
+    protected void appendVirtualTableStringValue(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
             out.append("'");
             out.append(escapeString(value));
             out.append("'");
@@ -158,26 +393,13 @@ abstract public class AbstractEmbeddedTrigger {
             out.append(value);
         } else if (value instanceof Boolean) {
             out.append(value);
-        } else if (value instanceof InputStream) {
-            out.append("'");
-            try {
-                value = convertBytesToString(readBytesAndClose((InputStream) value, -1));
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            out.append(escapeString(value));
-            out.append("'");
-
         } else if (value instanceof Date) {
             out.append("'");
-            synchronized (DATE_FORMATTER) {
-                out.append(DATE_FORMATTER.format(value));
-            }
+            out.append(DATE_FORMATTER.get().format(value));
             out.append("'");
         } else {
             throw new IllegalStateException(String.format("Type not supported: %s", value.getClass().getName()));
         }
-        return value;
     }
 
     protected String readStringAndClose(Reader paramReader, int paramInt) throws IOException {
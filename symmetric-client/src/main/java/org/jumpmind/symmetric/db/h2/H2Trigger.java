@@ -23,6 +23,7 @@ package org.jumpmind.symmetric.db.h2;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+import org.h2.jdbc.JdbcConnection;
 import org.jumpmind.symmetric.db.AbstractEmbeddedTrigger;
 
 public class H2Trigger extends AbstractEmbeddedTrigger implements org.h2.api.Trigger {
@@ -61,10 +62,25 @@ public class H2Trigger extends AbstractEmbeddedTrigger implements org.h2.api.Tri
     }
     
     @Override
-    protected String fillVirtualTableSql(String sql, Object[] oldRow, Object[] newRow)
-            throws SQLException {
-        sql = sql.replace(TRANSACTION_FUNCTION, TRANSACTION_FUNCTION + " || '-" + startupTime + "'");
-        return super.fillVirtualTableSql(sql, oldRow, newRow);
+    protected String prepareTemplate(String sql) {
+        return sql.replace(TRANSACTION_FUNCTION, TRANSACTION_FUNCTION + " || '-" + startupTime + "'");
+    }
+
+    @Override
+    protected boolean isUsePreparedStatements() {
+        return true;
+    }
+
+    /**
+     * H2 passes a new connection to each call of fire, so prepared statements
+     * are kept by the session behind it.
+     */
+    @Override
+    protected Object getStatementCacheKey(Connection conn) {
+        if (conn instanceof JdbcConnection) {
+            return ((JdbcConnection) conn).getSession();
+        }
+        return conn;
     }
 
 }
\ No newline at end of file
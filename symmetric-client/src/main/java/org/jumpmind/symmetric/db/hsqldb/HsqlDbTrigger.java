@@ -92,23 +92,20 @@ public class HsqlDbTrigger extends AbstractEmbeddedTrigger implements Trigger {
     }
 
     @Override
-    protected Object appendVirtualTableStringValue(Object value, StringBuilder out) {
+    protected Object readVirtualTableValue(Object value) {
         if (value != null && (value.getClass().getName().equals("org.hsqldb.types.Binary")
                 || value.getClass().getName().equals("org.hsqldb.types.BinaryData"))) {
-            out.append("'");
             Method getBytes;
             try {
                 getBytes = value.getClass().getMethod("getBytes");
                 value = HsqlDbFunctions.encodeBase64((byte[]) getBytes.invoke(value));
-                out.append(escapeString(value));
-                out.append("'");
             } catch (RuntimeException ex) {
                 throw ex;
             } catch (Exception ex) {
                 throw new RuntimeException(ex);
             }
         } else {
-            return super.appendVirtualTableStringValue(value, out);
+            value = super.readVirtualTableValue(value);
         }
 
         return value;
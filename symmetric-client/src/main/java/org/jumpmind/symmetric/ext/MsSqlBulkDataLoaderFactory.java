@@ -72,8 +72,10 @@ public class MsSqlBulkDataLoaderFactory implements IDataLoaderFactory {
         String uncPath = parameterService.getString("mssql.bulk.load.unc.path");
         String rowTerminator = StringEscapeUtils.unescapeJava(parameterService.getString("mssql.bulk.load.row.terminator", "\\r\\n"));
         String fieldTerminator = StringEscapeUtils.unescapeJava(parameterService.getString("mssql.bulk.load.field.terminator", "||"));
-		return new MsSqlBulkDatabaseWriter(symmetricDialect.getPlatform(),
+		MsSqlBulkDatabaseWriter writer = new MsSqlBulkDatabaseWriter(symmetricDialect.getPlatform(),
 				stagingManager, jdbcExtractor, maxRowsBeforeFlush, fireTriggers, uncPath, fieldTerminator, rowTerminator);
+		writer.setStageChanges(parameterService.is("bulk.load.stage.changes.enabled", true));
+		return writer;
 	}
 
     public boolean isPlatformSupported(IDatabasePlatform platform) {
@@ -65,8 +65,10 @@ public class MySqlBulkDataLoaderFactory implements IDataLoaderFactory {
 			List<IDatabaseWriterErrorHandler> errorHandlers,
 			List<? extends Conflict> conflictSettings,
 			List<ResolvedData> resolvedData) {
-		return new MySqlBulkDatabaseWriter(symmetricDialect.getPlatform(),
+		MySqlBulkDatabaseWriter writer = new MySqlBulkDatabaseWriter(symmetricDialect.getPlatform(),
 				stagingManager, jdbcExtractor, maxRowsBeforeFlush, maxBytesBeforeFlush, isLocal, isReplace);
+		writer.setStageChanges(engine.getParameterService().is("bulk.load.stage.changes.enabled", true));
+		return writer;
 	}
 
     public void setSymmetricEngine(ISymmetricEngine engine) {
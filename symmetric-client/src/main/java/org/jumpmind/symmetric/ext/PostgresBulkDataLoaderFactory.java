@@ -60,8 +60,10 @@ public class PostgresBulkDataLoaderFactory implements IDataLoaderFactory {
             TransformWriter transformWriter, List<IDatabaseWriterFilter> filters,
             List<IDatabaseWriterErrorHandler> errorHandlers,
             List<? extends Conflict> conflictSettings, List<ResolvedData> resolvedData) {
-        return new PostgresBulkDatabaseWriter(symmetricDialect.getPlatform(), jdbcExtractor,
-                maxRowsBeforeFlush);
+        PostgresBulkDatabaseWriter writer = new PostgresBulkDatabaseWriter(symmetricDialect.getPlatform(),
+                jdbcExtractor, maxRowsBeforeFlush);
+        writer.setStageChanges(engine.getParameterService().is("bulk.load.stage.changes.enabled", true));
+        return writer;
     }
 
     public void setSymmetricEngine(ISymmetricEngine engine) {
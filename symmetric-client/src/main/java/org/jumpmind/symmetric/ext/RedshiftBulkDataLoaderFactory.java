@@ -28,6 +28,7 @@ import org.jumpmind.db.platform.IDatabasePlatform;
 import org.jumpmind.extension.IBuiltInExtensionPoint;
 import org.jumpmind.symmetric.ISymmetricEngine;
 import org.jumpmind.symmetric.db.ISymmetricDialect;
+import org.jumpmind.symmetric.io.AbstractBulkDatabaseWriter;
 import org.jumpmind.symmetric.io.data.IDataWriter;
 import org.jumpmind.symmetric.io.data.writer.Conflict;
 import org.jumpmind.symmetric.io.data.writer.IDatabaseWriterErrorHandler;
@@ -73,9 +74,11 @@ public class RedshiftBulkDataLoaderFactory implements IDataLoaderFactory {
                     IDatabasePlatform.class, IStagingManager.class, List.class,
                     List.class, Integer.TYPE, Long.TYPE, String.class,
                     String.class, String.class, String.class, String.class });
-            return (IDataWriter) dbWriterConstructor.newInstance(
+            AbstractBulkDatabaseWriter writer = (AbstractBulkDatabaseWriter) dbWriterConstructor.newInstance(
                     symmetricDialect.getPlatform(), engine.getStagingManager(), filters, errorHandlers,
                     maxRowsBeforeFlush, maxBytesBeforeFlush, bucket, accessKey, secretKey, appendToCopyCommand, s3Endpoint);
+            writer.setStageChanges(param.is("bulk.load.stage.changes.enabled", true));
+            return writer;
 
         } catch (Exception e) {
             log.warn("Failed to create the redshift database writer.  Check to see if all of the required jars have been added");
@@ -0,0 +1,418 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.io;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
+import org.jumpmind.db.platform.DatabaseInfo;
+import org.jumpmind.db.platform.DatabaseNamesConstants;
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.sql.DmlStatement;
+import org.jumpmind.db.sql.DmlStatement.DmlType;
+import org.jumpmind.db.sql.ISqlRowMapper;
+import org.jumpmind.db.sql.Row;
+import org.jumpmind.symmetric.io.data.Batch;
+import org.jumpmind.symmetric.io.data.CsvData;
+import org.jumpmind.symmetric.io.data.DataEventType;
+import org.jumpmind.symmetric.io.data.writer.Conflict;
+import org.jumpmind.symmetric.io.data.writer.Conflict.DetectConflict;
+import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
+import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
+
+/**
+ * A database writer for the bulk loaders that stages updates and deletes in a
+ * temporary table and applies them to the target table with one statement for
+ * all of the staged rows. Changes that cannot be applied by primary key, or
+ * that change the primary key, are written one row at a time. Staged rows that
+ * do not match a row in the target table are also written one row at a time so
+ * the usual conflict resolution applies to them.
+ */
+public abstract class AbstractBulkDatabaseWriter extends DefaultDatabaseWriter {
+
+    protected static final String STAGE_SEQUENCE_COLUMN = "sym_bulk_seq";
+
+    protected int maxRowsBeforeFlush;
+
+    protected boolean stageChanges = true;
+
+    protected List<CsvData> stagedChanges = new ArrayList<CsvData>();
+
+    protected DataEventType stagedEventType;
+
+    protected Column[] stagedUpdateColumns;
+
+    protected Set<String> stagedKeys = new HashSet<String>();
+
+    protected Set<String> createdStageTables = new HashSet<String>();
+
+    public AbstractBulkDatabaseWriter(IDatabasePlatform platform) {
+        super(platform);
+    }
+
+    public void setStageChanges(boolean stageChanges) {
+        this.stageChanges = stageChanges;
+    }
+
+    public boolean isStageChanges() {
+        return stageChanges;
+    }
+
+    @Override
+    public void write(CsvData data) {
+        DataEventType dataEventType = data.getDataEventType();
+        if (dataEventType == DataEventType.UPDATE || dataEventType == DataEventType.DELETE) {
+            writeChange(data);
+        } else {
+            applyStagedChanges();
+            super.write(data);
+        }
+    }
+
+    @Override
+    public boolean start(Table table) {
+        applyStagedChanges();
+        return super.start(table);
+    }
+
+    @Override
+    public void end(Table table) {
+        try {
+            applyStagedChanges();
+        } finally {
+            super.end(table);
+        }
+    }
+
+    @Override
+    public void end(Batch batch, boolean inError) {
+        if (inError) {
+            clearStagedChanges();
+        } else {
+            applyStagedChanges();
+        }
+        super.end(batch, inError);
+    }
+
+    @Override
+    protected void rollback() {
+        clearStagedChanges();
+        createdStageTables.clear();
+        super.rollback();
+    }
+
+    /**
+     * Stages an update or delete to be applied with the other staged changes
+     * of the same type, or writes it right away if it cannot be staged.
+     */
+    protected void writeChange(CsvData data) {
+        String key = stageChanges && targetTable != null ? getStageKey(data) : null;
+        Column[] updateColumns = key != null && data.getDataEventType() == DataEventType.UPDATE ? getUpdateColumns(data)
+                : null;
+        if (key == null || (data.getDataEventType() == DataEventType.UPDATE && updateColumns.length == 0)) {
+            applyStagedChanges();
+            super.write(data);
+        } else {
+            if (data.getDataEventType() != stagedEventType || !Arrays.equals(updateColumns, stagedUpdateColumns)
+                    || stagedKeys.contains(key)) {
+                applyStagedChanges();
+            }
+            stagedEventType = data.getDataEventType();
+            stagedUpdateColumns = updateColumns;
+            stagedKeys.add(key);
+            stagedChanges.add(data);
+            if (stagedChanges.size() >= maxRowsBeforeFlush) {
+                applyStagedChanges();
+            }
+        }
+    }
+
+    /**
+     * @return the primary key values of the change as a string, or null if
+     *         the change cannot be applied by primary key
+     */
+    protected String getStageKey(CsvData data) {
+        Column[] pkColumns = targetTable.getPrimaryKeyColumns();
+        Conflict conflict = writerSettings.pickConflict(targetTable, batch);
+        if (pkColumns.length == 0 || conflict.getDetectType() != DetectConflict.USE_PK_DATA) {
+            return null;
+        }
+        Map<String, String> lookupDataMap = getLookupDataMap(data, conflict);
+        String[] rowData = data.getDataEventType() == DataEventType.UPDATE ? getRowData(data, CsvData.ROW_DATA)
+                : null;
+        StringBuilder key = new StringBuilder();
+        for (Column column : pkColumns) {
+            String value = lookupDataMap.get(column.getName());
+            if (value == null || platform.isLob(column.getMappedTypeCode())
+                    || !platform.canColumnBeUsedInWhereClause(column)
+                    || (rowData != null && !value.equals(rowData[targetTable.getColumnIndex(column)]))) {
+                return null;
+            }
+            key.append(value).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the non primary key columns an update will set
+     */
+    protected Column[] getUpdateColumns(CsvData data) {
+        String[] rowData = getRowData(data, CsvData.ROW_DATA);
+        String[] oldData = getRowData(data, CsvData.OLD_DATA);
+        boolean applyChangesOnly = writerSettings.isApplyChangesOnly() && oldData != null;
+        List<Column> columns = new ArrayList<Column>();
+        for (int i = 0; i < targetTable.getColumnCount(); i++) {
+            Column column = targetTable.getColumn(i);
+            if (column.isPrimaryKey()
+                    || (!platform.getDatabaseInfo().isAutoIncrementUpdateAllowed() && column.isAutoIncrement())) {
+                continue;
+            }
+            if (!applyChangesOnly || !StringUtils.equals(rowData[i], oldData[i])
+                    || (platform.isLob(column.getMappedTypeCode()) && StringUtils.isBlank(oldData[i]))) {
+                columns.add(column);
+            }
+        }
+        return columns.toArray(new Column[columns.size()]);
+    }
+
+    protected void clearStagedChanges() {
+        stagedChanges.clear();
+        stagedKeys.clear();
+        stagedEventType = null;
+        stagedUpdateColumns = null;
+    }
+
+    /**
+     * Loads the staged changes into the stage table for the target table and
+     * applies them with one statement. The staged changes that do not match a
+     * row in the target table are written one row at a time afterwards.
+     */
+    protected void applyStagedChanges() {
+        if (stagedChanges.size() == 0) {
+            return;
+        }
+        List<CsvData> changes = new ArrayList<CsvData>(stagedChanges);
+        boolean update = stagedEventType == DataEventType.UPDATE;
+        Column[] updateColumns = stagedUpdateColumns;
+        clearStagedChanges();
+
+        List<Integer> unmatched = null;
+        statistics.get(batch).startTimer(DataWriterStatisticConstants.DATABASEMILLIS);
+        try {
+            Column[] pkColumns = targetTable.getPrimaryKeyColumns();
+            Column[] stageColumns = update ? targetTable.getColumns() : pkColumns;
+            String stageTableName = getStageTableName(update ? "u" : "d", stageColumns);
+            if (!createdStageTables.contains(stageTableName)) {
+                String dropSql = getDropStageTableSql(stageTableName);
+                if (dropSql != null) {
+                    transaction.execute(dropSql);
+                }
+                transaction.execute(getCreateStageTableSql(stageTableName, stageColumns));
+                createdStageTables.add(stageTableName);
+            }
+            transaction.execute("delete from " + quote(stageTableName));
+
+            Conflict conflict = writerSettings.pickConflict(targetTable, batch);
+            List<String[]> rows = new ArrayList<String[]>(changes.size());
+            for (int i = 0; i < changes.size(); i++) {
+                CsvData data = changes.get(i);
+                String[] values = null;
+                if (update) {
+                    values = getRowData(data, CsvData.ROW_DATA);
+                } else {
+                    Map<String, String> lookupDataMap = getLookupDataMap(data, conflict);
+                    values = new String[pkColumns.length];
+                    for (int j = 0; j < pkColumns.length; j++) {
+                        values[j] = lookupDataMap.get(pkColumns[j].getName());
+                    }
+                }
+                rows.add((String[]) ArrayUtils.add(values, 0, Integer.toString(i)));
+            }
+            Column[] columns = (Column[]) ArrayUtils.add(stageColumns, 0, new Column(STAGE_SEQUENCE_COLUMN, false,
+                    Types.INTEGER, 0, 0));
+            stageRows(stageTableName, columns, rows);
+
+            unmatched = transaction.query(getUnmatchedStageRowsSql(stageTableName, pkColumns),
+                    new ISqlRowMapper<Integer>() {
+                        public Integer mapRow(Row row) {
+                            return row.numberValue().intValue();
+                        }
+                    }, null, null);
+
+            int count = 0;
+            if (update) {
+                count = transaction.execute(getBulkUpdateSql(stageTableName, pkColumns, updateColumns));
+                statistics.get(batch).increment(DataWriterStatisticConstants.UPDATECOUNT, count);
+            } else {
+                count = transaction.execute(getBulkDeleteSql(stageTableName, pkColumns));
+                statistics.get(batch).increment(DataWriterStatisticConstants.DELETECOUNT, count);
+            }
+            int matched = changes.size() - unmatched.size();
+            statistics.get(batch).increment(DataWriterStatisticConstants.STATEMENTCOUNT, matched);
+            statistics.get(batch).increment(DataWriterStatisticConstants.LINENUMBER, matched);
+            uncommittedCount += matched;
+            if (log.isDebugEnabled()) {
+                log.debug("Applied {} staged {} rows to {}", new Object[] { count, update ? "update" : "delete",
+                        targetTable.getFullyQualifiedTableName() });
+            }
+        } finally {
+            statistics.get(batch).stopTimer(DataWriterStatisticConstants.DATABASEMILLIS);
+        }
+
+        for (Integer index : unmatched) {
+            super.write(changes.get(index));
+        }
+    }
+
+    /**
+     * Inserts rows into the stage table. The first column is the sequence
+     * column. Subclasses can override this to use their bulk loader.
+     */
+    protected void stageRows(String stageTableName, Column[] columns, List<String[]> rows) {
+        DmlStatement stageStatement = platform.createDmlStatement(DmlType.INSERT, null, null, stageTableName, null,
+                columns, null, writerSettings.getTextColumnExpression());
+        boolean inBatchMode = transaction.isInBatchMode();
+        transaction.setInBatchMode(true);
+        try {
+            transaction.prepare(stageStatement.getSql());
+            for (String[] row : rows) {
+                transaction.addRow(null, platform.getObjectValues(batch.getBinaryEncoding(), row,
+                        stageStatement.getMetaData(), false, writerSettings.isFitToColumn()), stageStatement.getTypes());
+            }
+            transaction.flush();
+        } finally {
+            transaction.setInBatchMode(inBatchMode);
+            /*
+             * The stage statement replaced the prepared statement of the
+             * transaction
+             */
+            this.currentDmlStatement = null;
+        }
+    }
+
+    protected String getStageTableName(String type, Column[] columns) {
+        int hash = (targetTable.getFullyQualifiedTableName() + Arrays.toString(Table.getArrayColumns(columns)))
+                .hashCode();
+        return "sym_bulk_" + type + "_" + Integer.toHexString(hash);
+    }
+
+    protected String getDropStageTableSql(String stageTableName) {
+        if (DatabaseNamesConstants.H2.equals(platform.getName())) {
+            return null;
+        }
+        return "drop table if exists " + quote(stageTableName);
+    }
+
+    protected String getCreateStageTableSql(String stageTableName, Column[] columns) {
+        if (DatabaseNamesConstants.H2.equals(platform.getName())) {
+            /*
+             * H2 commits the current transaction when a table is created
+             * unless it is a transactional temporary table
+             */
+            return "create local temporary table if not exists " + quote(stageTableName) + " transactional as "
+                    + getStageTableSelectSql(columns);
+        }
+        return "create local temporary table " + quote(stageTableName) + " as " + getStageTableSelectSql(columns);
+    }
+
+    /**
+     * @return a query with no rows that has the sequence column and the given
+     *         columns of the target table
+     */
+    protected String getStageTableSelectSql(Column[] columns) {
+        StringBuilder sql = new StringBuilder("select 0 as ");
+        sql.append(quote(STAGE_SEQUENCE_COLUMN));
+        for (Column column : columns) {
+            sql.append(", ").append(quote(column.getName()));
+        }
+        sql.append(" from ").append(getTargetTableName()).append(" where 1=0");
+        return sql.toString();
+    }
+
+    protected String getUnmatchedStageRowsSql(String stageTableName, Column[] pkColumns) {
+        return "select s." + quote(STAGE_SEQUENCE_COLUMN) + " from " + quote(stageTableName)
+                + " s where not exists (select 1 from " + getTargetTableName() + " t where "
+                + getStageJoinSql(pkColumns, "t.") + ")";
+    }
+
+    protected String getBulkUpdateSql(String stageTableName, Column[] pkColumns, Column[] updateColumns) {
+        String join = getStageJoinSql(pkColumns, quote(targetTable.getName()) + ".");
+        StringBuilder sql = new StringBuilder("update ").append(getTargetTableName()).append(" set ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(quote(updateColumns[i].getName())).append("=(select s.")
+                    .append(quote(updateColumns[i].getName())).append(" from ").append(quote(stageTableName))
+                    .append(" s where ").append(join).append(")");
+        }
+        sql.append(" where exists (select 1 from ").append(quote(stageTableName)).append(" s where ")
+                .append(join).append(")");
+        return sql.toString();
+    }
+
+    protected String getBulkDeleteSql(String stageTableName, Column[] pkColumns) {
+        return "delete from " + getTargetTableName() + " where exists (select 1 from " + quote(stageTableName)
+                + " s where " + getStageJoinSql(pkColumns, quote(targetTable.getName()) + ".") + ")";
+    }
+
+    /**
+     * @return the condition that joins the stage table, aliased as s, to the
+     *         target table by primary key
+     */
+    protected String getStageJoinSql(Column[] pkColumns, String targetPrefix) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < pkColumns.length; i++) {
+            if (i > 0) {
+                sql.append(" and ");
+            }
+            sql.append("s.").append(quote(pkColumns[i].getName())).append("=").append(targetPrefix)
+                    .append(quote(pkColumns[i].getName()));
+        }
+        return sql.toString();
+    }
+
+    protected String getTargetTableName() {
+        DatabaseInfo dbInfo = platform.getDatabaseInfo();
+        return targetTable.getQualifiedTableName(getQuote(), dbInfo.getCatalogSeparator(),
+                dbInfo.getSchemaSeparator());
+    }
+
+    protected String getQuote() {
+        String quote = platform.getDdlBuilder().isDelimitedIdentifierModeOn() ? platform.getDatabaseInfo()
+                .getDelimiterToken() : "";
+        return quote == null ? "" : quote;
+    }
+
+    protected String quote(String name) {
+        return getQuote() + name + getQuote();
+    }
+
+}
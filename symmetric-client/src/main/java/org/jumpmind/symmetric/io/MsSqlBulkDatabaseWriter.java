@@ -39,15 +39,13 @@ import org.jumpmind.db.util.BinaryEncoding;
 import org.jumpmind.symmetric.io.data.CsvData;
 import org.jumpmind.symmetric.io.data.DataEventType;
 import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
-import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
 import org.jumpmind.symmetric.io.stage.IStagedResource;
 import org.jumpmind.symmetric.io.stage.IStagingManager;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
 
-public class MsSqlBulkDatabaseWriter extends DefaultDatabaseWriter {
+public class MsSqlBulkDatabaseWriter extends AbstractBulkDatabaseWriter {
 
     protected NativeJdbcExtractor jdbcExtractor;
-    protected int maxRowsBeforeFlush;
     protected IStagingManager stagingManager;
     protected IStagedResource stagedInputFile;
     protected String rowTerminator = "\r\n";
@@ -127,6 +125,7 @@ public class MsSqlBulkDatabaseWriter extends DefaultDatabaseWriter {
 
         switch (dataEventType) {
             case INSERT:
+                applyStagedChanges();
                 statistics.get(batch).increment(DataWriterStatisticConstants.STATEMENTCOUNT);
                 statistics.get(batch).increment(DataWriterStatisticConstants.LINENUMBER);
                 statistics.get(batch).startTimer(DataWriterStatisticConstants.DATABASEMILLIS);
@@ -175,8 +174,12 @@ public class MsSqlBulkDatabaseWriter extends DefaultDatabaseWriter {
                 break;
             case UPDATE:
             case DELETE:
+                flush();
+                writeChange(data);
+                break;
             default:
                 flush();
+                applyStagedChanges();
                 super.write(data);
                 break;
         }
@@ -235,6 +238,43 @@ public class MsSqlBulkDatabaseWriter extends DefaultDatabaseWriter {
         }
     }
     
+    @Override
+    protected String getStageTableName(String type, Column[] columns) {
+        return "#" + super.getStageTableName(type, columns);
+    }
+
+    @Override
+    protected String getDropStageTableSql(String stageTableName) {
+        return "if object_id('tempdb.." + stageTableName + "') is not null drop table " + quote(stageTableName);
+    }
+
+    /**
+     * The join keeps select into from copying the identity property of the
+     * target table to the stage table
+     */
+    @Override
+    protected String getCreateStageTableSql(String stageTableName, Column[] columns) {
+        StringBuilder sql = new StringBuilder("select 0 as ").append(quote(STAGE_SEQUENCE_COLUMN));
+        for (Column column : columns) {
+            sql.append(", t.").append(quote(column.getName()));
+        }
+        sql.append(" into ").append(quote(stageTableName)).append(" from ").append(getTargetTableName())
+                .append(" t left outer join (select 0 as sym_bulk_join) j on 1=0 where 1=0");
+        return sql.toString();
+    }
+
+    @Override
+    protected String getBulkUpdateSql(String stageTableName, Column[] pkColumns, Column[] updateColumns) {
+        StringBuilder sql = new StringBuilder("update t set ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(quote(updateColumns[i].getName())).append("=s.")
+                    .append(quote(updateColumns[i].getName()));
+        }
+        sql.append(" from ").append(getTargetTableName()).append(" t inner join ").append(quote(stageTableName))
+                .append(" s on ").append(getStageJoinSql(pkColumns, "t."));
+        return sql.toString();
+    }
+
     protected void createStagingFile() {
     	//TODO: We should use constants for dir structure path, 
     	//      but we don't want to depend on symmetric core.
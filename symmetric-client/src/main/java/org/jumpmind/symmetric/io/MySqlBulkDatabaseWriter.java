@@ -43,16 +43,14 @@ import org.jumpmind.symmetric.io.data.CsvData;
 import org.jumpmind.symmetric.io.data.CsvUtils;
 import org.jumpmind.symmetric.io.data.DataEventType;
 import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
-import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
 import org.jumpmind.symmetric.io.stage.IStagedResource;
 import org.jumpmind.symmetric.io.stage.IStagingManager;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
 
-public class MySqlBulkDatabaseWriter extends DefaultDatabaseWriter {
+public class MySqlBulkDatabaseWriter extends AbstractBulkDatabaseWriter {
 
 
     protected NativeJdbcExtractor jdbcExtractor;
-    protected int maxRowsBeforeFlush;
     protected long maxBytesBeforeFlush;
     protected boolean isLocal;
     protected boolean isReplace;
@@ -114,6 +112,7 @@ public class MySqlBulkDatabaseWriter extends DefaultDatabaseWriter {
 
         switch (dataEventType) {
             case INSERT:
+                applyStagedChanges();
                 statistics.get(batch).increment(DataWriterStatisticConstants.STATEMENTCOUNT);
                 statistics.get(batch).increment(DataWriterStatisticConstants.LINENUMBER);
                 statistics.get(batch).startTimer(DataWriterStatisticConstants.DATABASEMILLIS);
@@ -173,8 +172,12 @@ public class MySqlBulkDatabaseWriter extends DefaultDatabaseWriter {
                 break;
             case UPDATE:
             case DELETE:
+                flush();
+                writeChange(data);
+                break;
             default:
                 flush();
+                applyStagedChanges();
                 super.write(data);
                 break;
         }
@@ -220,6 +223,33 @@ public class MySqlBulkDatabaseWriter extends DefaultDatabaseWriter {
         }
     }
     
+    @Override
+    protected String getDropStageTableSql(String stageTableName) {
+        return "drop temporary table if exists " + quote(stageTableName);
+    }
+
+    @Override
+    protected String getCreateStageTableSql(String stageTableName, Column[] columns) {
+        return "create temporary table " + quote(stageTableName) + " as " + getStageTableSelectSql(columns);
+    }
+
+    /**
+     * MySQL cannot refer to a temporary table more than once in a statement,
+     * so the update joins to the stage table
+     */
+    @Override
+    protected String getBulkUpdateSql(String stageTableName, Column[] pkColumns, Column[] updateColumns) {
+        String targetPrefix = quote(targetTable.getName()) + ".";
+        StringBuilder sql = new StringBuilder("update ").append(getTargetTableName()).append(" inner join ")
+                .append(quote(stageTableName)).append(" s on ").append(getStageJoinSql(pkColumns, targetPrefix))
+                .append(" set ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(targetPrefix).append(quote(updateColumns[i].getName()))
+                    .append("=s.").append(quote(updateColumns[i].getName()));
+        }
+        return sql.toString();
+    }
+
     protected String getCommaDeliminatedColumns(Column[] cols) {
         DatabaseInfo dbInfo = platform.getDatabaseInfo();
         String quote = dbInfo.getDelimiterToken();
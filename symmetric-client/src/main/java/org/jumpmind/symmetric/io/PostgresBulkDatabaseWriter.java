@@ -22,6 +22,7 @@ package org.jumpmind.symmetric.io;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Hex;
@@ -39,18 +40,15 @@ import org.jumpmind.symmetric.io.data.CsvUtils;
 import org.jumpmind.symmetric.io.data.DataContext;
 import org.jumpmind.symmetric.io.data.DataEventType;
 import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
-import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
 import org.postgresql.copy.CopyIn;
 import org.postgresql.copy.CopyManager;
 import org.postgresql.core.BaseConnection;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
 
-public class PostgresBulkDatabaseWriter extends DefaultDatabaseWriter {
+public class PostgresBulkDatabaseWriter extends AbstractBulkDatabaseWriter {
 
     protected NativeJdbcExtractor jdbcExtractor;
 
-    protected int maxRowsBeforeFlush;
-
     protected CopyManager copyManager;
 
     protected CopyIn copyIn;
@@ -86,23 +84,11 @@ public class PostgresBulkDatabaseWriter extends DefaultDatabaseWriter {
             
             switch (dataEventType) {
                 case INSERT:
+                    applyStagedChanges();
                 	startCopy();
                     try {
-                        String[] parsedData = data.getParsedData(CsvData.ROW_DATA);
-                        if (needsBinaryConversion) {
-                            Column[] columns = targetTable.getColumns();
-                            for (int i = 0; i < columns.length; i++) {
-                                if (columns[i].isOfBinaryType() && parsedData[i] != null) {
-                                    if (batch.getBinaryEncoding().equals(BinaryEncoding.HEX)) {
-                                        parsedData[i] = encode(Hex.decodeHex(parsedData[i].toCharArray()));
-                                    } else if (batch.getBinaryEncoding().equals(BinaryEncoding.BASE64)) {
-                                        parsedData[i] = encode(Base64.decodeBase64(parsedData[i].getBytes()));
-                                    }
-                                }
-                            }
-                        }
-                        String formattedData = CsvUtils.escapeCsvData(parsedData, '\n', '\'', CsvWriter.ESCAPE_MODE_DOUBLED);
-                        byte[] dataToLoad = formattedData.getBytes();
+                        byte[] dataToLoad = formatCopyData(data.getParsedData(CsvData.ROW_DATA),
+                                needsBinaryConversion ? targetTable.getColumns() : null);
                         copyIn.writeToCopy(dataToLoad, 0, dataToLoad.length);
                         loadedRows++;
                     } catch (Exception ex) {
@@ -111,8 +97,12 @@ public class PostgresBulkDatabaseWriter extends DefaultDatabaseWriter {
                     break;
                 case UPDATE:
                 case DELETE:
+                    endCopy();
+                    writeChange(data);
+                    break;
                 default:
                     endCopy();
+                    applyStagedChanges();
                     super.write(data);
                     break;
             } 
@@ -125,6 +115,64 @@ public class PostgresBulkDatabaseWriter extends DefaultDatabaseWriter {
         statistics.get(batch).stopTimer(DataWriterStatisticConstants.DATABASEMILLIS);
     }
 
+    /**
+     * Formats a row for the copy command, converting the values of the binary
+     * columns when columns are given.
+     */
+    protected byte[] formatCopyData(String[] parsedData, Column[] columns) throws Exception {
+        if (columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].isOfBinaryType() && parsedData[i] != null) {
+                    if (batch.getBinaryEncoding().equals(BinaryEncoding.HEX)) {
+                        parsedData[i] = encode(Hex.decodeHex(parsedData[i].toCharArray()));
+                    } else if (batch.getBinaryEncoding().equals(BinaryEncoding.BASE64)) {
+                        parsedData[i] = encode(Base64.decodeBase64(parsedData[i].getBytes()));
+                    }
+                }
+            }
+        }
+        String formattedData = CsvUtils.escapeCsvData(parsedData, '\n', '\'', CsvWriter.ESCAPE_MODE_DOUBLED);
+        return formattedData.getBytes();
+    }
+
+    @Override
+    protected void stageRows(String stageTableName, Column[] columns, List<String[]> rows) {
+        StringBuilder sql = new StringBuilder("COPY ").append(quote(stageTableName)).append("(");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? "," : "").append(quote(columns[i].getName()));
+        }
+        sql.append(") FROM STDIN with delimiter ',' csv quote ''''");
+        CopyIn stageCopyIn = null;
+        try {
+            stageCopyIn = copyManager.copyIn(sql.toString());
+            for (String[] row : rows) {
+                byte[] dataToLoad = formatCopyData(row, columns);
+                stageCopyIn.writeToCopy(dataToLoad, 0, dataToLoad.length);
+            }
+            stageCopyIn.endCopy();
+        } catch (Exception ex) {
+            if (stageCopyIn != null && stageCopyIn.isActive()) {
+                try {
+                    stageCopyIn.cancelCopy();
+                } catch (SQLException e) {
+                }
+            }
+            throw getPlatform().getSqlTemplate().translate(ex);
+        }
+    }
+
+    @Override
+    protected String getBulkUpdateSql(String stageTableName, Column[] pkColumns, Column[] updateColumns) {
+        StringBuilder sql = new StringBuilder("update ").append(getTargetTableName()).append(" set ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(quote(updateColumns[i].getName())).append("=s.")
+                    .append(quote(updateColumns[i].getName()));
+        }
+        sql.append(" from ").append(quote(stageTableName)).append(" s where ")
+                .append(getStageJoinSql(pkColumns, quote(targetTable.getName()) + "."));
+        return sql.toString();
+    }
+
     protected void flush() {
         if (copyIn != null) {
             try {
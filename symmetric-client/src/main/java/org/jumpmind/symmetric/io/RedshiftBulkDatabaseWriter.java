@@ -22,6 +22,7 @@ package org.jumpmind.symmetric.io;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -35,8 +36,8 @@ import org.jumpmind.symmetric.csv.CsvWriter;
 import org.jumpmind.symmetric.io.data.CsvData;
 import org.jumpmind.symmetric.io.data.CsvUtils;
 import org.jumpmind.symmetric.io.data.DataEventType;
+import org.jumpmind.exception.IoException;
 import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
-import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
 import org.jumpmind.symmetric.io.data.writer.IDatabaseWriterErrorHandler;
 import org.jumpmind.symmetric.io.data.writer.IDatabaseWriterFilter;
 import org.jumpmind.symmetric.io.stage.IStagedResource;
@@ -48,7 +49,7 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 
-public class RedshiftBulkDatabaseWriter extends DefaultDatabaseWriter {
+public class RedshiftBulkDatabaseWriter extends AbstractBulkDatabaseWriter {
 
     protected IStagingManager stagingManager;
     protected IStagedResource stagedInputFile;
@@ -57,7 +58,6 @@ public class RedshiftBulkDatabaseWriter extends DefaultDatabaseWriter {
     protected boolean needsExplicitIds;
     protected Table table = null;
 
-    protected int maxRowsBeforeFlush;
     protected long maxBytesBeforeFlush;
     private String bucket;
     private String accessKey;
@@ -122,6 +122,7 @@ public class RedshiftBulkDatabaseWriter extends DefaultDatabaseWriter {
         
                 switch (dataEventType) {
                     case INSERT:
+                        applyStagedChanges();
                         statistics.get(batch).increment(DataWriterStatisticConstants.STATEMENTCOUNT);
                         statistics.get(batch).increment(DataWriterStatisticConstants.LINENUMBER);
                         statistics.get(batch).startTimer(DataWriterStatisticConstants.DATABASEMILLIS);
@@ -139,8 +140,12 @@ public class RedshiftBulkDatabaseWriter extends DefaultDatabaseWriter {
                         break;
                     case UPDATE:
                     case DELETE:
+                        flush();
+                        writeChange(data);
+                        break;
                     default:
                         flush();
+                        applyStagedChanges();
                         super.write(data);
                         break;
                 }
@@ -161,41 +166,53 @@ public class RedshiftBulkDatabaseWriter extends DefaultDatabaseWriter {
         if (loadedRows > 0) {
             stagedInputFile.close();
             statistics.get(batch).startTimer(DataWriterStatisticConstants.DATABASEMILLIS);  
-            AmazonS3 s3client = new AmazonS3Client(new BasicAWSCredentials(accessKey, secretKey));
-            if (isNotBlank(s3Endpoint)) {
-                s3client.setEndpoint(s3Endpoint);
-            }
-            String objectKey = stagedInputFile.getFile().getName();
-            try {
-                s3client.putObject(bucket, objectKey, stagedInputFile.getFile());
-            } catch (AmazonServiceException ase) {
-                log.error("Exception from AWS service: " + ase.getMessage());
-            } catch (AmazonClientException ace) {
-                log.error("Exception from AWS client: " + ace.getMessage());
-            }
-
             try {
-                JdbcSqlTransaction jdbcTransaction = (JdbcSqlTransaction) transaction;
-                Connection c = jdbcTransaction.getConnection();
-                String sql = "COPY " + getTargetTable().getFullyQualifiedTableName() +
-                        " (" + Table.getCommaDeliminatedColumns(table.getColumns()) +
-                        ") FROM 's3://" + bucket + "/" + objectKey + 
-                        "' CREDENTIALS 'aws_access_key_id=" + accessKey + ";aws_secret_access_key=" + secretKey + 
-                        "' CSV DATEFORMAT 'YYYY-MM-DD HH:MI:SS' " + (needsExplicitIds ? "EXPLICIT_IDS" : "") + 
-                        (isNotBlank(appendToCopyCommand) ? (" " + appendToCopyCommand) : "");
-                Statement stmt = c.createStatement();
-
-                log.debug(sql);
-                stmt.execute(sql);
-                stmt.close();
+                copyFromS3(stagedInputFile, getTargetTable().getFullyQualifiedTableName(),
+                        Table.getCommaDeliminatedColumns(table.getColumns()), needsExplicitIds);
                 transaction.commit();
-            } catch (SQLException ex) {
-                throw platform.getSqlTemplate().translate(ex);
             } finally {
                 statistics.get(batch).stopTimer(DataWriterStatisticConstants.DATABASEMILLIS);
             }
 
             stagedInputFile.delete();
+            createStagingFile();
+            loadedRows = 0;
+            loadedBytes = 0;
+        }
+    }
+
+    /**
+     * Uploads the file to S3 and copies it into the table.
+     */
+    protected void copyFromS3(IStagedResource file, String tableName, String columnNames, boolean explicitIds) {
+        AmazonS3 s3client = new AmazonS3Client(new BasicAWSCredentials(accessKey, secretKey));
+        if (isNotBlank(s3Endpoint)) {
+            s3client.setEndpoint(s3Endpoint);
+        }
+        String objectKey = file.getFile().getName();
+        try {
+            s3client.putObject(bucket, objectKey, file.getFile());
+        } catch (AmazonServiceException ase) {
+            log.error("Exception from AWS service: " + ase.getMessage());
+        } catch (AmazonClientException ace) {
+            log.error("Exception from AWS client: " + ace.getMessage());
+        }
+
+        try {
+            JdbcSqlTransaction jdbcTransaction = (JdbcSqlTransaction) transaction;
+            Connection c = jdbcTransaction.getConnection();
+            String sql = "COPY " + tableName + " (" + columnNames + ") FROM 's3://" + bucket + "/" + objectKey + 
+                    "' CREDENTIALS 'aws_access_key_id=" + accessKey + ";aws_secret_access_key=" + secretKey + 
+                    "' CSV DATEFORMAT 'YYYY-MM-DD HH:MI:SS' " + (explicitIds ? "EXPLICIT_IDS" : "") + 
+                    (isNotBlank(appendToCopyCommand) ? (" " + appendToCopyCommand) : "");
+            Statement stmt = c.createStatement();
+
+            log.debug(sql);
+            stmt.execute(sql);
+            stmt.close();
+        } catch (SQLException ex) {
+            throw platform.getSqlTemplate().translate(ex);
+        } finally {
             try {
                 s3client.deleteObject(bucket, objectKey);
             } catch (AmazonServiceException ase) {
@@ -203,11 +220,37 @@ public class RedshiftBulkDatabaseWriter extends DefaultDatabaseWriter {
             } catch (AmazonClientException ace) {
                 log.error("Exception from AWS client: " + ace.getMessage());
             }
+        }
+    }
 
-            createStagingFile();
-            loadedRows = 0;
-            loadedBytes = 0;
+    @Override
+    protected void stageRows(String stageTableName, Column[] columns, List<String[]> rows) {
+        IStagedResource stageFile = stagingManager.create(0, "bulkloaddir", stageTableName + getBatch().getBatchId()
+                + ".csv");
+        try {
+            for (String[] row : rows) {
+                stageFile.getWriter().write(CsvUtils.escapeCsvData(row, '\n', '"', CsvWriter.ESCAPE_MODE_DOUBLED, "\\N"));
+            }
+            stageFile.close();
+            copyFromS3(stageFile, quote(stageTableName), Table.getCommaDeliminatedColumns(columns), false);
+        } catch (IOException ex) {
+            throw new IoException(ex);
+        } finally {
+            stageFile.close();
+            stageFile.delete();
+        }
+    }
+
+    @Override
+    protected String getBulkUpdateSql(String stageTableName, Column[] pkColumns, Column[] updateColumns) {
+        StringBuilder sql = new StringBuilder("update ").append(getTargetTableName()).append(" set ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(quote(updateColumns[i].getName())).append("=s.")
+                    .append(quote(updateColumns[i].getName()));
         }
+        sql.append(" from ").append(quote(stageTableName)).append(" s where ")
+                .append(getStageJoinSql(pkColumns, quote(targetTable.getName()) + "."));
+        return sql.toString();
     }
 
     protected void createStagingFile() {
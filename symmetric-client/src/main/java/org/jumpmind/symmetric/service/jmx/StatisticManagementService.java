@@ -0,0 +1,160 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.service.jmx;
+
+import java.util.Map;
+
+import org.jumpmind.extension.IBuiltInExtensionPoint;
+import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.ext.ISymmetricEngineAware;
+import org.jumpmind.symmetric.service.IClusterService;
+import org.jumpmind.symmetric.statistic.ChannelStats;
+import org.jumpmind.symmetric.statistic.IStatisticManager;
+import org.jumpmind.symmetric.statistic.LatencyHistogram;
+import org.jumpmind.symmetric.statistic.LockWaitStats;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+@ManagedResource(description = "The management interface for live statistics")
+public class StatisticManagementService implements IBuiltInExtensionPoint, ISymmetricEngineAware {
+
+    private IStatisticManager statisticManager;
+
+    private IClusterService clusterService;
+
+    public StatisticManagementService() {
+    }
+
+    public void setSymmetricEngine(ISymmetricEngine engine) {
+        this.statisticManager = engine.getStatisticManager();
+        this.clusterService = engine.getClusterService();
+    }
+
+    @ManagedAttribute(description = "The number of rows routed since the engine started")
+    public long getDataRouted() {
+        return getTotal().getDataRouted();
+    }
+
+    @ManagedAttribute(description = "The number of rows left to route as of the last routing run")
+    public long getDataUnRouted() {
+        return getTotal().getDataUnRouted();
+    }
+
+    @ManagedAttribute(description = "The number of rows extracted since the engine started")
+    public long getDataExtracted() {
+        return getTotal().getDataExtracted();
+    }
+
+    @ManagedAttribute(description = "The number of extract errors since the engine started")
+    public long getDataExtractedErrors() {
+        return getTotal().getDataExtractedErrors();
+    }
+
+    @ManagedAttribute(description = "The number of rows sent since the engine started")
+    public long getDataSent() {
+        return getTotal().getDataSent();
+    }
+
+    @ManagedAttribute(description = "The number of bytes sent since the engine started")
+    public long getDataBytesSent() {
+        return getTotal().getDataBytesSent();
+    }
+
+    @ManagedAttribute(description = "The number of send errors since the engine started")
+    public long getDataSentErrors() {
+        return getTotal().getDataSentErrors();
+    }
+
+    @ManagedAttribute(description = "The number of rows loaded since the engine started")
+    public long getDataLoaded() {
+        return getTotal().getDataLoaded();
+    }
+
+    @ManagedAttribute(description = "The number of bytes loaded since the engine started")
+    public long getDataBytesLoaded() {
+        return getTotal().getDataBytesLoaded();
+    }
+
+    @ManagedAttribute(description = "The number of load errors since the engine started")
+    public long getDataLoadedErrors() {
+        return getTotal().getDataLoadedErrors();
+    }
+
+    @ManagedAttribute(description = "The statistics for each channel since the engine started")
+    public String getChannelStatsList() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("<pre>");
+        buffer.append(String.format("%-20s %12s %12s %12s %12s %12s %12s\n", "Channel", "Routed",
+                "Unrouted", "Extracted", "Sent", "Loaded", "Errors"));
+        for (ChannelStats stats : statisticManager.getTotalChannelStats().values()) {
+            buffer.append(String.format("%-20s %12d %12d %12d %12d %12d %12d\n",
+                    stats.getChannelId(), stats.getDataRouted(), stats.getDataUnRouted(),
+                    stats.getDataExtracted(), stats.getDataSent(), stats.getDataLoaded(),
+                    stats.getDataExtractedErrors() + stats.getDataSentErrors()
+                            + stats.getDataLoadedErrors()));
+        }
+        buffer.append("</pre>");
+        return buffer.toString();
+    }
+
+    @ManagedAttribute(description = "The latency in milliseconds of route, extract, send, network and load by channel and node")
+    public String getLatencyList() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("<pre>");
+        buffer.append(String.format("%-10s %-20s %-20s %10s %10s %10s %10s %10s\n", "Operation",
+                "Channel", "Node", "Count", "Average", "95%", "99%", "Max"));
+        for (LatencyHistogram histogram : statisticManager.getLatencyHistograms()) {
+            buffer.append(String.format("%-10s %-20s %-20s %10d %10d %10d %10d %10d\n",
+                    histogram.getName(), histogram.getChannelId() != null ? histogram
+                            .getChannelId() : "", histogram.getNodeId() != null ? histogram
+                            .getNodeId() : "", histogram.getCount(), histogram.getAverage(),
+                    histogram.getPercentile(95), histogram.getPercentile(99), histogram
+                            .getMax()));
+        }
+        buffer.append("</pre>");
+        return buffer.toString();
+    }
+
+    @ManagedAttribute(description = "The waits for shared and exclusive locks by action")
+    public String getLockWaitList() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("<pre>");
+        buffer.append(String.format("%-20s %10s %10s %10s %10s %10s\n", "Action", "Acquired",
+                "Timeouts", "Retries", "Average", "Max"));
+        for (LockWaitStats stats : clusterService.getLockWaitStats().values()) {
+            buffer.append(String.format("%-20s %10d %10d %10d %10d %10d\n", stats.getAction(),
+                    stats.getAcquiredCount(), stats.getTimedOutCount(), stats.getRetryCount(),
+                    stats.getAverageWaitMillis(), stats.getMaxWaitMillis()));
+        }
+        buffer.append("</pre>");
+        return buffer.toString();
+    }
+
+    protected ChannelStats getTotal() {
+        ChannelStats total = new ChannelStats();
+        Map<String, ChannelStats> channelStats = statisticManager.getTotalChannelStats();
+        for (ChannelStats stats : channelStats.values()) {
+            total.add(stats);
+        }
+        return total;
+    }
+
+}
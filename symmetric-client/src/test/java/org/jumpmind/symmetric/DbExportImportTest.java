@@ -22,14 +22,20 @@ package org.jumpmind.symmetric;
 
 import java.io.File;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.db.model.Column;
 import org.jumpmind.db.model.Database;
+import org.jumpmind.db.model.ForeignKey;
+import org.jumpmind.db.model.Reference;
 import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.DatabaseNamesConstants;
 import org.jumpmind.db.platform.IDatabasePlatform;
@@ -413,6 +419,75 @@ public class DbExportImportTest extends AbstractServiceTest {
 
     }
 
+    @Test
+    public void testFillInParallel() throws Exception {
+        ISymmetricEngine engine = getSymmetricEngine();
+        IDatabasePlatform platform = engine.getSymmetricDialect().getPlatform();
+        Database testTables = platform.readDatabaseFromXml("/test-dbimport.xml", true);
+        Table table = testTables.findTable("test_db_import_1", false);
+
+        recreateImportTable();
+
+        DbFill fill = new DbFill(platform);
+        fill.setRecordCount(25);
+        fill.setRepeat(2);
+        fill.setMaxRowsCommit(10);
+        fill.setThreadCount(3);
+        fill.fillTables(table.getName());
+
+        assertCountDbImportTableRecords(50);
+
+        fill.setDmlWeight(new int[] { 0, 1, 0 });
+        fill.fillTables(table.getName());
+
+        assertCountDbImportTableRecords(50);
+    }
+
+    @Test
+    public void testFillInParallelDoesNotDeleteReferencedRows() throws Exception {
+        IDatabasePlatform platform = getSymmetricEngine().getDatabasePlatform();
+        Table parent = new Table("test_fill_parent");
+        parent.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        parent.addColumn(new Column("name", false, Types.VARCHAR, 50, 0));
+        Table child = new Table("test_fill_child");
+        child.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        child.addColumn(new Column("parent_id", false, Types.INTEGER, -1, -1));
+        ForeignKey foreignKey = new ForeignKey("test_fill_child_fk");
+        foreignKey.setForeignTable(parent);
+        foreignKey.addReference(new Reference(child.getColumnWithName("parent_id"), parent
+                .getColumnWithName("id")));
+        child.addForeignKey(foreignKey);
+        platform.alterCaseToMatchDatabaseDefaultCase(parent);
+        platform.alterCaseToMatchDatabaseDefaultCase(child);
+        platform.dropTables(true, child, parent);
+        platform.createTables(false, false, parent, child);
+        platform.resetCachedTableModel();
+
+        DbFill fill = new DbFill(platform);
+        fill.setRecordCount(20);
+        fill.setRepeat(1);
+        fill.setMaxRowsCommit(5);
+        fill.setThreadCount(3);
+        fill.fillTables(parent.getName(), child.getName());
+
+        ISqlTemplate sqlTemplate = platform.getSqlTemplate();
+        String quote = platform.getDatabaseInfo().getDelimiterToken();
+        String parentName = quote + parent.getName() + quote;
+        String childName = quote + child.getName() + quote;
+        Assert.assertEquals(20, sqlTemplate.queryForInt("select count(*) from " + parentName));
+        Assert.assertEquals(20, sqlTemplate.queryForInt("select count(*) from " + childName));
+
+        fill.setRecordCount(5);
+        fill.setDmlWeight(new int[] { 0, 0, 1 });
+        fill.fillTables(parent.getName(), child.getName());
+
+        Assert.assertEquals(20, sqlTemplate.queryForInt("select count(*) from " + parentName));
+        Assert.assertEquals(15, sqlTemplate.queryForInt("select count(*) from " + childName));
+
+        platform.dropTables(false, child, parent);
+        platform.resetCachedTableModel();
+    }
+
     @Test
     public void testExportCsvToDirectory() throws Exception {
         ISymmetricEngine engine = getSymmetricEngine();
@@ -465,6 +540,219 @@ public class DbExportImportTest extends AbstractServiceTest {
 
     }
 
+    @Test
+    public void testExportCsvToDirectoryInParallel() throws Exception {
+        ISymmetricEngine engine = getSymmetricEngine();
+        IDatabasePlatform platform = engine.getSymmetricDialect().getPlatform();
+
+        DbImport importXml = new DbImport(platform);
+        importXml.setFormat(DbImport.Format.XML);
+        importXml.setDropIfExists(true);
+        importXml.importTables(getClass().getResourceAsStream("/test-dbexportimport-3-tables.xml"));
+
+        File dir = new File("target/test-parallel");
+        FileUtils.deleteDirectory(dir);
+
+        DbExport exportCsv = new DbExport(platform);
+        exportCsv.setFormat(Format.CSV);
+        exportCsv.setDir(dir.getAbsolutePath());
+        exportCsv.setThreadCount(3);
+        exportCsv.setRowsPerFile(1);
+        exportCsv.exportTables(new String[] { "a", "b", "c" });
+
+        String b = platform.getTableFromCache("b", false).getName();
+        List<String> rows = new ArrayList<String>();
+        File[] files = dir.listFiles();
+        Assert.assertEquals(7, files.length);
+        for (File file : files) {
+            if (file.getName().startsWith(b + ".")) {
+                List<String> lines = FileUtils.readLines(file);
+                Assert.assertEquals("\"id\",\"string_value\"", lines.get(0));
+                rows.addAll(lines.subList(1, lines.size()));
+            }
+        }
+        Collections.sort(rows);
+        Assert.assertEquals(3, rows.size());
+        Assert.assertEquals("\"1\",\"This is a test of b\"", rows.get(0));
+        Assert.assertEquals("\"2\",\"This is a test of b\"", rows.get(1));
+        Assert.assertEquals("\"3\",\"This is line 3 of b\"", rows.get(2));
+
+        ISqlTemplate sqlTemplate = platform.getSqlTemplate();
+        String quote = platform.getDatabaseInfo().getDelimiterToken();
+        String[] tableNames = new String[3];
+        String[] names = { "a", "b", "c" };
+        for (int i = 0; i < names.length; i++) {
+            tableNames[i] = quote + platform.getTableFromCache(names[i], false).getName() + quote;
+        }
+        for (int i = tableNames.length - 1; i >= 0; i--) {
+            sqlTemplate.update("delete from " + tableNames[i]);
+        }
+
+        DbImport importCsv = new DbImport(platform);
+        importCsv.setFormat(DbImport.Format.CSV);
+        importCsv.setThreadCount(3);
+        importCsv.setUseBatching(true);
+        importCsv.importTables(files);
+
+        Assert.assertEquals(2, sqlTemplate.queryForInt("select count(*) from " + tableNames[0]));
+        Assert.assertEquals(3, sqlTemplate.queryForInt("select count(*) from " + tableNames[1]));
+        Assert.assertEquals(2, sqlTemplate.queryForInt("select count(*) from " + tableNames[2]));
+    }
+
+    @Test
+    public void testExportInPartsWithWideKeyRange() throws Exception {
+        IDatabasePlatform platform = getSymmetricEngine().getDatabasePlatform();
+        Table table = new Table("test_export_wide_keys");
+        table.addColumn(new Column("id", true, Types.BIGINT, -1, -1));
+        platform.alterCaseToMatchDatabaseDefaultCase(table);
+        platform.createTables(true, false, table);
+        ISqlTemplate sqlTemplate = platform.getSqlTemplate();
+        String quote = platform.getDatabaseInfo().getDelimiterToken();
+        String tableName = quote + table.getName() + quote;
+        sqlTemplate.update("delete from " + tableName);
+        long[] ids = { Long.MIN_VALUE + 1, 0, Long.MAX_VALUE - 1 };
+        for (long id : ids) {
+            sqlTemplate.update("insert into " + tableName + " values(?)", id);
+        }
+
+        File dir = new File("target/test-wide-keys");
+        FileUtils.deleteDirectory(dir);
+        DbExport export = new DbExport(platform);
+        export.setFormat(Format.CSV);
+        export.setDir(dir.getAbsolutePath());
+        export.setThreadCount(2);
+        export.setRowsPerFile(1);
+        export.exportTables(new String[] { table.getName() });
+
+        List<String> rows = new ArrayList<String>();
+        File[] files = dir.listFiles();
+        Assert.assertTrue(files.length > 1);
+        for (File file : files) {
+            List<String> lines = FileUtils.readLines(file);
+            rows.addAll(lines.subList(1, lines.size()));
+        }
+        Collections.sort(rows);
+        Assert.assertEquals(3, rows.size());
+        Assert.assertEquals("\"-9223372036854775807\"", rows.get(0));
+        Assert.assertEquals("\"0\"", rows.get(1));
+        Assert.assertEquals("\"9223372036854775806\"", rows.get(2));
+    }
+
+    @Test
+    public void testImportSqlDirectoryIntoEmptySchema() throws Exception {
+        importDirectoryIntoEmptySchema(Format.SQL, DbImport.Format.SQL);
+    }
+
+    @Test
+    public void testImportXmlDirectoryIntoEmptySchema() throws Exception {
+        importDirectoryIntoEmptySchema(Format.XML, DbImport.Format.XML);
+    }
+
+    /**
+     * Exports a parent and a child table in parts, drops both tables and
+     * imports the files, which only works if the parent table is created
+     * before the child and each table is created before its parts are loaded
+     */
+    protected void importDirectoryIntoEmptySchema(Format exportFormat, DbImport.Format importFormat)
+            throws Exception {
+        IDatabasePlatform platform = getSymmetricEngine().getDatabasePlatform();
+        Table parent = new Table("test_import_parent");
+        parent.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        parent.addColumn(new Column("name", false, Types.VARCHAR, 50, 0));
+        Table child = new Table("test_import_child");
+        child.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        child.addColumn(new Column("parent_id", false, Types.INTEGER, -1, -1));
+        ForeignKey foreignKey = new ForeignKey("test_import_child_fk");
+        foreignKey.setForeignTable(parent);
+        foreignKey.addReference(new Reference(child.getColumnWithName("parent_id"), parent
+                .getColumnWithName("id")));
+        child.addForeignKey(foreignKey);
+        platform.alterCaseToMatchDatabaseDefaultCase(parent);
+        platform.alterCaseToMatchDatabaseDefaultCase(child);
+        platform.dropTables(true, child, parent);
+        platform.createTables(false, false, parent, child);
+
+        ISqlTemplate sqlTemplate = platform.getSqlTemplate();
+        String quote = platform.getDatabaseInfo().getDelimiterToken();
+        String parentName = quote + parent.getName() + quote;
+        String childName = quote + child.getName() + quote;
+        for (int i = 1; i <= 4; i++) {
+            sqlTemplate.update("insert into " + parentName + " values(?, ?)", i, "parent " + i);
+            sqlTemplate.update("insert into " + childName + " values(?, ?)", i, i);
+        }
+
+        File dir = new File("target/test-import-" + exportFormat.toString().toLowerCase());
+        FileUtils.deleteDirectory(dir);
+        DbExport export = new DbExport(platform);
+        export.setFormat(exportFormat);
+        export.setDir(dir.getAbsolutePath());
+        export.setThreadCount(2);
+        export.setRowsPerFile(1);
+        export.exportTables(new String[] { child.getName(), parent.getName() });
+        File[] files = dir.listFiles();
+        Assert.assertTrue(files.length > 2);
+
+        platform.dropTables(false, child, parent);
+        platform.resetCachedTableModel();
+
+        DbImport importer = new DbImport(platform);
+        importer.setFormat(importFormat);
+        importer.setThreadCount(3);
+        importer.importTables(files);
+
+        Assert.assertEquals(4, sqlTemplate.queryForInt("select count(*) from " + parentName));
+        Assert.assertEquals(4, sqlTemplate.queryForInt("select count(*) from " + childName));
+        Table importedChild = platform.readTableFromDatabase(null, null, child.getName());
+        Assert.assertEquals(1, importedChild.getForeignKeyCount());
+        platform.dropTables(false, child, parent);
+    }
+
+    @Test
+    public void testExportInParallelSortsByForeignKey() throws Exception {
+        IDatabasePlatform platform = getSymmetricEngine().getDatabasePlatform();
+        Table parent = new Table("test_export_parent");
+        parent.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        Table child = new Table("test_export_child");
+        child.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        child.addColumn(new Column("parent_id", false, Types.INTEGER, -1, -1));
+        ForeignKey foreignKey = new ForeignKey("test_export_child_fk");
+        foreignKey.setForeignTable(parent);
+        foreignKey.addReference(new Reference(child.getColumnWithName("parent_id"), parent
+                .getColumnWithName("id")));
+        child.addForeignKey(foreignKey);
+        platform.alterCaseToMatchDatabaseDefaultCase(parent);
+        platform.alterCaseToMatchDatabaseDefaultCase(child);
+        platform.createTables(true, false, parent, child);
+
+        /* name the child first, so only the sort can put the parent first */
+        ParallelDbExport export = new ParallelDbExport(platform);
+        Table[] tables = export.readTablesInParallel(child.getName(), parent.getName());
+        Assert.assertEquals(2, tables.length);
+        Assert.assertEquals(parent.getName(), tables[0].getName());
+        Assert.assertEquals(child.getName(), tables[1].getName());
+        Assert.assertEquals(1, tables[1].getForeignKeyCount());
+    }
+
+    static class ParallelDbExport extends DbExport {
+
+        public ParallelDbExport(IDatabasePlatform platform) {
+            super(platform);
+        }
+
+        public Table[] readTablesInParallel(String... tableNames) {
+            Table[] tables = new Table[tableNames.length];
+            for (int i = 0; i < tableNames.length; i++) {
+                tables[i] = new Table(tableNames[i]);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                return readTablesInParallel(tables, executor);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
     protected void compareRows(Table table, List<Row> one, List<Row> two) {
         if (one.size() != two.size()) {
             Assert.fail("First list had " + one.size() + " and second list had " + two.size());
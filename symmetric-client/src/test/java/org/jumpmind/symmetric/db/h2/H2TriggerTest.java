@@ -0,0 +1,151 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.db.h2;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jumpmind.db.platform.DatabaseNamesConstants;
+import org.jumpmind.db.sql.ISqlTemplate;
+import org.jumpmind.db.sql.Row;
+import org.jumpmind.symmetric.TestConstants;
+import org.jumpmind.symmetric.model.Router;
+import org.jumpmind.symmetric.model.Trigger;
+import org.jumpmind.symmetric.model.TriggerRouter;
+import org.jumpmind.symmetric.service.impl.AbstractServiceTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class H2TriggerTest extends AbstractServiceTest {
+
+    static final String TABLE = "TEST_H2_TRIGGER_TYPES";
+
+    static final String CREATE_TABLE = "create table " + TABLE
+            + " (id integer not null primary key, string_value varchar(50), decimal_value decimal(10,2),"
+            + " double_value double, bigint_value bigint, boolean_value boolean, date_value date,"
+            + " time_value timestamp, binary_value varbinary(20), blob_value blob, clob_value clob)";
+
+    static final String INSERT = "insert into " + TABLE + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String UPDATE = "update " + TABLE + " set string_value=?, decimal_value=?, double_value=?,"
+            + " bigint_value=?, boolean_value=?, date_value=?, time_value=?, binary_value=?, blob_value=?,"
+            + " clob_value=? where id=?";
+
+    static final int[] TYPES = new int[] { Types.INTEGER, Types.VARCHAR, Types.DECIMAL, Types.DOUBLE,
+            Types.BIGINT, Types.BOOLEAN, Types.DATE, Types.TIMESTAMP, Types.VARBINARY, Types.BLOB, Types.CLOB };
+
+    /**
+     * Captures data with the literal SQL path so it can be compared with the
+     * prepared statement path.
+     */
+    public static class LiteralH2Trigger extends H2Trigger {
+        @Override
+        protected boolean isUsePreparedStatements() {
+            return false;
+        }
+    }
+
+    @Test
+    public void testPreparedStatementsCaptureSameDataAsLiteralSql() throws Exception {
+        if (!DatabaseNamesConstants.H2.equals(getPlatform().getName())) {
+            return;
+        }
+
+        ISqlTemplate sqlTemplate = getSqlTemplate();
+        try {
+            sqlTemplate.update("drop table " + TABLE);
+        } catch (Exception e) {
+        }
+        sqlTemplate.update(CREATE_TABLE);
+
+        Trigger trigger = new Trigger(TABLE, TestConstants.TEST_CHANNEL_ID);
+        trigger.setTriggerId(TABLE);
+        Router router = getTriggerRouterService().getRouterById(TestConstants.ROUTER_ID_ROOT_2_TEST);
+        TriggerRouter trouter = new TriggerRouter(trigger, router);
+        getTriggerRouterService().saveTriggerRouter(trouter);
+        try {
+            getTriggerRouterService().syncTriggers();
+            Assert.assertEquals("Some triggers must have failed to build.", 0, getTriggerRouterService()
+                    .getFailedTriggers().size());
+
+            List<String> prepared = captureChanges();
+            assertEquals(prepared.size(), 6);
+
+            for (Row row : sqlTemplate.query(
+                    "select trigger_schema, trigger_name, trigger_type from information_schema.triggers where table_name=?",
+                    new Object[] { TABLE })) {
+                String name = "\"" + row.getString("TRIGGER_SCHEMA") + "\".\"" + row.getString("TRIGGER_NAME") + "\"";
+                sqlTemplate.update("drop trigger " + name);
+                sqlTemplate.update(String.format("create trigger %s after %s on %s for each row call \"%s\"", name,
+                        row.getString("TRIGGER_TYPE"), TABLE, LiteralH2Trigger.class.getName()));
+            }
+
+            List<String> literal = captureChanges();
+            assertEquals(prepared, literal);
+        } finally {
+            getTriggerRouterService().deleteTriggerRouter(trouter);
+            getTriggerRouterService().deleteTrigger(trigger);
+            sqlTemplate.update("drop table " + TABLE);
+            getTriggerRouterService().syncTriggers();
+        }
+    }
+
+    protected List<String> captureChanges() {
+        ISqlTemplate sqlTemplate = getSqlTemplate();
+        sqlTemplate.update("delete from sym_data where table_name=?", TABLE);
+
+        Timestamp time = Timestamp.valueOf("2016-03-04 05:06:07.8");
+        java.sql.Date date = java.sql.Date.valueOf("2016-03-04");
+        byte[] bytes = "it's \"binary\"".getBytes();
+        String quoted = "it's a \"quoted\" \\ value";
+
+        sqlTemplate.update(INSERT, new Object[] { 1, null, null, null, null, null, null, null, null, null, null },
+                TYPES);
+        sqlTemplate.update(INSERT, new Object[] { 2, quoted, 1.5, 2.25, 1234567890123l, true, date, time, bytes,
+                bytes, quoted }, TYPES);
+        sqlTemplate.update(UPDATE, new Object[] { "'", 10.01, -3.5, -1l, false, date, time, bytes, bytes, "\"",
+                1 }, shift(TYPES));
+        sqlTemplate.update(UPDATE, new Object[] { null, null, null, null, null, null, null, null, null, null, 2 },
+                shift(TYPES));
+        sqlTemplate.update("delete from " + TABLE + " where id=?", 1);
+        sqlTemplate.update("delete from " + TABLE + " where id=?", 2);
+
+        List<String> changes = new ArrayList<String>();
+        for (Row row : sqlTemplate.query(
+                "select event_type, pk_data, row_data, old_data from sym_data where table_name=? order by data_id",
+                new Object[] { TABLE })) {
+            changes.add(row.getString("EVENT_TYPE") + "|" + row.getString("PK_DATA", false) + "|"
+                    + row.getString("ROW_DATA", false) + "|" + row.getString("OLD_DATA", false));
+        }
+        sqlTemplate.update("delete from sym_data where table_name=?", TABLE);
+        return changes;
+    }
+
+    protected static int[] shift(int[] types) {
+        int[] shifted = Arrays.copyOfRange(types, 1, types.length + 1);
+        shifted[types.length - 1] = types[0];
+        return shifted;
+    }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.io.data.writer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.jumpmind.db.DbTestUtils;
+import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.platform.h2.H2DatabasePlatform;
+import org.jumpmind.db.util.BasicDataSourcePropertyConstants;
+import org.jumpmind.symmetric.io.AbstractBulkDatabaseWriter;
+import org.jumpmind.symmetric.io.data.CsvData;
+import org.jumpmind.symmetric.io.data.DataEventType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GenericBulkDatabaseWriterTest extends AbstractBulkDatabaseWriterTest {
+
+    protected int bulkStatementCount;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        if (DbTestUtils.getEnvironmentSpecificProperties(DbTestUtils.ROOT).get(BasicDataSourcePropertyConstants.DB_POOL_DRIVER)
+                .equals("org.h2.Driver")) {
+            platform = DbTestUtils.createDatabasePlatform(DbTestUtils.ROOT);
+            platform.createDatabase(platform.readDatabaseFromXml("/testBulkWriter.xml", true), true, false);
+        }
+    }
+
+    @Before
+    public void setupTest() {
+        setErrorExpected(false);
+        bulkStatementCount = 0;
+    }
+
+    protected boolean shouldTestRun(IDatabasePlatform platform) {
+        return platform != null && platform instanceof H2DatabasePlatform;
+    }
+
+    protected long writeData(List<CsvData> data) {
+        Table table = platform.getTableFromCache(getTestTable(), false);
+        AbstractBulkDatabaseWriter writer = new AbstractBulkDatabaseWriter(platform) {
+            {
+                maxRowsBeforeFlush = 10;
+            }
+
+            @Override
+            protected String getBulkUpdateSql(String stageTableName, Column[] pkColumns, Column[] updateColumns) {
+                bulkStatementCount++;
+                return super.getBulkUpdateSql(stageTableName, pkColumns, updateColumns);
+            }
+
+            @Override
+            protected String getBulkDeleteSql(String stageTableName, Column[] pkColumns) {
+                bulkStatementCount++;
+                return super.getBulkDeleteSql(stageTableName, pkColumns);
+            }
+        };
+        return writeData(writer, new TableCsvData(table, data));
+    }
+
+    protected String[] newValues(String id, String stringValue) {
+        return new String[] { id, stringValue, "string not null", "char", "char not null", "2007-01-02 00:00:00.000",
+                "2007-02-03 04:05:06.000", "0", "47", "67.89", "-0.0747663", encode("string") };
+    }
+
+    @Test
+    public void testUpdateAndDelete() {
+        if (shouldTestRun(platform)) {
+            List<String[]> rows = new ArrayList<String[]>();
+            List<CsvData> data = new ArrayList<CsvData>();
+            for (int i = 0; i < 25; i++) {
+                String[] values = newValues(getNextId(), "inserted");
+                rows.add(values);
+                data.add(new CsvData(DataEventType.INSERT, (String[]) ArrayUtils.clone(values)));
+            }
+            writeData(data);
+
+            data.clear();
+            for (int i = 0; i < 20; i++) {
+                rows.get(i)[1] = "updated";
+                data.add(new CsvData(DataEventType.UPDATE, (String[]) ArrayUtils.clone(rows.get(i))));
+            }
+            for (int i = 20; i < 25; i++) {
+                data.add(new CsvData(DataEventType.DELETE, new String[] { rows.get(i)[0] }, null));
+            }
+            Assert.assertEquals(25, writeData(data));
+            Assert.assertEquals(3, bulkStatementCount);
+
+            for (int i = 0; i < 20; i++) {
+                assertTestTableEquals(rows.get(i)[0], rows.get(i));
+            }
+            for (int i = 20; i < 25; i++) {
+                assertTestTableEquals(rows.get(i)[0], null);
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateMissingRow() {
+        if (shouldTestRun(platform)) {
+            String[] existing = newValues(getNextId(), "inserted");
+            insertAndVerify(existing);
+
+            List<CsvData> data = new ArrayList<CsvData>();
+            existing[1] = "updated";
+            data.add(new CsvData(DataEventType.UPDATE, (String[]) ArrayUtils.clone(existing)));
+            String[] missing = newValues(getNextId(), "updated");
+            data.add(new CsvData(DataEventType.UPDATE, (String[]) ArrayUtils.clone(missing)));
+            writeData(data);
+
+            assertTestTableEquals(existing[0], existing);
+            assertTestTableEquals(missing[0], missing);
+        }
+    }
+
+    @Test
+    public void testUpdateSameRowTwice() {
+        if (shouldTestRun(platform)) {
+            String[] values = newValues(getNextId(), "inserted");
+            insertAndVerify(values);
+
+            List<CsvData> data = new ArrayList<CsvData>();
+            values[1] = "first update";
+            data.add(new CsvData(DataEventType.UPDATE, (String[]) ArrayUtils.clone(values)));
+            values[1] = "second update";
+            data.add(new CsvData(DataEventType.UPDATE, (String[]) ArrayUtils.clone(values)));
+            writeData(data);
+
+            assertTestTableEquals(values[0], values);
+        }
+    }
+
+    @Test
+    public void testUpdatePrimaryKey() {
+        if (shouldTestRun(platform)) {
+            String[] values = newValues(getNextId(), "inserted");
+            insertAndVerify(values);
+
+            String oldId = values[0];
+            values[0] = getNextId();
+            List<CsvData> data = new ArrayList<CsvData>();
+            data.add(new CsvData(DataEventType.UPDATE, new String[] { oldId }, (String[]) ArrayUtils.clone(values)));
+            writeData(data);
+
+            Assert.assertEquals(0, bulkStatementCount);
+            assertTestTableEquals(oldId, null);
+            assertTestTableEquals(values[0], values);
+        }
+    }
+
+}
@@ -336,7 +336,7 @@ abstract public class AbstractSymmetricEngine implements ISymmetricEngine {
         this.registrationService = new RegistrationService(this);
         this.acknowledgeService = new AcknowledgeService(this);
         this.pushService = new PushService(parameterService, symmetricDialect,
-                dataExtractorService, acknowledgeService, transportManager, nodeService,
+                dataExtractorService, outgoingBatchService, acknowledgeService, transportManager, nodeService,
                 clusterService, nodeCommunicationService, statisticManager, configurationService, extensionService);
         this.pullService = new PullService(parameterService, symmetricDialect, 
                 nodeService, dataLoaderService, registrationService, clusterService, nodeCommunicationService, 
@@ -724,6 +724,9 @@ abstract public class AbstractSymmetricEngine implements ISymmetricEngine {
         if (nodeCommunicationService != null) {
         	nodeCommunicationService.stop();
         }
+        if (sequenceService != null) {
+            sequenceService.stop();
+        }
         
         if (statisticManager != null) {
             List<ProcessInfo> infos = statisticManager.getProcessInfos();
@@ -888,6 +891,7 @@ abstract public class AbstractSymmetricEngine implements ISymmetricEngine {
         getDataLoaderService().clearCache();
         getConfigurationService().clearCache();
         getNodeService().flushNodeAuthorizedCache();
+        getDataExtractorService().flushConfigurationExtractCache();
     }
 
     public void reOpenRegistration(String nodeId) {
@@ -82,6 +82,10 @@ final public class Constants {
     
     public static final String ALWAYS_TRUE_CONDITION = "1=1";    
     
+    public static final String INITIAL_LOAD_ROW_COUNT_METHOD_ESTIMATE = "estimate";
+    
+    public static final String INITIAL_LOAD_ROW_COUNT_METHOD_EXACT = "exact";
+    
     public static final String UNROUTED_NODE_ID = "-1";
     
     public static final long LONG_OPERATION_THRESHOLD = 30000;
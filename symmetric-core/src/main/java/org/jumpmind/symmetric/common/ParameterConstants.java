@@ -62,6 +62,9 @@ final public class ParameterConstants {
     public final static String PULL_THREAD_COUNT_PER_SERVER = "pull.thread.per.server.count";
     public final static String PULL_MINIMUM_PERIOD_MS = "pull.period.minimum.ms";
     public final static String PULL_LOCK_TIMEOUT_MS = "pull.lock.timeout.ms";
+    public final static String PULL_LONG_POLL_TIMEOUT_MS = "pull.long.poll.timeout.ms";
+    public final static String PULL_LONG_POLL_MAX_TIMEOUT_MS = "pull.long.poll.max.timeout.ms";
+    public final static String PULL_LONG_POLL_MAX_REQUESTS = "pull.long.poll.max.requests";
 
     public final static String PUSH_THREAD_COUNT_PER_SERVER = "push.thread.per.server.count";
     public final static String PUSH_MINIMUM_PERIOD_MS = "push.period.minimum.ms";
@@ -130,6 +133,9 @@ final public class ParameterConstants {
     public final static String INITIAL_LOAD_SCHEMA_DUMP_COMMAND = "initial.load.schema.dump.command";
     public final static String INITIAL_LOAD_SCHEMA_LOAD_COMMAND = "initial.load.schema.load.command";
     public final static String INITIAL_LOAD_EXTRACT_AND_SEND_WHEN_STAGED = "initial.load.extract.and.send.when.staged";
+    public final static String INITIAL_LOAD_EXTRACT_SHARE_ENABLED = "initial.load.extract.share.enabled";
+    public final static String INITIAL_LOAD_EXTRACT_SHARE_TIMEOUT_MS = "initial.load.extract.share.timeout.ms";
+    public final static String INITIAL_LOAD_ROW_COUNT_METHOD = "initial.load.row.count.method";
     
     public final static String CREATE_TABLE_WITHOUT_DEFAULTS = "create.table.without.defaults";
     public final static String CREATE_TABLE_WITHOUT_FOREIGN_KEYS = "create.table.without.foreign.keys";
@@ -138,6 +144,9 @@ final public class ParameterConstants {
     public final static String STREAM_TO_FILE_ENABLED = "stream.to.file.enabled";
     public final static String STREAM_TO_FILE_THRESHOLD = "stream.to.file.threshold.bytes";
     public final static String STREAM_TO_FILE_TIME_TO_LIVE_MS = "stream.to.file.ttl.ms";
+    
+    public final static String EXTRACT_SHARE_IDENTICAL_BATCHES_ENABLED = "extract.share.identical.batches.enabled";
+    public final static String EXTRACT_SHARE_IDENTICAL_BATCHES_TIMEOUT_MS = "extract.share.identical.batches.timeout.ms";
 
     public final static String PARAMETER_REFRESH_PERIOD_IN_MS = "parameter.reload.timeout.ms";
 
@@ -163,11 +172,14 @@ final public class ParameterConstants {
     public final static String ROUTING_DETECT_INVALID_GAPS = "routing.detect.invalid.gaps";
     public final static String ROUTING_QUERY_CHANNELS_FIRST = "routing.query.channels.first";
     public final static String ROUTING_MAX_GAP_CHANGES = "routing.max.gap.changes";
+    public final static String ROUTING_SUBSELECT_CACHE_ENABLED = "routing.subselect.cache.enabled";
+    public final static String ROUTING_SUBSELECT_SET_SIZE = "routing.subselect.set.size";
 
     public final static String INCOMING_BATCH_SKIP_DUPLICATE_BATCHES_ENABLED = "incoming.batches.skip.duplicates";
     @Deprecated
     public final static String INCOMING_BATCH_DELETE_ON_LOAD = "incoming.batch.delete.on.load";
     public final static String INCOMING_BATCH_RECORD_OK_ENABLED = "incoming.batches.record.ok.enabled";
+    public final static String INCOMING_BATCH_RECORD_OK_FLUSH_SIZE = "incoming.batches.record.ok.flush.size";
     public final static String DATA_LOADER_ENABLED = "dataloader.enable";
     public final static String DATA_LOADER_APPLY_CHANGES_ONLY = "dataloader.apply.changes.only";
     public final static String DATA_LOADER_IGNORE_MISSING_TABLES = "dataloader.ignore.missing.tables";
@@ -188,6 +200,7 @@ final public class ParameterConstants {
     public final static String DATA_EXTRACTOR_ENABLED = "dataextractor.enable";
     public final static String DATA_EXTRACTOR_TEXT_COLUMN_EXPRESSION = "dataextractor.text.column.expression";
     public final static String OUTGOING_BATCH_MAX_BATCHES_TO_SELECT = "outgoing.batches.max.to.select";
+    public final static String OUTGOING_BATCH_IDLE_RECONCILE_PERIOD_MS = "outgoing.batches.idle.reconcile.period.ms";
 
     public final static String DBDIALECT_ORACLE_USE_TRANSACTION_VIEW = "oracle.use.transaction.view";
     public final static String DBDIALECT_ORACLE_TEMPLATE_NUMBER_SPEC = "oracle.template.precision";
@@ -201,10 +214,15 @@ final public class ParameterConstants {
     public final static String TRANSPORT_HTTP_TIMEOUT = "http.timeout.ms";
     public final static String TRANSPORT_HTTP_PUSH_STREAM_ENABLED = "http.push.stream.output.enabled";
     public final static String TRANSPORT_HTTP_PUSH_STREAM_SIZE = "http.push.stream.output.size";
+    public final static String TRANSPORT_HTTP_KEEP_ALIVE_ENABLED = "http.keep.alive.enabled";
+    public final static String TRANSPORT_HTTP_MAX_CONNECTIONS_PER_NODE = "http.max.connections.per.node";
     public final static String TRANSPORT_HTTP_USE_COMPRESSION_CLIENT = "http.compression";
     public final static String TRANSPORT_HTTP_COMPRESSION_DISABLED_SERVLET = "web.compression.disabled";
     public final static String TRANSPORT_HTTP_COMPRESSION_LEVEL = "compression.level";
     public final static String TRANSPORT_HTTP_COMPRESSION_STRATEGY = "compression.strategy";
+    public final static String TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_ENABLED = "http.compression.adaptive.enabled";
+    public final static String TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_FAST_KBPS = "http.compression.adaptive.fast.kbps";
+    public final static String TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_SLOW_KBPS = "http.compression.adaptive.slow.kbps";
     public final static String TRANSPORT_HTTP_BASIC_AUTH_USERNAME = "http.basic.auth.username";
     public final static String TRANSPORT_HTTP_BASIC_AUTH_PASSWORD = "http.basic.auth.password";
     public final static String TRANSPORT_TYPE = "transport.type";
@@ -222,6 +240,7 @@ final public class ParameterConstants {
     public final static String CACHE_TIMEOUT_TABLES_IN_MS = "cache.table.time.ms";
     public final static String CACHE_TIMEOUT_MONITOR_IN_MS = "cache.monitor.time.ms";
     public final static String CACHE_TIMEOUT_NOTIFICATION_IN_MS = "cache.notification.time.ms";
+    public final static String CACHE_TIMEOUT_CONFIGURATION_EXTRACT_IN_MS = "cache.configuration.extract.time.ms";
     public final static String CACHE_CHANNEL_COMMON_BATCHES_IN_MS = "cache.channel.common.batches.time.ms";
     public final static String CACHE_CHANNEL_DEFAULT_ROUTER_IN_MS = "cache.channel.default.router.time.ms";
 
@@ -248,6 +267,7 @@ final public class ParameterConstants {
     public final static String CLUSTER_LOCK_TIMEOUT_MS = "cluster.lock.timeout.ms";
     public final static String LOCK_TIMEOUT_MS = "lock.timeout.ms";
     public final static String LOCK_WAIT_RETRY_MILLIS = "lock.wait.retry.ms";
+    public final static String LOCK_WAIT_RETRY_MIN_MILLIS = "lock.wait.retry.min.ms";
 
     public final static String PURGE_LOG_SUMMARY_MINUTES = "purge.log.summary.retention.minutes";
     public final static String PURGE_RETENTION_MINUTES = "purge.retention.minutes";
@@ -264,6 +284,14 @@ final public class ParameterConstants {
 
     public final static String WEB_BATCH_URI_HANDLER_ENABLE = "web.batch.servlet.enable";
 
+    public final static String WEB_METRICS_URI_HANDLER_ENABLE = "web.metrics.servlet.enable";
+
+    public final static String WEB_ASYNC_ENABLED = "web.async.enabled";
+    public final static String WEB_ASYNC_LOAD_THREAD_COUNT = "web.async.load.threads";
+    public final static String WEB_ASYNC_EXTRACT_THREAD_COUNT = "web.async.extract.threads";
+    public final static String WEB_ASYNC_QUEUE_SIZE = "web.async.queue.size";
+    public final static String WEB_ASYNC_TIMEOUT_MS = "web.async.timeout.ms";
+
     public final static String NODE_COPY_MODE_ENABLED = "node.copy.mode.enabled";
 
     public final static String NODE_OFFLINE = "node.offline";
@@ -291,6 +319,12 @@ final public class ParameterConstants {
 
     public final static String SEQUENCE_TIMEOUT_MS = "sequence.timeout.ms";
 
+    public final static String SEQUENCE_CACHE_MAX_SIZE = "sequence.cache.max.size";
+
+    public final static String SEQUENCE_CACHE_TARGET_MS = "sequence.cache.target.ms";
+
+    public final static String SEQUENCE_PREFETCH_ENABLED = "sequence.prefetch.enabled";
+
     public final static String REST_API_ENABLED = "rest.api.enable";
 
     public final static String REST_HEARTBEAT_ON_PULL = "rest.api.heartbeat.on.pull";
@@ -354,6 +388,8 @@ final public class ParameterConstants {
     
     public final static String MONITOR_EVENTS_CAPTURE_ENABLED = "monitor.events.capture.enabled";
     
+    public final static String MONITOR_RECONCILE_PERIOD_MS = "monitor.reconcile.period.ms";
+    
     public final static String HYBRID_PUSH_PULL_ENABLED = "hybrid.push.pull.enabled";
     
     public final static String HYBRID_PUSH_PULL_TIMEOUT = "hybrid.push.pull.timeout.ms";
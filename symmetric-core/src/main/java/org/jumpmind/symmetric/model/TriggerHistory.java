@@ -23,12 +23,14 @@ package org.jumpmind.symmetric.model;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.util.Date;
+import java.util.Map;
 
 import org.jumpmind.db.model.Table;
 import org.jumpmind.symmetric.SymmetricException;
 import org.jumpmind.symmetric.csv.CsvReader;
 import org.jumpmind.symmetric.db.AbstractTriggerTemplate;
 import org.jumpmind.symmetric.io.data.DataEventType;
+import org.jumpmind.util.LinkedCaseInsensitiveMap;
 
 /**
  * Maps to the table sync audit table which tracks the history of sync trigger
@@ -59,6 +61,8 @@ public class TriggerHistory implements Serializable {
 
     private String[] parsedColumnNames;
 
+    private Map<String, Integer> parsedColumnIndexes;
+
     private String pkColumnNames;
 
     private String[] parsedPkColumnNames;
@@ -177,6 +181,25 @@ public class TriggerHistory implements Serializable {
         return -1;
     }
 
+    /**
+     * @return a case insensitive map of the column names to their position in
+     *         the captured row data
+     */
+    public Map<String, Integer> getParsedColumnIndexes() {
+        if (parsedColumnIndexes == null) {
+            String[] columnNames = getParsedColumnNames();
+            Map<String, Integer> indexes = new LinkedCaseInsensitiveMap<Integer>(
+                    columnNames != null ? columnNames.length : 0);
+            if (columnNames != null) {
+                for (int i = 0; i < columnNames.length; i++) {
+                    indexes.put(columnNames[i], i);
+                }
+            }
+            parsedColumnIndexes = indexes;
+        }
+        return parsedColumnIndexes;
+    }
+
     public String[] getParsedPkColumnNames() {
         if (parsedPkColumnNames == null && pkColumnNames != null) {
             parsedPkColumnNames = parseColumnNames(pkColumnNames);
@@ -210,6 +233,8 @@ public class TriggerHistory implements Serializable {
 
     public void setColumnNames(String allColumnData) {
         this.columnNames = allColumnData;
+        this.parsedColumnNames = null;
+        this.parsedColumnIndexes = null;
     }
 
     public Date getCreateTime() {
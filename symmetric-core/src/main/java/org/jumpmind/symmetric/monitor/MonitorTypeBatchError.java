@@ -20,15 +20,13 @@
  */
 package org.jumpmind.symmetric.monitor;
 
+import java.util.Date;
 import java.util.List;
 
 import org.jumpmind.extension.IBuiltInExtensionPoint;
 import org.jumpmind.symmetric.ISymmetricEngine;
 import org.jumpmind.symmetric.ext.ISymmetricEngineAware;
-import org.jumpmind.symmetric.model.IncomingBatch;
 import org.jumpmind.symmetric.model.Monitor;
-import org.jumpmind.symmetric.model.OutgoingBatch;
-import org.jumpmind.symmetric.model.OutgoingBatches;
 import org.jumpmind.symmetric.service.IIncomingBatchService;
 import org.jumpmind.symmetric.service.IOutgoingBatchService;
 
@@ -45,25 +43,24 @@ public class MonitorTypeBatchError implements IMonitorType, ISymmetricEngineAwar
     
     @Override
     public long check(Monitor monitor) {
-        int outgoingErrorCount = 0;
-        OutgoingBatches outgoingBatches = outgoingBatchService.getOutgoingBatchErrors(1000);
-        for (OutgoingBatch batch : outgoingBatches.getBatches()) {
-            int batchErrorMinutes = (int) (System.currentTimeMillis() - batch.getCreateTime().getTime()) / 60000;
-            if (batchErrorMinutes >= monitor.getThreshold()) {
-                outgoingErrorCount++;
-            }
-        }
+        int outgoingErrorCount = countErrorsOverThreshold(outgoingBatchService.getOutgoingBatchErrorCreateTimes(true),
+                monitor);
+        int incomingErrorCount = countErrorsOverThreshold(incomingBatchService.getIncomingBatchErrorCreateTimes(true),
+                monitor);
+        return outgoingErrorCount + incomingErrorCount;
+    }
 
-        int incomingErrorCount = 0;
-        List<IncomingBatch> incomingBatches = incomingBatchService.findIncomingBatchErrors(1000);
-        for (IncomingBatch batch : incomingBatches) {
-            int batchErrorMinutes = (int) (System.currentTimeMillis() - batch.getCreateTime().getTime()) / 60000;
-            if (batchErrorMinutes >= monitor.getThreshold()) {
-                incomingErrorCount++;
+    protected int countErrorsOverThreshold(List<Date> createTimes, Monitor monitor) {
+        int errorCount = 0;
+        for (Date createTime : createTimes) {
+            if (createTime != null) {
+                int batchErrorMinutes = (int) (System.currentTimeMillis() - createTime.getTime()) / 60000;
+                if (batchErrorMinutes >= monitor.getThreshold()) {
+                    errorCount++;
+                }
             }
         }
-
-        return outgoingErrorCount + incomingErrorCount;
+        return errorCount;
     }
 
     @Override
@@ -37,7 +37,7 @@ public class MonitorTypeBatchUnsent implements IMonitorType, ISymmetricEngineAwa
 
     @Override
     public long check(Monitor monitor) {
-        return outgoingBatchService.countOutgoingBatchesUnsent();
+        return outgoingBatchService.countOutgoingBatchesUnsent(true);
     }
 
     @Override
@@ -37,7 +37,7 @@ public class MonitorTypeUnrouted implements IMonitorType, ISymmetricEngineAware,
 
     @Override
     public long check(Monitor monitor) {
-        return routerService.getUnroutedDataCount();
+        return routerService.getUnroutedDataCount(true);
     }
 
     @Override
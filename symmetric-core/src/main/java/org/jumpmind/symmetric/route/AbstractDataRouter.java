@@ -45,6 +45,10 @@ public abstract class AbstractDataRouter implements IDataRouter {
 
     private static final String OLD_ = "OLD_";
 
+    private static final String EXTERNAL_DATA = "EXTERNAL_DATA";
+
+    private static final Object NOT_FOUND = new Object();
+
     protected Logger log = LoggerFactory.getLogger(getClass());
 
     public void contextCommitted(SimpleRouterContext context) {
@@ -79,11 +83,20 @@ public abstract class AbstractDataRouter implements IDataRouter {
             if (data.size() == 0) {
                 data.putAll(getPkDataAsString(dataMetaData, symmetricDialect));
             }
-            data.put("EXTERNAL_DATA", dataMetaData.getData().getExternalData());
+            data.put(EXTERNAL_DATA, dataMetaData.getData().getExternalData());
         }
         return data;
     }
 
+    /**
+     * Provides the same values as {@link #getDataMap(DataMetaData, ISymmetricDialect)}
+     * without building a map of every column. Use it when a router only reads
+     * a few of the columns of a row.
+     */
+    protected DataRowAccessor getDataRowAccessor(DataMetaData dataMetaData, ISymmetricDialect symmetricDialect) {
+        return new DataRowAccessor(dataMetaData, symmetricDialect);
+    }
+
     protected Map<String, String> getNewDataAsString(String prefix, DataMetaData dataMetaData, ISymmetricDialect symmetricDialect) {
         String[] rowData = dataMetaData.getData().toParsedRowData();
         return getDataAsString(prefix, dataMetaData, symmetricDialect, rowData);
@@ -288,4 +301,123 @@ public abstract class AbstractDataRouter implements IDataRouter {
     public boolean isConfigurable() {
         return true;
     }
+
+    /**
+     * Looks up column values of a routed row by name. Column names are
+     * resolved to indexes through the trigger history, which caches them for
+     * the table, and the old data is only parsed when an OLD_ column is read.
+     * Lookups follow the same rules as the map returned by
+     * {@link AbstractDataRouter#getDataMap(DataMetaData, ISymmetricDialect)}.
+     */
+    public class DataRowAccessor {
+
+        protected DataMetaData dataMetaData;
+
+        protected ISymmetricDialect symmetricDialect;
+
+        protected DataEventType eventType;
+
+        protected Map<String, Integer> columnIndexes;
+
+        protected String[] newData;
+
+        protected boolean newDataParsed;
+
+        protected String[] oldData;
+
+        protected boolean oldDataParsed;
+
+        protected Map<String, String> pkData;
+
+        public DataRowAccessor(DataMetaData dataMetaData, ISymmetricDialect symmetricDialect) {
+            this.dataMetaData = dataMetaData;
+            this.symmetricDialect = symmetricDialect;
+            this.eventType = dataMetaData.getData().getDataEventType();
+            this.columnIndexes = dataMetaData.getTriggerHistory().getParsedColumnIndexes();
+        }
+
+        public String get(String columnName) {
+            Object value = find(columnName);
+            return value == NOT_FOUND ? null : (String) value;
+        }
+
+        public boolean containsKey(String columnName) {
+            return find(columnName) != NOT_FOUND;
+        }
+
+        protected Object find(String columnName) {
+            if (EXTERNAL_DATA.equalsIgnoreCase(columnName)) {
+                return dataMetaData.getData().getExternalData();
+            }
+
+            if (isRowDataEmpty()) {
+                if (pkData == null) {
+                    pkData = getPkDataAsString(dataMetaData, symmetricDialect);
+                }
+                return pkData.containsKey(columnName) ? pkData.get(columnName) : NOT_FOUND;
+            }
+
+            if (columnName.length() > OLD_.length() && columnName.regionMatches(true, 0, OLD_, 0, OLD_.length())) {
+                Integer index = columnIndexes.get(columnName.substring(OLD_.length()));
+                if (index != null) {
+                    if (eventType == DataEventType.INSERT) {
+                        return null;
+                    }
+                    String[] values = getOldData();
+                    if (values != null) {
+                        return values[index];
+                    }
+                }
+            }
+
+            Integer index = columnIndexes.get(columnName);
+            if (index != null) {
+                String[] values = eventType == DataEventType.DELETE ? getOldData() : getNewData();
+                if (values != null) {
+                    return values[index];
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        protected boolean isRowDataEmpty() {
+            if (columnIndexes.size() == 0) {
+                return true;
+            }
+            switch (eventType) {
+                case UPDATE:
+                    return getNewData() == null && getOldData() == null;
+                case INSERT:
+                    return false;
+                case DELETE:
+                    return getOldData() == null;
+                default:
+                    return true;
+            }
+        }
+
+        protected String[] getNewData() {
+            if (!newDataParsed) {
+                newData = dataMetaData.getData().toParsedRowData();
+                if (newData != null) {
+                    testColumnNamesMatchValues(dataMetaData, symmetricDialect, dataMetaData
+                            .getTriggerHistory().getParsedColumnNames(), newData);
+                }
+                newDataParsed = true;
+            }
+            return newData;
+        }
+
+        protected String[] getOldData() {
+            if (!oldDataParsed) {
+                oldData = dataMetaData.getData().toParsedOldData();
+                if (oldData != null) {
+                    testColumnNamesMatchValues(dataMetaData, symmetricDialect, dataMetaData
+                            .getTriggerHistory().getParsedColumnNames(), oldData);
+                }
+                oldDataParsed = true;
+            }
+            return oldData;
+        }
+    }
 }
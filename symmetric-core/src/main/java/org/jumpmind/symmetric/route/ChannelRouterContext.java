@@ -22,10 +22,14 @@ package org.jumpmind.symmetric.route;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +37,7 @@ import java.util.Set;
 import org.jumpmind.db.sql.ISqlTransaction;
 import org.jumpmind.db.sql.SqlException;
 import org.jumpmind.symmetric.SymmetricException;
+import org.jumpmind.symmetric.io.data.DataEventType;
 import org.jumpmind.symmetric.model.Data;
 import org.jumpmind.symmetric.model.DataEvent;
 import org.jumpmind.symmetric.model.DataGap;
@@ -75,6 +80,10 @@ public class ChannelRouterContext extends SimpleRouterContext {
     private Set<String> transactions = new HashSet<String>();
     private long lastDataId;
     private List<Long> dataIds = new ArrayList<Long>();
+    private IDataToRouteReader dataToRouteReader;
+    private LinkedList<Data> dataToRoute = new LinkedList<Data>();
+    private boolean endOfDataToRoute = false;
+    private Map<Long, MessageDigest> dataDigestsByBatchId = new HashMap<Long, MessageDigest>();
 
     public ChannelRouterContext(String nodeId, NodeChannel channel, ISqlTransaction transaction)
             throws SQLException {
@@ -83,6 +92,44 @@ public class ChannelRouterContext extends SimpleRouterContext {
         this.sqlTransaction.setInBatchMode(true);
     }
 
+    public void setDataToRouteReader(IDataToRouteReader dataToRouteReader) {
+        this.dataToRouteReader = dataToRouteReader;
+    }
+
+    /**
+     * @return the next data to route, or null when all data has been read
+     */
+    public Data takeData() throws InterruptedException {
+        fillDataToRoute(1);
+        return dataToRoute.isEmpty() ? null : dataToRoute.removeFirst();
+    }
+
+    public Data peekData() throws InterruptedException {
+        fillDataToRoute(1);
+        return dataToRoute.isEmpty() ? null : dataToRoute.getFirst();
+    }
+
+    /**
+     * Reads ahead so that a data router can look at the data that will be
+     * routed next, starting with the data that {@link #takeData()} returns.
+     * Fewer rows are returned when the end of the data is reached.
+     */
+    public List<Data> peekData(int count) throws InterruptedException {
+        fillDataToRoute(count);
+        return new ArrayList<Data>(dataToRoute.subList(0, Math.min(count, dataToRoute.size())));
+    }
+
+    protected void fillDataToRoute(int count) throws InterruptedException {
+        while (dataToRouteReader != null && !endOfDataToRoute && dataToRoute.size() < count) {
+            Data data = dataToRouteReader.take();
+            if (data != null) {
+                dataToRoute.add(data);
+            } else {
+                endOfDataToRoute = true;
+            }
+        }
+    }
+
     public List<DataEvent> getDataEventList() {
         return dataEventsToSend;
     }
@@ -99,6 +146,42 @@ public class ChannelRouterContext extends SimpleRouterContext {
         }
     }
 
+    /**
+     * Adds data routed to a batch to a digest of the batch's content, so that
+     * batches for different nodes that hold the same data can be found when
+     * they are completed. A batch with a reload event has no digest.
+     */
+    public void addToDataDigest(long batchId, Data data, String routerId) {
+        if (!dataDigestsByBatchId.containsKey(batchId)) {
+            dataDigestsByBatchId.put(batchId, newDataDigest());
+        }
+        MessageDigest digest = dataDigestsByBatchId.get(batchId);
+        if (digest != null) {
+            if (data.getDataEventType() == DataEventType.RELOAD) {
+                dataDigestsByBatchId.put(batchId, null);
+            } else {
+                digest.update((data.getDataId() + ":" + routerId + ",").getBytes());
+            }
+        }
+    }
+
+    /**
+     * @return the digest of the data routed to the batch, or null if the batch
+     *         has no digest
+     */
+    public String getDataDigest(long batchId) {
+        MessageDigest digest = dataDigestsByBatchId.get(batchId);
+        return digest != null ? new BigInteger(1, digest.digest()).toString(16) : null;
+    }
+
+    protected MessageDigest newDataDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
     public Map<String, OutgoingBatch> getBatchesByNodes() {
         return batchesByNodes;
     }
@@ -122,6 +205,7 @@ public class ChannelRouterContext extends SimpleRouterContext {
         this.batchesByNodes.clear();
         this.availableNodes.clear();
         this.dataEventsToSend.clear();
+        this.dataDigestsByBatchId.clear();
     }
 
     public void rollback() {
@@ -21,7 +21,10 @@
 package org.jumpmind.symmetric.route;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -86,6 +89,9 @@ public class ColumnMatchDataRouter extends AbstractDataRouter implements IDataRo
 
     final static String EXPRESSION_KEY = String.format("%s.Expression.", ColumnMatchDataRouter.class
             .getName());        
+
+    final static String NODE_INDEX_KEY = String.format("%s.NodeIndex.", ColumnMatchDataRouter.class
+            .getName());
     
     public ColumnMatchDataRouter() {
     }
@@ -102,7 +108,7 @@ public class ColumnMatchDataRouter extends AbstractDataRouter implements IDataRo
             nodeIds = toNodeIds(nodes, null);
         } else {
             List<Expression> expressions = getExpressions(dataMetaData.getRouter(), routingContext);
-            Map<String, String> columnValues = getDataMap(dataMetaData, symmetricDialect);
+            DataRowAccessor columnValues = getDataRowAccessor(dataMetaData, symmetricDialect);
 
             if (columnValues != null) {
                 for (Expression e : expressions) {
@@ -111,19 +117,34 @@ public class ColumnMatchDataRouter extends AbstractDataRouter implements IDataRo
                     String columnValue = columnValues.get(column);
 
                     if (value.equalsIgnoreCase(TokenConstants.NODE_ID)) {
-                        for (Node node : nodes) {
-                            nodeIds = runExpression(e, columnValue, node.getNodeId(), nodes,
-                                    nodeIds, node);
+                        if (e.hasEquals || e.hasContains) {
+                            nodeIds = runIndexedExpression(e, columnValue, getNodeIndex(
+                                    dataMetaData.getRouter(), triggerRouter, routingContext, nodes).nodesByNodeId, nodeIds);
+                        } else {
+                            for (Node node : nodes) {
+                                nodeIds = runExpression(e, columnValue, node.getNodeId(), nodes,
+                                        nodeIds, node);
+                            }
                         }
                     } else if (value.equalsIgnoreCase(TokenConstants.EXTERNAL_ID)) {
-                        for (Node node : nodes) {
-                            nodeIds = runExpression(e, columnValue, node.getExternalId(), nodes,
-                                    nodeIds, node);
+                        if (e.hasEquals || e.hasContains) {
+                            nodeIds = runIndexedExpression(e, columnValue, getNodeIndex(
+                                    dataMetaData.getRouter(), triggerRouter, routingContext, nodes).nodesByExternalId, nodeIds);
+                        } else {
+                            for (Node node : nodes) {
+                                nodeIds = runExpression(e, columnValue, node.getExternalId(), nodes,
+                                        nodeIds, node);
+                            }
                         }
                     } else if (value.equalsIgnoreCase(TokenConstants.NODE_GROUP_ID)) {
-                        for (Node node : nodes) {
-                            nodeIds = runExpression(e, columnValue, node.getNodeGroupId(), nodes,
-                                    nodeIds, node);
+                        if (e.hasEquals || e.hasContains) {
+                            nodeIds = runIndexedExpression(e, columnValue, getNodeIndex(
+                                    dataMetaData.getRouter(), triggerRouter, routingContext, nodes).nodesByNodeGroupId, nodeIds);
+                        } else {
+                            for (Node node : nodes) {
+                                nodeIds = runExpression(e, columnValue, node.getNodeGroupId(), nodes,
+                                        nodeIds, node);
+                            }
                         }
                     } else if (e.hasEquals && value.equalsIgnoreCase(TokenConstants.REDIRECT_NODE)) {
                         Map<String, String> redirectMap = getRedirectMap(routingContext);
@@ -184,6 +205,33 @@ public class ColumnMatchDataRouter extends AbstractDataRouter implements IDataRo
         return nodeIds;
     }
 
+    /**
+     * Resolve an equals or contains expression against one of the node
+     * attributes by looking the column value up in the node index instead of
+     * comparing it to every node.
+     */
+    protected Set<String> runIndexedExpression(Expression e, String columnValue,
+            Map<String, List<Node>> index, Set<String> nodeIds) {
+        if (e.hasEquals) {
+            nodeIds = addNodeIds(index.get(columnValue), nodeIds);
+        } else if (e.hasContains && columnValue != null) {
+            for (String value : columnValue.split(",")) {
+                nodeIds = addNodeIds(index.get(value), nodeIds);
+            }
+        }
+        return nodeIds;
+    }
+
+    protected Set<String> addNodeIds(Collection<Node> matchedNodes, Set<String> nodeIds) {
+        if (matchedNodes != null) {
+            nodeIds = nodeIds == null ? new HashSet<String>(matchedNodes.size()) : nodeIds;
+            for (Node node : matchedNodes) {
+                nodeIds.add(node.getNodeId());
+            }
+        }
+        return nodeIds;
+    }
+
     /**
      * Cache parsed expressions in the context to minimize the amount of parsing
      * we have to do when we have lots of throughput.
@@ -275,6 +323,60 @@ public class ColumnMatchDataRouter extends AbstractDataRouter implements IDataRo
         return redirectMap;
     }
 
+    /**
+     * Cache an index of the candidate nodes in the context so that the nodes
+     * that match a row can be found without comparing the row to each of them.
+     * The index is kept per trigger router because the router service caches
+     * a separate set of available nodes for each of them.  The index is
+     * rebuilt if it is called with a different instance of the node set.
+     */
+    protected NodeIndex getNodeIndex(Router router, TriggerRouter triggerRouter,
+            SimpleRouterContext context, Set<Node> nodes) {
+        String key = NODE_INDEX_KEY + router.getRouterId();
+        if (triggerRouter != null) {
+            key += "." + triggerRouter.getTriggerId();
+        }
+        NodeIndex index = (NodeIndex) context.getContextCache().get(key);
+        if (index == null || !index.isIndexOf(nodes)) {
+            index = new NodeIndex(nodes);
+            context.getContextCache().put(key, index);
+        }
+        return index;
+    }
+
+    protected static class NodeIndex {
+
+        Set<Node> nodes;
+        Map<String, List<Node>> nodesByNodeId;
+        Map<String, List<Node>> nodesByExternalId;
+        Map<String, List<Node>> nodesByNodeGroupId;
+
+        public NodeIndex(Set<Node> nodes) {
+            this.nodes = nodes;
+            this.nodesByNodeId = new HashMap<String, List<Node>>(nodes.size());
+            this.nodesByExternalId = new HashMap<String, List<Node>>(nodes.size());
+            this.nodesByNodeGroupId = new HashMap<String, List<Node>>();
+            for (Node node : nodes) {
+                add(nodesByNodeId, node.getNodeId(), node);
+                add(nodesByExternalId, node.getExternalId(), node);
+                add(nodesByNodeGroupId, node.getNodeGroupId(), node);
+            }
+        }
+
+        protected void add(Map<String, List<Node>> index, String key, Node node) {
+            List<Node> list = index.get(key);
+            if (list == null) {
+                list = new ArrayList<Node>(1);
+                index.put(key, list);
+            }
+            list.add(node);
+        }
+
+        public boolean isIndexOf(Set<Node> nodes) {
+            return this.nodes == nodes;
+        }
+    }
+
     public class Expression {
         public static final String EQUALS = "=";
         public static final String NOT_EQUALS = "!=";
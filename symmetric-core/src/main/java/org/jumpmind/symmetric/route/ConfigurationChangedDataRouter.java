@@ -86,6 +86,9 @@ public class ConfigurationChangedDataRouter extends AbstractDataRouter implement
     final String CTX_KEY_FLUSH_NODE_SECURITYS_NEEDED = "FlushNodeSecuritys."
             + ConfigurationChangedDataRouter.class.getSimpleName() + hashCode();
 
+    final String CTX_KEY_FLUSH_CONFIGURATION_EXTRACT_NEEDED = "FlushConfigurationExtract."
+            + ConfigurationChangedDataRouter.class.getSimpleName() + hashCode();
+
     final String CTX_KEY_RESTART_JOBMANAGER_NEEDED = "RestartJobManager."
             + ConfigurationChangedDataRouter.class.getSimpleName() + hashCode();
 
@@ -174,6 +177,7 @@ public class ConfigurationChangedDataRouter extends AbstractDataRouter implement
             		|| tableMatches(dataMetaData, TableConstants.SYM_MONITOR)
             	    || tableMatches(dataMetaData, TableConstants.SYM_MONITOR_EVENT) 
             	    || tableMatches(dataMetaData, TableConstants.SYM_NOTIFICATION)) {
+                routingContext.put(CTX_KEY_FLUSH_CONFIGURATION_EXTRACT_NEEDED, Boolean.TRUE);
                 for (Node nodeThatMayBeRoutedTo : possibleTargetNodes) {
                     if (nodeThatMayBeRoutedTo.isVersionGreaterThanOrEqualTo(3, 8, 0)) {
                         nodeIds.add(nodeThatMayBeRoutedTo.getNodeId());
@@ -195,6 +199,8 @@ public class ConfigurationChangedDataRouter extends AbstractDataRouter implement
                     }
                 }
 
+                routingContext.put(CTX_KEY_FLUSH_CONFIGURATION_EXTRACT_NEEDED, Boolean.TRUE);
+
                 if (StringUtils.isBlank(dataMetaData.getData().getSourceNodeId())) {
                     queueSyncTriggers(routingContext, dataMetaData, columnValues);
                 }
@@ -588,6 +594,11 @@ public class ConfigurationChangedDataRouter extends AbstractDataRouter implement
                 log.info("About to refresh the cache of notifications because new configuration came through the data router");
                 engine.getMonitorService().flushNotificationCache();
             }
+
+            if (routingContext.get(CTX_KEY_FLUSH_CONFIGURATION_EXTRACT_NEEDED) != null) {
+                log.info("About to refresh the cache of configuration for registration because new configuration came through the data router");
+                engine.getDataExtractorService().flushConfigurationExtractCache();
+            }
             
             if (routingContext.get(CTX_KEY_FLUSH_NODES_NEEDED) != null) {
                 log.info("About to refresh the cache of nodes because new configuration came through the data router");
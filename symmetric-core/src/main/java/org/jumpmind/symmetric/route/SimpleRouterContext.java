@@ -88,6 +88,10 @@ public class SimpleRouterContext extends Context {
         stats.put(name, val);
     }
 
+    synchronized public void setStat(long value, String name) {
+        stats.put(name, value);
+    }
+
     synchronized public long getStat(String name) {
         Long val = (Long) stats.get(name);
         if (val == null) {
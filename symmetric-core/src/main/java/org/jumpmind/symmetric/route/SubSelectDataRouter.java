@@ -20,28 +20,39 @@
  */
 package org.jumpmind.symmetric.route;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
+import org.jumpmind.db.sql.ISqlRowMapper;
 import org.jumpmind.db.sql.ISqlTemplate;
 import org.jumpmind.db.sql.InvalidSqlException;
+import org.jumpmind.db.sql.NamedParameterUtils;
+import org.jumpmind.db.sql.ParsedSql;
+import org.jumpmind.db.sql.Row;
 import org.jumpmind.db.sql.mapper.StringMapper;
 import org.jumpmind.extension.IBuiltInExtensionPoint;
+import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.db.ISymmetricDialect;
+import org.jumpmind.symmetric.model.Data;
 import org.jumpmind.symmetric.model.DataMetaData;
 import org.jumpmind.symmetric.model.Node;
 import org.jumpmind.symmetric.model.TriggerRouter;
+import org.jumpmind.symmetric.service.IParameterService;
 import org.jumpmind.util.FormatUtils;
 
 /**
  * This data router is invoked when the router_type is 'subselect'. The
  * router_expression is always a SQL expression that is used to find the list of
- * nodes a row of data will be routed to. This router should never be used for
- * high throughput tables because it makes a call back to the database for each
- * row that is routed.
+ * nodes a row of data will be routed to. This router makes a call back to the
+ * database for each distinct set of values that is routed, so it should be
+ * used with care for high throughput tables.
  * <P/>
  * The query that is used to select the nodes is as follows:
  * <P/>
@@ -59,11 +70,28 @@ import org.jumpmind.util.FormatUtils;
  * <code>
  * c.external_id in (select home_store from employee where employee_id in (:EMPLOYEE_ID, :OLD_EMPLOYEE_ID))
  * </code>
+ * <P/>
+ * The nodes that are found are cached by the values bound into the expression
+ * for the length of a routing run. When routing.subselect.set.size is set, a
+ * cache miss looks ahead at the rows that are about to be routed for the same
+ * table and finds the nodes for all of them with one union all query.
  */
 public class SubSelectDataRouter extends AbstractDataRouter implements IBuiltInExtensionPoint {
 
+    public static final String STAT_CACHE_HITS = "subselect.cache.hit.count";
+
+    public static final String STAT_CACHE_MISSES = "subselect.cache.miss.count";
+
+    public static final String STAT_CACHE_HIT_PERCENT = "subselect.cache.hit.percent";
+
+    public static final String STAT_SET_QUERIES = "subselect.set.query.count";
+
     private static final String SQL = "select c.node_id from $(prefixName)_node c where c.node_group_id=:NODE_GROUP_ID and c.sync_enabled=1 and ";
 
+    private static final String SET_SQL = "select %d as row_number_in_set, c.node_id from $(prefixName)_node c where c.node_group_id=:NODE_GROUP_ID and c.sync_enabled=1 and ";
+
+    private static final String CACHE_KEY = SubSelectDataRouter.class.getName() + ".nodeIdsByValues";
+
     private ISymmetricDialect symmetricDialect;
 
     public SubSelectDataRouter(ISymmetricDialect symmetricDialect) {
@@ -72,21 +100,41 @@ public class SubSelectDataRouter extends AbstractDataRouter implements IBuiltInE
 
     public Set<String> routeToNodes(SimpleRouterContext routingContext, DataMetaData dataMetaData,
             Set<Node> nodes, boolean initialLoad, boolean initialLoadSelectUsed, TriggerRouter triggerRouter) {
-        String sql = FormatUtils.replaceToken(SQL, "prefixName", symmetricDialect.getTablePrefix(),
-                true);
         String subSelect = dataMetaData.getRouter().getRouterExpression();
         Set<String> nodeIds = null;
         if (!StringUtils.isBlank(subSelect) && !initialLoadSelectUsed) {
             try {
-                Map<String, Object> sqlParams = getDataObjectMap(dataMetaData, symmetricDialect, true);
-                sqlParams.put("NODE_GROUP_ID", dataMetaData.getRouter().getNodeGroupLink()
-                        .getTargetNodeGroupId());
-                sqlParams.put("EXTERNAL_DATA", dataMetaData.getData().getExternalData());
-                ISqlTemplate template = symmetricDialect.getPlatform().getSqlTemplate();
-                List<String> ids = template.query(String.format("%s%s", sql, subSelect),
-                        new StringMapper(), sqlParams);
-                if (ids != null) {
-                    nodeIds = new HashSet<String>(ids);
+                IParameterService parameterService = symmetricDialect.getParameterService();
+                String sql = FormatUtils.replaceToken(SQL, "prefixName",
+                        symmetricDialect.getTablePrefix(), true) + subSelect;
+                if (parameterService.is(ParameterConstants.ROUTING_SUBSELECT_CACHE_ENABLED, true)) {
+                    ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+                    Object[] args = NamedParameterUtils.buildValueArray(parsedSql,
+                            getSqlParams(dataMetaData));
+                    List<Object> key = getCacheKey(dataMetaData, args);
+                    Map<List<Object>, Set<String>> cache = getCache(routingContext);
+                    Set<String> cachedNodeIds = cache.get(key);
+                    if (cachedNodeIds != null) {
+                        routingContext.incrementStat(1, STAT_CACHE_HITS);
+                    } else {
+                        routingContext.incrementStat(1, STAT_CACHE_MISSES);
+                        int setSize = parameterService.getInt(
+                                ParameterConstants.ROUTING_SUBSELECT_SET_SIZE, 0);
+                        if (setSize > 1 && routingContext instanceof ChannelRouterContext) {
+                            routeSetToNodes((ChannelRouterContext) routingContext, dataMetaData,
+                                    subSelect, key, args, setSize, cache);
+                            cachedNodeIds = cache.get(key);
+                        } else {
+                            cachedNodeIds = queryForNodeIds(sql, dataMetaData);
+                            cache.put(key, cachedNodeIds);
+                        }
+                    }
+                    long hits = routingContext.getStat(STAT_CACHE_HITS);
+                    routingContext.setStat(hits * 100 / (hits + routingContext.getStat(STAT_CACHE_MISSES)),
+                            STAT_CACHE_HIT_PERCENT);
+                    nodeIds = new HashSet<String>(cachedNodeIds);
+                } else {
+                    nodeIds = queryForNodeIds(sql, dataMetaData);
                 }
             } catch (InvalidSqlException ex) {
                 log.error("The subselect expression was invalid for the {} subselect router for the '{}' event for table '{}'",
@@ -103,4 +151,109 @@ public class SubSelectDataRouter extends AbstractDataRouter implements IBuiltInE
         return nodeIds;
     }
 
-}
\ No newline at end of file
+    protected Set<String> queryForNodeIds(String sql, DataMetaData dataMetaData) {
+        ISqlTemplate template = symmetricDialect.getPlatform().getSqlTemplate();
+        List<String> ids = template.query(sql, new StringMapper(), getSqlParams(dataMetaData));
+        return ids != null ? new HashSet<String>(ids) : new HashSet<String>(0);
+    }
+
+    /**
+     * Finds the nodes for the current row and for the rows about to be routed
+     * for the same table that are not cached yet, using one union all query.
+     * Each part of the query selects its position in the set along with the
+     * node id.
+     */
+    protected void routeSetToNodes(ChannelRouterContext routingContext,
+            DataMetaData dataMetaData, String subSelect, List<Object> key, Object[] args,
+            int setSize, Map<List<Object>, Set<String>> cache) {
+        Map<List<Object>, Object[]> argsByKey = new LinkedHashMap<List<Object>, Object[]>();
+        argsByKey.put(key, args);
+        String setSql = FormatUtils.replaceToken(SET_SQL, "prefixName",
+                symmetricDialect.getTablePrefix(), true);
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(String.format(setSql, 0)
+                + subSelect);
+        for (Data data : peekData(routingContext, setSize)) {
+            if (argsByKey.size() >= setSize) {
+                break;
+            }
+            if (data.getTriggerHistory() != null
+                    && data.getTriggerHistory().getTriggerHistoryId() == dataMetaData.getData()
+                            .getTriggerHistory().getTriggerHistoryId()
+                    && StringUtils.isBlank(data.getNodeList())) {
+                DataMetaData upcoming = new DataMetaData(data, dataMetaData.getTable(),
+                        dataMetaData.getRouter(), dataMetaData.getNodeChannel());
+                Object[] upcomingArgs = NamedParameterUtils.buildValueArray(parsedSql,
+                        getSqlParams(upcoming));
+                List<Object> upcomingKey = getCacheKey(upcoming, upcomingArgs);
+                if (!cache.containsKey(upcomingKey) && !argsByKey.containsKey(upcomingKey)) {
+                    argsByKey.put(upcomingKey, upcomingArgs);
+                }
+            }
+        }
+
+        StringBuilder sql = new StringBuilder();
+        List<Object> allArgs = new ArrayList<Object>();
+        List<List<Object>> keys = new ArrayList<List<Object>>(argsByKey.keySet());
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            sql.append(NamedParameterUtils.substituteNamedParameters(
+                    NamedParameterUtils.parseSqlStatement(String.format(setSql, i) + subSelect),
+                    getSqlParams(dataMetaData)));
+            allArgs.addAll(Arrays.asList(argsByKey.get(keys.get(i))));
+        }
+
+        Map<List<Object>, Set<String>> found = new HashMap<List<Object>, Set<String>>();
+        for (List<Object> setKey : keys) {
+            found.put(setKey, new HashSet<String>());
+        }
+        ISqlTemplate template = symmetricDialect.getPlatform().getSqlTemplate();
+        List<String[]> rows = template.query(sql.toString(), new ISqlRowMapper<String[]>() {
+            public String[] mapRow(Row row) {
+                return new String[] { row.getString("row_number_in_set"), row.getString("node_id") };
+            }
+        }, allArgs.toArray(), null);
+        for (String[] row : rows) {
+            found.get(keys.get(Integer.parseInt(row[0].trim()))).add(row[1]);
+        }
+        cache.putAll(found);
+        routingContext.incrementStat(1, STAT_SET_QUERIES);
+    }
+
+    protected List<Data> peekData(ChannelRouterContext routingContext, int count) {
+        try {
+            return routingContext.peekData(count);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<Data>(0);
+        }
+    }
+
+    protected Map<String, Object> getSqlParams(DataMetaData dataMetaData) {
+        Map<String, Object> sqlParams = getDataObjectMap(dataMetaData, symmetricDialect, true);
+        sqlParams.put("NODE_GROUP_ID", dataMetaData.getRouter().getNodeGroupLink()
+                .getTargetNodeGroupId());
+        sqlParams.put("EXTERNAL_DATA", dataMetaData.getData().getExternalData());
+        return sqlParams;
+    }
+
+    protected List<Object> getCacheKey(DataMetaData dataMetaData, Object[] args) {
+        List<Object> key = new ArrayList<Object>(args.length + 1);
+        key.add(dataMetaData.getRouter().getRouterId());
+        key.addAll(Arrays.asList(args));
+        return key;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<List<Object>, Set<String>> getCache(SimpleRouterContext routingContext) {
+        Map<List<Object>, Set<String>> cache = (Map<List<Object>, Set<String>>) routingContext
+                .getContextCache().get(CACHE_KEY);
+        if (cache == null) {
+            cache = new HashMap<List<Object>, Set<String>>();
+            routingContext.getContextCache().put(CACHE_KEY, cache);
+        }
+        return cache;
+    }
+
+}
@@ -23,6 +23,7 @@ package org.jumpmind.symmetric.service;
 import java.util.Map;
 
 import org.jumpmind.symmetric.model.Lock;
+import org.jumpmind.symmetric.statistic.LockWaitStats;
 
 
 /**
@@ -57,4 +58,6 @@ public interface IClusterService {
     
     public boolean isInfiniteLocked(String action);
 
+    public Map<String, LockWaitStats> getLockWaitStats();
+
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.jumpmind.db.sql.ISqlTransaction;
 import org.jumpmind.symmetric.io.data.writer.StructureDataWriter.PayloadType;
@@ -44,6 +45,8 @@ public interface IDataExtractorService {
 
     public void extractConfigurationStandalone(Node node, Writer out, String... tablesToIgnore);
 
+    public void flushConfigurationExtractCache();
+
     public List<OutgoingBatchWithPayload> extractToPayload(ProcessInfo processInfo, Node targetNode, PayloadType payloadType, boolean useJdbcTimestampFormat, boolean useUpsertStatements, boolean useDelimiterIdentifiers);
     
     /**
@@ -64,5 +67,11 @@ public interface IDataExtractorService {
     
     public void requestExtractRequest(ISqlTransaction transaction, String nodeId, String channelId, TriggerRouter triggerRouter, long startBatchId, long endBatchId);
 
+    /**
+     * Called by routing with the batches that hold the same data as batches
+     * routed to other nodes, keyed by batch id, so they can share one extract.
+     */
+    public void addSharedBatchKeys(Map<Long, String> keysByBatchId);
+
 
 }
\ No newline at end of file
@@ -46,6 +46,14 @@ public interface IIncomingBatchService {
 
     public List<IncomingBatch> findIncomingBatchErrors(int maxRows);
 
+    /**
+     * @param useCache when true, return the batches in error kept in memory as
+     *            batches are loaded, which are refreshed from the database
+     *            every monitor.reconcile.period.ms
+     * @return the create times of the batches in error
+     */
+    public List<Date> getIncomingBatchErrorCreateTimes(boolean useCache);
+
     public boolean acquireIncomingBatch(IncomingBatch batch);
 
     public void insertIncomingBatch(ISqlTransaction transaction, IncomingBatch batch);
@@ -55,6 +63,11 @@ public interface IIncomingBatchService {
     public int updateIncomingBatch(ISqlTransaction transaction, IncomingBatch batch);
 
     public int updateIncomingBatch(IncomingBatch batch);
+
+    /**
+     * Update the batches in one transaction using a JDBC batch
+     */
+    public void updateIncomingBatches(List<IncomingBatch> batches);
     
     public int deleteIncomingBatch(IncomingBatch batch);
     
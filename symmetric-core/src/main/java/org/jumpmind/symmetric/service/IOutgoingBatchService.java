@@ -21,12 +21,14 @@
 
 package org.jumpmind.symmetric.service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.jumpmind.db.sql.ISqlTransaction;
+import org.jumpmind.symmetric.model.ChannelMap;
 import org.jumpmind.symmetric.model.LoadSummary;
 import org.jumpmind.symmetric.model.OutgoingBatch;
 import org.jumpmind.symmetric.model.OutgoingBatchSummary;
@@ -86,12 +88,49 @@ public interface IOutgoingBatchService {
     public int countOutgoingBatchesInError();
     
     public int countOutgoingBatchesUnsent();
+
+    /**
+     * @param useCache when true, return the count kept in memory as batches
+     *            are created and sent, which is refreshed from the database
+     *            every monitor.reconcile.period.ms
+     */
+    public int countOutgoingBatchesUnsent(boolean useCache);
+
+    /**
+     * @param useCache when true, return the batches in error kept in memory as
+     *            batches are updated, which are refreshed from the database
+     *            every monitor.reconcile.period.ms
+     * @return the create times of the batches in error
+     */
+    public List<Date> getOutgoingBatchErrorCreateTimes(boolean useCache);
     
     public int countOutgoingBatchesInError(String channelId);
     
     public int countOutgoingBatchesUnsent(String channelId);
         
     public Map<String, Integer> countOutgoingBatchesPendingByChannel(String nodeId);
+
+    /**
+     * Wait until batches are ready to send to a node, so a pull that would
+     * find nothing can be held open until the router creates batches for it.
+     * 
+     * @param channelMap the queue requested by the node and its suspended
+     *            channels
+     * @return true if there are batches to send, false if the timeout passed
+     */
+    public boolean waitForOutgoingBatches(String nodeId, ChannelMap channelMap, long timeoutMs);
+
+    /**
+     * Wake up the pulls that are waiting for batches for these nodes. Called
+     * after the batches are committed.
+     */
+    public void notifyOutgoingBatchesReady(Collection<String> nodeIds);
+
+    /**
+     * @return true if the node was recently found to have no batches to send
+     *         on the queue and none have been created for it since
+     */
+    public boolean isOutgoingBatchesIdle(String nodeId, String queue);
     
     public List<OutgoingBatchSummary> findOutgoingBatchSummary(OutgoingBatch.Status ... statuses);
     
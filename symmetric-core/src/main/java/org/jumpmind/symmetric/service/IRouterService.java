@@ -42,6 +42,13 @@ public interface IRouterService extends IService {
     public long routeData(boolean force);
  
     public long getUnroutedDataCount();
+
+    /**
+     * @param useCache when true, use the data gaps the router already holds
+     *            in memory instead of reading them from the database, until
+     *            monitor.reconcile.period.ms has passed
+     */
+    public long getUnroutedDataCount(boolean useCache);
     
     public List<NodeSecurity> findNodesThatAreReadyForInitialLoad();
     
@@ -36,5 +36,7 @@ public interface ISequenceService {
     public void create(Sequence sequence);
     
     public void init();
+
+    public void stop();
     
 }
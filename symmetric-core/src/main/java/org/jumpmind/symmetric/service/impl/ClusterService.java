@@ -48,6 +48,9 @@ import static org.jumpmind.symmetric.service.ClusterConstants.MONITOR;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
@@ -61,6 +64,7 @@ import org.jumpmind.symmetric.db.ISymmetricDialect;
 import org.jumpmind.symmetric.model.Lock;
 import org.jumpmind.symmetric.service.IClusterService;
 import org.jumpmind.symmetric.service.IParameterService;
+import org.jumpmind.symmetric.statistic.LockWaitStats;
 import org.jumpmind.util.AppUtils;
 
 /**
@@ -78,6 +82,12 @@ public class ClusterService extends AbstractService implements IClusterService {
     
     private Map<String, Lock> lockCache;
 
+    private ConcurrentMap<String, Object> lockMonitors = new ConcurrentHashMap<String, Object>();
+
+    private ConcurrentMap<String, LockWaitStats> lockWaitStats = new ConcurrentHashMap<String, LockWaitStats>();
+
+    private Random random = new Random();
+
     public ClusterService(IParameterService parameterService, ISymmetricDialect dialect) {
         super(parameterService, dialect);
         setSqlMap(new ClusterServiceSqlMap(symmetricDialect.getPlatform(),
@@ -141,6 +151,9 @@ public class ClusterService extends AbstractService implements IClusterService {
         } else {
             initCache();
         }
+        for (String action : lockMonitors.keySet()) {
+            notifyLockWaiters(action);
+        }
     }
 
     public boolean lock(final String action, final String lockType) {
@@ -245,34 +258,110 @@ public class ClusterService extends AbstractService implements IClusterService {
         return false;
     }
 
+    /**
+     * Wait for a shared or exclusive lock. A waiter is woken up as soon as a
+     * thread in this JVM releases the lock. Without clustering that is the
+     * only way the lock is released, other than by timing out, so the wait
+     * only polls at lock.wait.retry.ms to catch broken locks. With clustering
+     * the holder may be another server, so the table is checked again with a
+     * backoff. The backoff starts at lock.wait.retry.min.ms and doubles up to
+     * lock.wait.retry.ms. Each wait is randomized so that servers do not
+     * retry in step.
+     */
     protected boolean lockWait(final String action, final String lockType, long waitMillis) {
         boolean isLocked = false;
-        long endTime = System.currentTimeMillis() + waitMillis;
-        long sleepMillis = parameterService.getLong(ParameterConstants.LOCK_WAIT_RETRY_MILLIS);
-        do {
-            if (lockType.equals(TYPE_SHARED)) {
-                isLocked = lockShared(action);
-            } else if (lockType.equals(TYPE_EXCLUSIVE)) {
-                isLocked = lockExclusive(action);
-                if (!isLocked) {
-                    if (isClusteringEnabled()) {
-                        sqlTemplate.update(getSql("disableSharedLockSql"), new Object[] { action, TYPE_SHARED });
-                    } else {
-                        Lock lock = lockCache.get(action);
-                        if (lock != null) {
-                            synchronized (lock) {
-                                lock.setSharedEnable(false);
+        long startTime = System.currentTimeMillis();
+        long endTime = startTime + waitMillis;
+        long maxSleepMillis = Math.max(1, parameterService.getLong(ParameterConstants.LOCK_WAIT_RETRY_MILLIS));
+        long sleepMillis = Math.max(1, Math.min(maxSleepMillis,
+                parameterService.getLong(ParameterConstants.LOCK_WAIT_RETRY_MIN_MILLIS, 100)));
+        long retries = 0;
+        Object monitor = getLockMonitor(action);
+        synchronized (monitor) {
+            do {
+                if (lockType.equals(TYPE_SHARED)) {
+                    isLocked = lockShared(action);
+                } else if (lockType.equals(TYPE_EXCLUSIVE)) {
+                    isLocked = lockExclusive(action);
+                    if (!isLocked) {
+                        if (isClusteringEnabled()) {
+                            sqlTemplate.update(getSql("disableSharedLockSql"), new Object[] { action, TYPE_SHARED });
+                        } else {
+                            Lock lock = lockCache.get(action);
+                            if (lock != null) {
+                                synchronized (lock) {
+                                    lock.setSharedEnable(false);
+                                }
                             }
                         }
                     }
                 }
+                if (isLocked) {
+                    break;
+                }
+
+                long waitTime = maxSleepMillis;
+                if (isClusteringEnabled()) {
+                    waitTime = sleepMillis / 2 + random.nextInt((int) Math.min(Integer.MAX_VALUE - 1, sleepMillis / 2) + 1);
+                    sleepMillis = Math.min(maxSleepMillis, sleepMillis * 2);
+                }
+                if (waitMillis > 0) {
+                    waitTime = Math.min(waitTime, endTime - System.currentTimeMillis());
+                }
+                if (waitTime > 0) {
+                    try {
+                        monitor.wait(waitTime);
+                    } catch (InterruptedException e) {
+                        log.info("Interrupted while waiting for the {} lock on {}", lockType.toLowerCase(), action);
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                retries++;
+            } while (waitMillis == 0 || System.currentTimeMillis() < endTime);
+        }
+        recordLockWait(action, isLocked, retries, System.currentTimeMillis() - startTime);
+        return isLocked;
+    }
+
+    protected Object getLockMonitor(String action) {
+        Object monitor = lockMonitors.get(action);
+        if (monitor == null) {
+            monitor = new Object();
+            Object existing = lockMonitors.putIfAbsent(action, monitor);
+            if (existing != null) {
+                monitor = existing;
             }
-            if (isLocked) {
-                break;
+        }
+        return monitor;
+    }
+
+    protected void notifyLockWaiters(String action) {
+        Object monitor = lockMonitors.get(action);
+        if (monitor != null) {
+            synchronized (monitor) {
+                monitor.notifyAll();
             }
-            AppUtils.sleep(sleepMillis);
-        } while (waitMillis == 0 || System.currentTimeMillis() < endTime);
-        return isLocked;
+        }
+    }
+
+    protected void recordLockWait(String action, boolean acquired, long retries, long waitMillis) {
+        LockWaitStats stats = lockWaitStats.get(action);
+        if (stats == null) {
+            stats = new LockWaitStats(action);
+            LockWaitStats existing = lockWaitStats.putIfAbsent(action, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        stats.record(acquired, retries, waitMillis);
+        if (retries > 0) {
+            log.debug("Waited {} ms and {} retries for the lock on {}", new Object[] { waitMillis, retries, action });
+        }
+    }
+
+    public Map<String, LockWaitStats> getLockWaitStats() {
+        return new HashMap<String, LockWaitStats>(lockWaitStats);
     }
 
     public Map<String, Lock> findLocks() {
@@ -375,6 +464,14 @@ public class ClusterService extends AbstractService implements IClusterService {
     }
 
     protected boolean unlockShared(final String action) {
+        try {
+            return releaseShared(action);
+        } finally {
+            notifyLockWaiters(action);
+        }
+    }
+
+    protected boolean releaseShared(final String action) {
         if (isClusteringEnabled()) {
             return sqlTemplate.update(getSql("releaseSharedLockSql"), new Object[] {
                     action, TYPE_SHARED }) == 1;
@@ -404,6 +501,14 @@ public class ClusterService extends AbstractService implements IClusterService {
     }
 
     protected boolean unlockExclusive(final String action) {
+        try {
+            return releaseExclusive(action);
+        } finally {
+            notifyLockWaiters(action);
+        }
+    }
+
+    protected boolean releaseExclusive(final String action) {
         if (isClusteringEnabled()) {
             return sqlTemplate.update(getSql("releaseExclusiveLockSql"), new Object[] {
                     action, TYPE_EXCLUSIVE }) == 1;
@@ -25,6 +25,7 @@ import static org.apache.commons.lang.StringUtils.isNotBlank;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Writer;
 import java.sql.SQLException;
 import java.sql.Types;
@@ -36,10 +37,12 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -64,6 +67,8 @@ import org.jumpmind.db.sql.ISqlReadCursor;
 import org.jumpmind.db.sql.ISqlRowMapper;
 import org.jumpmind.db.sql.ISqlTransaction;
 import org.jumpmind.db.sql.Row;
+import org.jumpmind.db.sql.mapper.RowMapper;
+import org.jumpmind.exception.IoException;
 import org.jumpmind.symmetric.AbstractSymmetricEngine;
 import org.jumpmind.symmetric.ISymmetricEngine;
 import org.jumpmind.symmetric.SymmetricException;
@@ -86,8 +91,13 @@ import org.jumpmind.symmetric.io.data.reader.ExtractDataReader;
 import org.jumpmind.symmetric.io.data.reader.IExtractDataReaderSource;
 import org.jumpmind.symmetric.io.data.reader.ProtocolDataReader;
 import org.jumpmind.symmetric.io.data.reader.SimpleStagingDataReader;
+import org.jumpmind.symmetric.io.data.transform.BshColumnTransform;
+import org.jumpmind.symmetric.io.data.transform.JavaColumnTransform;
+import org.jumpmind.symmetric.io.data.transform.LookupColumnTransform;
+import org.jumpmind.symmetric.io.data.transform.TransformColumn;
 import org.jumpmind.symmetric.io.data.transform.TransformPoint;
 import org.jumpmind.symmetric.io.data.transform.TransformTable;
+import org.jumpmind.symmetric.io.data.transform.VariableColumnTransform;
 import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
 import org.jumpmind.symmetric.io.data.writer.IProtocolDataWriterListener;
 import org.jumpmind.symmetric.io.data.writer.ProtocolDataWriter;
@@ -138,6 +148,7 @@ import org.jumpmind.symmetric.service.ITransformService;
 import org.jumpmind.symmetric.service.ITriggerRouterService;
 import org.jumpmind.symmetric.service.impl.TransformService.TransformTableNodeGroupLink;
 import org.jumpmind.symmetric.statistic.IStatisticManager;
+import org.jumpmind.symmetric.statistic.StatisticConstants;
 import org.jumpmind.symmetric.transport.IOutgoingTransport;
 import org.jumpmind.symmetric.transport.TransportUtils;
 import org.jumpmind.symmetric.util.SymmetricUtils;
@@ -150,6 +161,10 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
         INodeCommunicationExecutor {
 
     final static long MS_PASSED_BEFORE_BATCH_REQUERIED = 5000;
+
+    final static int MAX_SHARED_BATCHES = 1000;
+
+    final static int MAX_SHARED_BATCH_KEYS = 10000;
         
     protected enum ExtractMode { FOR_SYM_CLIENT, FOR_PAYLOAD_CLIENT, EXTRACT_ONLY };
 
@@ -179,6 +194,32 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
 
     private Map<String, Semaphore> locks = new HashMap<String, Semaphore>();
 
+    private Map<String, SharedExtract> sharedExtracts = new HashMap<String, SharedExtract>();
+
+    private Map<String, SharedBatch> sharedBatches = new LinkedHashMap<String, SharedBatch>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SharedBatch> eldest) {
+            return size() > MAX_SHARED_BATCHES;
+        }
+    };
+
+    private Map<Long, String> sharedBatchKeys = new LinkedHashMap<Long, String>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > MAX_SHARED_BATCH_KEYS;
+        }
+    };
+
+    private Map<String, Map<String, ExtractedTableRows>> configurationExtractCache = new ConcurrentHashMap<String, Map<String, ExtractedTableRows>>();
+
+    private volatile long configurationExtractCacheTime;
+
+    private volatile long configurationExtractParameterTime;
+
     public DataExtractorService(ISymmetricEngine engine) {
         super(engine.getParameterService(), engine.getSymmetricDialect());
         this.outgoingBatchService = engine.getOutgoingBatchService();
@@ -333,7 +374,8 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
                 }
             }
 
-            SelectFromTableSource source = new SelectFromTableSource(batch, initialLoadEvents);
+            ConfigurationExtractSource source = new ConfigurationExtractSource(batch,
+                    initialLoadEvents, getConfigurationExtractCache(targetNode));
             ExtractDataReader dataReader = new ExtractDataReader(
                     this.symmetricDialect.getPlatform(), source);
 
@@ -353,6 +395,56 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
         }
     }
 
+    /**
+     * The configuration that is extracted for registration is the same for
+     * nodes in the same node group that run the same version, except for the
+     * tables that are routed by node. Rows of the other tables are cached
+     * under those attributes so that registering many nodes at once does not
+     * select the same configuration over and over. The cache is flushed when
+     * the parameters are read again, because they are part of the
+     * configuration.
+     * 
+     * @return null when clustered or when configuration is not synchronized
+     *         automatically, because the cache is only flushed when this node
+     *         routes a configuration change
+     */
+    protected Map<String, ExtractedTableRows> getConfigurationExtractCache(Node targetNode) {
+        if (parameterService.is(ParameterConstants.CLUSTER_LOCKING_ENABLED)
+                || !parameterService.is(ParameterConstants.AUTO_SYNC_CONFIGURATION)) {
+            return null;
+        }
+        long cacheTimeout = parameterService
+                .getLong(ParameterConstants.CACHE_TIMEOUT_CONFIGURATION_EXTRACT_IN_MS);
+        long parameterTime = parameterService.getLastTimeParameterWereCached().getTime();
+        if (System.currentTimeMillis() - configurationExtractCacheTime > cacheTimeout
+                || parameterTime != configurationExtractParameterTime) {
+            flushConfigurationExtractCache();
+            configurationExtractParameterTime = parameterTime;
+        }
+        String key = targetNode.getNodeGroupId() + "-" + targetNode.getSymmetricVersion() + "-"
+                + targetNode.getDeploymentType();
+        Map<String, ExtractedTableRows> cache = configurationExtractCache.get(key);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<String, ExtractedTableRows>();
+            configurationExtractCache.put(key, cache);
+        }
+        return cache;
+    }
+
+    public void flushConfigurationExtractCache() {
+        configurationExtractCache.clear();
+        configurationExtractCacheTime = System.currentTimeMillis();
+    }
+
+    protected boolean isRoutedByNode(String sourceTableName) {
+        String tablePrefix = parameterService.getTablePrefix();
+        return TableConstants.getTableName(tablePrefix, TableConstants.SYM_NODE).equalsIgnoreCase(sourceTableName)
+                || TableConstants.getTableName(tablePrefix, TableConstants.SYM_NODE_SECURITY).equalsIgnoreCase(sourceTableName)
+                || TableConstants.getTableName(tablePrefix, TableConstants.SYM_NODE_HOST).equalsIgnoreCase(sourceTableName)
+                || TableConstants.getTableName(tablePrefix, TableConstants.SYM_MONITOR_EVENT).equalsIgnoreCase(sourceTableName)
+                || TableConstants.getTableName(tablePrefix, TableConstants.SYM_TABLE_RELOAD_REQUEST).equalsIgnoreCase(sourceTableName);
+    }
+
     private void addPurgeCriteriaToConfigurationTables(String sourceTableName, StringBuilder sql) {
         if ((TableConstants
                 .getTableName(parameterService.getTablePrefix(), TableConstants.SYM_NODE)
@@ -834,33 +926,50 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
                     }
 
                     synchronized (lock) {
-                        if (!isPreviouslyExtracted(currentBatch)) {
+                        boolean previouslyExtracted = isPreviouslyExtracted(currentBatch);
+                        String sharedBatchKey = !previouslyExtracted && useStagingDataWriter ? getSharedBatchKey(
+                                sourceNode, targetNode, currentBatch) : null;
+                        if (sharedBatchKey != null && copySharedBatch(sharedBatchKey, currentBatch)) {
                             currentBatch.setExtractCount(currentBatch.getExtractCount() + 1);
-                            if (updateBatchStatistics) {
-                                changeBatchStatus(Status.QY, currentBatch, mode);
-                            }
-                            currentBatch.resetStats();
-                            IDataReader dataReader = new ExtractDataReader(
-                                    symmetricDialect.getPlatform(), new SelectFromSymDataSource(
-                                            currentBatch, sourceNode, targetNode, processInfo));
-                            DataContext ctx = new DataContext();
-                            ctx.put(Constants.DATA_CONTEXT_TARGET_NODE, targetNode);
-                            ctx.put(Constants.DATA_CONTEXT_TARGET_NODE_ID, targetNode.getNodeId());
-                            ctx.put(Constants.DATA_CONTEXT_TARGET_NODE_EXTERNAL_ID, targetNode.getExternalId());
-                            ctx.put(Constants.DATA_CONTEXT_TARGET_NODE_GROUP_ID, targetNode.getNodeGroupId());
-                            ctx.put(Constants.DATA_CONTEXT_TARGET_NODE, targetNode);
-                            ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE, sourceNode);
-                            ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE_ID, sourceNode.getNodeId());
-                            ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE_EXTERNAL_ID, sourceNode.getExternalId());
-                            ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE_GROUP_ID, sourceNode.getNodeGroupId());
-                            
-                            new DataProcessor(dataReader, transformExtractWriter, "extract").process(ctx);
                             extractTimeInMs = System.currentTimeMillis() - ts;
-                            Statistics stats = transformExtractWriter.getNestedWriter()
-                                    .getStatistics().values().iterator().next();
-                            transformTimeInMs = stats.get(DataWriterStatisticConstants.TRANSFORMMILLIS);
-                            extractTimeInMs = extractTimeInMs - transformTimeInMs;
-                            byteCount = stats.get(DataWriterStatisticConstants.BYTECOUNT);
+                            byteCount = currentBatch.getByteCount();
+                        } else if (!previouslyExtracted) {
+                            SharedBatch sharedBatch = sharedBatchKey != null ? startSharedBatch(
+                                    sharedBatchKey, currentBatch) : null;
+                            boolean extracted = false;
+                            try {
+                                currentBatch.setExtractCount(currentBatch.getExtractCount() + 1);
+                                if (updateBatchStatistics) {
+                                    changeBatchStatus(Status.QY, currentBatch, mode);
+                                }
+                                currentBatch.resetStats();
+                                IDataReader dataReader = new ExtractDataReader(
+                                        symmetricDialect.getPlatform(), new SelectFromSymDataSource(
+                                                currentBatch, sourceNode, targetNode, processInfo));
+                                DataContext ctx = new DataContext();
+                                ctx.put(Constants.DATA_CONTEXT_TARGET_NODE, targetNode);
+                                ctx.put(Constants.DATA_CONTEXT_TARGET_NODE_ID, targetNode.getNodeId());
+                                ctx.put(Constants.DATA_CONTEXT_TARGET_NODE_EXTERNAL_ID, targetNode.getExternalId());
+                                ctx.put(Constants.DATA_CONTEXT_TARGET_NODE_GROUP_ID, targetNode.getNodeGroupId());
+                                ctx.put(Constants.DATA_CONTEXT_TARGET_NODE, targetNode);
+                                ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE, sourceNode);
+                                ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE_ID, sourceNode.getNodeId());
+                                ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE_EXTERNAL_ID, sourceNode.getExternalId());
+                                ctx.put(Constants.DATA_CONTEXT_SOURCE_NODE_GROUP_ID, sourceNode.getNodeGroupId());
+                            
+                                new DataProcessor(dataReader, transformExtractWriter, "extract").process(ctx);
+                                extractTimeInMs = System.currentTimeMillis() - ts;
+                                Statistics stats = transformExtractWriter.getNestedWriter()
+                                        .getStatistics().values().iterator().next();
+                                transformTimeInMs = stats.get(DataWriterStatisticConstants.TRANSFORMMILLIS);
+                                extractTimeInMs = extractTimeInMs - transformTimeInMs;
+                                byteCount = stats.get(DataWriterStatisticConstants.BYTECOUNT);
+                                extracted = true;
+                            } finally {
+                                if (sharedBatch != null) {
+                                    finishSharedBatch(sharedBatch, extracted, currentBatch, byteCount);
+                                }
+                            }
                         }
                     }
                 } catch (RuntimeException ex) {
@@ -899,6 +1008,8 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
                 // "re-queried"
                 if (extractTimeInMs > 0) {
                     currentBatch.setExtractMillis(extractTimeInMs);
+                    statisticManager.addLatency(StatisticConstants.LATENCY_EXTRACT,
+                            currentBatch.getChannelId(), currentBatch.getNodeId(), extractTimeInMs);
                 }
 
                 if (byteCount > 0) {
@@ -1009,6 +1120,10 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
                         currentBatch.getNodeBatchId()));
             }
 
+            statisticManager.addLatency(StatisticConstants.LATENCY_SEND,
+                    currentBatch.getChannelId(), currentBatch.getNodeId(),
+                    System.currentTimeMillis() - ts);
+
             currentBatch = requeryIfEnoughTimeHasPassed(ts, currentBatch);
 
         }
@@ -1216,6 +1331,7 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
      * in the background.
      */
     public void execute(NodeCommunication nodeCommunication, RemoteNodeStatus status) {
+        purgeSharedExtracts();
         List<ExtractRequest> requests = getExtractRequestsForNode(nodeCommunication);
         long ts = System.currentTimeMillis();
         /*
@@ -1261,10 +1377,24 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
                      * will split it across the N batches when writing it
                      */
                     processInfo.setCurrentLoadId(batches.get(0).getLoadId());
-                    extractOutgoingBatch(processInfo, targetNode,
-                            new MultiBatchStagingWriter(identity.getNodeId(), stagingManager,
-                                    batches, channel.getMaxBatchSize(), processInfo), batches.get(0), false,
-                            false, ExtractMode.FOR_SYM_CLIENT);
+                    String sharedExtractKey = getSharedExtractKey(identity, targetNode, request, batches);
+                    if (sharedExtractKey == null
+                            || !copySharedExtract(sharedExtractKey, request, batches, processInfo)) {
+                        SharedExtract sharedExtract = sharedExtractKey != null ? startSharedExtract(
+                                sharedExtractKey, request, batches) : null;
+                        boolean extracted = false;
+                        try {
+                            extractOutgoingBatch(processInfo, targetNode,
+                                    new MultiBatchStagingWriter(identity.getNodeId(), stagingManager,
+                                            batches, channel.getMaxBatchSize(), processInfo), batches.get(0), false,
+                                    false, ExtractMode.FOR_SYM_CLIENT);
+                            extracted = true;
+                        } finally {
+                            if (sharedExtract != null) {
+                                finishSharedExtract(sharedExtract, extracted);
+                            }
+                        }
+                    }
 
                 } else {
                     log.info("Batches already had an OK status for request {}, batches {} to {}.  Not extracting", new Object[] { request.getRequestId(), request.getStartBatchId(),
@@ -1341,6 +1471,401 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
         }
     }
 
+    /**
+     * Returns a key that identifies the staged output of an extract request
+     * when it is the same for every node in the target node group, or null
+     * when the output depends on the target node.
+     */
+    protected String getSharedExtractKey(Node identity, Node targetNode, ExtractRequest request,
+            List<OutgoingBatch> batches) {
+        TriggerRouter triggerRouter = request.getTriggerRouter();
+        if (targetNode == null || triggerRouter == null || batches.size() == 0
+                || !parameterService.is(ParameterConstants.INITIAL_LOAD_EXTRACT_SHARE_ENABLED, true)) {
+            return null;
+        }
+
+        String routerType = triggerRouter.getRouter().getRouterType();
+        if (StringUtils.isNotBlank(routerType) && !"default".equals(routerType)) {
+            return null;
+        }
+
+        OutgoingBatch firstBatch = batches.get(0);
+        Data data = null;
+        ISqlReadCursor<Data> cursor = dataService.selectDataFor(firstBatch.getBatchId(),
+                firstBatch.getChannelId());
+        try {
+            data = cursor.next();
+        } finally {
+            cursor.close();
+        }
+        if (data == null || data.getDataEventType() != DataEventType.RELOAD
+                || data.getTriggerHistory() == null) {
+            return null;
+        }
+
+        String initialLoadSelect = StringUtils.isNotBlank(data.getRowData()) ? data.getRowData()
+                : triggerRouter.getInitialLoadSelect();
+        if (initialLoadSelect != null && initialLoadSelect.contains("$(")) {
+            return null;
+        }
+
+        TriggerHistory triggerHistory = data.getTriggerHistory();
+        if (hasNodeSpecificTransforms(identity, targetNode, triggerHistory.getSourceTableName())) {
+            return null;
+        }
+
+        return StringUtils.join(new Object[] { triggerRouter.getTrigger().getTriggerId(),
+                triggerRouter.getRouter().getRouterId(), targetNode.getNodeGroupId(),
+                firstBatch.getChannelId(), batches.size(),
+                triggerHistory.getTriggerHistoryId(), initialLoadSelect }, "|");
+    }
+
+    /**
+     * @param sourceTableName
+     *            the table to check the extract transforms of, or null to
+     *            check the extract transforms of all tables
+     * @return true if an extract transform on the link to the target node
+     *         uses a column transform whose output may depend on the target
+     *         node
+     */
+    protected boolean hasNodeSpecificTransforms(Node identity, Node targetNode,
+            String sourceTableName) {
+        List<TransformTableNodeGroupLink> transforms = transformService.findTransformsFor(
+                new NodeGroupLink(identity.getNodeGroupId(), targetNode.getNodeGroupId()),
+                TransformPoint.EXTRACT);
+        if (transforms != null) {
+            for (TransformTableNodeGroupLink transform : transforms) {
+                if (sourceTableName == null
+                        || StringUtils.equalsIgnoreCase(transform.getSourceTableName(),
+                                sourceTableName)) {
+                    for (TransformColumn column : transform.getTransformColumns()) {
+                        String type = column.getTransformType();
+                        if (BshColumnTransform.NAME.equals(type)
+                                || JavaColumnTransform.NAME.equals(type)
+                                || VariableColumnTransform.NAME.equals(type)
+                                || LookupColumnTransform.NAME.equals(type)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers an extract that other nodes may copy. Only requests that are
+     * already queued when the select starts can use it, so each of them
+     * still gets a snapshot taken after its load was queued.
+     */
+    protected SharedExtract startSharedExtract(String key, ExtractRequest request,
+            List<OutgoingBatch> batches) {
+        TriggerRouter triggerRouter = request.getTriggerRouter();
+        List<Long> requestIds = sqlTemplate.query(
+                getSql("selectExtractRequestIdsForTriggerRouterSql"), new ISqlRowMapper<Long>() {
+                    public Long mapRow(Row row) {
+                        return row.getLong("request_id");
+                    }
+                }, triggerRouter.getTrigger().getTriggerId(), triggerRouter.getRouter()
+                        .getRouterId(), ExtractStatus.NE.name(), request.getNodeId());
+        SharedExtract sharedExtract = new SharedExtract(key, request.getRequestId(), batches,
+                new HashSet<Long>(requestIds));
+        synchronized (sharedExtracts) {
+            purgeSharedExtracts();
+            if (requestIds.size() > 0) {
+                sharedExtracts.put(key, sharedExtract);
+            }
+        }
+        return sharedExtract;
+    }
+
+    protected void finishSharedExtract(SharedExtract sharedExtract, boolean extracted) {
+        if (!extracted) {
+            synchronized (sharedExtracts) {
+                if (sharedExtracts.get(sharedExtract.key) == sharedExtract) {
+                    sharedExtracts.remove(sharedExtract.key);
+                }
+            }
+        }
+        sharedExtract.finish(extracted);
+    }
+
+    /**
+     * Drops shared extracts that finished longer ago than the share timeout.
+     * Requests that were expected to copy them but have not, because they
+     * were cancelled or picked up by another server, would otherwise keep
+     * them registered forever.
+     */
+    protected void purgeSharedExtracts() {
+        long timeout = parameterService.getLong(ParameterConstants.INITIAL_LOAD_EXTRACT_SHARE_TIMEOUT_MS, 600000);
+        synchronized (sharedExtracts) {
+            Iterator<SharedExtract> it = sharedExtracts.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isExpired(timeout)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the staged batches of a shared extract to the batches of this
+     * request, waiting for the shared extract to finish if it is still
+     * running.
+     * 
+     * @return false if there was no shared extract to copy from, in which
+     *         case the request needs to be extracted
+     */
+    protected boolean copySharedExtract(String key, ExtractRequest request,
+            List<OutgoingBatch> batches, ProcessInfo processInfo) {
+        SharedExtract sharedExtract = null;
+        synchronized (sharedExtracts) {
+            purgeSharedExtracts();
+            sharedExtract = sharedExtracts.get(key);
+            if (sharedExtract == null || !sharedExtract.requestIds.remove(request.getRequestId())) {
+                return false;
+            }
+            if (sharedExtract.requestIds.size() == 0) {
+                sharedExtracts.remove(key);
+            }
+        }
+
+        long timeout = parameterService.getLong(ParameterConstants.INITIAL_LOAD_EXTRACT_SHARE_TIMEOUT_MS, 600000);
+        if (!sharedExtract.await(timeout)) {
+            log.info("Extract request {} did not finish sharing its batches in time.  Extracting request {}",
+                    sharedExtract.requestId, request.getRequestId());
+            return false;
+        }
+
+        long ts = System.currentTimeMillis();
+        List<IStagedResource> sources = new ArrayList<IStagedResource>(batches.size());
+        for (OutgoingBatch sourceBatch : sharedExtract.batches) {
+            IStagedResource source = getStagedResource(sourceBatch);
+            if (source != null && source.exists()) {
+                sources.add(source);
+            } else if (sourceBatch.getDataEventCount() > 0) {
+                log.info("The staged batch {} for extract request {} is no longer available.  Extracting request {}",
+                        new Object[] { sourceBatch.getNodeBatchId(), sharedExtract.requestId,
+                                request.getRequestId() });
+                return false;
+            } else {
+                sources.add(null);
+            }
+        }
+
+        List<IStagedResource> targets = new ArrayList<IStagedResource>(batches.size());
+        try {
+            long memoryThresholdInBytes = parameterService
+                    .getLong(ParameterConstants.STREAM_TO_FILE_THRESHOLD);
+            for (int i = 0; i < batches.size(); i++) {
+                OutgoingBatch sourceBatch = sharedExtract.batches.get(i);
+                OutgoingBatch targetBatch = batches.get(i);
+                IStagedResource source = sources.get(i);
+                targetBatch.setDataEventCount(sourceBatch.getDataEventCount());
+                targetBatch.setInsertEventCount(sourceBatch.getInsertEventCount());
+                targetBatch.setByteCount(sourceBatch.getByteCount());
+                if (source != null) {
+                    IStagedResource target = stagingManager.create(source.isFileResource() ? 0
+                            : memoryThresholdInBytes, Constants.STAGING_CATEGORY_OUTGOING,
+                            targetBatch.getStagedLocation(), targetBatch.getBatchId());
+                    targets.add(target);
+                    copyStagedBatch(source, sourceBatch.getBatchId(), target,
+                            targetBatch.getBatchId());
+                    target.setState(State.READY);
+                    processInfo.incrementBatchCount();
+                }
+                targetBatch.setExtractMillis(System.currentTimeMillis() - ts);
+                ts = System.currentTimeMillis();
+            }
+        } catch (RuntimeException ex) {
+            for (IStagedResource target : targets) {
+                target.close();
+                target.delete();
+            }
+            throw ex;
+        }
+
+        log.info("Copied {} staged batches for extract request {} from extract request {}",
+                new Object[] { targets.size(), request.getRequestId(), sharedExtract.requestId });
+        return true;
+    }
+
+    /**
+     * Copies a staged batch character for character, replacing the batch id
+     * on the batch and commit lines.
+     */
+    protected void copyStagedBatch(IStagedResource source, long sourceBatchId,
+            IStagedResource target, long targetBatchId) {
+        String sourceBatchLine = CsvConstants.BATCH + "," + sourceBatchId;
+        String sourceCommitLine = CsvConstants.COMMIT + "," + sourceBatchId;
+        Reader reader = source.getReader();
+        Writer writer = target.getWriter();
+        try {
+            char[] buffer = new char[8192];
+            StringBuilder line = new StringBuilder();
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                int start = 0;
+                for (int i = 0; i < count; i++) {
+                    if (buffer[i] == '\n') {
+                        line.append(buffer, start, i + 1 - start);
+                        writeStagedLine(writer, line, sourceBatchLine, sourceCommitLine, targetBatchId);
+                        line.setLength(0);
+                        start = i + 1;
+                    }
+                }
+                line.append(buffer, start, count - start);
+            }
+            writeStagedLine(writer, line, sourceBatchLine, sourceCommitLine, targetBatchId);
+        } catch (IOException ex) {
+            throw new IoException(ex);
+        } finally {
+            source.close();
+            target.close();
+        }
+    }
+
+    private void writeStagedLine(Writer writer, StringBuilder line, String sourceBatchLine,
+            String sourceCommitLine, long targetBatchId) throws IOException {
+        int length = line.length();
+        while (length > 0 && (line.charAt(length - 1) == '\n' || line.charAt(length - 1) == '\r')) {
+            length--;
+        }
+        if (length == sourceBatchLine.length() && line.indexOf(sourceBatchLine) == 0) {
+            line.replace(0, length, CsvConstants.BATCH + "," + targetBatchId);
+        } else if (length == sourceCommitLine.length() && line.indexOf(sourceCommitLine) == 0) {
+            line.replace(0, length, CsvConstants.COMMIT + "," + targetBatchId);
+        }
+        writer.append(line);
+    }
+
+    public void addSharedBatchKeys(Map<Long, String> keysByBatchId) {
+        if (parameterService.is(ParameterConstants.EXTRACT_SHARE_IDENTICAL_BATCHES_ENABLED)) {
+            synchronized (sharedBatchKeys) {
+                sharedBatchKeys.putAll(keysByBatchId);
+            }
+        }
+    }
+
+    /**
+     * Returns a key that identifies the content of a change batch, so that the
+     * same data routed to other nodes of the node group can be copied from one
+     * staged batch instead of being selected and written for every node.
+     * Returns null when the content may depend on the target node, or when
+     * routing did not find the same content in a batch for another node.
+     */
+    protected String getSharedBatchKey(Node sourceNode, Node targetNode, OutgoingBatch batch) {
+        if (batch.isCommonFlag() || batch.getStatus() == Status.IG
+                || !parameterService.is(ParameterConstants.EXTRACT_SHARE_IDENTICAL_BATCHES_ENABLED)) {
+            return null;
+        }
+
+        String contentKey = null;
+        synchronized (sharedBatchKeys) {
+            contentKey = sharedBatchKeys.get(batch.getBatchId());
+        }
+        if (contentKey == null || hasNodeSpecificTransforms(sourceNode, targetNode, null)) {
+            return null;
+        }
+
+        return StringUtils.join(new Object[] { contentKey, targetNode.getNodeGroupId(),
+                targetNode.getSymmetricVersion() }, "|");
+    }
+
+    /**
+     * Registers a batch that batches with the same key for other nodes may
+     * copy once it has been extracted.
+     */
+    protected SharedBatch startSharedBatch(String key, OutgoingBatch batch) {
+        SharedBatch sharedBatch = new SharedBatch(key, batch.getBatchId(),
+                batch.getStagedLocation());
+        synchronized (sharedBatches) {
+            SharedBatch existing = sharedBatches.get(key);
+            if (existing == null || existing.finished) {
+                sharedBatches.put(key, sharedBatch);
+            }
+        }
+        return sharedBatch;
+    }
+
+    protected void finishSharedBatch(SharedBatch sharedBatch, boolean extracted,
+            OutgoingBatch batch, long byteCount) {
+        if (extracted) {
+            sharedBatch.dataEventCount = batch.getDataEventCount();
+            sharedBatch.insertEventCount = batch.getInsertEventCount();
+            sharedBatch.byteCount = byteCount;
+        } else {
+            removeSharedBatch(sharedBatch);
+        }
+        sharedBatch.finish(extracted);
+    }
+
+    protected void removeSharedBatch(SharedBatch sharedBatch) {
+        synchronized (sharedBatches) {
+            if (sharedBatches.get(sharedBatch.key) == sharedBatch) {
+                sharedBatches.remove(sharedBatch.key);
+            }
+        }
+    }
+
+    /**
+     * Copies the staged batch of an identical batch extracted for another
+     * node, waiting for it to finish if it is still being extracted.
+     * 
+     * @return false if there was no staged batch to copy from, in which case
+     *         the batch needs to be extracted
+     */
+    protected boolean copySharedBatch(String key, OutgoingBatch targetBatch) {
+        SharedBatch sharedBatch = null;
+        synchronized (sharedBatches) {
+            sharedBatch = sharedBatches.get(key);
+        }
+        if (sharedBatch == null || sharedBatch.batchId == targetBatch.getBatchId()) {
+            return false;
+        }
+        long timeout = parameterService.getLong(
+                ParameterConstants.EXTRACT_SHARE_IDENTICAL_BATCHES_TIMEOUT_MS, 60000);
+        if (!sharedBatch.await(timeout)) {
+            if (!sharedBatch.finished) {
+                log.info("Batch {} did not finish extracting in time.  Extracting batch {} instead of copying it",
+                        sharedBatch.batchId, targetBatch.getNodeBatchId());
+            }
+            return false;
+        }
+
+        IStagedResource source = stagingManager.find(Constants.STAGING_CATEGORY_OUTGOING,
+                sharedBatch.stagedLocation, sharedBatch.batchId);
+        if (source == null || !source.exists() || source.getState() == State.CREATE) {
+            removeSharedBatch(sharedBatch);
+            return false;
+        }
+
+        long memoryThresholdInBytes = parameterService
+                .getLong(ParameterConstants.STREAM_TO_FILE_THRESHOLD);
+        IStagedResource target = stagingManager.create(source.isFileResource() ? 0
+                : memoryThresholdInBytes, Constants.STAGING_CATEGORY_OUTGOING,
+                targetBatch.getStagedLocation(), targetBatch.getBatchId());
+        try {
+            copyStagedBatch(source, sharedBatch.batchId, target, targetBatch.getBatchId());
+        } catch (RuntimeException ex) {
+            log.info("Could not copy the staged batch {} for batch {}.  Extracting it instead.  {}",
+                    new Object[] { sharedBatch.batchId, targetBatch.getNodeBatchId(),
+                            getRootMessage(ex) });
+            target.close();
+            target.delete();
+            removeSharedBatch(sharedBatch);
+            return false;
+        }
+        target.setState(State.READY);
+
+        targetBatch.setDataEventCount(sharedBatch.dataEventCount);
+        targetBatch.setInsertEventCount(sharedBatch.insertEventCount);
+        targetBatch.setByteCount(sharedBatch.byteCount);
+        log.debug("Copied the staged batch {} for batch {}", sharedBatch.batchId,
+                targetBatch.getNodeBatchId());
+        return true;
+    }
+
     class ExtractRequestMapper implements ISqlRowMapper<ExtractRequest> {
         public ExtractRequest mapRow(Row row) {
             ExtractRequest request = new ExtractRequest();
@@ -1492,6 +2017,21 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
             this.inError = inError;
             if (this.currentDataWriter != null) {
                 this.currentDataWriter.end(this.batch, inError);
+                
+                /*
+                 * The number of batches is planned from an estimate of the
+                 * rows, so stage any batches that were not needed as empty
+                 * batches instead of leaving them to be extracted again
+                 */
+                while (!inError && this.batches.size() > 0) {
+                    this.currentDataWriter.close();
+                    checkSend();
+                    startBatch();
+                    this.currentDataWriter.end(this.batch, false);
+                    Statistics stats = this.currentDataWriter.getStatistics().get(this.batch);
+                    this.outgoingBatch.setByteCount(stats.get(DataWriterStatisticConstants.BYTECOUNT));
+                    this.outgoingBatch.setExtractMillis(System.currentTimeMillis() - this.batch.getStartTime().getTime());
+                }
             }
         }
         
@@ -1516,6 +2056,11 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
         }
 
         protected void startNewBatch() {
+            startBatch();
+            this.currentDataWriter.start(table);
+        }
+
+        protected void startBatch() {
             this.nextBatch();
             long memoryThresholdInBytes = parameterService
                     .getLong(ParameterConstants.STREAM_TO_FILE_THRESHOLD);            
@@ -1528,12 +2073,116 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
             this.currentDataWriter.open(context);
             this.currentDataWriter.start(batch);
             processInfo.incrementBatchCount();
-            
-            this.currentDataWriter.start(table);
         }
 
     }
 
+    /**
+     * The batches of an extract request that the same request for other nodes
+     * can copy instead of selecting the table again.
+     */
+    class SharedExtract {
+
+        String key;
+
+        long requestId;
+
+        List<OutgoingBatch> batches;
+
+        Set<Long> requestIds;
+
+        boolean finished;
+
+        boolean extracted;
+
+        long finishTime;
+
+        SharedExtract(String key, long requestId, List<OutgoingBatch> batches, Set<Long> requestIds) {
+            this.key = key;
+            this.requestId = requestId;
+            this.batches = batches;
+            this.requestIds = requestIds;
+        }
+
+        synchronized void finish(boolean extracted) {
+            this.extracted = extracted;
+            this.finished = true;
+            this.finishTime = System.currentTimeMillis();
+            notifyAll();
+        }
+
+        synchronized boolean isExpired(long timeout) {
+            return finished && System.currentTimeMillis() - finishTime >= timeout;
+        }
+
+        /**
+         * @return true if the extract finished successfully, false if it
+         *         failed or did not finish within the timeout
+         */
+        synchronized boolean await(long timeout) {
+            long endTime = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while (!finished && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    throw new org.jumpmind.exception.InterruptedException(e);
+                }
+                remaining = endTime - System.currentTimeMillis();
+            }
+            return finished && extracted;
+        }
+    }
+
+    /**
+     * A change batch whose staged copy other nodes with the same batch content
+     * can copy instead of selecting and writing the data again.
+     */
+    class SharedBatch {
+
+        String key;
+
+        long batchId;
+
+        String stagedLocation;
+
+        long dataEventCount;
+
+        long insertEventCount;
+
+        long byteCount;
+
+        volatile boolean finished;
+
+        boolean extracted;
+
+        SharedBatch(String key, long batchId, String stagedLocation) {
+            this.key = key;
+            this.batchId = batchId;
+            this.stagedLocation = stagedLocation;
+        }
+
+        synchronized void finish(boolean extracted) {
+            this.extracted = extracted;
+            this.finished = true;
+            notifyAll();
+        }
+
+        synchronized boolean await(long timeout) {
+            long endTime = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while (!finished && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    throw new org.jumpmind.exception.InterruptedException(e);
+                }
+                remaining = endTime - System.currentTimeMillis();
+            }
+            return finished && extracted;
+        }
+    }
+
     class ColumnsAccordingToTriggerHistory {
         Map<Integer, Table> cache = new HashMap<Integer, Table>();
 
@@ -1953,6 +2602,156 @@ public class DataExtractorService extends AbstractService implements IDataExtrac
 
     }
 
+    class ExtractedTableRows {
+
+        Table sourceTable;
+
+        Table targetTable;
+
+        List<ExtractedRow> rows = new ArrayList<ExtractedRow>();
+
+    }
+
+    /**
+     * A copy of the values of an extracted row. The writer may change the
+     * CsvData it is given, so each replay builds a new one.
+     */
+    class ExtractedRow {
+
+        final DataEventType dataEventType;
+
+        final String[] rowData;
+
+        ExtractedRow(CsvData data) {
+            this.dataEventType = data.getDataEventType();
+            this.rowData = data.getParsedData(CsvData.ROW_DATA).clone();
+        }
+
+        CsvData toCsvData() {
+            return new CsvData(dataEventType, rowData.clone());
+        }
+
+    }
+
+    /**
+     * Selects the configuration tables one at a time. Rows of tables that
+     * are not routed by node are read from, or recorded into, the
+     * configuration extract cache.
+     */
+    class ConfigurationExtractSource implements IExtractDataReaderSource {
+
+        private Batch batch;
+
+        private List<SelectFromTableEvent> selectFromTableEventsToSend;
+
+        private Map<String, ExtractedTableRows> cache;
+
+        private SelectFromTableSource currentSource;
+
+        private Iterator<ExtractedRow> cachedRows;
+
+        private ExtractedTableRows currentTableRows;
+
+        private ExtractedTableRows tableRowsToCache;
+
+        private String cacheKey;
+
+        private Table sourceTable;
+
+        private Table targetTable;
+
+        public ConfigurationExtractSource(Batch batch, List<SelectFromTableEvent> initialLoadEvents,
+                Map<String, ExtractedTableRows> cache) {
+            this.batch = batch;
+            this.selectFromTableEventsToSend = new ArrayList<SelectFromTableEvent>(initialLoadEvents);
+            this.cache = cache;
+        }
+
+        public Batch getBatch() {
+            return batch;
+        }
+
+        public Table getSourceTable() {
+            return sourceTable;
+        }
+
+        public Table getTargetTable() {
+            return targetTable;
+        }
+
+        public CsvData next() {
+            CsvData data = null;
+            while (data == null
+                    && (currentSource != null || cachedRows != null || selectFromTableEventsToSend.size() > 0)) {
+                if (currentSource == null && cachedRows == null) {
+                    startNextEvent(selectFromTableEventsToSend.remove(0));
+                }
+
+                if (cachedRows != null) {
+                    if (cachedRows.hasNext()) {
+                        data = cachedRows.next().toCsvData();
+                        sourceTable = currentTableRows.sourceTable;
+                        targetTable = currentTableRows.targetTable;
+                    } else {
+                        cachedRows = null;
+                    }
+                } else {
+                    data = currentSource.next();
+                    if (data != null) {
+                        sourceTable = currentSource.getSourceTable();
+                        targetTable = currentSource.getTargetTable();
+                        if (tableRowsToCache != null) {
+                            tableRowsToCache.sourceTable = sourceTable;
+                            tableRowsToCache.targetTable = targetTable;
+                            tableRowsToCache.rows.add(new ExtractedRow(data));
+                        }
+                    } else {
+                        currentSource.close();
+                        currentSource = null;
+                        if (tableRowsToCache != null) {
+                            cache.put(cacheKey, tableRowsToCache);
+                            tableRowsToCache = null;
+                        }
+                    }
+                }
+            }
+            return data;
+        }
+
+        protected void startNextEvent(SelectFromTableEvent event) {
+            cacheKey = null;
+            if (cache != null && !event.containsData()
+                    && !event.getTriggerRouter().getTrigger().isUseStreamLobs()
+                    && !isRoutedByNode(event.getTriggerHistory().getSourceTableName())) {
+                cacheKey = event.getTriggerRouter().getTriggerId() + "-"
+                        + event.getTriggerRouter().getRouterId();
+                currentTableRows = cache.get(cacheKey);
+                if (currentTableRows != null) {
+                    cachedRows = currentTableRows.rows.iterator();
+                    return;
+                }
+                tableRowsToCache = new ExtractedTableRows();
+            }
+            List<SelectFromTableEvent> events = new ArrayList<SelectFromTableEvent>(1);
+            events.add(event);
+            currentSource = new SelectFromTableSource(batch, events);
+        }
+
+        public boolean requiresLobsSelectedFromSource() {
+            return currentSource != null && currentSource.requiresLobsSelectedFromSource();
+        }
+
+        public void close() {
+            if (currentSource != null) {
+                currentSource.close();
+                currentSource = null;
+            }
+            cachedRows = null;
+            tableRowsToCache = null;
+        }
+
+    }
+
     class SelectFromTableEvent {
 
         private TriggerRouter triggerRouter;
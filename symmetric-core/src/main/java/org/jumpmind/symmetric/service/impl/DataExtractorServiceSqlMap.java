@@ -35,6 +35,8 @@ public class DataExtractorServiceSqlMap extends AbstractSqlMap {
         
         putSql("selectExtractRequestForNodeSql", "select * from $(extract_request) where node_id=? and queue=? and status=? order by request_id");
         
+        putSql("selectExtractRequestIdsForTriggerRouterSql", "select request_id from $(extract_request) where trigger_id=? and router_id=? and status=? and node_id<>?");
+        
         putSql("insertExtractRequestSql", "insert into $(extract_request) (request_id, node_id, queue, status, start_batch_id, end_batch_id, trigger_id, router_id, last_update_time, create_time) values(?, ?, ?, ?, ?, ?, ?, ?, current_timestamp, current_timestamp)");
         
         putSql("updateExtractRequestStatus", "update $(extract_request) set status=? where request_id=?");
@@ -121,6 +121,7 @@ import org.jumpmind.symmetric.service.RegistrationNotOpenException;
 import org.jumpmind.symmetric.service.RegistrationRequiredException;
 import org.jumpmind.symmetric.service.impl.TransformService.TransformTableNodeGroupLink;
 import org.jumpmind.symmetric.statistic.IStatisticManager;
+import org.jumpmind.symmetric.statistic.StatisticConstants;
 import org.jumpmind.symmetric.transport.AuthenticationException;
 import org.jumpmind.symmetric.transport.ConnectionRejectedException;
 import org.jumpmind.symmetric.transport.IIncomingTransport;
@@ -267,6 +268,10 @@ public class DataLoaderService extends AbstractService implements IDataLoaderSer
                 requestProperties.put(WebConstants.IGNORED_CHANNELS,
                         suspendIgnoreChannels.getIgnoreChannelsAsString());
                 requestProperties.put(WebConstants.THREAD_CHANNEL, status.getChannelId());
+                long longPollTimeout = parameterService.getLong(ParameterConstants.PULL_LONG_POLL_TIMEOUT_MS);
+                if (longPollTimeout > 0) {
+                    requestProperties.put(WebConstants.LONG_POLL_TIMEOUT, Long.toString(longPollTimeout));
+                }
                 transport = transportManager.getPullTransport(remote, local,
                         localSecurity.getNodePassword(), requestProperties,
                         parameterService.getRegistrationUrl());
@@ -528,8 +533,10 @@ public class DataLoaderService extends AbstractService implements IDataLoaderSer
                 processor.process(ctx);
             }
 
+            listener.flushBatchesToRecord();
         } catch (Throwable ex) {
             error = ex;
+            listener.flushBatchesToRecord();
             logAndRethrow(sourceNode, ex);
         } finally {
             transport.close();
@@ -992,6 +999,12 @@ public class DataLoaderService extends AbstractService implements IDataLoaderSer
 
         protected IncomingBatch currentBatch;
 
+        /*
+         * Batches that loaded OK whose status has not been written to the
+         * incoming_batch table yet
+         */
+        protected List<IncomingBatch> batchesToRecord = new ArrayList<IncomingBatch>();
+
         public void beforeBatchEnd(DataContext context) {
             enableSyncTriggers(context);
         }
@@ -1037,11 +1050,17 @@ public class DataLoaderService extends AbstractService implements IDataLoaderSer
                     this.currentBatch.getStatementCount());
             statisticManager.incrementDataBytesLoaded(this.currentBatch.getChannelId(),
                     this.currentBatch.getByteCount());
+            statisticManager.addLatency(StatisticConstants.LATENCY_NETWORK,
+                    this.currentBatch.getChannelId(), this.currentBatch.getNodeId(),
+                    this.currentBatch.getNetworkMillis());
+            statisticManager.addLatency(StatisticConstants.LATENCY_LOAD,
+                    this.currentBatch.getChannelId(), this.currentBatch.getNodeId(),
+                    this.currentBatch.getDatabaseMillis() + this.currentBatch.getFilterMillis());
             Status oldStatus = this.currentBatch.getStatus();
             try {
                 this.currentBatch.setStatus(Status.OK);
                 if (incomingBatchService.isRecordOkBatchesEnabled()) {
-                    incomingBatchService.updateIncomingBatch(this.currentBatch);
+                    recordBatch(this.currentBatch);
                 } else if (this.currentBatch.isRetry()) {
                     incomingBatchService.deleteIncomingBatch(this.currentBatch);
                 }
@@ -1051,6 +1070,37 @@ public class DataLoaderService extends AbstractService implements IDataLoaderSer
             }
         }
 
+        protected synchronized void recordBatch(IncomingBatch batch) {
+            batchesToRecord.add(batch);
+            if (batchesToRecord.size() >= parameterService.getInt(
+                    ParameterConstants.INCOMING_BATCH_RECORD_OK_FLUSH_SIZE, 100)) {
+                flushBatchesToRecord();
+            }
+        }
+
+        /**
+         * Write the held OK statuses. If they cannot be written, the batches
+         * are acknowledged as in error instead of OK, so the source node sends
+         * them again and they are loaded again as retries of loading batches.
+         */
+        public synchronized void flushBatchesToRecord() {
+            if (batchesToRecord.size() > 0) {
+                try {
+                    incomingBatchService.updateIncomingBatches(batchesToRecord);
+                } catch (RuntimeException ex) {
+                    log.error("Failed to record the status of {} batches that loaded.  They will be acknowledged as in error",
+                            batchesToRecord.size(), ex);
+                    for (IncomingBatch batch : batchesToRecord) {
+                        batch.setStatus(Status.ER);
+                        batch.setErrorFlag(true);
+                        batch.setSqlMessage(ex.getMessage());
+                    }
+                } finally {
+                    batchesToRecord.clear();
+                }
+            }
+        }
+
         protected void enableSyncTriggers(DataContext context) {
             try {
                 ISqlTransaction transaction = context.findTransaction();
@@ -1063,6 +1113,7 @@ public class DataLoaderService extends AbstractService implements IDataLoaderSer
         }
 
         public void batchInError(DataContext context, Throwable ex) {
+            flushBatchesToRecord();
             try {
                 if (this.currentBatch == null) {
                     /*
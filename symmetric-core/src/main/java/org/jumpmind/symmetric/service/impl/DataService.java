@@ -22,6 +22,7 @@ package org.jumpmind.symmetric.service.impl;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+import java.math.BigInteger;
 import java.sql.DataTruncation;
 import java.sql.Types;
 import java.util.ArrayList;
@@ -35,6 +36,7 @@ import java.util.Set;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
+import org.jumpmind.db.model.Column;
 import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.DatabaseInfo;
 import org.jumpmind.db.sql.ISqlReadCursor;
@@ -88,6 +90,8 @@ import org.jumpmind.util.FormatUtils;
  */
 public class DataService extends AbstractService implements IDataService {
 
+    private static final int RELOAD_ROW_COUNT_SAMPLES = 10;
+
     private ISymmetricEngine engine;
 
     private IExtensionService extensionService;
@@ -341,6 +345,15 @@ public class DataService extends AbstractService implements IDataService {
     
     public void insertReloadEvents(Node targetNode, boolean reverse, List<TableReloadRequest> reloadRequests, ProcessInfo processInfo) {
 
+        /*
+         * Size the load batches before taking the sync triggers lock because
+         * counting rows can take a long time on large tables
+         */
+        Map<String, Integer> reloadRowCounts = null;
+        if (parameterService.is(ParameterConstants.INITIAL_LOAD_USE_EXTRACT_JOB)) {
+            reloadRowCounts = planReloadRowCounts(targetNode, reloadRequests, processInfo);
+        }
+
         if (engine.getClusterService().lock(ClusterConstants.SYNCTRIGGERS)) {
             try {
                 synchronized (engine.getTriggerRouterService()) {
@@ -389,17 +402,7 @@ public class DataService extends AbstractService implements IDataService {
                         String createBy = reverse ? nodeSecurity.getRevInitialLoadCreateBy()
                                 : nodeSecurity.getInitialLoadCreateBy();
 
-                        List<TriggerHistory> triggerHistories = new ArrayList<TriggerHistory>();
-
-                        if (isFullLoad) {
-                            triggerHistories = triggerRouterService.getActiveTriggerHistories();
-                        }
-                        else {
-                            for (TableReloadRequest reloadRequest : reloadRequests) {
-                                triggerHistories.addAll(engine.getTriggerRouterService()
-                                        .getActiveTriggerHistories(new Trigger(reloadRequest.getTriggerId(), null)));
-                            }
-                        }
+                        List<TriggerHistory> triggerHistories = getReloadTriggerHistories(isFullLoad, reloadRequests);
                         processInfo.setDataCount(triggerHistories.size());
                         
                         Map<Integer, List<TriggerRouter>> triggerRoutersByHistoryId = triggerRouterService
@@ -441,7 +444,8 @@ public class DataService extends AbstractService implements IDataService {
                                 transaction, mapReloadRequests);
 
                         insertLoadBatchesForReload(targetNode, loadId, createBy, triggerHistories,
-                                triggerRoutersByHistoryId, transactional, transaction, mapReloadRequests, processInfo);
+                                triggerRoutersByHistoryId, transactional, transaction, mapReloadRequests,
+                                reloadRowCounts, processInfo);
                         
                         
                         if (isFullLoad) {
@@ -516,6 +520,180 @@ public class DataService extends AbstractService implements IDataService {
 
     }
 
+    protected List<TriggerHistory> getReloadTriggerHistories(boolean isFullLoad, List<TableReloadRequest> reloadRequests) {
+        List<TriggerHistory> triggerHistories = new ArrayList<TriggerHistory>();
+        if (isFullLoad) {
+            triggerHistories = engine.getTriggerRouterService().getActiveTriggerHistories();
+        } else {
+            for (TableReloadRequest reloadRequest : reloadRequests) {
+                triggerHistories.addAll(engine.getTriggerRouterService()
+                        .getActiveTriggerHistories(new Trigger(reloadRequest.getTriggerId(), null)));
+            }
+        }
+        return triggerHistories;
+    }
+
+    /**
+     * Counts or estimates the rows each table of a load will select, keyed by
+     * {@link #getReloadRowCountKey(TriggerHistory, String)}.
+     */
+    protected Map<String, Integer> planReloadRowCounts(Node targetNode,
+            List<TableReloadRequest> reloadRequests, ProcessInfo processInfo) {
+        Map<String, Integer> rowCounts = new HashMap<String, Integer>();
+        boolean isFullLoad = reloadRequests == null
+                || (reloadRequests.size() == 1 && reloadRequests.get(0).isFullLoadRequest());
+        List<TriggerHistory> triggerHistories = getReloadTriggerHistories(isFullLoad, reloadRequests);
+        Map<Integer, List<TriggerRouter>> triggerRoutersByHistoryId = engine.getTriggerRouterService()
+                .fillTriggerRoutersByHistIdAndSortHist(engine.getNodeService().findIdentity().getNodeGroupId(),
+                        targetNode.getNodeGroupId(), triggerHistories);
+        Map<String, TableReloadRequest> mapReloadRequests = convertReloadListToMap(reloadRequests);
+        Map<String, Channel> channels = engine.getConfigurationService().getChannels(false);
+        long ts = System.currentTimeMillis();
+        for (TriggerHistory triggerHistory : triggerHistories) {
+            List<TriggerRouter> triggerRouters = triggerRoutersByHistoryId.get(triggerHistory
+                    .getTriggerHistoryId());
+            if (triggerRouters != null) {
+                for (TriggerRouter triggerRouter : triggerRouters) {
+                    if (triggerRouter.getInitialLoadOrder() >= 0
+                            && engine.getGroupletService().isTargetEnabled(triggerRouter, targetNode)) {
+                        String selectSql = getReloadSelect(triggerRouter, mapReloadRequests);
+                        String key = getReloadRowCountKey(triggerHistory, selectSql);
+                        if (!rowCounts.containsKey(key)) {
+                            Channel channel = channels.get(getReloadChannelIdForTrigger(
+                                    triggerRouter.getTrigger(), channels));
+                            Table table = platform.getTableFromCache(
+                                    triggerHistory.getSourceCatalogName(), triggerHistory.getSourceSchemaName(),
+                                    triggerHistory.getSourceTableName(), false);
+                            if (table != null) {
+                                processInfo.setCurrentTableName(table.getName());
+                                rowCounts.put(key, getReloadRowCount(targetNode, table, selectSql,
+                                        channel.getMaxBatchSize()));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        log.info("Planned the load batches for {} tables to node {} in {} ms", new Object[] {
+                rowCounts.size(), targetNode.getNodeId(), System.currentTimeMillis() - ts });
+        return rowCounts;
+    }
+
+    protected String getReloadRowCountKey(TriggerHistory triggerHistory, String selectSql) {
+        return triggerHistory.getTriggerHistoryId() + ":" + selectSql;
+    }
+
+    protected String getReloadSelect(TriggerRouter triggerRouter, Map<String, TableReloadRequest> reloadRequests) {
+        String selectSql = null;
+        if (reloadRequests != null) {
+            TableReloadRequest reloadRequest = reloadRequests.get(triggerRouter.getTriggerId() + triggerRouter.getRouterId());
+            selectSql = reloadRequest != null ? reloadRequest.getReloadSelect() : null;
+        }
+        if (StringUtils.isBlank(selectSql)) {
+            selectSql = StringUtils.isBlank(triggerRouter.getInitialLoadSelect())
+                    ? Constants.ALWAYS_TRUE_CONDITION
+                    : triggerRouter.getInitialLoadSelect();
+        }
+        return selectSql;
+    }
+
+    /**
+     * Returns the number of rows a load of the table will select, used to
+     * decide how many batches to create for it. With the estimate method a
+     * load of the whole table with a single integer primary key samples the
+     * primary key range. Catalog statistics can be stale, so they only raise
+     * that sample and are never used on their own: the extract writes every
+     * row past the planned batches into the last batch, which makes too low
+     * an estimate expensive, while too high an estimate only stages empty
+     * batches. Other tables, loads with an initial load select and the exact
+     * method count the rows, as do tables whose keys are not spread evenly
+     * enough to estimate.
+     */
+    protected int getReloadRowCount(Node targetNode, Table table, String selectSql, int maxBatchSize) {
+        DatabaseInfo dbInfo = platform.getDatabaseInfo();
+        String tableName = table.getQualifiedTableName(dbInfo.getDelimiterToken(),
+                dbInfo.getCatalogSeparator(), dbInfo.getSchemaSeparator());
+        boolean estimate = Constants.INITIAL_LOAD_ROW_COUNT_METHOD_ESTIMATE.equals(parameterService
+                .getString(ParameterConstants.INITIAL_LOAD_ROW_COUNT_METHOD));
+        if (estimate && Constants.ALWAYS_TRUE_CONDITION.equals(selectSql.trim())) {
+            long rowCount = estimateRowCountFromPrimaryKeyRange(table, tableName, maxBatchSize);
+            if (rowCount >= 0) {
+                rowCount = Math.max(rowCount, platform.getEstimatedRowCount(table));
+                log.debug("Estimated {} rows for the load of {}", rowCount, tableName);
+                return (int) Math.min(rowCount, Integer.MAX_VALUE);
+            }
+        }
+
+        String sql = String.format("select count(*) from %s where %s", tableName, selectSql);
+        sql = FormatUtils.replace("groupId", targetNode.getNodeGroupId(), sql);
+        sql = FormatUtils.replace("externalId", targetNode.getExternalId(), sql);
+        sql = FormatUtils.replace("nodeId", targetNode.getNodeId(), sql);
+        return sqlTemplate.queryForInt(sql);
+    }
+
+    /**
+     * Estimates the rows in a table with a single integer primary key by
+     * counting the keys in a few evenly spaced slices of the key range, which
+     * only reads the primary key index. Scaling the slices up is only right
+     * when the keys are spread evenly over the range, so sparse or skewed
+     * keys, where a slice holds less than half or more than twice the
+     * average, are not estimated.
+     * 
+     * @return the estimate or -1 if the table does not have a suitable key or
+     *         its keys are not spread evenly enough to estimate
+     */
+    protected long estimateRowCountFromPrimaryKeyRange(Table table, String tableName, int sliceSize) {
+        Column[] pkColumns = table.getPrimaryKeyColumns();
+        if (pkColumns.length != 1 || !isIntegerColumn(pkColumns[0])) {
+            return -1;
+        }
+        String pkName = platform.getDatabaseInfo().getDelimiterToken() + pkColumns[0].getName()
+                + platform.getDatabaseInfo().getDelimiterToken();
+        Row range = sqlTemplate.queryForRow(String.format("select min(%s) as min_id, max(%s) as max_id from %s",
+                pkName, pkName, tableName));
+        if (range == null || range.get("min_id") == null) {
+            return 0;
+        }
+        long minId = range.getLong("min_id");
+        long maxId = range.getLong("max_id");
+        /* the span of a long key range does not always fit in a long */
+        BigInteger keySpan = BigInteger.valueOf(maxId).subtract(BigInteger.valueOf(minId))
+                .add(BigInteger.ONE);
+        long sampleSpan = (long) sliceSize * RELOAD_ROW_COUNT_SAMPLES;
+        if (keySpan.compareTo(BigInteger.valueOf(sampleSpan)) <= 0) {
+            return keySpan.longValue();
+        }
+        String sql = String.format("select count(*) from %s where %s >= ? and %s < ?", tableName, pkName, pkName);
+        long step = keySpan.divide(BigInteger.valueOf(RELOAD_ROW_COUNT_SAMPLES)).longValue();
+        long sampled = 0;
+        long[] sliceCounts = new long[RELOAD_ROW_COUNT_SAMPLES];
+        for (int i = 0; i < RELOAD_ROW_COUNT_SAMPLES; i++) {
+            long start = minId + i * step;
+            long end = start + sliceSize;
+            if (end < start) {
+                end = Long.MAX_VALUE;
+            }
+            sliceCounts[i] = sqlTemplate.queryForLong(sql, start, end);
+            sampled += sliceCounts[i];
+        }
+        double average = (double) sampled / RELOAD_ROW_COUNT_SAMPLES;
+        for (long sliceCount : sliceCounts) {
+            if (sampled == 0 || sliceCount < average / 2 || sliceCount > average * 2) {
+                log.debug("The primary keys of {} are not spread evenly enough to estimate its rows", tableName);
+                return -1;
+            }
+        }
+        double estimate = (double) sampled * keySpan.doubleValue() / sampleSpan;
+        return (long) Math.min(estimate, Math.min(keySpan.doubleValue(), Long.MAX_VALUE));
+    }
+
+    protected boolean isIntegerColumn(Column column) {
+        int type = column.getMappedTypeCode();
+        return type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT
+                || type == Types.TINYINT
+                || ((type == Types.NUMERIC || type == Types.DECIMAL) && column.getScale() == 0);
+    }
+
     protected Map<String, TableReloadRequest> convertReloadListToMap(List<TableReloadRequest> reloadRequests) {
         if (reloadRequests == null) {
             return null;
@@ -827,13 +1005,9 @@ public class DataService extends AbstractService implements IDataService {
     private void insertLoadBatchesForReload(Node targetNode, long loadId, String createBy,
             List<TriggerHistory> triggerHistories,
             Map<Integer, List<TriggerRouter>> triggerRoutersByHistoryId, boolean transactional,
-            ISqlTransaction transaction, Map<String, TableReloadRequest> reloadRequests, ProcessInfo processInfo) {
+            ISqlTransaction transaction, Map<String, TableReloadRequest> reloadRequests,
+            Map<String, Integer> reloadRowCounts, ProcessInfo processInfo) {
         Map<String, Channel> channels = engine.getConfigurationService().getChannels(false);
-        DatabaseInfo dbInfo = platform.getDatabaseInfo();
-        String quote = dbInfo.getDelimiterToken();
-        String catalogSeparator = dbInfo.getCatalogSeparator();
-        String schemaSeparator = dbInfo.getSchemaSeparator();
-        
         
         for (TriggerHistory triggerHistory : triggerHistories) {
             List<TriggerRouter> triggerRouters = triggerRoutersByHistoryId.get(triggerHistory
@@ -845,16 +1019,7 @@ public class DataService extends AbstractService implements IDataService {
                 if (triggerRouter.getInitialLoadOrder() >= 0
                         && engine.getGroupletService().isTargetEnabled(triggerRouter, targetNode)) {
                     
-                    String selectSql = null;
-                    if (reloadRequests != null) {
-                        TableReloadRequest reloadRequest = reloadRequests.get(triggerRouter.getTriggerId() + triggerRouter.getRouterId());
-                        selectSql = reloadRequest != null ? reloadRequest.getReloadSelect() : null;
-                    }
-                    if (StringUtils.isBlank(selectSql)) {
-                        selectSql = StringUtils.isBlank(triggerRouter.getInitialLoadSelect()) 
-                                    ? Constants.ALWAYS_TRUE_CONDITION
-                                    : triggerRouter.getInitialLoadSelect();
-                    }
+                    String selectSql = getReloadSelect(triggerRouter, reloadRequests);
                     
                     if (parameterService.is(ParameterConstants.INITIAL_LOAD_USE_EXTRACT_JOB)) {
                         Trigger trigger = triggerRouter.getTrigger();
@@ -869,13 +1034,11 @@ public class DataService extends AbstractService implements IDataService {
                         
                         processInfo.setCurrentTableName(table.getName());
                         
-                        String sql = String.format("select count(*) from %s where %s", table
-                                .getQualifiedTableName(quote, catalogSeparator, schemaSeparator), selectSql);
-                        sql = FormatUtils.replace("groupId", targetNode.getNodeGroupId(), sql);
-                        sql = FormatUtils
-                                .replace("externalId", targetNode.getExternalId(), sql);
-                        sql = FormatUtils.replace("nodeId", targetNode.getNodeId(), sql);
-                        int rowCount = sqlTemplate.queryForInt(sql);
+                        Integer rowCount = reloadRowCounts != null ? reloadRowCounts.get(getReloadRowCountKey(
+                                triggerHistory, selectSql)) : null;
+                        if (rowCount == null) {
+                            rowCount = getReloadRowCount(targetNode, table, selectSql, channel.getMaxBatchSize());
+                        }
                         int transformMultiplier = 0;
                         for (TransformService.TransformTableNodeGroupLink transform : engine.getTransformService().getTransformTables(false)) {
                         	if (triggerRouter.getRouter().getNodeGroupLink().equals(transform.getNodeGroupLink()) && 
@@ -886,7 +1049,8 @@ public class DataService extends AbstractService implements IDataService {
                         if (transformMultiplier == 0) { transformMultiplier = 1; }
                         
                         if (rowCount > 0) {
-                            numberOfBatches = (rowCount * transformMultiplier / channel.getMaxBatchSize()) + 1;
+                            numberOfBatches = (int) Math.min((long) rowCount * transformMultiplier
+                                    / channel.getMaxBatchSize() + 1, Integer.MAX_VALUE);
                         } else {
                             numberOfBatches = 1;
                         }
@@ -26,6 +26,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.db.platform.DatabaseNamesConstants;
@@ -51,6 +52,10 @@ import org.jumpmind.util.FormatUtils;
 public class IncomingBatchService extends AbstractService implements IIncomingBatchService {
 
     protected IClusterService clusterService;
+
+    protected volatile Map<String, Date> errorBatchCreateTimes = new ConcurrentHashMap<String, Date>();
+
+    protected volatile long errorBatchCreateTimesTime;
     
     @Override
     public List<String> getNodesInError() {
@@ -97,6 +102,30 @@ public class IncomingBatchService extends AbstractService implements IIncomingBa
                 new IncomingBatchMapper());
     }
 
+    public List<Date> getIncomingBatchErrorCreateTimes(boolean useCache) {
+        long reconcilePeriod = parameterService.getLong(ParameterConstants.MONITOR_RECONCILE_PERIOD_MS);
+        if (!useCache || System.currentTimeMillis() - errorBatchCreateTimesTime >= reconcilePeriod) {
+            Map<String, Date> createTimes = new ConcurrentHashMap<String, Date>();
+            for (IncomingBatch batch : findIncomingBatchErrors(1000)) {
+                createTimes.put(batch.getNodeBatchId(), batch.getCreateTime());
+            }
+            errorBatchCreateTimes = createTimes;
+            errorBatchCreateTimesTime = System.currentTimeMillis();
+        }
+        return new ArrayList<Date>(errorBatchCreateTimes.values());
+    }
+
+    protected void updateErrorBatchCreateTimes(IncomingBatch batch) {
+        if (batch.getStatus() == Status.ER) {
+            if (!errorBatchCreateTimes.containsKey(batch.getNodeBatchId())) {
+                errorBatchCreateTimes.put(batch.getNodeBatchId(),
+                        batch.getCreateTime() != null ? batch.getCreateTime() : new Date());
+            }
+        } else {
+            errorBatchCreateTimes.remove(batch.getNodeBatchId());
+        }
+    }
+
     public void markIncomingBatchesOk(String nodeId) {
         List<IncomingBatch> batches = listIncomingBatchesInErrorFor(nodeId);
         for (IncomingBatch incomingBatch : batches) {
@@ -112,6 +141,7 @@ public class IncomingBatchService extends AbstractService implements IIncomingBa
 
     public void removingIncomingBatches(String nodeId) {
         sqlTemplate.update(getSql("deleteIncomingBatchByNodeSql"), nodeId);
+        errorBatchCreateTimesTime = 0;
     }
 
     public List<IncomingBatch> listIncomingBatchesInErrorFor(String nodeId) {
@@ -298,6 +328,7 @@ public class IncomingBatchService extends AbstractService implements IIncomingBa
     }
 
     public int deleteIncomingBatch(IncomingBatch batch) {
+        errorBatchCreateTimes.remove(batch.getNodeBatchId());
         return sqlTemplate.update(getSql("deleteIncomingBatchSql"),
                 new Object[] { batch.getBatchId(), batch.getNodeId() }, new int[] { symmetricDialect.getSqlTypeForIds(),
                         Types.VARCHAR });
@@ -328,34 +359,76 @@ public class IncomingBatchService extends AbstractService implements IIncomingBa
     public int updateIncomingBatch(ISqlTransaction transaction , IncomingBatch batch) {
         int count = 0;
         if (batch.isPersistable()) {
-            if (batch.getStatus() == IncomingBatch.Status.ER) {
-                batch.setErrorFlag(true);
-            } else if (batch.getStatus() == IncomingBatch.Status.OK) {
-                batch.setErrorFlag(false);
-            }
-            batch.setLastUpdatedHostName(clusterService.getServerId());
-            batch.setLastUpdatedTime(new Date());
-            count =  transaction.prepareAndExecute(
-                    getSql("updateIncomingBatchSql"),
-                    new Object[] { batch.getStatus().name(), batch.isErrorFlag() ? 1 : 0,
-                            batch.getNetworkMillis(), batch.getFilterMillis(),
-                            batch.getDatabaseMillis(), batch.getFailedRowNumber(),
-                            batch.getFailedLineNumber(), batch.getByteCount(),
-                            batch.getStatementCount(), batch.getFallbackInsertCount(),
-                            batch.getFallbackUpdateCount(), batch.getIgnoreCount(), batch.getIgnoreRowCount(),
-                            batch.getMissingDeleteCount(), batch.getSkipCount(),
-                            batch.getSqlState(), batch.getSqlCode(),
-                            FormatUtils.abbreviateForLogging(batch.getSqlMessage()),
-                            batch.getLastUpdatedHostName(), batch.getLastUpdatedTime(),
-                            batch.getBatchId(), batch.getNodeId() }, new int[] { Types.CHAR,
-                            Types.SMALLINT, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
-                            Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
-                            Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
-                            Types.NUMERIC, Types.NUMERIC, Types.VARCHAR, Types.NUMERIC, Types.VARCHAR,
-                            Types.VARCHAR, Types.TIMESTAMP, symmetricDialect.getSqlTypeForIds(), Types.VARCHAR });
+            count =  transaction.prepareAndExecute(getSql("updateIncomingBatchSql"),
+                    getUpdateIncomingBatchArgs(batch), getUpdateIncomingBatchTypes());
+            updateErrorBatchCreateTimes(batch);
         }
         return count;
     }
+
+    public void updateIncomingBatches(List<IncomingBatch> batches) {
+        ISqlTransaction transaction = null;
+        try {
+            transaction = sqlTemplate.startSqlTransaction();
+            transaction.setInBatchMode(true);
+            transaction.prepare(getSql("updateIncomingBatchSql"));
+            int[] types = getUpdateIncomingBatchTypes();
+            for (IncomingBatch batch : batches) {
+                if (batch.isPersistable()) {
+                    transaction.addRow(batch, getUpdateIncomingBatchArgs(batch), types);
+                }
+            }
+            transaction.flush();
+            transaction.commit();
+            for (IncomingBatch batch : batches) {
+                if (batch.isPersistable()) {
+                    updateErrorBatchCreateTimes(batch);
+                }
+            }
+        } catch (Error ex) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw ex;
+        } catch (RuntimeException ex) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw ex;
+        } finally {
+            close(transaction);
+        }
+    }
+
+    protected Object[] getUpdateIncomingBatchArgs(IncomingBatch batch) {
+        if (batch.getStatus() == IncomingBatch.Status.ER) {
+            batch.setErrorFlag(true);
+        } else if (batch.getStatus() == IncomingBatch.Status.OK) {
+            batch.setErrorFlag(false);
+        }
+        batch.setLastUpdatedHostName(clusterService.getServerId());
+        batch.setLastUpdatedTime(new Date());
+        return new Object[] { batch.getStatus().name(), batch.isErrorFlag() ? 1 : 0,
+                batch.getNetworkMillis(), batch.getFilterMillis(),
+                batch.getDatabaseMillis(), batch.getFailedRowNumber(),
+                batch.getFailedLineNumber(), batch.getByteCount(),
+                batch.getStatementCount(), batch.getFallbackInsertCount(),
+                batch.getFallbackUpdateCount(), batch.getIgnoreCount(), batch.getIgnoreRowCount(),
+                batch.getMissingDeleteCount(), batch.getSkipCount(),
+                batch.getSqlState(), batch.getSqlCode(),
+                FormatUtils.abbreviateForLogging(batch.getSqlMessage()),
+                batch.getLastUpdatedHostName(), batch.getLastUpdatedTime(),
+                batch.getBatchId(), batch.getNodeId() };
+    }
+
+    protected int[] getUpdateIncomingBatchTypes() {
+        return new int[] { Types.CHAR,
+                Types.SMALLINT, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+                Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+                Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+                Types.NUMERIC, Types.NUMERIC, Types.VARCHAR, Types.NUMERIC, Types.VARCHAR,
+                Types.VARCHAR, Types.TIMESTAMP, symmetricDialect.getSqlTypeForIds(), Types.VARCHAR };
+    }
     
     public Map<String, BatchId> findMaxBatchIdsByChannel() {
         Map<String, BatchId> ids = new HashMap<String, BatchId>();
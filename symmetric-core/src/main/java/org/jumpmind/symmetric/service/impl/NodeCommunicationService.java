@@ -28,6 +28,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -75,6 +76,8 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
 
     private Map<CommunicationType, Map<String, NodeCommunication>> lockCache;
 
+    private Map<CommunicationType, CommunicationTargets> targetsCache = new ConcurrentHashMap<CommunicationType, CommunicationTargets>();
+
     public NodeCommunicationService(IClusterService clusterService, INodeService nodeService, IParameterService parameterService,
             IConfigurationService configurationService, ISymmetricDialect symmetricDialect) {
         super(parameterService, symmetricDialect);
@@ -119,15 +122,7 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
     }
 
     public NodeCommunication find(String nodeId, String queue, CommunicationType communicationType) {
-        NodeCommunication lock = null;
-        if (clusterService.isClusteringEnabled()) {
-            lock = sqlTemplate.queryForObject(
-                    getSql("selectNodeCommunicationByNodeAndChannelSql"), new NodeCommunicationMapper(),
-                    nodeId, queue, communicationType.name());
-        } else {
-            Map<String, NodeCommunication> locks = lockCache.get(communicationType);
-            lock = locks.get(nodeId + "-" + queue);
-        }
+        NodeCommunication lock = get(nodeId, queue, communicationType);
         if (lock == null) {
             lock = new NodeCommunication();
             lock.setNodeId(nodeId);
@@ -138,6 +133,17 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
         return lock;
     }
 
+    protected NodeCommunication get(String nodeId, String queue, CommunicationType communicationType) {
+        if (clusterService.isClusteringEnabled()) {
+            return sqlTemplate.queryForObject(
+                    getSql("selectNodeCommunicationByNodeAndChannelSql"), new NodeCommunicationMapper(),
+                    nodeId, queue, communicationType.name());
+        } else {
+            Map<String, NodeCommunication> locks = lockCache.get(communicationType);
+            return locks.get(nodeId + "-" + queue);
+        }
+    }
+
     protected List<NodeCommunication> find(CommunicationType communicationType) {
         if (clusterService.isClusteringEnabled()) {
             String SQL_KEY = 
@@ -155,90 +161,123 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
     public List<NodeCommunication> list(CommunicationType communicationType) {
         initialize();
         List<NodeCommunication> communicationRows = find(communicationType);
-        List<Node> nodesToCommunicateWith = null;
+        CommunicationTargets targets = getCommunicationTargets(communicationType);
+
+        Set<String> identifiers = new HashSet<String>(communicationRows.size());
+        Iterator<NodeCommunication> it = communicationRows.iterator();
+        while (it.hasNext()) {
+            NodeCommunication nodeCommunication = it.next();
+            Node node = targets.nodes.get(nodeCommunication.getNodeId());
+            if (node == null) {
+                delete(nodeCommunication);
+                it.remove();
+            } else {
+                nodeCommunication.setNode(node);
+                identifiers.add(nodeCommunication.getIdentifier());
+            }
+        }
+
+        for (NodeCommunication nodeToCommunicateWith : targets.communications) {
+            if (identifiers.add(nodeToCommunicateWith.getIdentifier())) {
+                NodeCommunication comm = new NodeCommunication();
+                comm.setNodeId(nodeToCommunicateWith.getNodeId());
+                comm.setQueue(nodeToCommunicateWith.getQueue());
+                comm.setCommunicationType(communicationType);
+                comm.setNode(nodeToCommunicateWith.getNode());
+                save(comm);
+                communicationRows.add(comm);
+            }
+        }
+
+        if (communicationType == CommunicationType.PULL || communicationType == CommunicationType.FILE_PULL) {
+            communicationRows = removeNodesWithNoBatchesToSend(communicationRows);
+        }
+
+        return communicationRows;
+    }
+
+    /**
+     * Returns the node and queue combinations to communicate with. They are
+     * only worked out again when one of their inputs has changed: the cached
+     * node lists, the set of channel queues, or the offline parameters.
+     */
+    protected CommunicationTargets getCommunicationTargets(CommunicationType communicationType) {
+        List<Object> sources = new ArrayList<Object>();
         switch (communicationType) {
             case PULL:
             case FILE_PULL:
-                nodesToCommunicateWith = removeOfflineNodes(nodeService.findNodesToPull());
+                sources.add(nodeService.findNodesToPull());
                 break;
             case FILE_PUSH:
             case PUSH:
-                nodesToCommunicateWith = removeOfflineNodes(nodeService.findNodesToPushTo());
+                sources.add(nodeService.findNodesToPushTo());
                 break;
             case OFFLN_PUSH:
-                nodesToCommunicateWith = getNodesToCommunicateWithOffline(CommunicationType.PUSH);
+                sources.add(nodeService.findTargetNodesFor(NodeGroupLinkAction.W));
+                sources.add(nodeService.findNodesToPushTo());
                 break;
             case OFFLN_PULL:
-                nodesToCommunicateWith = getNodesToCommunicateWithOffline(CommunicationType.PULL);
+                sources.add(nodeService.findSourceNodesFor(NodeGroupLinkAction.P));
+                sources.add(nodeService.findNodesToPull());
                 break;
             default:
-                nodesToCommunicateWith = new ArrayList<Node>(0);
                 break;
         }
-
-        List<NodeCommunication> nodesToCommunicateWithList = filterForChannelThreading(nodesToCommunicateWith);
-
-        for (NodeCommunication nodeToCommunicateWith : nodesToCommunicateWithList) {
-            NodeCommunication comm = null;
-            for (NodeCommunication nodeCommunication : communicationRows) {
-                if (nodeCommunication.getIdentifier().equals(nodeToCommunicateWith.getIdentifier())) {
-                    comm = nodeCommunication;
+        sources.add(parameterService.getOfflineNodeParameters());
+        sources.add(parameterService.is(ParameterConstants.NODE_OFFLINE));
+        sources.add(parameterService.is(ParameterConstants.NODE_OFFLINE_INCOMING_ACCEPT_ALL));
+        Set<String> queues = new HashSet<String>();
+        for (Channel channel : configurationService.getChannels(false).values()) {
+            queues.add(channel.getQueue());
+        }
+        sources.add(queues);
+
+        CommunicationTargets targets = targetsCache.get(communicationType);
+        if (targets == null || !targets.isBuiltFrom(sources)) {
+            List<Node> nodesToCommunicateWith = null;
+            switch (communicationType) {
+                case PULL:
+                case FILE_PULL:
+                    nodesToCommunicateWith = removeOfflineNodes(nodeService.findNodesToPull());
                     break;
-                }
-            }
-
-            if (comm == null) {
-                comm = new NodeCommunication();
-                comm.setNodeId(nodeToCommunicateWith.getNodeId());
-                comm.setQueue(nodeToCommunicateWith.getQueue());
-                comm.setCommunicationType(communicationType);
-                save(comm);
-                communicationRows.add(comm);
-            }
-
-            comm.setNode(nodeToCommunicateWith.getNode());
-        }
-
-        Iterator<NodeCommunication> it = communicationRows.iterator();
-        while (it.hasNext()) {
-            NodeCommunication nodeCommunication = it.next();
-
-            Node node = null;
-            for (NodeCommunication nodeToCommunicateWith : nodesToCommunicateWithList) {
-                if (nodeCommunication.getNodeId().equals(nodeToCommunicateWith.getNodeId())) {
-                    node = nodeToCommunicateWith.getNode();
+                case FILE_PUSH:
+                case PUSH:
+                    nodesToCommunicateWith = removeOfflineNodes(nodeService.findNodesToPushTo());
+                    break;
+                case OFFLN_PUSH:
+                    nodesToCommunicateWith = getNodesToCommunicateWithOffline(CommunicationType.PUSH);
+                    break;
+                case OFFLN_PULL:
+                    nodesToCommunicateWith = getNodesToCommunicateWithOffline(CommunicationType.PULL);
+                    break;
+                default:
+                    nodesToCommunicateWith = new ArrayList<Node>(0);
                     break;
-                }
-            }
-
-            if (node == null) {
-                delete(nodeCommunication);
-                it.remove();
             }
+            targets = new CommunicationTargets(sources, filterForChannelThreading(nodesToCommunicateWith));
+            targetsCache.put(communicationType, targets);
+            log.debug("Refreshed {} {} node communication targets", targets.communications.size(),
+                    communicationType.name().toLowerCase());
         }
-
-        if (communicationType == CommunicationType.PULL || communicationType == CommunicationType.FILE_PULL) {
-            communicationRows = removeNodesWithNoBatchesToSend(communicationRows);
-        }
-
-        return communicationRows;
+        return targets;
     }
 
     protected List<NodeCommunication> filterForChannelThreading(List<Node> nodesToCommunicateWith) {
         List<NodeCommunication> nodeCommunications = new ArrayList<NodeCommunication>();
 
+        Set<String> channelThreads = new LinkedHashSet<String>();
+        for (Channel channel : configurationService.getChannels(false).values()) {
+            channelThreads.add(channel.getQueue());
+        }
+
         for (Node node : nodesToCommunicateWith) {
             if (node.isVersionGreaterThanOrEqualTo(3, 8, 0)) {
-                Set<String> channelThreads = new HashSet<String>();
-                for (Channel channel : configurationService.getChannels(false).values()) {
-                    if (!channelThreads.contains(channel.getQueue())) {
-                        NodeCommunication nodeCommunication = new NodeCommunication();
-                        nodeCommunication.setNodeId(node.getNodeId());
-                        nodeCommunication.setQueue(channel.getQueue());
-                        nodeCommunication.setNode(node);
-                        nodeCommunications.add(nodeCommunication);
-                        channelThreads.add(channel.getQueue());
-                    }
+                for (String queue : channelThreads) {
+                    NodeCommunication nodeCommunication = new NodeCommunication();
+                    nodeCommunication.setNodeId(node.getNodeId());
+                    nodeCommunication.setQueue(queue);
+                    nodeCommunication.setNode(node);
+                    nodeCommunications.add(nodeCommunication);
                 }
             } else {
                 NodeCommunication nodeCommunication = new NodeCommunication();
@@ -251,6 +290,8 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
     }
 
     protected List<Node> removeOfflineNodes(List<Node> nodes) {
+        /* the node service hands out its cached list */
+        nodes = new ArrayList<Node>(nodes);
         if (parameterService.is(ParameterConstants.NODE_OFFLINE)) {
             nodes.clear();
         } else {
@@ -274,10 +315,10 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
         if (parameterService.is(ParameterConstants.NODE_OFFLINE) || 
                 (communicationType.equals(CommunicationType.PULL) && parameterService.is(ParameterConstants.NODE_OFFLINE_INCOMING_ACCEPT_ALL))) {            
             if (communicationType.equals(CommunicationType.PUSH)) {
-                nodesToCommunicateWith = nodeService.findTargetNodesFor(NodeGroupLinkAction.W);
+                nodesToCommunicateWith = new ArrayList<Node>(nodeService.findTargetNodesFor(NodeGroupLinkAction.W));
                 nodesToCommunicateWith.addAll(nodeService.findNodesToPushTo());
             } else if (communicationType.equals(CommunicationType.PULL)) {
-                nodesToCommunicateWith = nodeService.findSourceNodesFor(NodeGroupLinkAction.P);
+                nodesToCommunicateWith = new ArrayList<Node>(nodeService.findSourceNodesFor(NodeGroupLinkAction.P));
                 nodesToCommunicateWith.addAll(nodeService.findNodesToPull());
             }
         } else {
@@ -286,10 +327,10 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
             if (parms.size() > 0) {
                 List<Node> sourceNodes = null;
                 if (communicationType.equals(CommunicationType.PUSH)) {
-                    sourceNodes = nodeService.findTargetNodesFor(NodeGroupLinkAction.W);
+                    sourceNodes = new ArrayList<Node>(nodeService.findTargetNodesFor(NodeGroupLinkAction.W));
                     sourceNodes.addAll(nodeService.findNodesToPushTo());
                 } else if (communicationType.equals(CommunicationType.PULL)) {
-                    sourceNodes = nodeService.findSourceNodesFor(NodeGroupLinkAction.P);
+                    sourceNodes = new ArrayList<Node>(nodeService.findSourceNodesFor(NodeGroupLinkAction.P));
                     sourceNodes.addAll(nodeService.findNodesToPull());
                 }
                 if (sourceNodes != null && sourceNodes.size() > 0) {
@@ -350,12 +391,13 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
             return nodeCommunications;
         }
 
-        List<NodeCommunication> filteredNodes = new ArrayList<NodeCommunication>(nodeCommunications);
+        List<NodeCommunication> filteredNodes = new ArrayList<NodeCommunication>(nodeCommunications.size());
+        long timeout = this.parameterService.getLong(ParameterConstants.HYBRID_PUSH_PULL_TIMEOUT);
 
         for (NodeCommunication nodeCommunication : nodeCommunications) {
             long elapsedLock = System.currentTimeMillis()-nodeCommunication.getLastLockMillis();
-            if (nodeCommunication.getBatchToSendCount() == 0 && elapsedLock < this.parameterService.getLong(ParameterConstants.HYBRID_PUSH_PULL_TIMEOUT)) {
-                filteredNodes.remove(nodeCommunication);
+            if (nodeCommunication.getBatchToSendCount() != 0 || elapsedLock >= timeout) {
+                filteredNodes.add(nodeCommunication);
             }
         }
         
@@ -581,6 +623,51 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
 
     }
 
+    /**
+     * The node and queue combinations for one communication type, indexed by
+     * node id, along with the inputs they were built from.
+     */
+    static class CommunicationTargets {
+
+        List<Object> sources;
+
+        List<NodeCommunication> communications;
+
+        Map<String, Node> nodes;
+
+        CommunicationTargets(List<Object> sources, List<NodeCommunication> communications) {
+            this.sources = sources;
+            this.communications = communications;
+            this.nodes = new HashMap<String, Node>(communications.size());
+            for (NodeCommunication nodeCommunication : communications) {
+                nodes.put(nodeCommunication.getNodeId(), nodeCommunication.getNode());
+            }
+        }
+
+        /**
+         * Cached lists are compared by reference because the services hand
+         * out a new instance when they refresh. Everything else is compared
+         * by value.
+         */
+        boolean isBuiltFrom(List<Object> otherSources) {
+            if (sources.size() != otherSources.size()) {
+                return false;
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                Object source = sources.get(i);
+                Object otherSource = otherSources.get(i);
+                if (source instanceof List) {
+                    if (source != otherSource) {
+                        return false;
+                    }
+                } else if (source == null ? otherSource != null : !source.equals(otherSource)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     class NodeCommunicationMapper implements ISqlRowMapper<NodeCommunication> {
         public NodeCommunication mapRow(Row rs) {
             NodeCommunication nodeCommunication = new NodeCommunication();
@@ -679,35 +766,16 @@ public class NodeCommunicationService extends AbstractService implements INodeCo
     
     @Override
     public void updateBatchToSendCounts(String nodeId, Map<String, Integer> batchesCountToQueues) {
-        List<NodeCommunication> nodeCommunications = this.find(CommunicationType.PULL);
-        List<NodeCommunication> updatedNodeCommunications = new ArrayList<NodeCommunication>();
-
         for (String queue : batchesCountToQueues.keySet()) {
-            NodeCommunication match = null; 
-            for (int i = 0; i < nodeCommunications.size(); i++) {
-                NodeCommunication nodeCommunication = nodeCommunications.get(i);
-                if (nodeCommunication.getNodeId().equals(nodeId)
-                        && nodeCommunication.getQueue().equals(queue)) {
-                    match = nodeCommunication;
-                    break;
-                }       
-            }
-            
+            NodeCommunication match = get(nodeId, queue, CommunicationType.PULL);
             if (match == null) {
-                NodeCommunication newNodeCommunication = new NodeCommunication();
-                newNodeCommunication.setCommunicationType(CommunicationType.PULL);
-                newNodeCommunication.setNodeId(nodeId);
-                newNodeCommunication.setQueue(queue);
-                newNodeCommunication.setBatchToSendCount(batchesCountToQueues.get(queue));
-                updatedNodeCommunications.add(newNodeCommunication);
-            } else {
-                match.setBatchToSendCount(batchesCountToQueues.get(queue));
-                updatedNodeCommunications.add(match);
+                match = new NodeCommunication();
+                match.setCommunicationType(CommunicationType.PULL);
+                match.setNodeId(nodeId);
+                match.setQueue(queue);
             }
-        }
-        
-        for (NodeCommunication nodeCommunication : updatedNodeCommunications) {
-            save(nodeCommunication);
+            match.setBatchToSendCount(batchesCountToQueues.get(queue));
+            save(match);
         }
     }
     
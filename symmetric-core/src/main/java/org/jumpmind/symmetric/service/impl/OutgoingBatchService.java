@@ -22,6 +22,7 @@ package org.jumpmind.symmetric.service.impl;
 
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -32,6 +33,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.db.sql.ISqlRowMapper;
@@ -43,6 +48,7 @@ import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.db.ISymmetricDialect;
 import org.jumpmind.symmetric.ext.IOutgoingBatchFilter;
 import org.jumpmind.symmetric.model.Channel;
+import org.jumpmind.symmetric.model.ChannelMap;
 import org.jumpmind.symmetric.model.LoadSummary;
 import org.jumpmind.symmetric.model.NodeChannel;
 import org.jumpmind.symmetric.model.NodeGroupChannelWindow;
@@ -78,6 +84,22 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
     
     private IExtensionService extensionService;
 
+    protected AtomicInteger unsentBatchCount = new AtomicInteger();
+
+    protected volatile long unsentBatchCountTime;
+
+    protected volatile Map<Long, Date> errorBatchCreateTimes = new ConcurrentHashMap<Long, Date>();
+
+    protected volatile long errorBatchCreateTimesTime;
+
+    protected ConcurrentHashMap<String, Set<CountDownLatch>> outgoingBatchWaiters = new ConcurrentHashMap<String, Set<CountDownLatch>>();
+
+    protected static final String ALL_QUEUES = "*";
+
+    protected ConcurrentHashMap<String, Map<String, Long>> idleQueuesByNode = new ConcurrentHashMap<String, Map<String, Long>>();
+
+    protected Map<String, Long> lastPendingTimeByNode = new ConcurrentHashMap<String, Long>();
+
     public OutgoingBatchService(IParameterService parameterService,
             ISymmetricDialect symmetricDialect, INodeService nodeService,
             IConfigurationService configurationService, ISequenceService sequenceService,
@@ -94,7 +116,9 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
     
     @Override
     public int cancelLoadBatches(long loadId) {
-        return sqlTemplate.update(getSql("cancelLoadBatchesSql"), loadId);
+        int count = sqlTemplate.update(getSql("cancelLoadBatchesSql"), loadId);
+        unsentBatchCountTime = 0;
+        return count;
     }
 
     public void markAllAsSentForNode(String nodeId, boolean includeConfigChannel) {
@@ -147,12 +171,14 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
 
     public void markAllChannelAsSent(String channelId) {
         sqlTemplate.update(getSql("cancelChannelBatchesSql"), channelId);
+        unsentBatchCountTime = 0;
     }
 
     public void copyOutgoingBatches(String channelId, long startBatchId, String fromNodeId, String toNodeId) {
         log.info("Copying outgoing batches for channel '{}' from node '{}' to node '{}' starting at {}", new Object[] {channelId, fromNodeId, toNodeId, startBatchId});
         sqlTemplate.update(getSql("deleteOutgoingBatchesForNodeSql"), toNodeId, channelId, fromNodeId, channelId);
         int count = sqlTemplate.update(getSql("copyOutgoingBatchesSql"), toNodeId, fromNodeId, channelId, startBatchId);
+        markOutgoingBatchesPending(toNodeId);
         log.info("Copied {} outgoing batches for channel '{}' from node '{}' to node '{}'", new Object[] {count, channelId, fromNodeId, toNodeId});
     }
 
@@ -162,6 +188,7 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
             log.info("Cleaning up {} batches that were abandoned by a failed or aborted attempt at routing", count);
             sqlTemplate.update(getSql("updateOutgoingBatchesStatusSql"), Status.OK.name(),
                     Status.RT.name());
+            unsentBatchCountTime = 0;
         }
     }
 
@@ -195,9 +222,7 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
     public void updateOutgoingBatch(ISqlTransaction transaction, OutgoingBatch outgoingBatch) {
         outgoingBatch.setLastUpdatedTime(new Date());
         outgoingBatch.setLastUpdatedHostName(clusterService.getServerId());
-        transaction.prepareAndExecute(
-                getSql("updateOutgoingBatchSql"),
-                new Object[] { outgoingBatch.getStatus().name(), outgoingBatch.getLoadId(),
+        Object[] args = new Object[] { outgoingBatch.getStatus().name(), outgoingBatch.getLoadId(),
                        outgoingBatch.isExtractJobFlag() ? 1: 0,
                         outgoingBatch.isLoadFlag() ? 1 : 0, outgoingBatch.isErrorFlag() ? 1 : 0,
                         outgoingBatch.getByteCount(), outgoingBatch.getExtractCount(),
@@ -212,13 +237,40 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
                         FormatUtils.abbreviateForLogging(outgoingBatch.getSqlMessage()),
                         outgoingBatch.getFailedDataId(), outgoingBatch.getLastUpdatedHostName(),
                         outgoingBatch.getLastUpdatedTime(), outgoingBatch.getSummary(), 
-                        outgoingBatch.getBatchId(), outgoingBatch.getNodeId() }, new int[] { Types.CHAR, Types.BIGINT,
+                        outgoingBatch.getBatchId(), outgoingBatch.getNodeId() };
+        int[] types = new int[] { Types.CHAR, Types.BIGINT,
                         Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.BIGINT, Types.BIGINT, Types.BIGINT,
                         Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT,
                         Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT,
                         Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.NUMERIC,
                         Types.VARCHAR, Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, 
-                        symmetricDialect.getSqlTypeForIds(), Types.VARCHAR });
+                        symmetricDialect.getSqlTypeForIds(), Types.VARCHAR };
+
+        if (outgoingBatch.getStatus() == Status.OK) {
+            /*
+             * Only count the batch as sent when this update is what changed
+             * it to OK, so a batch acknowledged twice is not counted twice
+             */
+            if (transaction.prepareAndExecute(getSql("updateOutgoingBatchSql", "andStatusNotOkSql"),
+                    args, types) > 0) {
+                unsentBatchCount.decrementAndGet();
+            } else {
+                transaction.prepareAndExecute(getSql("updateOutgoingBatchSql"), args, types);
+            }
+        } else {
+            transaction.prepareAndExecute(getSql("updateOutgoingBatchSql"), args, types);
+            if (isReadyToSend(outgoingBatch.getStatus())) {
+                markOutgoingBatchesPending(outgoingBatch.getNodeId());
+            }
+        }
+        if (outgoingBatch.isErrorFlag()) {
+            Date createTime = outgoingBatch.getCreateTime() != null ? outgoingBatch.getCreateTime() : new Date();
+            if (!errorBatchCreateTimes.containsKey(outgoingBatch.getBatchId())) {
+                errorBatchCreateTimes.put(outgoingBatch.getBatchId(), createTime);
+            }
+        } else {
+            errorBatchCreateTimes.remove(outgoingBatch.getBatchId());
+        }
     }
 
     public void insertOutgoingBatch(final OutgoingBatch outgoingBatch) {
@@ -256,6 +308,12 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
                         .getOtherEventCount(), outgoingBatch.getLastUpdatedHostName(),
                 outgoingBatch.getCreateBy(), outgoingBatch.getSummary());
         outgoingBatch.setBatchId(batchId);
+        if (outgoingBatch.getStatus() != Status.OK) {
+            unsentBatchCount.incrementAndGet();
+        }
+        if (isReadyToSend(outgoingBatch.getStatus())) {
+            markOutgoingBatchesPending(outgoingBatch.getNodeId());
+        }
     }
 
     public OutgoingBatch findOutgoingBatch(long batchId, String nodeId) {
@@ -295,11 +353,161 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
         return sqlTemplate.queryForInt(getSql("countOutgoingBatchesUnsentSql"));
     }
 
+    /*
+     * The count is kept as batches are inserted and marked OK by this node.
+     * Batches changed by other nodes in the cluster or by rolled back
+     * transactions are picked up when the count is reconciled.
+     */
+    public int countOutgoingBatchesUnsent(boolean useCache) {
+        long reconcilePeriod = parameterService.getLong(ParameterConstants.MONITOR_RECONCILE_PERIOD_MS);
+        if (!useCache || System.currentTimeMillis() - unsentBatchCountTime >= reconcilePeriod) {
+            unsentBatchCount.set(countOutgoingBatchesUnsent());
+            unsentBatchCountTime = System.currentTimeMillis();
+        }
+        return Math.max(unsentBatchCount.get(), 0);
+    }
+
+    public List<Date> getOutgoingBatchErrorCreateTimes(boolean useCache) {
+        long reconcilePeriod = parameterService.getLong(ParameterConstants.MONITOR_RECONCILE_PERIOD_MS);
+        if (!useCache || System.currentTimeMillis() - errorBatchCreateTimesTime >= reconcilePeriod) {
+            Map<Long, Date> createTimes = new ConcurrentHashMap<Long, Date>();
+            for (OutgoingBatch batch : getOutgoingBatchErrors(1000).getBatches()) {
+                createTimes.put(batch.getBatchId(), batch.getCreateTime());
+            }
+            errorBatchCreateTimes = createTimes;
+            errorBatchCreateTimesTime = System.currentTimeMillis();
+        }
+        return new ArrayList<Date>(errorBatchCreateTimes.values());
+    }
+
     @Override
     public int countOutgoingBatchesUnsent(String channelId) {
         return sqlTemplate.queryForInt(getSql("countOutgoingBatchesUnsentOnChannelSql"), channelId);
     }
     
+    public boolean waitForOutgoingBatches(String nodeId, ChannelMap channelMap, long timeoutMs) {
+        /*
+         * Register before looking for batches so a notify that happens in
+         * between is not missed. Each request waits on its own latch, so
+         * requests for the same node on different queues don't unregister
+         * each other.
+         */
+        Set<CountDownLatch> latches = outgoingBatchWaiters.get(nodeId);
+        if (latches == null) {
+            latches = Collections.newSetFromMap(new ConcurrentHashMap<CountDownLatch, Boolean>());
+            Set<CountDownLatch> existingLatches = outgoingBatchWaiters.putIfAbsent(nodeId, latches);
+            if (existingLatches != null) {
+                latches = existingLatches;
+            }
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        latches.add(latch);
+        try {
+            if (isOutgoingBatchToSend(nodeId, channelMap)) {
+                return true;
+            }
+            return latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            latches.remove(latch);
+        }
+    }
+
+    public void notifyOutgoingBatchesReady(Collection<String> nodeIds) {
+        for (String nodeId : nodeIds) {
+            markOutgoingBatchesPending(nodeId);
+        }
+        if (outgoingBatchWaiters.size() > 0) {
+            for (String nodeId : nodeIds) {
+                Set<CountDownLatch> latches = outgoingBatchWaiters.get(nodeId);
+                if (latches != null) {
+                    for (CountDownLatch latch : latches) {
+                        latch.countDown();
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * A node is remembered as idle on a queue when selecting its batches finds
+     * none. Creating or resending a batch for the node forgets it again. The
+     * batch may be written in a transaction that is not committed yet, so a
+     * node that had batches created for it within the reconcile period is not
+     * remembered as idle. Batches written by other nodes in a cluster or
+     * outside of SymmetricDS are picked up when the reconcile period passes.
+     */
+    public boolean isOutgoingBatchesIdle(String nodeId, String queue) {
+        Map<String, Long> idleQueues = idleQueuesByNode.get(nodeId);
+        if (idleQueues != null) {
+            long reconcilePeriod = parameterService.getLong(ParameterConstants.OUTGOING_BATCH_IDLE_RECONCILE_PERIOD_MS);
+            Long idleTime = idleQueues.get(ALL_QUEUES);
+            if (idleTime == null && queue != null) {
+                idleTime = idleQueues.get(queue);
+            }
+            return idleTime != null && System.currentTimeMillis() - idleTime < reconcilePeriod;
+        }
+        return false;
+    }
+
+    protected void markOutgoingBatchesIdle(String nodeId, String queue, long selectTime) {
+        long reconcilePeriod = parameterService.getLong(ParameterConstants.OUTGOING_BATCH_IDLE_RECONCILE_PERIOD_MS);
+        if (reconcilePeriod > 0 && !parameterService.is(ParameterConstants.CLUSTER_LOCKING_ENABLED)
+                && !isPendingSince(nodeId, selectTime - reconcilePeriod)) {
+            Map<String, Long> idleQueues = idleQueuesByNode.get(nodeId);
+            if (idleQueues == null) {
+                idleQueues = new ConcurrentHashMap<String, Long>();
+                Map<String, Long> existingIdleQueues = idleQueuesByNode.putIfAbsent(nodeId, idleQueues);
+                if (existingIdleQueues != null) {
+                    idleQueues = existingIdleQueues;
+                }
+            }
+            String key = queue != null ? queue : ALL_QUEUES;
+            idleQueues.put(key, selectTime);
+
+            /*
+             * Check again in case a batch was created while the idle time
+             * was being recorded
+             */
+            if (isPendingSince(nodeId, selectTime - reconcilePeriod)) {
+                idleQueues.remove(key);
+            }
+        }
+    }
+
+    protected void markOutgoingBatchesPending(String nodeId) {
+        lastPendingTimeByNode.put(nodeId, System.currentTimeMillis());
+        idleQueuesByNode.remove(nodeId);
+    }
+
+    protected boolean isPendingSince(String nodeId, long time) {
+        Long lastPendingTime = lastPendingTimeByNode.get(nodeId);
+        return lastPendingTime != null && lastPendingTime >= time;
+    }
+
+    protected boolean isReadyToSend(Status status) {
+        return status == Status.NE || status == Status.RQ || status == Status.RS || status == Status.ER
+                || status == Status.IG;
+    }
+
+    protected boolean isOutgoingBatchToSend(String nodeId, ChannelMap channelMap) {
+        List<Row> rows = sqlTemplate.query(getSql("selectOutgoingBatchChannelsToSendSql"),
+                new Object[] { nodeId, OutgoingBatch.Status.RQ.name(), OutgoingBatch.Status.NE.name(),
+                        OutgoingBatch.Status.QY.name(), OutgoingBatch.Status.SE.name(),
+                        OutgoingBatch.Status.LD.name(), OutgoingBatch.Status.ER.name(),
+                        OutgoingBatch.Status.IG.name(), OutgoingBatch.Status.RS.name() });
+        String queue = channelMap.getThreadChannel();
+        for (Row row : rows) {
+            if ((queue == null || queue.equals(row.getString("queue")))
+                    && !channelMap.getSuspendChannels().contains(row.getString("channel_id"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public Map<String, Integer> countOutgoingBatchesPendingByChannel(String nodeId) {                
         List<Row> rows = sqlTemplate.query(getSql("countOutgoingBatchesByChannelSql"), new Object[]{nodeId});
@@ -386,6 +594,10 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
 
     @Override
     public OutgoingBatches getOutgoingBatches(String nodeId, String channelThread, boolean includeDisabledChannels) {
+        if (isOutgoingBatchesIdle(nodeId, channelThread)) {
+            return new OutgoingBatches();
+        }
+
         long ts = System.currentTimeMillis();
         final int maxNumberOfBatchesToSelect = parameterService.getInt(
                 ParameterConstants.OUTGOING_BATCH_MAX_BATCHES_TO_SELECT, 1000);
@@ -408,8 +620,12 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
                     OutgoingBatch.Status.IG.name(), OutgoingBatch.Status.RS.name()};
         }
         
+        OutgoingBatchMapper mapper = new OutgoingBatchMapper(includeDisabledChannels);
         List<OutgoingBatch> list = (List<OutgoingBatch>) sqlTemplate.query(
-                sql, maxNumberOfBatchesToSelect, new OutgoingBatchMapper(includeDisabledChannels), params, null);
+                sql, maxNumberOfBatchesToSelect, mapper, params, null);
+        if (mapper.rowCount == 0) {
+            markOutgoingBatchesIdle(nodeId, channelThread, ts);
+        }
         
         OutgoingBatches batches = new OutgoingBatches(list);
 
@@ -805,6 +1021,7 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
         private boolean statusOnly = false;
         private boolean includeDisabledChannels = false;
         private Map<String, Channel> channels;
+        private int rowCount;
 
         public OutgoingBatchMapper(boolean includeDisabledChannels, boolean statusOnly) {
             this.includeDisabledChannels = includeDisabledChannels;
@@ -817,6 +1034,7 @@ public class OutgoingBatchService extends AbstractService implements IOutgoingBa
         }
 
         public OutgoingBatch mapRow(Row rs) {
+            rowCount++;
             String channelId = rs.getString("channel_id");
             Channel channel = channels.get(channelId);
             if (channel != null && (includeDisabledChannels || channel.isEnabled())) {
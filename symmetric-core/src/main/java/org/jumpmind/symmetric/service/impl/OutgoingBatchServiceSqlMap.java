@@ -59,6 +59,8 @@ public class OutgoingBatchServiceSqlMap extends AbstractSqlMap {
                         + "  load_millis=?, extract_millis=?, sql_state=?, sql_code=?, sql_message=?,                                       "
                         + "  failed_data_id=?, last_update_hostname=?, last_update_time=?, summary=? where batch_id=? and node_id=?                    ");
 
+        putSql("andStatusNotOkSql", " and status != 'OK' ");
+
         putSql("findOutgoingBatchSql", "where batch_id=? and node_id=?  ");
 
         putSql("findOutgoingBatchByIdOnlySql", "where batch_id=? ");
@@ -69,6 +71,10 @@ public class OutgoingBatchServiceSqlMap extends AbstractSqlMap {
         putSql("selectOutgoingBatchChannelSql", 
                 " join $(channel) c on c.channel_id = b.channel_id where node_id = ? and c.queue = ? and status in (?, ?, ?, ?, ?, ?, ?, ?) order by batch_id asc   ");
 
+        putSql("selectOutgoingBatchChannelsToSendSql",
+                "select distinct b.channel_id, c.queue from $(outgoing_batch) b join $(channel) c on c.channel_id = b.channel_id "
+                        + "where b.node_id = ? and b.status in (?, ?, ?, ?, ?, ?, ?, ?)   ");
+
         putSql("selectOutgoingBatchRangeSql",
                 "where batch_id between ? and ? order by batch_id   ");
 
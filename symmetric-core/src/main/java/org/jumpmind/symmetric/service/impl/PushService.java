@@ -49,6 +49,7 @@ import org.jumpmind.symmetric.service.IExtensionService;
 import org.jumpmind.symmetric.service.INodeCommunicationService;
 import org.jumpmind.symmetric.service.INodeCommunicationService.INodeCommunicationExecutor;
 import org.jumpmind.symmetric.service.INodeService;
+import org.jumpmind.symmetric.service.IOutgoingBatchService;
 import org.jumpmind.symmetric.service.IParameterService;
 import org.jumpmind.symmetric.service.IPushService;
 import org.jumpmind.symmetric.statistic.IStatisticManager;
@@ -64,6 +65,8 @@ public class PushService extends AbstractOfflineDetectorService implements IPush
 
     private IDataExtractorService dataExtractorService;
 
+    private IOutgoingBatchService outgoingBatchService;
+
     private IAcknowledgeService acknowledgeService;
 
     private ITransportManager transportManager;
@@ -81,12 +84,14 @@ public class PushService extends AbstractOfflineDetectorService implements IPush
     private Map<String, Date> startTimesOfNodesBeingPushedTo = new HashMap<String, Date>();
 
     public PushService(IParameterService parameterService, ISymmetricDialect symmetricDialect,
-            IDataExtractorService dataExtractorService, IAcknowledgeService acknowledgeService,
+            IDataExtractorService dataExtractorService, IOutgoingBatchService outgoingBatchService,
+            IAcknowledgeService acknowledgeService,
             ITransportManager transportManager, INodeService nodeService,
             IClusterService clusterService, INodeCommunicationService nodeCommunicationService, IStatisticManager statisticManager, 
             IConfigurationService configrationService, IExtensionService extensionService) {
         super(parameterService, symmetricDialect, extensionService);
         this.dataExtractorService = dataExtractorService;
+        this.outgoingBatchService = outgoingBatchService;
         this.acknowledgeService = acknowledgeService;
         this.transportManager = transportManager;
         this.nodeService = nodeService;
@@ -120,7 +125,9 @@ public class PushService extends AbstractOfflineDetectorService implements IPush
                                    (System.currentTimeMillis() - nodeCommunication.getLastLockTime().getTime()) < minimumPeriodMs) {
                                    meetsMinimumTime = false; 
                                 }
-                                if (availableThreads > 0 && meetsMinimumTime) {
+                                boolean idle = outgoingBatchService.isOutgoingBatchesIdle(
+                                        nodeCommunication.getNodeId(), nodeCommunication.getQueue());
+                                if (availableThreads > 0 && meetsMinimumTime && !idle) {
                                     if (nodeCommunicationService.execute(nodeCommunication, statuses,
                                             this)) {
                                         availableThreads--;
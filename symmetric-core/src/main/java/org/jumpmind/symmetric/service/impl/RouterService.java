@@ -120,6 +120,14 @@ public class RouterService extends AbstractService implements IRouterService {
     
     protected boolean firstTimeCheckForAbandonedBatches = true;
 
+    protected volatile long unroutedGapStartId;
+
+    protected volatile long unroutedGapSize;
+
+    protected volatile long unroutedGapTime;
+
+    protected volatile long unroutedDataCountTime;
+
     public RouterService(ISymmetricEngine engine) {
         super(engine.getParameterService(), engine.getSymmetricDialect());
 
@@ -206,6 +214,7 @@ public class RouterService extends AbstractService implements IRouterService {
                     if (dataCount > 0) {
                         gapDetector.afterRouting();
                     }
+                    updateUnroutedGaps();
                 } finally {
                     if (!force) {
                         engine.getClusterService().unlock(ClusterConstants.ROUTE);
@@ -699,6 +708,10 @@ public class RouterService extends AbstractService implements IRouterService {
             } finally {
                 long totalTime = System.currentTimeMillis() - ts;
                 context.incrementStat(totalTime, ChannelRouterContext.STAT_ROUTE_TOTAL_TIME);
+                if (dataCount > 0) {
+                    engine.getStatisticManager().addLatency(StatisticConstants.LATENCY_ROUTE,
+                            nodeChannel.getChannelId(), null, totalTime);
+                }
                 context.logStats(log, totalTime);
                 context.cleanup();
             }
@@ -709,6 +722,8 @@ public class RouterService extends AbstractService implements IRouterService {
         Set<IDataRouter> usedRouters = new HashSet<IDataRouter>(context.getUsedDataRouters());
         List<OutgoingBatch> batches = new ArrayList<OutgoingBatch>(context.getBatchesByNodes()
                 .values());
+        Set<String> readyNodeIds = new HashSet<String>(batches.size());
+        Map<Long, String> sharedBatchKeys = getSharedBatchKeys(context, batches);
 
         gapDetector.setFullGapAnalysis(true);
 
@@ -727,6 +742,7 @@ public class RouterService extends AbstractService implements IRouterService {
                 batch.setStatus(Status.OK);
             } else {
                 batch.setStatus(Status.NE);
+                readyNodeIds.add(batch.getNodeId());
             }
             engine.getOutgoingBatchService().updateOutgoingBatch(context.getSqlTransaction(), batch);
             context.getBatchesByNodes().remove(batch.getNodeId());
@@ -734,12 +750,53 @@ public class RouterService extends AbstractService implements IRouterService {
         
         context.commit();
 
+        if (sharedBatchKeys.size() > 0) {
+            engine.getDataExtractorService().addSharedBatchKeys(sharedBatchKeys);
+        }
+
+        engine.getOutgoingBatchService().notifyOutgoingBatchesReady(readyNodeIds);
+
         for (IDataRouter dataRouter : usedRouters) {
             dataRouter.contextCommitted(context);
         }
         context.setNeedsCommitted(false);
     }
 
+    /**
+     * Finds the batches that hold the same data as a batch for another node,
+     * so that the extract can copy one staged batch for all of them instead of
+     * selecting the data again for each node.
+     * 
+     * @return a key for the content of each of those batches by batch id
+     */
+    protected Map<Long, String> getSharedBatchKeys(ChannelRouterContext context,
+            List<OutgoingBatch> batches) {
+        Map<String, List<Long>> batchIdsByKey = new HashMap<String, List<Long>>();
+        for (OutgoingBatch batch : batches) {
+            String digest = context.getDataDigest(batch.getBatchId());
+            if (digest != null && !Constants.UNROUTED_NODE_ID.equals(batch.getNodeId())) {
+                String key = StringUtils.join(new Object[] { batch.getChannelId(),
+                        batch.getDataEventCount(), digest }, "|");
+                List<Long> batchIds = batchIdsByKey.get(key);
+                if (batchIds == null) {
+                    batchIds = new ArrayList<Long>();
+                    batchIdsByKey.put(key, batchIds);
+                }
+                batchIds.add(batch.getBatchId());
+            }
+        }
+
+        Map<Long, String> keysByBatchId = new HashMap<Long, String>();
+        for (Map.Entry<String, List<Long>> entry : batchIdsByKey.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                for (Long batchId : entry.getValue()) {
+                    keysByBatchId.put(batchId, entry.getKey());
+                }
+            }
+        }
+        return keysByBatchId;
+    }
+
     protected Set<Node> findAvailableNodes(TriggerRouter triggerRouter, ChannelRouterContext context) {
         Set<Node> nodes = context.getAvailableNodes().get(triggerRouter);
         if (nodes == null) {
@@ -814,12 +871,13 @@ public class RouterService extends AbstractService implements IRouterService {
         int statsDataEventCount = 0;
         final int maxNumberOfEventsBeforeFlush = parameterService
                 .getInt(ParameterConstants.ROUTING_FLUSH_JDBC_BATCH_SIZE);
+        context.setDataToRouteReader(reader);
         try {
-            nextData = reader.take();
+            nextData = context.peekData();
             do {
                 if (nextData != null) {
-                    data = nextData;
-                    nextData = reader.take();
+                    data = context.takeData();
+                    nextData = context.peekData();
                     if (data != null) {
                         processInfo.setCurrentTableName(data.getTableName());
                         processInfo.incrementCurrentDataCount();
@@ -973,6 +1031,8 @@ public class RouterService extends AbstractService implements IRouterService {
         long ts = System.currentTimeMillis();
         long batchIdToReuse = -1;
         boolean dataEventAdded = false;
+        boolean digestData = !context.isProduceCommonBatches()
+                && parameterService.is(ParameterConstants.EXTRACT_SHARE_IDENTICAL_BATCHES_ENABLED);
         for (String nodeId : nodeIds) {
             if (nodeId != null) {
                 Map<String, OutgoingBatch> batches = context.getBatchesByNodes();
@@ -1022,6 +1082,11 @@ public class RouterService extends AbstractService implements IRouterService {
                     numberOfDataEventsInserted++;
                     dataEventAdded = true;
                 }
+                if (digestData) {
+                    Router router = dataMetaData.getRouter();
+                    context.addToDataDigest(batch.getBatchId(), dataMetaData.getData(),
+                            router != null ? router.getRouterId() : Constants.UNKNOWN_ROUTER_ID);
+                }
                 Map<String, IBatchAlgorithm> batchAlgorithms = extensionService.getExtensionPointMap(IBatchAlgorithm.class);
                 if (batchAlgorithms.get(context.getChannel().getBatchAlgorithm()).isBatchComplete(
                         batch, dataMetaData, context)) {
@@ -1098,6 +1163,38 @@ public class RouterService extends AbstractService implements IRouterService {
         }
     }
 
+    public long getUnroutedDataCount(boolean useCache) {
+        long reconcilePeriod = parameterService.getLong(ParameterConstants.MONITOR_RECONCILE_PERIOD_MS);
+        long now = System.currentTimeMillis();
+        if (useCache && now - unroutedDataCountTime < reconcilePeriod && now - unroutedGapTime < reconcilePeriod) {
+            long leftToRoute = engine.getDataService().findMaxDataId() - unroutedGapStartId + unroutedGapSize;
+            return leftToRoute > 0 ? leftToRoute : 0;
+        }
+        unroutedDataCountTime = now;
+        return getUnroutedDataCount();
+    }
+
+    /**
+     * Remember the gaps the fast gap detector holds in memory after each
+     * routing run so the unrouted count can be calculated without reading
+     * them from the database.
+     */
+    protected void updateUnroutedGaps() {
+        if (gapDetector instanceof DataGapFastDetector) {
+            List<DataGap> gaps = gapDetector.getDataGaps();
+            if (gaps != null && gaps.size() > 0) {
+                long gapSize = 0;
+                for (int i = 0; i < gaps.size() - 2; i++) {
+                    DataGap gap = gaps.get(i);
+                    gapSize += (gap.getEndId() - gap.getStartId());
+                }
+                unroutedGapStartId = gaps.get(gaps.size() - 1).getStartId();
+                unroutedGapSize = gapSize;
+                unroutedGapTime = System.currentTimeMillis();
+            }
+        }
+    }
+
     public List<String> getAvailableBatchAlgorithms() {
         return new ArrayList<String>(extensionService.getExtensionPointMap(IBatchAlgorithm.class).keySet());
     }
@@ -24,6 +24,16 @@ import java.sql.Types;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jumpmind.db.sql.ISqlRowMapper;
 import org.jumpmind.db.sql.ISqlTransaction;
@@ -37,11 +47,22 @@ import org.jumpmind.symmetric.model.Sequence;
 import org.jumpmind.symmetric.service.IParameterService;
 import org.jumpmind.symmetric.service.ISequenceService;
 
+/**
+ * Hands out sequence values from blocks that are reserved in sym_sequence.
+ * Values are handed out from the current block without locking. Only the
+ * refill of a given sequence is serialized, and the next block is reserved in
+ * the background once half of the current block has been used. The size of a
+ * block grows and shrinks with the rate at which values are consumed.
+ */
 public class SequenceService extends AbstractService implements ISequenceService {
 
-    private Map<String, Sequence> sequenceDefinitionCache = new HashMap<String, Sequence>();
-    
-    private Map<String, CachedRange> sequenceCache = new HashMap<String, CachedRange>();
+    private Map<String, Sequence> sequenceDefinitionCache = new ConcurrentHashMap<String, Sequence>();
+
+    private ConcurrentMap<String, CachedSequence> sequenceCache = new ConcurrentHashMap<String, CachedSequence>();
+
+    private ExecutorService prefetchExecutor;
+
+    private boolean stopped;
 
     public SequenceService(IParameterService parameterService, ISymmetricDialect symmetricDialect) {
         super(parameterService, symmetricDialect);
@@ -50,6 +71,9 @@ public class SequenceService extends AbstractService implements ISequenceService
     }
 
     public void init() {
+        synchronized (this) {
+            stopped = false;
+        }
         Map<String, Sequence> sequences = getAll();
         if (sequences.get(Constants.SEQUENCE_OUTGOING_BATCH_LOAD_ID) == null) {
             initSequence(Constants.SEQUENCE_OUTGOING_BATCH_LOAD_ID, 1, 0);
@@ -84,14 +108,22 @@ public class SequenceService extends AbstractService implements ISequenceService
         }
     }
 
-    public synchronized long nextVal(String name) {
+    public synchronized void stop() {
+        stopped = true;
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+    }
+
+    public long nextVal(String name) {
         if (getSequenceDefinition(name).getCacheSize() > 0) {
             return nextValFromCache(null, name);
         }
         return nextValFromDatabase(name);
     }
 
-    public synchronized long nextVal(ISqlTransaction transaction, String name) {
+    public long nextVal(ISqlTransaction transaction, String name) {
         if (getSequenceDefinition(transaction, name).getCacheSize() > 0) {
             return nextValFromCache(transaction, name);
         }
@@ -99,19 +131,131 @@ public class SequenceService extends AbstractService implements ISequenceService
     }
 
     protected long nextValFromCache(ISqlTransaction transaction, String name) {
-        CachedRange range = sequenceCache.get(name);
-        if (range != null) {
-            long currentValue = range.getCurrentValue();
-            if (currentValue < range.getEndValue()) {
-                range.setCurrentValue(++currentValue);
-                return currentValue;
-            } else {
-                sequenceCache.remove(name);
+        CachedSequence cachedSequence = getCachedSequence(name);
+        while (true) {
+            CachedRange range = cachedSequence.current;
+            if (range != null) {
+                long value = range.next();
+                if (value != CachedRange.NO_VALUE) {
+                    if (range.isPrefetchDue()) {
+                        prefetch(name, cachedSequence);
+                    }
+                    return value;
+                }
             }
+            refill(transaction, name, cachedSequence, range);
         }
-        return nextValFromDatabase(transaction, name);
     }
-    
+
+    protected CachedSequence getCachedSequence(String name) {
+        CachedSequence cachedSequence = sequenceCache.get(name);
+        if (cachedSequence == null) {
+            cachedSequence = new CachedSequence();
+            CachedSequence existing = sequenceCache.putIfAbsent(name, cachedSequence);
+            if (existing != null) {
+                cachedSequence = existing;
+            }
+        }
+        return cachedSequence;
+    }
+
+    /**
+     * Replaces the exhausted range with the prefetched range or, if there
+     * isn't one, with a range reserved in the caller's transaction. Threads
+     * that raced to refill the same range wait for the first one and then use
+     * the range it installed.
+     */
+    protected void refill(ISqlTransaction transaction, String name,
+            CachedSequence cachedSequence, CachedRange exhausted) {
+        cachedSequence.refillLock.lock();
+        try {
+            if (cachedSequence.current == exhausted) {
+                CachedRange prefetched = cachedSequence.prefetched;
+                cachedSequence.prefetched = null;
+                if (prefetched != null && prefetched.follows(exhausted)) {
+                    cachedSequence.current = prefetched;
+                } else {
+                    cachedSequence.current = reserveRange(transaction, name,
+                            cachedSequence.nextBlockSize(getSequenceDefinition(transaction, name)
+                                    .getCacheSize(), parameterService.getInt(
+                                    ParameterConstants.SEQUENCE_CACHE_MAX_SIZE, 1000),
+                                    parameterService.getLong(
+                                            ParameterConstants.SEQUENCE_CACHE_TARGET_MS, 10000)));
+                }
+            }
+        } finally {
+            cachedSequence.refillLock.unlock();
+        }
+    }
+
+    protected void prefetch(final String name, final CachedSequence cachedSequence) {
+        final Sequence sequence = getSequenceDefinition(name);
+        if (sequence.isCycle() || cachedSequence.prefetched != null
+                || !parameterService.is(ParameterConstants.SEQUENCE_PREFETCH_ENABLED, true)
+                || !cachedSequence.prefetching.compareAndSet(false, true)) {
+            return;
+        }
+
+        ExecutorService executor = getPrefetchExecutor();
+        if (executor == null) {
+            cachedSequence.prefetching.set(false);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        final int blockSize = cachedSequence.nextBlockSize(sequence
+                                .getCacheSize(), parameterService.getInt(
+                                ParameterConstants.SEQUENCE_CACHE_MAX_SIZE, 1000),
+                                parameterService.getLong(
+                                        ParameterConstants.SEQUENCE_CACHE_TARGET_MS, 10000));
+                        CachedRange range = new DoTransaction<CachedRange>() {
+                            public CachedRange execute(ISqlTransaction transaction) {
+                                return reserveRange(transaction, name, blockSize);
+                            }
+                        }.execute();
+                        cachedSequence.offerPrefetched(range);
+                    } catch (RuntimeException ex) {
+                        log.debug("Failed to prefetch the next range for sequence " + name, ex);
+                    } finally {
+                        cachedSequence.prefetching.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            cachedSequence.prefetching.set(false);
+        }
+    }
+
+    /**
+     * @return the executor that reserves ranges ahead of time, or null once
+     *         the service has been stopped
+     */
+    protected synchronized ExecutorService getPrefetchExecutor() {
+        if (stopped) {
+            return null;
+        } else if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                final AtomicInteger threadNumber = new AtomicInteger(1);
+                final String namePrefix = parameterService.getEngineName().toLowerCase()
+                        + "-sequence-prefetch-";
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName(namePrefix + threadNumber.getAndIncrement());
+                    t.setDaemon(true);
+                    if (t.getPriority() != Thread.NORM_PRIORITY) {
+                        t.setPriority(Thread.NORM_PRIORITY);
+                    }
+                    return t;
+                }
+            });
+        }
+        return prefetchExecutor;
+    }
+
     protected long nextValFromDatabase(final String name) {
         return new DoTransaction<Long>() {
             public Long execute(ISqlTransaction transaction) {
@@ -123,14 +267,30 @@ public class SequenceService extends AbstractService implements ISequenceService
     protected long nextValFromDatabase(ISqlTransaction transaction, String name) {
         if (transaction == null) {
             return nextValFromDatabase(name);
+        } else {
+            return reserveRange(transaction, name, 1).next();
+        }
+    }
+
+    protected CachedRange reserveRange(final String name, final int count) {
+        return new DoTransaction<CachedRange>() {
+            public CachedRange execute(ISqlTransaction transaction) {
+                return reserveRange(transaction, name, count);
+            }
+        }.execute();
+    }
+
+    protected CachedRange reserveRange(ISqlTransaction transaction, String name, int count) {
+        if (transaction == null) {
+            return reserveRange(name, count);
         } else {
             long sequenceTimeoutInMs = parameterService.getLong(
                     ParameterConstants.SEQUENCE_TIMEOUT_MS, 5000);
             long ts = System.currentTimeMillis();
             do {
-                long nextVal = tryToGetNextVal(transaction, name);
-                if (nextVal > 0) {
-                    return nextVal;
+                CachedRange range = tryToReserveRange(transaction, name, count);
+                if (range != null) {
+                    return range;
                 }
             } while (System.currentTimeMillis() - sequenceTimeoutInMs < ts);
 
@@ -140,10 +300,16 @@ public class SequenceService extends AbstractService implements ISequenceService
         }
     }
 
-    protected long tryToGetNextVal(ISqlTransaction transaction, String name) {
-        long currVal = currVal(transaction, name);
+    /**
+     * Tries to move the current value of the sequence past the requested
+     * number of values. Returns null if another transaction moved the current
+     * value first.
+     */
+    protected CachedRange tryToReserveRange(ISqlTransaction transaction, String name, int count) {
+        long currVal = transaction.queryForLong(getSql("getCurrentValueSql"), name);
         Sequence sequence = getSequenceDefinition(transaction, name);
-        long nextVal = currVal + sequence.getIncrementBy();
+        long incrementBy = sequence.getIncrementBy();
+        long nextVal = currVal + incrementBy;
         if (nextVal > sequence.getMaxValue()) {
             if (sequence.isCycle()) {
                 nextVal = sequence.getMinValue();
@@ -162,22 +328,24 @@ public class SequenceService extends AbstractService implements ISequenceService
             }
         }
 
-        CachedRange range = null;
-        if (sequence.getCacheSize() > 0) {
-            long endVal = nextVal + (sequence.getIncrementBy() * (sequence.getCacheSize() - 1));
-            range = new CachedRange(nextVal, endVal);
-            nextVal = endVal;
+        if (count > 1 && incrementBy != 0) {
+            long available = incrementBy > 0 ? (sequence.getMaxValue() - nextVal) / incrementBy
+                    : (nextVal - sequence.getMinValue()) / -incrementBy;
+            if (available + 1 < count) {
+                count = (int) available + 1;
+            }
+        } else {
+            count = 1;
         }
 
-        int updateCount = transaction.prepareAndExecute(getSql("updateCurrentValueSql"), nextVal,
+        long endVal = nextVal + (incrementBy * (count - 1));
+        int updateCount = transaction.prepareAndExecute(getSql("updateCurrentValueSql"), endVal,
                 name, currVal);
         if (updateCount != 1) {
-            nextVal = -1;
-        } else if (range != null) {
-            sequenceCache.put(name, range);
-            nextVal = range.getCurrentValue();
+            return null;
+        } else {
+            return new CachedRange(nextVal, incrementBy, count);
         }
-        return nextVal;
     }
 
     protected Sequence getSequenceDefinition(final String name) {
@@ -196,6 +364,9 @@ public class SequenceService extends AbstractService implements ISequenceService
     protected Sequence getSequenceDefinition(ISqlTransaction transaction, String name) {
         Sequence sequence = sequenceDefinitionCache.get(name);
         if (sequence == null) {
+            if (transaction == null) {
+                return getSequenceDefinition(name);
+            }
             sequence = get(transaction, name);
             if (sequence != null) {
                 sequenceDefinitionCache.put(name, sequence);
@@ -208,16 +379,18 @@ public class SequenceService extends AbstractService implements ISequenceService
         return sequence;
     }
 
-    public synchronized long currVal(ISqlTransaction transaction, String name) {
-        CachedRange range = sequenceCache.get(name);
+    public long currVal(ISqlTransaction transaction, String name) {
+        CachedSequence cachedSequence = sequenceCache.get(name);
+        CachedRange range = cachedSequence != null ? cachedSequence.current : null;
         if (range != null) {
             return range.getCurrentValue();
         }
         return transaction.queryForLong(getSql("getCurrentValueSql"), name);
     }
 
-    public synchronized long currVal(final String name) {
-        CachedRange range = sequenceCache.get(name);
+    public long currVal(final String name) {
+        CachedSequence cachedSequence = sequenceCache.get(name);
+        CachedRange range = cachedSequence != null ? cachedSequence.current : null;
         if (range != null) {
             return range.getCurrentValue();
         }
@@ -253,26 +426,105 @@ public class SequenceService extends AbstractService implements ISequenceService
         return map;
     }
 
-    class CachedRange {
-        long currentValue;
-        long endValue;
-        
-        public CachedRange(long currentValue, long endValue) {
-            this.currentValue = currentValue;
-            this.endValue = endValue;
+    /**
+     * The cached ranges of one sequence. The current range is read without
+     * locking, while replacing it is serialized by the refill lock.
+     */
+    static class CachedSequence {
+        final ReentrantLock refillLock = new ReentrantLock();
+        final AtomicBoolean prefetching = new AtomicBoolean();
+        volatile CachedRange current;
+        volatile CachedRange prefetched;
+        int blockSize;
+        long lastReserveTime;
+
+        void offerPrefetched(CachedRange range) {
+            refillLock.lock();
+            try {
+                if (range.follows(current)) {
+                    prefetched = range;
+                }
+            } finally {
+                refillLock.unlock();
+            }
         }
 
-        public long getCurrentValue() {
-            return currentValue;
+        /**
+         * Doubles the block size when the last block was reserved less than
+         * the target time ago and halves it when it lasted much longer than
+         * the target time, staying between the configured cache size and the
+         * maximum size.
+         */
+        synchronized int nextBlockSize(int minSize, int maxSize, long targetMs) {
+            long now = System.currentTimeMillis();
+            if (maxSize < minSize) {
+                maxSize = minSize;
+            }
+            if (blockSize < minSize) {
+                blockSize = minSize;
+            } else if (lastReserveTime > 0) {
+                long elapsed = now - lastReserveTime;
+                if (elapsed < targetMs) {
+                    blockSize = (int) Math.min((long) blockSize * 2, maxSize);
+                } else if (elapsed > targetMs * 4) {
+                    blockSize = Math.max(blockSize / 2, minSize);
+                }
+            }
+            if (blockSize > maxSize) {
+                blockSize = maxSize;
+            }
+            lastReserveTime = now;
+            return blockSize;
         }
-        
-        public void setCurrentValue(long currentValue) {
-            this.currentValue = currentValue;
+    }
+
+    static class CachedRange {
+        static final long NO_VALUE = Long.MIN_VALUE;
+
+        final long startValue;
+        final long incrementBy;
+        final int count;
+        final AtomicLong handedOut = new AtomicLong();
+        final AtomicBoolean prefetchRequested = new AtomicBoolean();
+
+        public CachedRange(long startValue, long incrementBy, int count) {
+            this.startValue = startValue;
+            this.incrementBy = incrementBy;
+            this.count = count;
         }
-        
+
+        public long next() {
+            long index = handedOut.getAndIncrement();
+            if (index < count) {
+                return startValue + incrementBy * index;
+            } else {
+                return NO_VALUE;
+            }
+        }
+
+        public long getCurrentValue() {
+            long index = Math.min(handedOut.get(), count);
+            return startValue + incrementBy * (index - 1);
+        }
+
         public long getEndValue() {
-            return endValue;
-        }        
+            return startValue + incrementBy * (count - 1);
+        }
+
+        public boolean isPrefetchDue() {
+            return count > 1 && handedOut.get() >= count / 2 && !prefetchRequested.get()
+                    && prefetchRequested.compareAndSet(false, true);
+        }
+
+        public boolean follows(CachedRange range) {
+            if (range == null) {
+                return true;
+            } else if (incrementBy > 0) {
+                return startValue > range.getEndValue();
+            } else {
+                return startValue < range.getEndValue();
+            }
+        }
     }
     
     abstract class DoTransaction<T> {
@@ -61,6 +61,24 @@ public class ChannelStats extends AbstractNodeHostStats {
         dataLoadedErrors += stats.getDataLoadedErrors();
     }
 
+    /**
+     * The unrouted count is left alone because it is a point in time count
+     * rather than a running total.
+     */
+    public void subtract(ChannelStats stats) {
+        dataRouted -= stats.getDataRouted();
+        dataExtracted -= stats.getDataExtracted();
+        dataBytesExtracted -= stats.getDataBytesExtracted();
+        dataExtractedErrors -= stats.getDataExtractedErrors();
+        dataEventInserted -= stats.getDataEventInserted();
+        dataSent -= stats.getDataSent();
+        dataBytesSent -= stats.getDataBytesSent();
+        dataSentErrors -= stats.getDataSentErrors();
+        dataLoaded -= stats.getDataLoaded();
+        dataBytesLoaded -= stats.getDataBytesLoaded();
+        dataLoadedErrors -= stats.getDataLoadedErrors();
+    }
+
     public String getChannelId() {
         return channelId;
     }
@@ -114,5 +114,14 @@ public interface IStatisticManager {
     public Map<String, ChannelStats> getWorkingChannelStats();
     
     public HostStats getWorkingHostStats();
+
+    /**
+     * @return the channel statistics accumulated since the engine started
+     */
+    public Map<String, ChannelStats> getTotalChannelStats();
+
+    public void addLatency(String name, String channelId, String nodeId, long timeInMs);
+
+    public List<LatencyHistogram> getLatencyHistograms();
         
 }
\ No newline at end of file
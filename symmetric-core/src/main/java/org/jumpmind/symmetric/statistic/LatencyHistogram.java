@@ -0,0 +1,135 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long an operation took, in milliseconds, for one channel and
+ * node. Times are sorted into fixed buckets so that recording is lock free and
+ * the histogram never grows.
+ */
+public class LatencyHistogram {
+
+    public static final long[] BUCKET_BOUNDS_MS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500,
+            5000, 10000, 30000, 60000, 300000 };
+
+    private String name;
+
+    private String channelId;
+
+    private String nodeId;
+
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+    private AtomicLong count = new AtomicLong();
+
+    private AtomicLong sum = new AtomicLong();
+
+    private AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name, String channelId, String nodeId) {
+        this.name = name;
+        this.channelId = channelId;
+        this.nodeId = nodeId;
+    }
+
+    public void record(long timeInMs) {
+        if (timeInMs < 0) {
+            timeInMs = 0;
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && timeInMs > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(timeInMs);
+        long currentMax = max.get();
+        while (timeInMs > currentMax && !max.compareAndSet(currentMax, timeInMs)) {
+            currentMax = max.get();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the number of times recorded in each bucket. The last bucket
+     *         holds the times above the largest bound.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getAverage() {
+        long currentCount = count.get();
+        return currentCount > 0 ? sum.get() / currentCount : 0;
+    }
+
+    /**
+     * @return the upper bound of the bucket that holds the given percentile,
+     *         or the max time if it falls in the last bucket
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return BUCKET_BOUNDS_MS[i];
+            }
+        }
+        return max.get();
+    }
+
+}
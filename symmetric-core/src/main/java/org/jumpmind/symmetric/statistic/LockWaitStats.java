@@ -0,0 +1,91 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the waits for a shared or exclusive lock on one action: how many
+ * were granted or gave up, how often the lock was tried again, and how long
+ * callers waited.
+ */
+public class LockWaitStats {
+
+    private String action;
+
+    private AtomicLong acquiredCount = new AtomicLong();
+
+    private AtomicLong timedOutCount = new AtomicLong();
+
+    private AtomicLong retryCount = new AtomicLong();
+
+    private AtomicLong totalWaitMillis = new AtomicLong();
+
+    private AtomicLong maxWaitMillis = new AtomicLong();
+
+    public LockWaitStats(String action) {
+        this.action = action;
+    }
+
+    public void record(boolean acquired, long retries, long waitMillis) {
+        if (acquired) {
+            acquiredCount.incrementAndGet();
+        } else {
+            timedOutCount.incrementAndGet();
+        }
+        retryCount.addAndGet(retries);
+        totalWaitMillis.addAndGet(waitMillis);
+        long currentMax = maxWaitMillis.get();
+        while (waitMillis > currentMax && !maxWaitMillis.compareAndSet(currentMax, waitMillis)) {
+            currentMax = maxWaitMillis.get();
+        }
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitMillis.get();
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    public long getAverageWaitMillis() {
+        long count = getAcquiredCount() + getTimedOutCount();
+        return count > 0 ? getTotalWaitMillis() / count : 0;
+    }
+
+}
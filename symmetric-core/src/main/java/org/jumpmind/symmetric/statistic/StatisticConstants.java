@@ -31,5 +31,11 @@ public final class StatisticConstants {
     public static final int FLUSH_SIZE_LINES = 512;
     public static final int FLUSH_SIZE_BYTES = 1024;
     public static final int FLUSH_SIZE_ROUTER_DATA = 1024;
+
+    public static final String LATENCY_ROUTE = "route";
+    public static final String LATENCY_EXTRACT = "extract";
+    public static final String LATENCY_SEND = "send";
+    public static final String LATENCY_NETWORK = "network";
+    public static final String LATENCY_LOAD = "load";
     
 }
\ No newline at end of file
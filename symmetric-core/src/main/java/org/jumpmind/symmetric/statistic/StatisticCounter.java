@@ -0,0 +1,69 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.statistic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A running total that is updated from many threads at once. Increments are
+ * spread over a small number of padded cells picked by thread, so threads on
+ * the routing, extract and load paths rarely contend on the same value. The
+ * sum is only exact when no updates are in progress.
+ */
+public class StatisticCounter {
+
+    private static final int PADDING = 8;
+
+    private static final int CELL_COUNT = cellCount();
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELL_COUNT * PADDING);
+
+    public void add(long count) {
+        int index = (int) (Thread.currentThread().getId() & (CELL_COUNT - 1)) * PADDING;
+        cells.addAndGet(index, count);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private static int cellCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        int count = 1;
+        while (count < processors) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
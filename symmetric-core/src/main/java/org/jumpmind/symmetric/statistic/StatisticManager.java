@@ -32,6 +32,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jumpmind.symmetric.common.Constants;
 import org.jumpmind.symmetric.common.ParameterConstants;
@@ -61,12 +62,20 @@ public class StatisticManager implements IStatisticManager {
 
     private static final int NUMBER_OF_PERMITS = 1000;
 
-    private Map<String, ChannelStats> channelStats = new ConcurrentHashMap<String, ChannelStats>();
+    private ConcurrentHashMap<String, ChannelCounters> channelCounters = new ConcurrentHashMap<String, ChannelCounters>();
+
+    private Map<String, ChannelStats> flushedChannelStats = new HashMap<String, ChannelStats>();
+
+    private Date channelStatsStartTime = new Date();
+
+    private ConcurrentHashMap<String, LatencyHistogram> latencyHistograms = new ConcurrentHashMap<String, LatencyHistogram>();
 
     private List<JobStats> jobStats = new ArrayList<JobStats>();
 
     private HostStats hostStats;
 
+    private Date startTime = new Date();
+
     private ConcurrentHashMap<Long, RouterStats> routerStatsByBatch = new ConcurrentHashMap<Long, RouterStats>();
 
     protected INodeService nodeService;
@@ -79,8 +88,6 @@ public class StatisticManager implements IStatisticManager {
 
     protected IClusterService clusterService;
 
-    protected Semaphore channelStatsLock = new Semaphore(NUMBER_OF_PERMITS, true);
-
     protected Semaphore hostStatsLock = new Semaphore(NUMBER_OF_PERMITS, true);
 
     protected Semaphore jobStatsLock = new Semaphore(NUMBER_OF_PERMITS, true);
@@ -195,111 +202,51 @@ public class StatisticManager implements IStatisticManager {
     }
 
     public void incrementDataRouted(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataRouted(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataRouted.add(count);
     }
 
     public void setDataUnRouted(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).setDataUnRouted(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataUnRouted.set(count);
     }
 
     public void incrementDataExtracted(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataExtracted(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataExtracted.add(count);
     }
 
     public void incrementDataBytesExtracted(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataBytesExtracted(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataBytesExtracted.add(count);
     }
 
     public void incrementDataExtractedErrors(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataExtractedErrors(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataExtractedErrors.add(count);
     }
 
     public void incrementDataEventInserted(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataEventInserted(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataEventInserted.add(count);
     }
 
     public void incrementDataSent(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataSent(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataSent.add(count);
     }
 
     public void incrementDataBytesSent(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataBytesSent(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataBytesSent.add(count);
     }
 
     public void incrementDataSentErrors(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataSentErrors(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataSentErrors.add(count);
     }
 
     public void incrementDataLoaded(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataLoaded(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataLoaded.add(count);
     }
 
     public void incrementDataBytesLoaded(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataBytesLoaded(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataBytesLoaded.add(count);
     }
 
     public void incrementDataLoadedErrors(String channelId, long count) {
-        channelStatsLock.acquireUninterruptibly();
-        try {
-            getChannelStats(channelId).incrementDataLoadedErrors(count);
-        } finally {
-            channelStatsLock.release();
-        }
+        getChannelCounters(channelId).dataLoadedErrors.add(count);
     }
 
     public void incrementRestart() {
@@ -450,26 +397,29 @@ public class StatisticManager implements IStatisticManager {
 
         boolean recordStatistics = parameterService.is(ParameterConstants.STATISTIC_RECORD_ENABLE,
                 false);
-        if (channelStats != null) {
-            channelStatsLock.acquireUninterruptibly(NUMBER_OF_PERMITS);
-            try {
-                if (recordStatistics) {
-                    Date endTime = new Date();
-                    for (ChannelStats stats : channelStats.values()) {
-                        if (stats.getNodeId().equals(UNKNOWN)) {
-                            Node node = nodeService.getCachedIdentity();
-                            if (node != null) {
-                                stats.setNodeId(node.getNodeId());
-                            }
-                        }
-                        stats.setEndTime(endTime);
-                        statisticService.save(stats);
-                    }
+        synchronized (flushedChannelStats) {
+            Date endTime = new Date();
+            Node node = nodeService.getCachedIdentity();
+            for (NodeChannel nodeChannel : configurationService.getNodeChannels(false)) {
+                getChannelCounters(nodeChannel.getChannelId());
+            }
+            for (ChannelCounters counters : channelCounters.values()) {
+                ChannelStats total = counters.toChannelStats(UNKNOWN,
+                        clusterService.getServerId(), channelStatsStartTime, endTime);
+                ChannelStats stats = new ChannelStats(UNKNOWN, clusterService.getServerId(),
+                        channelStatsStartTime, endTime, counters.channelId);
+                stats.add(total);
+                ChannelStats flushed = flushedChannelStats.get(counters.channelId);
+                if (flushed != null) {
+                    stats.subtract(flushed);
+                }
+                flushedChannelStats.put(counters.channelId, total);
+                if (recordStatistics && node != null) {
+                    stats.setNodeId(node.getNodeId());
+                    statisticService.save(stats);
                 }
-                resetChannelStats(true);
-            } finally {
-                channelStatsLock.release(NUMBER_OF_PERMITS);
             }
+            channelStatsStartTime = endTime;
         }
 
         if (hostStats != null) {
@@ -517,11 +467,45 @@ public class StatisticManager implements IStatisticManager {
     }
 
     public Map<String, ChannelStats> getWorkingChannelStats() {
-        if (channelStats != null) {
-            return new HashMap<String, ChannelStats>(channelStats);
-        } else {
-            return new HashMap<String, ChannelStats>();
+        Map<String, ChannelStats> working = new HashMap<String, ChannelStats>();
+        synchronized (flushedChannelStats) {
+            for (ChannelCounters counters : channelCounters.values()) {
+                ChannelStats stats = counters.toChannelStats(getIdentityNodeId(),
+                        clusterService.getServerId(), channelStatsStartTime, null);
+                ChannelStats flushed = flushedChannelStats.get(counters.channelId);
+                if (flushed != null) {
+                    stats.subtract(flushed);
+                }
+                working.put(counters.channelId, stats);
+            }
         }
+        return working;
+    }
+
+    public Map<String, ChannelStats> getTotalChannelStats() {
+        Map<String, ChannelStats> totals = new HashMap<String, ChannelStats>();
+        for (ChannelCounters counters : channelCounters.values()) {
+            totals.put(counters.channelId, counters.toChannelStats(getIdentityNodeId(),
+                    clusterService.getServerId(), startTime, null));
+        }
+        return totals;
+    }
+
+    public void addLatency(String name, String channelId, String nodeId, long timeInMs) {
+        String key = name + "-" + channelId + "-" + nodeId;
+        LatencyHistogram histogram = latencyHistograms.get(key);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(name, channelId, nodeId);
+            LatencyHistogram existing = latencyHistograms.putIfAbsent(key, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        histogram.record(timeInMs);
+    }
+
+    public List<LatencyHistogram> getLatencyHistograms() {
+        return new ArrayList<LatencyHistogram>(latencyHistograms.values());
     }
 
     public HostStats getWorkingHostStats() {
@@ -532,36 +516,21 @@ public class StatisticManager implements IStatisticManager {
         }
     }
 
-    protected void resetChannelStats(boolean force) {
-        if (force) {
-            channelStats = null;
-        }
-
-        if (channelStats == null) {
-            List<NodeChannel> channels = configurationService.getNodeChannels(false);
-            channelStats = new HashMap<String, ChannelStats>(channels.size());
-            for (NodeChannel nodeChannel : channels) {
-                getChannelStats(nodeChannel.getChannelId());
+    protected ChannelCounters getChannelCounters(String channelId) {
+        ChannelCounters counters = channelCounters.get(channelId);
+        if (counters == null) {
+            counters = new ChannelCounters(channelId);
+            ChannelCounters existing = channelCounters.putIfAbsent(channelId, counters);
+            if (existing != null) {
+                counters = existing;
             }
         }
+        return counters;
     }
 
-    protected ChannelStats getChannelStats(String channelId) {
-        resetChannelStats(false);
-        ChannelStats stats = channelStats.get(channelId);
-        if (stats == null) {
-            Node node = nodeService.getCachedIdentity();
-            if (node != null) {
-                stats = new ChannelStats(node.getNodeId(), clusterService.getServerId(),
-                        new Date(), null, channelId);
-                channelStats.put(channelId, stats);
-            } else {
-                stats = new ChannelStats(UNKNOWN, clusterService.getServerId(), new Date(), null,
-                        channelId);
-            }
-
-        }
-        return stats;
+    protected String getIdentityNodeId() {
+        Node node = nodeService.getCachedIdentity();
+        return node != null ? node.getNodeId() : UNKNOWN;
     }
 
     protected HostStats getHostStats() {
@@ -578,4 +547,47 @@ public class StatisticManager implements IStatisticManager {
         return hostStats;
     }
 
-}
\ No newline at end of file
+    /**
+     * Running totals for a channel since the engine started. The statistics
+     * for a period are the difference between two snapshots, so recording
+     * never has to wait for a flush.
+     */
+    static class ChannelCounters {
+
+        final String channelId;
+        final StatisticCounter dataRouted = new StatisticCounter();
+        final AtomicLong dataUnRouted = new AtomicLong();
+        final StatisticCounter dataExtracted = new StatisticCounter();
+        final StatisticCounter dataBytesExtracted = new StatisticCounter();
+        final StatisticCounter dataExtractedErrors = new StatisticCounter();
+        final StatisticCounter dataEventInserted = new StatisticCounter();
+        final StatisticCounter dataSent = new StatisticCounter();
+        final StatisticCounter dataBytesSent = new StatisticCounter();
+        final StatisticCounter dataSentErrors = new StatisticCounter();
+        final StatisticCounter dataLoaded = new StatisticCounter();
+        final StatisticCounter dataBytesLoaded = new StatisticCounter();
+        final StatisticCounter dataLoadedErrors = new StatisticCounter();
+
+        ChannelCounters(String channelId) {
+            this.channelId = channelId;
+        }
+
+        ChannelStats toChannelStats(String nodeId, String hostName, Date startTime, Date endTime) {
+            ChannelStats stats = new ChannelStats(nodeId, hostName, startTime, endTime, channelId);
+            stats.setDataRouted(dataRouted.sum());
+            stats.setDataUnRouted(dataUnRouted.get());
+            stats.setDataExtracted(dataExtracted.sum());
+            stats.setDataBytesExtracted(dataBytesExtracted.sum());
+            stats.setDataExtractedErrors(dataExtractedErrors.sum());
+            stats.setDataEventInserted(dataEventInserted.sum());
+            stats.setDataSent(dataSent.sum());
+            stats.setDataBytesSent(dataBytesSent.sum());
+            stats.setDataSentErrors(dataSentErrors.sum());
+            stats.setDataLoaded(dataLoaded.sum());
+            stats.setDataBytesLoaded(dataBytesLoaded.sum());
+            stats.setDataLoadedErrors(dataLoadedErrors.sum());
+            return stats;
+        }
+    }
+
+}
@@ -43,9 +43,13 @@ import org.jumpmind.symmetric.transport.file.FileTransportManager;
 import org.jumpmind.symmetric.transport.http.HttpTransportManager;
 import org.jumpmind.symmetric.transport.http.SelfSignedX509TrustManager;
 import org.jumpmind.symmetric.transport.internal.InternalTransportManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class TransportManagerFactory {
 
+    private static final Logger log = LoggerFactory.getLogger(TransportManagerFactory.class);
+
     private ISymmetricEngine symmetricEngine;
 
     public TransportManagerFactory(ISymmetricEngine symmetricEngine) {
@@ -88,6 +92,28 @@ public class TransportManagerFactory {
 
     }
 
+    /**
+     * The JDK pools persistent connections per host and port. The size of that
+     * pool comes from the http.maxConnections system property, which is JVM
+     * wide and read once, so it cannot differ between engines hosted in the
+     * same JVM. It is only set when nobody has set it yet: an explicitly
+     * configured system property wins, and otherwise the first engine to
+     * create an HTTP transport decides the value for all of them.
+     */
+    public static synchronized void initHttpKeepAlive(int maxConnectionsPerNode) {
+        if (maxConnectionsPerNode > 0) {
+            String requested = Integer.toString(maxConnectionsPerNode);
+            String current = System.getProperty("http.maxConnections");
+            if (current == null) {
+                System.setProperty("http.maxConnections", requested);
+            } else if (!current.equals(requested)) {
+                log.info("Not applying {}={} because the JVM wide http.maxConnections is already {}",
+                        new Object[] { ParameterConstants.TRANSPORT_HTTP_MAX_CONNECTIONS_PER_NODE,
+                                requested, current });
+            }
+        }
+    }
+
     public ITransportManager create() {
         return create(symmetricEngine.getParameterService().getString(
                 ParameterConstants.TRANSPORT_TYPE));
@@ -101,6 +127,8 @@ public class TransportManagerFactory {
             boolean allowSelfSignedCerts = symmetricEngine.getParameterService().is(
                     ServerConstants.HTTPS_ALLOW_SELF_SIGNED_CERTS, false);
             initHttps(httpSslVerifiedServerNames, allowSelfSignedCerts);
+            initHttpKeepAlive(symmetricEngine.getParameterService().getInt(
+                    ParameterConstants.TRANSPORT_HTTP_MAX_CONNECTIONS_PER_NODE, 5));
             return new HttpTransportManager(symmetricEngine);
         } else if (Constants.PROTOCOL_FILE.equalsIgnoreCase(transport)) {
             return new FileTransportManager(symmetricEngine);
@@ -0,0 +1,350 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.transport.http;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the compression level used on the link to each remote node from the
+ * throughput measured during earlier pushes and pulls. The throughput is the
+ * number of bytes on the wire divided by the time spent blocked reading or
+ * writing the socket. The wait for the first byte of a pull and any read or
+ * write that blocks for longer than a second are left out, because they are the
+ * remote node extracting or loading, not the link. A fast link has compression
+ * turned off and a slow link gets the best compression. The time spent in
+ * deflate on a push is measured separately, and when it is longer than the
+ * time on the wire, the fastest compression is used.
+ */
+public class HttpCompressionLevelSelector {
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    /* Transfers smaller than this are dominated by latency, not bandwidth */
+    protected static final long MIN_SAMPLE_BYTES = 64 * 1024;
+
+    protected static final double SAMPLE_WEIGHT = 0.3d;
+
+    protected IParameterService parameterService;
+
+    protected Map<String, Double> kbpsByNodeId = new ConcurrentHashMap<String, Double>();
+
+    protected Map<String, Double> deflateRatioByNodeId = new ConcurrentHashMap<String, Double>();
+
+    /* A read or write blocked for this long is waiting on the remote node */
+    protected long stallNanos = 1000000000l;
+
+    public HttpCompressionLevelSelector(IParameterService parameterService) {
+        this.parameterService = parameterService;
+    }
+
+    public boolean isEnabled() {
+        return parameterService.is(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_ENABLED);
+    }
+
+    /**
+     * @return the compression level to use for the remote node, where
+     *         {@link Deflater#NO_COMPRESSION} means the payload should not be
+     *         compressed at all
+     */
+    public int getCompressionLevel(String nodeId) {
+        int level = parameterService.getInt(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_LEVEL);
+        if (isEnabled() && nodeId != null) {
+            Double kbps = kbpsByNodeId.get(nodeId);
+            Double deflateRatio = deflateRatioByNodeId.get(nodeId);
+            if (kbps != null) {
+                if (kbps >= parameterService
+                        .getLong(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_FAST_KBPS)) {
+                    level = Deflater.NO_COMPRESSION;
+                } else if (deflateRatio != null && deflateRatio > 1) {
+                    level = Deflater.BEST_SPEED;
+                } else if (kbps <= parameterService
+                        .getLong(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_SLOW_KBPS)) {
+                    level = Deflater.BEST_COMPRESSION;
+                }
+            }
+        }
+        return level;
+    }
+
+    public void recordTransfer(String nodeId, long bytes, long nanos) {
+        recordTransfer(nodeId, bytes, nanos, 0);
+    }
+
+    /**
+     * @param nanos
+     *            the time spent blocked on the socket
+     * @param deflateNanos
+     *            the time spent compressing the payload on this node
+     */
+    public void recordTransfer(String nodeId, long bytes, long nanos, long deflateNanos) {
+        if (nodeId != null && bytes >= MIN_SAMPLE_BYTES && nanos > 0) {
+            double kbps = (8.0d * bytes / 1024.0d) / (nanos / 1000000000.0d);
+            double deflateRatio = (double) deflateNanos / nanos;
+            Double previous = kbpsByNodeId.get(nodeId);
+            if (previous != null) {
+                kbps = previous * (1 - SAMPLE_WEIGHT) + kbps * SAMPLE_WEIGHT;
+            }
+            previous = deflateRatioByNodeId.get(nodeId);
+            if (previous != null) {
+                deflateRatio = previous * (1 - SAMPLE_WEIGHT) + deflateRatio * SAMPLE_WEIGHT;
+            }
+            kbpsByNodeId.put(nodeId, kbps);
+            deflateRatioByNodeId.put(nodeId, deflateRatio);
+            log.debug("The link to {} was measured at {} kbps", nodeId, (long) kbps);
+        }
+    }
+
+    public Double getKbps(String nodeId) {
+        return kbpsByNodeId.get(nodeId);
+    }
+
+    public Double getDeflateRatio(String nodeId) {
+        return deflateRatioByNodeId.get(nodeId);
+    }
+
+    public InputStream meter(String nodeId, InputStream in) {
+        if (!isEnabled()) {
+            return in;
+        }
+        final TransferMeter meter = new TransferMeter(nodeId);
+        return new FilterInputStream(in) {
+            boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                long ts = System.nanoTime();
+                int b = super.read();
+                meter.read(System.nanoTime() - ts, b != -1 ? 1 : 0);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long ts = System.nanoTime();
+                int count = super.read(b, off, len);
+                meter.read(System.nanoTime() - ts, count > 0 ? count : 0);
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    meter.record();
+                }
+                super.close();
+            }
+        };
+    }
+
+    public OutputStream meter(String nodeId, OutputStream out) {
+        if (!isEnabled()) {
+            return out;
+        }
+        return new MeteredOutputStream(out, new TransferMeter(nodeId));
+    }
+
+    /**
+     * Measure the time spent compressing a payload written to a stream that
+     * was returned by {@link #meter(String, OutputStream)}.
+     * 
+     * @param metered
+     *            the stream returned by {@link #meter(String, OutputStream)}
+     * @param compressed
+     *            the compressing stream that writes to the metered stream
+     */
+    public OutputStream meterCompression(OutputStream metered, OutputStream compressed) {
+        if (!(metered instanceof MeteredOutputStream)) {
+            return compressed;
+        }
+        final TransferMeter meter = ((MeteredOutputStream) metered).meter;
+        meter.compressed = true;
+        return new FilterOutputStream(compressed) {
+            boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                long ts = System.nanoTime();
+                long blockedNanos = meter.getBlockedNanos();
+                out.write(b);
+                meter.deflate(System.nanoTime() - ts, meter.getBlockedNanos() - blockedNanos);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long ts = System.nanoTime();
+                long blockedNanos = meter.getBlockedNanos();
+                out.write(b, off, len);
+                meter.deflate(System.nanoTime() - ts, meter.getBlockedNanos() - blockedNanos);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                long ts = System.nanoTime();
+                long blockedNanos = meter.getBlockedNanos();
+                out.flush();
+                meter.deflate(System.nanoTime() - ts, meter.getBlockedNanos() - blockedNanos);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    long ts = System.nanoTime();
+                    long blockedNanos = meter.getBlockedNanos();
+                    try {
+                        super.close();
+                    } finally {
+                        meter.deflate(System.nanoTime() - ts, meter.getBlockedNanos() - blockedNanos);
+                        meter.record();
+                    }
+                } else {
+                    super.close();
+                }
+            }
+        };
+    }
+
+    class MeteredOutputStream extends FilterOutputStream {
+
+        TransferMeter meter;
+
+        boolean closed;
+
+        MeteredOutputStream(OutputStream out, TransferMeter meter) {
+            super(out);
+            this.meter = meter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long ts = System.nanoTime();
+            out.write(b);
+            meter.write(System.nanoTime() - ts, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long ts = System.nanoTime();
+            out.write(b, off, len);
+            meter.write(System.nanoTime() - ts, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long ts = System.nanoTime();
+            out.flush();
+            meter.write(System.nanoTime() - ts, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                long ts = System.nanoTime();
+                try {
+                    super.close();
+                } finally {
+                    meter.write(System.nanoTime() - ts, 0);
+                    if (!meter.compressed) {
+                        meter.record();
+                    }
+                }
+            } else {
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Splits the time spent on one transfer into time on the wire, time
+     * waiting on the remote node and time compressing.
+     */
+    class TransferMeter {
+
+        String nodeId;
+
+        boolean compressed;
+
+        long bytes;
+
+        long wireNanos;
+
+        long firstByteNanos;
+
+        long stalledNanos;
+
+        long deflateNanos;
+
+        TransferMeter(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        void read(long nanos, int count) {
+            if (bytes == 0) {
+                firstByteNanos += nanos;
+            } else if (nanos >= stallNanos) {
+                stalledNanos += nanos;
+            } else {
+                wireNanos += nanos;
+            }
+            bytes += count;
+        }
+
+        void write(long nanos, int count) {
+            if (nanos >= stallNanos) {
+                stalledNanos += nanos;
+            } else {
+                wireNanos += nanos;
+            }
+            bytes += count;
+        }
+
+        void deflate(long nanos, long blockedNanos) {
+            deflateNanos += Math.max(nanos - blockedNanos, 0);
+        }
+
+        long getBlockedNanos() {
+            return wireNanos + stalledNanos;
+        }
+
+        void record() {
+            log.debug(
+                    "Transfer with {} took {}ms on the wire, {}ms to the first byte, {}ms waiting on the remote node and {}ms to compress",
+                    new Object[] { nodeId, wireNanos / 1000000, firstByteNanos / 1000000,
+                            stalledNanos / 1000000, deflateNanos / 1000000 });
+            recordTransfer(nodeId, bytes, wireNanos, deflateNanos);
+        }
+    }
+
+}
@@ -29,7 +29,6 @@ import java.net.URL;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import org.apache.commons.io.IOUtils;
 import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.service.IParameterService;
 import org.jumpmind.symmetric.service.RegistrationNotOpenException;
@@ -57,6 +56,14 @@ public class HttpIncomingTransport implements IIncomingTransport {
     
     private String redirectionUrl;
     
+    private boolean opened = false;
+    
+    private boolean responded = false;
+    
+    private HttpCompressionLevelSelector compressionLevelSelector;
+    
+    private String remoteNodeId;
+    
     public HttpIncomingTransport(HttpURLConnection connection, IParameterService parameterService) {
         this.connection = connection;
         this.parameterService = parameterService;
@@ -68,16 +75,30 @@ public class HttpIncomingTransport implements IIncomingTransport {
         return this.connection.getURL().toExternalForm();
     }
 
+    /**
+     * Reads any remainder of the response before closing so the socket is
+     * pooled and the acknowledgement that follows a pull can be sent over it.
+     */
     @Override
     public void close() {
+        boolean consumed = false;
         if (reader != null) {
-            IOUtils.closeQuietly(reader);
+            consumed = HttpTransportManager.drain(reader);
             reader = null;
         } 
         
         if (is != null) {
-            IOUtils.closeQuietly(is);
+            consumed = HttpTransportManager.drain(is) || consumed;
             is = null;
+        } else if (responded) {
+            consumed = HttpTransportManager.drain(connection);
+        }
+        
+        if (opened) {
+            HttpTransportManager.release(connection, consumed,
+                    parameterService.is(ParameterConstants.TRANSPORT_HTTP_KEEP_ALIVE_ENABLED, true));
+            opened = false;
+            responded = false;
         }
     }
 
@@ -94,12 +115,15 @@ public class HttpIncomingTransport implements IIncomingTransport {
     @Override
     public InputStream openStream() throws IOException {
         
+        opened = true;
         boolean manualRedirects = parameterService.is(ParameterConstants.TRANSPORT_HTTP_MANUAL_REDIRECTS_ENABLED, true);
         if (manualRedirects) {
             connection = this.openConnectionCheckRedirects(connection);
         }
         
-        switch (connection.getResponseCode()) {
+        int responseCode = connection.getResponseCode();
+        responded = true;
+        switch (responseCode) {
         case WebConstants.REGISTRATION_NOT_OPEN:
             throw new RegistrationNotOpenException();
         case WebConstants.REGISTRATION_REQUIRED:
@@ -115,11 +139,20 @@ public class HttpIncomingTransport implements IIncomingTransport {
         case WebConstants.SC_NO_CONTENT:
             throw new NoContentException();
         default:
-            is = HttpTransportManager.getInputStreamFrom(connection);
+            is = HttpTransportManager.getInputStreamFrom(connection, compressionLevelSelector, remoteNodeId);
             return is;
         }
     }
 
+    /**
+     * Measure the throughput of the response for the remote node
+     */
+    public void setCompressionLevelSelector(HttpCompressionLevelSelector compressionLevelSelector,
+            String remoteNodeId) {
+        this.compressionLevelSelector = compressionLevelSelector;
+        this.remoteNodeId = remoteNodeId;
+    }
+
     @Override
     public BufferedReader openReader() throws IOException {
         InputStream stream = openStream();
@@ -181,6 +214,8 @@ public class HttpIncomingTransport implements IIncomingTransport {
                 connection = HttpTransportManager.openConnection(target, getBasicAuthUsername(), getBasicAuthPassword());
                 connection.setConnectTimeout(httpTimeout);
                 connection.setReadTimeout(httpTimeout);
+                HttpTransportManager.setKeepAlive(connection,
+                        parameterService.is(ParameterConstants.TRANSPORT_HTTP_KEEP_ALIVE_ENABLED, true));
 
                 redirects++;
              }
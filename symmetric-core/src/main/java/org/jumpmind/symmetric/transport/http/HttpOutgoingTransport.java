@@ -80,6 +80,14 @@ public class HttpOutgoingTransport implements IOutgoingWithResponseTransport {
     private boolean fileUpload = false;
 
     private Map<String, String> requestProperties;
+
+    private boolean keepAlive = false;
+
+    private boolean responseConsumed = false;
+
+    private HttpCompressionLevelSelector compressionLevelSelector;
+
+    private String remoteNodeId;
     
     public HttpOutgoingTransport(URL url, int httpTimeout, boolean useCompression,
             int compressionStrategy, int compressionLevel, String basicAuthUsername,
@@ -119,18 +127,38 @@ public class HttpOutgoingTransport implements IOutgoingWithResponseTransport {
         closeOutputStream(true);
         closeReader();
         if (connection != null) {
-            connection.disconnect();
+            HttpTransportManager.release(connection, responseConsumed, keepAlive);
             connection = null;
         }
     }
 
     private void closeReader() {
         if (reader != null) {
-            IOUtils.closeQuietly(reader);
+            responseConsumed = HttpTransportManager.drain(reader);
             reader = null;
         }
     }
 
+    /**
+     * When enabled, the connection is left open for reuse once the response
+     * has been read, so the reservation, the push and the next push to the same
+     * node can share one socket.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Measure the throughput of the upload to the remote node. Only streamed
+     * uploads are measured because otherwise the connection buffers the
+     * payload in memory and sends it all when the response is read.
+     */
+    public void setCompressionLevelSelector(HttpCompressionLevelSelector compressionLevelSelector,
+            String remoteNodeId) {
+        this.compressionLevelSelector = compressionLevelSelector;
+        this.remoteNodeId = remoteNodeId;
+    }
+
     private void closeOutputStream(boolean closeQuietly) {
         if (os != null) {
             try {
@@ -197,9 +225,11 @@ public class HttpOutgoingTransport implements IOutgoingWithResponseTransport {
             connection.setConnectTimeout(httpTimeout);
             connection.setReadTimeout(httpTimeout);
             connection.setRequestMethod("HEAD");
+            HttpTransportManager.setKeepAlive(connection, keepAlive);
 
             analyzeResponseCode(connection.getResponseCode());
         } catch (IOException ex) {
+            HttpTransportManager.release(connection, false, keepAlive);
             throw new IoException(ex);
         }
         return connection;
@@ -207,6 +237,7 @@ public class HttpOutgoingTransport implements IOutgoingWithResponseTransport {
 
     public OutputStream openStream() {
         try {
+            responseConsumed = false;
             connection = HttpTransportManager.openConnection(url, basicAuthUsername,
                     basicAuthPassword);
             if (streamOutputEnabled) {
@@ -217,6 +248,7 @@ public class HttpOutgoingTransport implements IOutgoingWithResponseTransport {
             connection.setUseCaches(false);
             connection.setConnectTimeout(httpTimeout);
             connection.setReadTimeout(httpTimeout);
+            HttpTransportManager.setKeepAlive(connection, keepAlive);
             
             if (this.requestProperties != null) {
 	            for (Map.Entry<String, String> requestProperty : this.requestProperties.entrySet()) {
@@ -238,13 +270,21 @@ public class HttpOutgoingTransport implements IOutgoingWithResponseTransport {
 
             os = connection.getOutputStream();
 
+            if (compressionLevelSelector != null && streamOutputEnabled && !fileUpload) {
+                os = compressionLevelSelector.meter(remoteNodeId, os);
+            }
+
             if (!fileUpload && useCompression) {
+                OutputStream metered = os;
                 os = new GZIPOutputStream(os) {
                     {
                         this.def.setLevel(compressionLevel);
                         this.def.setStrategy(compressionStrategy);
                     }
                 };
+                if (compressionLevelSelector != null) {
+                    os = compressionLevelSelector.meterCompression(metered, os);
+                }
             }
 
             if (fileUpload) {
@@ -26,12 +26,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.codec.binary.Base64;
@@ -59,14 +61,23 @@ import org.jumpmind.util.AppUtils;
  */
 public class HttpTransportManager extends AbstractTransportManager implements ITransportManager {
 
+    protected static final int MAX_DRAIN_SIZE = 64 * 1024;
+
     private ISymmetricEngine engine;
 
+    private HttpCompressionLevelSelector compressionLevelSelector;
+
     public HttpTransportManager() {
     }
 
     public HttpTransportManager(ISymmetricEngine engine) {
         super(engine.getExtensionService());
         this.engine = engine;
+        this.compressionLevelSelector = new HttpCompressionLevelSelector(engine.getParameterService());
+    }
+
+    public HttpCompressionLevelSelector getCompressionLevelSelector() {
+        return compressionLevelSelector;
     }
 
     public int sendCopyRequest(Node local) throws IOException {
@@ -133,12 +144,18 @@ public class HttpTransportManager extends AbstractTransportManager implements IT
         conn.setDoOutput(true);
         conn.setConnectTimeout(getHttpTimeOutInMs());
         conn.setReadTimeout(getHttpTimeOutInMs());
-        OutputStream os = conn.getOutputStream();
+        setKeepAlive(conn, isKeepAliveEnabled());
+        boolean consumed = false;
+        OutputStream os = null;
         try {
+            os = conn.getOutputStream();
             writeMessage(os, data);
-            return conn.getResponseCode();
+            int code = conn.getResponseCode();
+            consumed = drain(conn);
+            return code;
         } finally {
             IOUtils.closeQuietly(os);
+            release(conn, consumed, isKeepAliveEnabled());
         }
     }
 
@@ -150,6 +167,84 @@ public class HttpTransportManager extends AbstractTransportManager implements IT
         return conn;
     }
 
+    /**
+     * Read whatever is left of the response body so the socket can go back to
+     * the keep-alive cache. Bodies larger than {@link #MAX_DRAIN_SIZE} are not
+     * worth reading just to save a connect.
+     * 
+     * @return true if the response was read to the end
+     */
+    protected static boolean drain(HttpURLConnection conn) {
+        InputStream is = null;
+        try {
+            is = conn.getInputStream();
+        } catch (IOException ex) {
+            is = conn.getErrorStream();
+        }
+        return is == null || drain(is);
+    }
+
+    protected static boolean drain(InputStream is) {
+        try {
+            byte[] buffer = new byte[1024];
+            int total = 0;
+            int count = 0;
+            while ((count = is.read(buffer)) != -1) {
+                total += count;
+                if (total > MAX_DRAIN_SIZE) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    protected static boolean drain(Reader reader) {
+        try {
+            char[] buffer = new char[1024];
+            int total = 0;
+            int count = 0;
+            while ((count = reader.read(buffer)) != -1) {
+                total += count;
+                if (total > MAX_DRAIN_SIZE) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Ask the remote node to close the socket after responding when keep-alive
+     * is disabled. A response that is read to the end hands its socket to the
+     * JDK pool, so disconnecting afterwards is too late to stop the reuse.
+     */
+    protected static void setKeepAlive(HttpURLConnection conn, boolean keepAlive) {
+        if (!keepAlive) {
+            conn.setRequestProperty("Connection", "close");
+        }
+    }
+
+    /**
+     * Finish with a connection. A connection whose response was fully read is
+     * left for the JDK to pool. Calling disconnect() on it would close the
+     * pooled socket, so that is only done when the response was abandoned
+     * part way, or the request failed and the socket may be stale.
+     */
+    protected static void release(HttpURLConnection conn, boolean consumed, boolean keepAlive) {
+        if (conn != null && (!consumed || !keepAlive)) {
+            conn.disconnect();
+        }
+    }
+
     public static void setBasicAuthIfNeeded(HttpURLConnection conn, String username, String password) {
         if (StringUtils.isNotEmpty(username) && StringUtils.isNotEmpty(password)) {
             String userpassword = username + ":" + password;
@@ -166,6 +261,10 @@ public class HttpTransportManager extends AbstractTransportManager implements IT
         return engine.getParameterService().is(ParameterConstants.TRANSPORT_HTTP_PUSH_STREAM_ENABLED);
     }
 
+    public boolean isKeepAliveEnabled() {
+        return engine.getParameterService().is(ParameterConstants.TRANSPORT_HTTP_KEEP_ALIVE_ENABLED, true);
+    }
+
     public int getHttpTimeOutInMs() {
         return engine.getParameterService().getInt(ParameterConstants.TRANSPORT_HTTP_TIMEOUT);
     }
@@ -217,32 +316,54 @@ public class HttpTransportManager extends AbstractTransportManager implements IT
                 conn.addRequestProperty(key, requestProperties.get(key));
             }
         }
-        return new HttpIncomingTransport(conn, engine.getParameterService());
+        HttpIncomingTransport transport = new HttpIncomingTransport(conn, engine.getParameterService());
+        if (compressionLevelSelector.isEnabled()) {
+            int compressionLevel = compressionLevelSelector.getCompressionLevel(remote.getNodeId());
+            if (compressionLevel == Deflater.NO_COMPRESSION) {
+                conn.setRequestProperty("accept-encoding", "identity");
+            } else {
+                conn.addRequestProperty(WebConstants.COMPRESSION_LEVEL, Integer.toString(compressionLevel));
+            }
+            transport.setCompressionLevelSelector(compressionLevelSelector, remote.getNodeId());
+        }
+        return transport;
     }
 
     public IOutgoingWithResponseTransport getPushTransport(Node remote, Node local,
             String securityToken, Map<String, String> requestProperties, 
             String registrationUrl) throws IOException {
         URL url = new URL(buildURL("push", remote, local, securityToken, registrationUrl));
-        return new HttpOutgoingTransport(url, getHttpTimeOutInMs(), isUseCompression(),
-                getCompressionStrategy(), getCompressionLevel(), getBasicAuthUsername(),
+        int compressionLevel = compressionLevelSelector.getCompressionLevel(remote.getNodeId());
+        HttpOutgoingTransport transport = new HttpOutgoingTransport(url, getHttpTimeOutInMs(),
+                isUseCompression() && compressionLevel != Deflater.NO_COMPRESSION,
+                getCompressionStrategy(), compressionLevel, getBasicAuthUsername(),
                 getBasicAuthPassword(), isOutputStreamEnabled(), getOutputStreamSize(), false, requestProperties);
+        transport.setKeepAlive(isKeepAliveEnabled());
+        transport.setCompressionLevelSelector(compressionLevelSelector, remote.getNodeId());
+        return transport;
     }
     
     public IOutgoingWithResponseTransport getPushTransport(Node remote, Node local,
             String securityToken, String registrationUrl) throws IOException {
         URL url = new URL(buildURL("push", remote, local, securityToken, registrationUrl));
-        return new HttpOutgoingTransport(url, getHttpTimeOutInMs(), isUseCompression(),
-                getCompressionStrategy(), getCompressionLevel(), getBasicAuthUsername(),
+        int compressionLevel = compressionLevelSelector.getCompressionLevel(remote.getNodeId());
+        HttpOutgoingTransport transport = new HttpOutgoingTransport(url, getHttpTimeOutInMs(),
+                isUseCompression() && compressionLevel != Deflater.NO_COMPRESSION,
+                getCompressionStrategy(), compressionLevel, getBasicAuthUsername(),
                 getBasicAuthPassword(), isOutputStreamEnabled(), getOutputStreamSize(), false);
+        transport.setKeepAlive(isKeepAliveEnabled());
+        transport.setCompressionLevelSelector(compressionLevelSelector, remote.getNodeId());
+        return transport;
     }
     
     public IOutgoingWithResponseTransport getFilePushTransport(Node remote, Node local,
             String securityToken, String registrationUrl) throws IOException {
         URL url = new URL(buildURL("filesync/push", remote, local, securityToken, registrationUrl));
-        return new HttpOutgoingTransport(url, getHttpTimeOutInMs(), isUseCompression(),
+        HttpOutgoingTransport transport = new HttpOutgoingTransport(url, getHttpTimeOutInMs(), isUseCompression(),
                 getCompressionStrategy(), getCompressionLevel(), getBasicAuthUsername(),
                 getBasicAuthPassword(), isOutputStreamEnabled(), getOutputStreamSize(), true);
+        transport.setKeepAlive(isKeepAliveEnabled());
+        return transport;
     }    
 
     public IIncomingTransport getRegisterTransport(Node node, String registrationUrl)
@@ -276,12 +397,21 @@ public class HttpTransportManager extends AbstractTransportManager implements IT
         conn.setConnectTimeout(getHttpTimeOutInMs());
         conn.setReadTimeout(getHttpTimeOutInMs());
         conn.setRequestMethod("GET");
+        setKeepAlive(conn, isKeepAliveEnabled());
         return conn;
     }
     
     protected static InputStream getInputStreamFrom(HttpURLConnection connection) throws IOException {
+        return getInputStreamFrom(connection, null, null);
+    }
+
+    protected static InputStream getInputStreamFrom(HttpURLConnection connection,
+            HttpCompressionLevelSelector compressionLevelSelector, String nodeId) throws IOException {
         String type = connection.getContentEncoding();
         InputStream in = connection.getInputStream();
+        if (compressionLevelSelector != null) {
+            in = compressionLevelSelector.meter(nodeId, in);
+        }
         if (!StringUtils.isBlank(type) && type.equals("gzip")) {
             in = new GZIPInputStream(in);
         }
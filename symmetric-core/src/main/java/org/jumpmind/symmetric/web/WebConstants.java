@@ -114,5 +114,9 @@ public class WebConstants {
     public static final String BATCH_TO_SEND_COUNT = "Batch-To-Send-Count";
     
     public static final String THREAD_CHANNEL = "threadChannel";
+    
+    public static final String LONG_POLL_TIMEOUT = "Long-Poll-Timeout";
+
+    public static final String COMPRESSION_LEVEL = "Compression-Level";
 
 }
\ No newline at end of file
@@ -21,9 +21,11 @@
 package org.jumpmind.symmetric.route;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jumpmind.db.model.Table;
@@ -33,8 +35,12 @@ import org.jumpmind.symmetric.model.DataMetaData;
 import org.jumpmind.symmetric.model.Node;
 import org.jumpmind.symmetric.model.NodeChannel;
 import org.jumpmind.symmetric.model.Router;
+import org.jumpmind.symmetric.model.Trigger;
+import org.jumpmind.symmetric.model.TriggerRouter;
 import org.jumpmind.symmetric.model.TriggerHistory;
+import org.jumpmind.symmetric.route.AbstractDataRouter.DataRowAccessor;
 import org.jumpmind.symmetric.route.ColumnMatchDataRouter.Expression;
+import org.jumpmind.symmetric.route.ColumnMatchDataRouter.NodeIndex;
 import org.junit.Test;
 
 public class ColumnMatchDataRouterTest {
@@ -362,4 +368,111 @@ public class ColumnMatchDataRouterTest {
         assertEquals(true, result.contains("100"));
         assertEquals(true, result.contains("300"));
     }
+
+    @Test
+    public void testExpressionEqualsExternalIdAcrossRows() {
+        ColumnMatchDataRouter router = new ColumnMatchDataRouter();
+        SimpleRouterContext routingContext = new SimpleRouterContext();
+        HashSet<Node> nodes = new HashSet<Node>();
+        for (int i = 1; i <= 1000; i++) {
+            nodes.add(new Node(String.valueOf(i), "client"));
+        }
+
+        TriggerHistory triggerHist = new TriggerHistory("mytable","ID","ID,STORE_ID,COLUMN2");
+        Table table = new Table();
+        NodeChannel nodeChannel = new NodeChannel();
+        Router route = new Router();
+        route.setRouterExpression("STORE_ID = :EXTERNAL_ID");
+        route.setRouterId("route1");
+
+        for (int i = 1; i <= 1000; i += 100) {
+            Data data = new Data();
+            data.setDataId(i);
+            data.setDataEventType(DataEventType.INSERT);
+            data.setRowData("1," + i + ",Super Dooper");
+            data.setTriggerHistory(triggerHist);
+            DataMetaData dataMetaData = new DataMetaData(data, table, route, nodeChannel);
+
+            Set<String> result = router.routeToNodes(routingContext, dataMetaData, nodes, false, false, null);
+            assertEquals(1, result.size());
+            assertEquals(true, result.contains(String.valueOf(i)));
+        }
+
+        HashSet<Node> otherNodes = new HashSet<Node>();
+        otherNodes.add(new Node("2000", "client"));
+        Data data = new Data();
+        data.setDataId(2000);
+        data.setDataEventType(DataEventType.INSERT);
+        data.setRowData("1,1,Super Dooper");
+        data.setTriggerHistory(triggerHist);
+        DataMetaData dataMetaData = new DataMetaData(data, table, route, nodeChannel);
+        assertEquals(0, router.routeToNodes(routingContext, dataMetaData, otherNodes, false, false, null).size());
+    }
+
+    @Test
+    public void testNodeIndexKeptPerTriggerRouter() {
+        ColumnMatchDataRouter router = new ColumnMatchDataRouter();
+        SimpleRouterContext routingContext = new SimpleRouterContext();
+        Router route = new Router();
+        route.setRouterExpression("NODE_ID = :NODE_ID");
+        route.setRouterId("route1");
+        Trigger trigger1 = new Trigger();
+        trigger1.setTriggerId("trigger1");
+        Trigger trigger2 = new Trigger();
+        trigger2.setTriggerId("trigger2");
+        TriggerRouter triggerRouter1 = new TriggerRouter(trigger1, route);
+        TriggerRouter triggerRouter2 = new TriggerRouter(trigger2, route);
+        HashSet<Node> nodes1 = new HashSet<Node>();
+        nodes1.add(new Node("100", "client"));
+        HashSet<Node> nodes2 = new HashSet<Node>();
+        nodes2.add(new Node("100", "client"));
+
+        NodeIndex index1 = router.getNodeIndex(route, triggerRouter1, routingContext, nodes1);
+        NodeIndex index2 = router.getNodeIndex(route, triggerRouter2, routingContext, nodes2);
+        assertSame(index1, router.getNodeIndex(route, triggerRouter1, routingContext, nodes1));
+        assertSame(index2, router.getNodeIndex(route, triggerRouter2, routingContext, nodes2));
+
+        TriggerHistory triggerHist = new TriggerHistory("mytable","ID","ID,NODE_ID,COLUMN2");
+        Data data = new Data();
+        data.setDataId(1);
+        data.setDataEventType(DataEventType.INSERT);
+        data.setRowData("1,100,Super Dooper");
+        data.setTriggerHistory(triggerHist);
+        DataMetaData dataMetaData = new DataMetaData(data, new Table(), route, new NodeChannel());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(true, router.routeToNodes(routingContext, dataMetaData, nodes1, false, false, triggerRouter1).contains("100"));
+            assertEquals(true, router.routeToNodes(routingContext, dataMetaData, nodes2, false, false, triggerRouter2).contains("100"));
+        }
+        assertSame(index1, router.getNodeIndex(route, triggerRouter1, routingContext, nodes1));
+        assertSame(index2, router.getNodeIndex(route, triggerRouter2, routingContext, nodes2));
+    }
+
+    @Test
+    public void testDataRowAccessorMatchesDataMap() {
+        ColumnMatchDataRouter router = new ColumnMatchDataRouter();
+        TriggerHistory triggerHist = new TriggerHistory("mytable","ID","ID,NODE_ID,COLUMN2");
+        String[] columns = { "ID", "node_id", "COLUMN2", "OLD_ID", "old_node_id", "OLD_COLUMN2",
+                "EXTERNAL_DATA", "MISSING", "OLD_MISSING" };
+        for (DataEventType eventType : new DataEventType[] { DataEventType.INSERT,
+                DataEventType.UPDATE, DataEventType.DELETE, DataEventType.SQL }) {
+            for (String oldData : new String[] { "1,200,Old Dooper", null }) {
+                Data data = new Data();
+                data.setDataId(1);
+                data.setDataEventType(eventType);
+                data.setRowData("1,100,Super Dooper");
+                data.setOldData(oldData);
+                data.setPkData("1");
+                data.setExternalData("ext");
+                data.setTriggerHistory(triggerHist);
+                DataMetaData dataMetaData = new DataMetaData(data, new Table(), new Router(), new NodeChannel());
+
+                Map<String, String> dataMap = router.getDataMap(dataMetaData, null);
+                DataRowAccessor accessor = router.getDataRowAccessor(dataMetaData, null);
+                for (String column : columns) {
+                    assertEquals(eventType + " " + column, dataMap.containsKey(column), accessor.containsKey(column));
+                    assertEquals(eventType + " " + column, dataMap.get(column), accessor.get(column));
+                }
+            }
+        }
+    }
 }
@@ -25,6 +25,8 @@ import junit.framework.Assert;
 import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.model.Lock;
 import org.jumpmind.symmetric.service.ClusterConstants;
+import org.jumpmind.symmetric.statistic.LockWaitStats;
+import org.jumpmind.util.AppUtils;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -126,6 +128,34 @@ public abstract class AbstractClusterServiceTest extends AbstractServiceTest {
         unlock(ClusterConstants.FILE_SYNC_SHARED, ClusterConstants.TYPE_SHARED, 0);
     }
 
+    @Test
+    public void testLockWaitWakesUpOnRelease() throws Exception {
+        getParameterService().saveParameter(ParameterConstants.LOCK_WAIT_RETRY_MILLIS, "5000", "test");
+        try {
+            lock(ClusterConstants.FILE_SYNC_SHARED, ClusterConstants.TYPE_EXCLUSIVE, 0);
+            Thread releaser = new Thread() {
+                public void run() {
+                    AppUtils.sleep(200);
+                    getClusterService().unlock(ClusterConstants.FILE_SYNC_SHARED, ClusterConstants.TYPE_EXCLUSIVE);
+                }
+            };
+            releaser.start();
+            long ts = System.currentTimeMillis();
+            Assert.assertTrue(getClusterService().lock(ClusterConstants.FILE_SYNC_SHARED, ClusterConstants.TYPE_SHARED, 20000));
+            Assert.assertTrue("Expected the waiter to be woken up by the release",
+                    System.currentTimeMillis() - ts < 4000);
+            releaser.join();
+            unlock(ClusterConstants.FILE_SYNC_SHARED, ClusterConstants.TYPE_SHARED, 0);
+
+            LockWaitStats stats = getClusterService().getLockWaitStats().get(ClusterConstants.FILE_SYNC_SHARED);
+            Assert.assertNotNull(stats);
+            Assert.assertTrue(stats.getAcquiredCount() > 0);
+            Assert.assertTrue(stats.getRetryCount() > 0);
+        } finally {
+            getParameterService().saveParameter(ParameterConstants.LOCK_WAIT_RETRY_MILLIS, "1", "test");
+        }
+    }
+
     private void lock(String action, String lockType, int expectedSharedCount) {
         Assert.assertTrue("Expected to obtain lock", getClusterService().lock(action, lockType));
         checkLock(action, lockType, expectedSharedCount, expectedSharedCount > 0);
@@ -21,15 +21,25 @@
 package org.jumpmind.symmetric.service.impl;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.sql.Date;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.jumpmind.db.sql.ISqlTransaction;
 import org.jumpmind.symmetric.TestConstants;
+import org.jumpmind.symmetric.common.Constants;
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.io.stage.IStagedResource;
+import org.jumpmind.symmetric.model.ExtractRequest;
+import org.jumpmind.symmetric.model.Node;
 import org.jumpmind.symmetric.model.OutgoingBatch;
 import org.jumpmind.symmetric.model.ProcessInfo;
 import org.jumpmind.symmetric.model.Router;
@@ -38,6 +48,7 @@ import org.jumpmind.symmetric.model.TriggerRouter;
 import org.jumpmind.symmetric.service.IDataExtractorService;
 import org.jumpmind.symmetric.service.ITriggerRouterService;
 import org.jumpmind.symmetric.transport.internal.InternalOutgoingTransport;
+import org.jumpmind.util.AppUtils;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -83,6 +94,114 @@ public abstract class AbstractDataExtractorServiceTest extends AbstractServiceTe
         assertNumberOfLinesThatStartWith(1, "binary,", content);
     }
 
+    @Test
+    public void testExtractConfigurationStandaloneFromCache() throws Exception {
+        IDataExtractorService dataExtractorService = getDataExtractorService();
+        dataExtractorService.flushConfigurationExtractCache();
+        getParameterService().saveParameter(ParameterConstants.CLUSTER_LOCKING_ENABLED, "false", "test");
+        String key = "test.configuration.extract.cache";
+        try {
+            StringWriter writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            String content = writer.getBuffer().toString();
+
+            insertParameterWithoutReread(key);
+            writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertEquals(content, writer.getBuffer().toString());
+
+            dataExtractorService.flushConfigurationExtractCache();
+            writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertTrue(writer.getBuffer().toString().contains(key));
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL, key);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.CLUSTER_LOCKING_ENABLED);
+        }
+    }
+
+    @Test
+    public void testExtractConfigurationStandaloneCacheFlushedByParameterChange() throws Exception {
+        IDataExtractorService dataExtractorService = getDataExtractorService();
+        dataExtractorService.flushConfigurationExtractCache();
+        getParameterService().saveParameter(ParameterConstants.CLUSTER_LOCKING_ENABLED, "false", "test");
+        String key = "test.configuration.extract.parameter";
+        try {
+            StringWriter writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertFalse(writer.getBuffer().toString().contains(key));
+
+            getParameterService().saveParameter(key, "true", "test");
+            writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertTrue(writer.getBuffer().toString().contains(key));
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL, key);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.CLUSTER_LOCKING_ENABLED);
+        }
+    }
+
+    @Test
+    public void testExtractConfigurationStandaloneNotCachedWithoutAutoSync() throws Exception {
+        IDataExtractorService dataExtractorService = getDataExtractorService();
+        dataExtractorService.flushConfigurationExtractCache();
+        getParameterService().saveParameter(ParameterConstants.CLUSTER_LOCKING_ENABLED, "false", "test");
+        getParameterService().saveParameter(ParameterConstants.AUTO_SYNC_CONFIGURATION, "false", "test");
+        String key = "test.configuration.extract.no.auto.sync";
+        try {
+            StringWriter writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertFalse(writer.getBuffer().toString().contains(key));
+
+            insertParameterWithoutReread(key);
+            writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertTrue(writer.getBuffer().toString().contains(key));
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL, key);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.AUTO_SYNC_CONFIGURATION);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.CLUSTER_LOCKING_ENABLED);
+        }
+    }
+
+    /**
+     * Change the configuration without the parameter service reading the
+     * parameters again, like a change made by another node would
+     */
+    protected void insertParameterWithoutReread(String key) {
+        getSqlTemplate().update(
+                "insert into sym_parameter (external_id, node_group_id, param_key, param_value, "
+                        + "last_update_by, create_time, last_update_time) "
+                        + "values(?, ?, ?, 'true', 'test', current_timestamp, current_timestamp)",
+                ParameterConstants.ALL, ParameterConstants.ALL, key);
+    }
+
+    @Test
+    public void testExtractConfigurationStandaloneNotCachedWhenClustered() throws Exception {
+        IDataExtractorService dataExtractorService = getDataExtractorService();
+        dataExtractorService.flushConfigurationExtractCache();
+        getParameterService().saveParameter(ParameterConstants.CLUSTER_LOCKING_ENABLED, "true", "test");
+        String key = "test.configuration.extract.clustered";
+        try {
+            StringWriter writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertFalse(writer.getBuffer().toString().contains(key));
+
+            getParameterService().saveParameter(key, "true", "test");
+            writer = new StringWriter();
+            dataExtractorService.extractConfigurationStandalone(TestConstants.TEST_CLIENT_NODE, writer);
+            assertTrue(writer.getBuffer().toString().contains(key));
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL, key);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.CLUSTER_LOCKING_ENABLED);
+        }
+    }
+
     @Test
     public void testNothingToExtract() {
         ExtractResults results = extract();
@@ -113,12 +232,214 @@ public abstract class AbstractDataExtractorServiceTest extends AbstractServiceTe
 
     }
 
+    @Test
+    public void testExtractSharedIdenticalBatch() {
+        getParameterService().saveParameter(
+                ParameterConstants.EXTRACT_SHARE_IDENTICAL_BATCHES_ENABLED, "true", "test");
+        try {
+            resetBatches();
+            save(new TestExtract(id++, "shared 123", "abcdefghijklmnopqrstuvwxyz", new Timestamp(
+                    System.currentTimeMillis()), new Date(System.currentTimeMillis()), true,
+                    Integer.MAX_VALUE, new BigDecimal(Double.toString(Math.PI))));
+            routeAndCreateGaps();
+            ExtractResults results = extract();
+            assertEquals(1, results.getBatches().size());
+            assertTrue(results.getCsv().contains("shared 123"));
+
+            /*
+             * change the captured row so an extract that selects it again
+             * can be told apart from one copied from the staged batch
+             */
+            getSqlTemplate().update(
+                    "update sym_data set row_data=replace(row_data, 'shared 123', 'shared 456') "
+                            + "where data_id in (select data_id from sym_data_event where batch_id=?)",
+                    results.getBatches().get(0).getBatchId());
+
+            results = extract(new Node("00003", TestConstants.TEST_CLIENT_NODE_GROUP));
+            assertEquals(1, results.getBatches().size());
+            long batchId = results.getBatches().get(0).getBatchId();
+            assertNumberOfLinesThatStartWith(1, "batch," + batchId, results.getCsv());
+            assertNumberOfLinesThatStartWith(1, "commit," + batchId, results.getCsv());
+            assertNumberOfLinesThatStartWith(1, "insert,", results.getCsv());
+            assertTrue(results.getCsv().contains("shared 123"));
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.EXTRACT_SHARE_IDENTICAL_BATCHES_ENABLED);
+            resetBatches();
+        }
+    }
+
+    @Test
+    public void testSharedExtractCopiedToOtherNode() {
+        DataExtractorService service = (DataExtractorService) getDataExtractorService();
+        ExtractRequest source = createExtractRequest("00001");
+        ExtractRequest target = createExtractRequest("00003");
+        try {
+            List<OutgoingBatch> sourceBatches = createReloadBatches("00001", 9100001);
+            List<OutgoingBatch> targetBatches = createReloadBatches("00003", 9200001);
+            stageReloadBatch(sourceBatches.get(0), "shared load");
+
+            DataExtractorService.SharedExtract sharedExtract = service.startSharedExtract(
+                    "test", source, sourceBatches);
+            service.finishSharedExtract(sharedExtract, true);
+            assertTrue(service.copySharedExtract("test", target, targetBatches, new ProcessInfo()));
+
+            String csv = readStaged(targetBatches.get(0));
+            assertNumberOfLinesThatStartWith(1, "batch,9200001", csv);
+            assertNumberOfLinesThatStartWith(1, "commit,9200001", csv);
+            assertNumberOfLinesThatStartWith(0, "batch,9100001", csv);
+            assertTrue(csv.contains("shared load"));
+            assertEquals(1l, targetBatches.get(0).getDataEventCount());
+
+            /* the request was the only one waiting, so nothing is left registered */
+            assertFalse(service.copySharedExtract("test", target, targetBatches, new ProcessInfo()));
+        } finally {
+            deleteExtractRequests();
+        }
+    }
+
+    @Test
+    public void testSharedExtractFallsBackWhenSourceFails() throws Exception {
+        final DataExtractorService service = (DataExtractorService) getDataExtractorService();
+        ExtractRequest source = createExtractRequest("00001");
+        final ExtractRequest target = createExtractRequest("00003");
+        try {
+            List<OutgoingBatch> sourceBatches = createReloadBatches("00001", 9100001);
+            final List<OutgoingBatch> targetBatches = createReloadBatches("00003", 9200001);
+            DataExtractorService.SharedExtract sharedExtract = service.startSharedExtract(
+                    "test", source, sourceBatches);
+
+            final boolean[] copied = new boolean[] { true };
+            Thread waiting = new Thread() {
+                public void run() {
+                    copied[0] = service.copySharedExtract("test", target, targetBatches,
+                            new ProcessInfo());
+                }
+            };
+            waiting.start();
+            Thread.sleep(100);
+            service.finishSharedExtract(sharedExtract, false);
+            waiting.join(10000);
+            assertFalse(waiting.isAlive());
+            assertFalse(copied[0]);
+        } finally {
+            deleteExtractRequests();
+        }
+    }
+
+    @Test
+    public void testSharedExtractTimesOut() {
+        DataExtractorService service = (DataExtractorService) getDataExtractorService();
+        ExtractRequest source = createExtractRequest("00001");
+        ExtractRequest target = createExtractRequest("00003");
+        ExtractRequest other = createExtractRequest("00002");
+        getParameterService().saveParameter(
+                ParameterConstants.INITIAL_LOAD_EXTRACT_SHARE_TIMEOUT_MS, "50", "test");
+        try {
+            List<OutgoingBatch> sourceBatches = createReloadBatches("00001", 9100001);
+            List<OutgoingBatch> targetBatches = createReloadBatches("00003", 9200001);
+            stageReloadBatch(sourceBatches.get(0), "shared load");
+
+            /* the source is still running, so the wait gives up */
+            DataExtractorService.SharedExtract sharedExtract = service.startSharedExtract(
+                    "test", source, sourceBatches);
+            long ts = System.currentTimeMillis();
+            assertFalse(service.copySharedExtract("test", target, targetBatches, new ProcessInfo()));
+            assertTrue(System.currentTimeMillis() - ts < 10000);
+
+            /* a finished extract is dropped after the timeout even though a request never copied it */
+            service.finishSharedExtract(sharedExtract, true);
+            AppUtils.sleep(100);
+            assertFalse(service.copySharedExtract("test", other, createReloadBatches("00002",
+                    9300001), new ProcessInfo()));
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.INITIAL_LOAD_EXTRACT_SHARE_TIMEOUT_MS);
+            deleteExtractRequests();
+        }
+    }
+
+    protected ExtractRequest createExtractRequest(String nodeId) {
+        TriggerRouter triggerRouter = getTriggerRouterService().findTriggerRouterById(TEST_TABLE,
+                TestConstants.ROUTER_ID_ROOT_2_TEST);
+        ISqlTransaction transaction = getSqlTemplate().startSqlTransaction();
+        try {
+            getDataExtractorService().requestExtractRequest(transaction,
+                    nodeId, "default", triggerRouter, 1, 1);
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+        ExtractRequest request = new ExtractRequest();
+        request.setRequestId(getSqlTemplate().queryForLong(
+                "select max(request_id) from sym_extract_request where node_id=?", nodeId));
+        request.setNodeId(nodeId);
+        request.setTriggerRouter(triggerRouter);
+        return request;
+    }
+
+    protected void deleteExtractRequests() {
+        getSqlTemplate().update("delete from sym_extract_request where trigger_id=?", TEST_TABLE);
+    }
+
+    protected List<OutgoingBatch> createReloadBatches(String nodeId, long batchId) {
+        OutgoingBatch batch = new OutgoingBatch(nodeId, TestConstants.TEST_CHANNEL_ID,
+                OutgoingBatch.Status.NE);
+        batch.setBatchId(batchId);
+        List<OutgoingBatch> batches = new ArrayList<OutgoingBatch>();
+        batches.add(batch);
+        return batches;
+    }
+
+    protected void stageReloadBatch(OutgoingBatch batch, String value) {
+        IStagedResource resource = getStagingManager().create(0, Constants.STAGING_CATEGORY_OUTGOING,
+                batch.getStagedLocation(), batch.getBatchId());
+        try {
+            PrintWriter writer = new PrintWriter(resource.getWriter());
+            writer.println("nodeid,00000");
+            writer.println("batch," + batch.getBatchId());
+            writer.println("table," + TEST_TABLE);
+            writer.println("insert,1,\"" + value + "\"");
+            writer.println("commit," + batch.getBatchId());
+            writer.flush();
+        } finally {
+            resource.close();
+        }
+        resource.setState(IStagedResource.State.READY);
+        batch.setDataEventCount(1);
+    }
+
+    protected String readStaged(OutgoingBatch batch) {
+        IStagedResource resource = getStagingManager().find(Constants.STAGING_CATEGORY_OUTGOING,
+                batch.getStagedLocation(), batch.getBatchId());
+        try {
+            return IOUtils.toString(resource.getReader());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            resource.close();
+        }
+    }
+
+    @Test
+    public void testSharedBatchWaitTimesOut() {
+        DataExtractorService service = (DataExtractorService) getDataExtractorService();
+        DataExtractorService.SharedBatch sharedBatch = service.new SharedBatch("key", 1, "location");
+        assertFalse(sharedBatch.await(10));
+        sharedBatch.finish(true);
+        assertTrue(sharedBatch.await(10));
+    }
+
     protected ExtractResults extract() {
+        return extract(TestConstants.TEST_CLIENT_NODE);
+    }
+
+    protected ExtractResults extract(Node node) {
         IDataExtractorService service = getDataExtractorService();
         StringWriter writer = new StringWriter();
         InternalOutgoingTransport transport = new InternalOutgoingTransport(new BufferedWriter(
                 writer));
-        List<OutgoingBatch> batches = service.extract(new ProcessInfo(), TestConstants.TEST_CLIENT_NODE, transport);
+        List<OutgoingBatch> batches = service.extract(new ProcessInfo(), node, transport);
         transport.close();
         return new ExtractResults(batches, writer.getBuffer().toString());
     }
@@ -29,12 +29,14 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.AbstractDatabasePlatform;
 import org.jumpmind.symmetric.TestConstants;
 import org.jumpmind.symmetric.common.ParameterConstants;
@@ -42,7 +44,10 @@ import org.jumpmind.symmetric.csv.CsvWriter;
 import org.jumpmind.symmetric.ext.NodeGroupTestDataWriterFilter;
 import org.jumpmind.symmetric.ext.TestDataWriterFilter;
 import org.jumpmind.symmetric.io.data.CsvConstants;
+import org.jumpmind.symmetric.io.data.CsvData;
+import org.jumpmind.symmetric.io.data.DataContext;
 import org.jumpmind.symmetric.io.data.writer.Conflict.ResolveConflict;
+import org.jumpmind.symmetric.io.data.writer.DatabaseWriterFilterAdapter;
 import org.jumpmind.symmetric.io.data.writer.IDatabaseWriterFilter;
 import org.jumpmind.symmetric.model.IncomingBatch;
 import org.jumpmind.symmetric.model.Node;
@@ -530,6 +535,54 @@ abstract public class AbstractDataLoaderServiceTest extends AbstractServiceTest
         setLoggingLevelForTest(old);
     }
 
+    @Test
+    public void test11RecordOkBatchesInFlushes() throws Exception {
+        getParameterService().saveParameter(ParameterConstants.INCOMING_BATCH_RECORD_OK_FLUSH_SIZE, 2, "test");
+        String[] batchIds = new String[3];
+        IncomingBatchStatusRecorder statusRecorder = new IncomingBatchStatusRecorder(batchIds);
+        Map<String, String> statusesAtBatchStart = statusRecorder.statusesAtBatchStart;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CsvWriter writer = getWriter(out);
+            writer.writeRecord(new String[] { CsvConstants.NODEID,
+                    TestConstants.TEST_CLIENT_EXTERNAL_ID });
+            writer.writeRecord(new String[] { CsvConstants.CHANNEL,
+                    TestConstants.TEST_CHANNEL_ID });
+            for (int i = 0; i < batchIds.length; i++) {
+                batchIds[i] = getNextBatchId();
+            }
+            for (int i = 0; i < batchIds.length; i++) {
+                String[] values = { getNextId(), "string", "string not null", "char", "char not null",
+                        "2007-01-02 00:00:00.000", "2007-02-03 04:05:06.000", "0", "47", "67.89", "0.474" };
+                writer.writeRecord(new String[] { CsvConstants.BATCH, batchIds[i] });
+                writeTable(writer, TEST_TABLE, TEST_KEYS, TEST_COLUMNS);
+                writer.write(CsvConstants.INSERT);
+                writer.writeRecord(values, true);
+                writer.writeRecord(new String[] { CsvConstants.COMMIT, batchIds[i] });
+            }
+            writer.close();
+            getSymmetricEngine().getExtensionService().addExtensionPoint(statusRecorder);
+            load(out);
+
+            /*
+             * The first OK status is held until a second batch loads, then
+             * both are written together
+             */
+            assertEquals(statusesAtBatchStart.get(batchIds[0]), "LD,null,null,");
+            assertEquals(statusesAtBatchStart.get(batchIds[1]), "LD,LD,null,");
+            assertEquals(statusesAtBatchStart.get(batchIds[2]), "OK,OK,LD,");
+            for (String batchId : batchIds) {
+                assertEquals(
+                        findIncomingBatchStatus(Integer.parseInt(batchId),
+                                TestConstants.TEST_CLIENT_EXTERNAL_ID), IncomingBatch.Status.OK,
+                        "Wrong status. " + printDatabase());
+            }
+        } finally {
+            getSymmetricEngine().getExtensionService().removeExtensionPoint(statusRecorder);
+            getParameterService().saveParameter(ParameterConstants.INCOMING_BATCH_RECORD_OK_FLUSH_SIZE, 100, "test");
+        }
+    }
+
     protected void testSimple(String dmlType, String[] values, String[] expectedValues)
             throws Exception {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -556,6 +609,37 @@ abstract public class AbstractDataLoaderServiceTest extends AbstractServiceTest
         getDataLoaderService().loadDataFromPull(client, channelId);
     }
 
+    /**
+     * Records the status of the batches in the incoming_batch table when each
+     * batch starts to load
+     */
+    class IncomingBatchStatusRecorder extends DatabaseWriterFilterAdapter {
+
+        String[] batchIds;
+
+        Map<String, String> statusesAtBatchStart = new HashMap<String, String>();
+
+        IncomingBatchStatusRecorder(String[] batchIds) {
+            this.batchIds = batchIds;
+        }
+
+        @Override
+        public boolean beforeWrite(DataContext context, Table table, CsvData data) {
+            String batchId = Long.toString(context.getBatch().getBatchId());
+            if (!statusesAtBatchStart.containsKey(batchId)) {
+                StringBuilder statuses = new StringBuilder();
+                for (String id : batchIds) {
+                    IncomingBatch.Status status = findIncomingBatchStatus(Integer.parseInt(id),
+                            TestConstants.TEST_CLIENT_EXTERNAL_ID);
+                    statuses.append(status == null ? null : status.name()).append(",");
+                }
+                statusesAtBatchStart.put(batchId, statuses.toString());
+            }
+            return true;
+        }
+
+    }
+
     protected IncomingBatch.Status findIncomingBatchStatus(int batchId, String nodeId) {
         IncomingBatch batch = getIncomingBatchService().findIncomingBatch(batchId, nodeId);
         IncomingBatch.Status status = null;
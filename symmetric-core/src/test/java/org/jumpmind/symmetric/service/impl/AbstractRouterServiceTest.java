@@ -23,9 +23,14 @@ package org.jumpmind.symmetric.service.impl;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jumpmind.db.platform.DatabaseNamesConstants;
 import org.jumpmind.db.platform.IDatabasePlatform;
@@ -34,6 +39,7 @@ import org.jumpmind.symmetric.TestConstants;
 import org.jumpmind.symmetric.common.Constants;
 import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.db.ISymmetricDialect;
+import org.jumpmind.symmetric.model.ChannelMap;
 import org.jumpmind.symmetric.model.Data;
 import org.jumpmind.symmetric.model.DataGap;
 import org.jumpmind.symmetric.model.Node;
@@ -44,6 +50,7 @@ import org.jumpmind.symmetric.model.OutgoingBatches;
 import org.jumpmind.symmetric.model.TriggerRouter;
 import org.jumpmind.symmetric.route.ChannelRouterContext;
 import org.jumpmind.symmetric.route.DataGapRouteReader;
+import org.jumpmind.symmetric.service.IOutgoingBatchService;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -63,9 +70,14 @@ abstract public class AbstractRouterServiceTest extends AbstractServiceTest {
     @Test
     public void testRoutingScenarios() throws Exception {
         testMultiChannelRoutingToEveryone();
+        testUnsentCountKeptInMemory();
+        testIdleNodeMarkedPendingByBatchChanges();
+        testWaitersOnDifferentQueuesWokenByNotify();
         testLookupTableRouting();
         testColumnMatchTransactionalOnlyRoutingToNode1();
         testSubSelectNonTransactionalRoutingToNode1();
+        testSubSelectCacheClearedBetweenRoutingPasses();
+        testSubSelectSetModeRoutesSameNodes();
         testSyncIncomingBatch();
         // testLargeNumberOfEventsToManyNodes();
         testBshTransactionalRoutingOnUpdate();
@@ -87,6 +99,117 @@ abstract public class AbstractRouterServiceTest extends AbstractServiceTest {
         testMaxNumberOfDataToRoute();
     }
 
+    public void testUnsentCountKeptInMemory() {
+        resetBatches();
+
+        IOutgoingBatchService outgoingBatchService = getOutgoingBatchService();
+        Assert.assertEquals(0, outgoingBatchService.countOutgoingBatchesUnsent(false));
+
+        insert(TEST_TABLE_1, 5, true, null, "A");
+        getRouterService().routeData(true);
+
+        int unsentCount = outgoingBatchService.countOutgoingBatchesUnsent();
+        Assert.assertTrue(unsentCount > 0);
+        Assert.assertEquals(unsentCount, outgoingBatchService.countOutgoingBatchesUnsent(true));
+
+        // acknowledging the same batch twice only counts it as sent once
+        OutgoingBatch batch = outgoingBatchService.getOutgoingBatches(
+                NODE_GROUP_NODE_1.getNodeId(), false).getBatches().get(0);
+        batch.setStatus(OutgoingBatch.Status.OK);
+        outgoingBatchService.updateOutgoingBatch(batch);
+        Assert.assertEquals(unsentCount - 1, outgoingBatchService.countOutgoingBatchesUnsent(true));
+        outgoingBatchService.updateOutgoingBatch(batch);
+        Assert.assertEquals(unsentCount - 1, outgoingBatchService.countOutgoingBatchesUnsent(true));
+        Assert.assertEquals(unsentCount - 1, outgoingBatchService.countOutgoingBatchesUnsent());
+
+        outgoingBatchService.markAllAsSentForNode(NODE_GROUP_NODE_1.getNodeId(), true);
+        Assert.assertEquals(outgoingBatchService.countOutgoingBatchesUnsent(),
+                outgoingBatchService.countOutgoingBatchesUnsent(true));
+        Assert.assertEquals(getRouterService().getUnroutedDataCount(),
+                getRouterService().getUnroutedDataCount(true));
+    }
+
+    public void testIdleNodeMarkedPendingByBatchChanges() {
+        IOutgoingBatchService outgoingBatchService = getOutgoingBatchService();
+        String updatedNodeId = "idle-updated";
+        String routedNodeId = "idle-routed";
+        getParameterService().saveParameter(ParameterConstants.OUTGOING_BATCH_IDLE_RECONCILE_PERIOD_MS, 600000, "test");
+        getParameterService().saveParameter(ParameterConstants.CLUSTER_LOCKING_ENABLED, "false", "test");
+        try {
+            OutgoingBatch batch = new OutgoingBatch(updatedNodeId, TestConstants.TEST_CHANNEL_ID,
+                    OutgoingBatch.Status.OK);
+            outgoingBatchService.insertOutgoingBatch(batch);
+            Assert.assertFalse(outgoingBatchService.isOutgoingBatchesIdle(updatedNodeId, null));
+            Assert.assertEquals(0, outgoingBatchService.getOutgoingBatches(updatedNodeId, false).getBatches().size());
+            Assert.assertTrue(outgoingBatchService.isOutgoingBatchesIdle(updatedNodeId, null));
+            Assert.assertTrue(outgoingBatchService.isOutgoingBatchesIdle(updatedNodeId, "default"));
+
+            // a change the service does not see is not selected while the node is idle
+            getSqlTemplate().update("update sym_outgoing_batch set status=? where batch_id=?",
+                    OutgoingBatch.Status.NE.name(), batch.getBatchId());
+            Assert.assertEquals(0, outgoingBatchService.getOutgoingBatches(updatedNodeId, false).getBatches().size());
+
+            batch.setStatus(OutgoingBatch.Status.RQ);
+            outgoingBatchService.updateOutgoingBatch(batch);
+            Assert.assertFalse(outgoingBatchService.isOutgoingBatchesIdle(updatedNodeId, null));
+            Assert.assertEquals(1, outgoingBatchService.getOutgoingBatches(updatedNodeId, false).getBatches().size());
+
+            // a node that just had batches created stays pending until the period passes
+            batch.setStatus(OutgoingBatch.Status.OK);
+            outgoingBatchService.updateOutgoingBatch(batch);
+            Assert.assertEquals(0, outgoingBatchService.getOutgoingBatches(updatedNodeId, false).getBatches().size());
+            Assert.assertFalse(outgoingBatchService.isOutgoingBatchesIdle(updatedNodeId, null));
+
+            Assert.assertEquals(0, outgoingBatchService.getOutgoingBatches(routedNodeId, false).getBatches().size());
+            Assert.assertTrue(outgoingBatchService.isOutgoingBatchesIdle(routedNodeId, null));
+            outgoingBatchService.notifyOutgoingBatchesReady(Collections.singleton(routedNodeId));
+            Assert.assertFalse(outgoingBatchService.isOutgoingBatchesIdle(routedNodeId, null));
+        } finally {
+            getSqlTemplate().update("delete from sym_outgoing_batch where node_id in (?,?)", updatedNodeId,
+                    routedNodeId);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.OUTGOING_BATCH_IDLE_RECONCILE_PERIOD_MS);
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.CLUSTER_LOCKING_ENABLED);
+            outgoingBatchService.countOutgoingBatchesUnsent(false);
+        }
+    }
+
+    public void testWaitersOnDifferentQueuesWokenByNotify() throws Exception {
+        final IOutgoingBatchService outgoingBatchService = getOutgoingBatchService();
+        final String nodeId = "waiting-node";
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> shortWait = executor.submit(
+                    newWaiter(outgoingBatchService, nodeId, "queue1", 100));
+            Future<Boolean> longWait = executor.submit(
+                    newWaiter(outgoingBatchService, nodeId, "queue2", 60000));
+            Assert.assertFalse(shortWait.get());
+
+            // the waiter that timed out must not have unregistered the other one
+            long ts = System.currentTimeMillis();
+            while (!longWait.isDone() && System.currentTimeMillis() - ts < 10000) {
+                outgoingBatchService.notifyOutgoingBatchesReady(Collections.singleton(nodeId));
+                Thread.sleep(50);
+            }
+            Assert.assertTrue(longWait.isDone());
+            Assert.assertTrue(longWait.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected Callable<Boolean> newWaiter(final IOutgoingBatchService outgoingBatchService,
+            final String nodeId, final String queue, final long timeoutMs) {
+        return new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                ChannelMap channelMap = new ChannelMap();
+                channelMap.setThreadChannel(queue);
+                return outgoingBatchService.waitForOutgoingBatches(nodeId, channelMap, timeoutMs);
+            }
+        };
+    }
+
     public void testMultiChannelRoutingToEveryone() {
         resetBatches();
 
@@ -380,6 +503,108 @@ abstract public class AbstractRouterServiceTest extends AbstractServiceTest {
         resetBatches();
     }
 
+    public void testSubSelectCacheClearedBetweenRoutingPasses() {
+        resetBatches();
+        getDbDialect().truncateTable("test_lookup_table");
+        getSqlTemplate().update("insert into test_lookup_table values ('X',?)",
+                NODE_GROUP_NODE_1.getExternalId());
+        saveSubSelectLookupRouter();
+
+        insert(TEST_TABLE_1, 5, true, null, "X");
+        getRouterService().routeData(true);
+        Assert.assertTrue(countTestChannelBatches(NODE_GROUP_NODE_1.getNodeId()) > 0);
+        Assert.assertEquals(0, countTestChannelBatches(NODE_GROUP_NODE_3.getNodeId()));
+
+        resetBatches();
+
+        // the next routing pass has to see the changed lookup
+        getSqlTemplate().update("update test_lookup_table set column_two=? where column_one='X'",
+                NODE_GROUP_NODE_3.getExternalId());
+        insert(TEST_TABLE_1, 5, true, null, "X");
+        getRouterService().routeData(true);
+        Assert.assertEquals(0, countTestChannelBatches(NODE_GROUP_NODE_1.getNodeId()));
+        Assert.assertTrue(countTestChannelBatches(NODE_GROUP_NODE_3.getNodeId()) > 0);
+
+        deleteSubSelectRows();
+        restoreSubSelectRouter();
+    }
+
+    public void testSubSelectSetModeRoutesSameNodes() {
+        resetBatches();
+        getDbDialect().truncateTable("test_lookup_table");
+        getSqlTemplate().update("insert into test_lookup_table values ('P',?)",
+                NODE_GROUP_NODE_1.getExternalId());
+        getSqlTemplate().update("insert into test_lookup_table values ('Q',?)",
+                NODE_GROUP_NODE_3.getExternalId());
+        getSqlTemplate().update("insert into test_lookup_table values ('R',?)",
+                NODE_GROUP_NODE_1.getExternalId());
+        getSqlTemplate().update("insert into test_lookup_table values ('R',?)",
+                NODE_GROUP_NODE_3.getExternalId());
+        saveSubSelectLookupRouter();
+
+        int[] perRow = routeSubSelectMix();
+        getParameterService().saveParameter(ParameterConstants.ROUTING_SUBSELECT_SET_SIZE, "10",
+                "test");
+        try {
+            resetBatches();
+            int[] inSets = routeSubSelectMix();
+            Assert.assertEquals(3 + 2, perRow[0]);
+            Assert.assertEquals(4 + 2, perRow[1]);
+            Assert.assertEquals(perRow[0], inSets[0]);
+            Assert.assertEquals(perRow[1], inSets[1]);
+        } finally {
+            getParameterService().deleteParameter(ParameterConstants.ALL, ParameterConstants.ALL,
+                    ParameterConstants.ROUTING_SUBSELECT_SET_SIZE);
+        }
+
+        deleteSubSelectRows();
+        restoreSubSelectRouter();
+    }
+
+    protected int countTestChannelBatches(String nodeId) {
+        return getSqlTemplate().queryForInt(
+                "select count(*) from sym_outgoing_batch where status='NE' and node_id=? and channel_id=?",
+                nodeId, TestConstants.TEST_CHANNEL_ID);
+    }
+
+    protected int[] routeSubSelectMix() {
+        insert(TEST_TABLE_1, 3, true, null, "P");
+        insert(TEST_TABLE_1, 4, true, null, "Q");
+        insert(TEST_TABLE_1, 2, true, null, "R");
+        insert(TEST_TABLE_1, 1, true, null, "S");
+        getRouterService().routeData(true);
+        String sql = "select count(*) from sym_data_event e inner join sym_outgoing_batch b "
+                + "on b.batch_id=e.batch_id where b.status='NE' and b.node_id=? and b.channel_id=?";
+        return new int[] {
+                getSqlTemplate().queryForInt(sql, NODE_GROUP_NODE_1.getNodeId(),
+                        TestConstants.TEST_CHANNEL_ID),
+                getSqlTemplate().queryForInt(sql, NODE_GROUP_NODE_3.getNodeId(),
+                        TestConstants.TEST_CHANNEL_ID) };
+    }
+
+    protected void deleteSubSelectRows() {
+        getSqlTemplate().update(
+                String.format("delete from %s where routing_varchar in ('P','Q','R','S','X')",
+                        TEST_TABLE_1));
+        resetBatches();
+    }
+
+    protected void saveSubSelectLookupRouter() {
+        TriggerRouter triggerRouter = getTestRoutingTableTrigger(TEST_TABLE_1);
+        triggerRouter.getRouter().setRouterType("subselect");
+        triggerRouter.getRouter().setRouterExpression(
+                "c.external_id in (select column_two from test_lookup_table where column_one=:ROUTING_VARCHAR)");
+        getTriggerRouterService().saveTriggerRouter(triggerRouter);
+        getTriggerRouterService().syncTriggers();
+    }
+
+    protected void restoreSubSelectRouter() {
+        TriggerRouter triggerRouter = getTestRoutingTableTrigger(TEST_TABLE_1);
+        triggerRouter.getRouter().setRouterExpression("c.node_id=:ROUTING_VARCHAR");
+        getTriggerRouterService().saveTriggerRouter(triggerRouter);
+        getTriggerRouterService().syncTriggers();
+    }
+
     public void testSyncIncomingBatch() throws Exception {
         resetBatches();
 
@@ -0,0 +1,136 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jumpmind.symmetric.model.Sequence;
+import org.jumpmind.symmetric.service.impl.SequenceService.CachedRange;
+import org.jumpmind.symmetric.service.impl.SequenceService.CachedSequence;
+import org.junit.Test;
+
+public abstract class AbstractSequenceServiceTest extends AbstractServiceTest {
+
+    @Test
+    public void testConcurrentNextValIsUnique() throws Exception {
+        final SequenceService sequenceService = getSequenceService();
+        final String name = createSequence("test_concurrent", 5);
+        final int threads = 8;
+        final int valuesPerThread = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<Future<List<Long>>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<List<Long>>() {
+                    public List<Long> call() throws Exception {
+                        List<Long> values = new ArrayList<Long>(valuesPerThread);
+                        for (int j = 0; j < valuesPerThread; j++) {
+                            values.add(sequenceService.nextVal(name));
+                        }
+                        return values;
+                    }
+                }));
+            }
+
+            Set<Long> values = new HashSet<Long>();
+            for (Future<List<Long>> future : futures) {
+                for (Long value : future.get()) {
+                    assertTrue(values.add(value), "The value " + value + " was handed out twice");
+                }
+            }
+            assertEquals(values.size(), threads * valuesPerThread);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefetchAcrossRangeBoundary() throws Exception {
+        SequenceService sequenceService = getSequenceService();
+        String name = createSequence("test_prefetch", 10);
+        List<Long> values = new ArrayList<Long>();
+        values.add(sequenceService.nextVal(name));
+
+        CachedSequence cachedSequence = sequenceService.getCachedSequence(name);
+        CachedRange range = cachedSequence.current;
+        while (range.handedOut.get() < range.count / 2) {
+            values.add(sequenceService.nextVal(name));
+        }
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (cachedSequence.prefetched == null && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        CachedRange prefetched = cachedSequence.prefetched;
+        assertNotNull(prefetched, "The next range was not prefetched");
+        assertTrue(prefetched.follows(range));
+
+        while (range.handedOut.get() < range.count) {
+            values.add(sequenceService.nextVal(name));
+        }
+        long firstOfNextRange = sequenceService.nextVal(name);
+        values.add(firstOfNextRange);
+        assertEquals(firstOfNextRange, prefetched.startValue);
+        assertTrue(cachedSequence.current == prefetched);
+
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        assertEquals(sorted, values);
+        assertEquals(new HashSet<Long>(values).size(), values.size());
+    }
+
+    @Test
+    public void testNoPrefetchForSingleValueRange() {
+        assertFalse(new CachedRange(1, 1, 1).isPrefetchDue());
+        CachedRange range = new CachedRange(1, 1, 2);
+        range.next();
+        assertTrue(range.isPrefetchDue());
+    }
+
+    @Test
+    public void testNoPrefetchExecutorAfterStop() {
+        SequenceService sequenceService = new SequenceService(getParameterService(),
+                getSymmetricEngine().getSymmetricDialect());
+        assertNotNull(sequenceService.getPrefetchExecutor());
+        sequenceService.stop();
+        assertNull(sequenceService.getPrefetchExecutor());
+    }
+
+    protected String createSequence(String prefix, int cacheSize) {
+        String name = prefix + "_" + System.currentTimeMillis();
+        getSequenceService().create(
+                new Sequence(name, 1, 1, 1, 9999999999l, "test", false, cacheSize));
+        return name;
+    }
+
+    protected SequenceService getSequenceService() {
+        return (SequenceService) getSymmetricEngine().getSequenceService();
+    }
+
+}
@@ -1,23 +1,31 @@
 package org.jumpmind.symmetric.service.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.DatabaseInfo;
 import org.jumpmind.db.platform.IDatabasePlatform;
 import org.jumpmind.db.sql.ISqlRowMapper;
 import org.jumpmind.db.sql.ISqlTemplate;
 import org.jumpmind.db.sql.ISqlTransaction;
+import org.jumpmind.db.sql.Row;
 import org.jumpmind.symmetric.AbstractSymmetricEngine;
 import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.common.Constants;
 import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.db.AbstractSymmetricDialect;
 import org.jumpmind.symmetric.db.ISymmetricDialect;
 import org.jumpmind.symmetric.model.DataGap;
+import org.jumpmind.symmetric.model.Node;
 import org.jumpmind.symmetric.service.IDataService;
 import org.jumpmind.symmetric.service.IExtensionService;
 import org.jumpmind.symmetric.service.IParameterService;
@@ -32,13 +40,14 @@ public class DataServiceTest {
     IDataService dataService;
     IParameterService parameterService;
     ISymmetricDialect symmetricDialect;
+    IDatabasePlatform platform;
 
     @Before
     public void setUp() throws Exception {
         sqlTemplate = mock(ISqlTemplate.class);
         sqlTransaction = mock(ISqlTransaction.class); 
         when(sqlTemplate.startSqlTransaction()).thenReturn(sqlTransaction);
-        IDatabasePlatform platform = mock(IDatabasePlatform.class);
+        platform = mock(IDatabasePlatform.class);
         when(platform.getDatabaseInfo()).thenReturn(new DatabaseInfo());
         when(platform.getSqlTemplate()).thenReturn(sqlTemplate);
         symmetricDialect = mock(AbstractSymmetricDialect.class);
@@ -46,6 +55,8 @@ public class DataServiceTest {
 
         parameterService = mock(ParameterService.class);
         when(parameterService.getLong(ParameterConstants.ROUTING_LARGEST_GAP_SIZE)).thenReturn(50000000L);
+        when(parameterService.getString(ParameterConstants.INITIAL_LOAD_ROW_COUNT_METHOD)).thenReturn(
+                Constants.INITIAL_LOAD_ROW_COUNT_METHOD_ESTIMATE);
 
         IExtensionService extensionService = mock(ExtensionService.class);
         ISymmetricEngine engine = mock(AbstractSymmetricEngine.class);
@@ -71,4 +82,87 @@ public class DataServiceTest {
         verifyNoMoreInteractions(sqlTransaction);
     }
 
+    @Test
+    public void testReloadRowCountIgnoresStaleStatistics() throws Exception {
+        when(platform.getEstimatedRowCount(Matchers.any(Table.class))).thenReturn(10L);
+        mockKeyRange(1, 1000000, 1000);
+        assertEquals(1000000, getReloadRowCount(createTable(Types.INTEGER)));
+    }
+
+    @Test
+    public void testReloadRowCountKeepsHigherStatistics() throws Exception {
+        when(platform.getEstimatedRowCount(Matchers.any(Table.class))).thenReturn(5000000L);
+        mockKeyRange(1, 10000000, 100);
+        assertEquals(5000000, getReloadRowCount(createTable(Types.INTEGER)));
+    }
+
+    @Test
+    public void testReloadRowCountCountsWithoutIntegerKey() throws Exception {
+        when(platform.getEstimatedRowCount(Matchers.any(Table.class))).thenReturn(10L);
+        when(sqlTemplate.queryForInt(Matchers.anyString(), Matchers.anyVararg())).thenReturn(500);
+        assertEquals(500, getReloadRowCount(createTable(Types.VARCHAR)));
+    }
+
+    @Test
+    public void testReloadRowCountFullKeyRangeDoesNotOverflow() throws Exception {
+        when(platform.getEstimatedRowCount(Matchers.any(Table.class))).thenReturn(-1L);
+        mockKeyRange(Long.MIN_VALUE, Long.MAX_VALUE, 1000);
+        Table table = createTable(Types.BIGINT);
+        long estimate = ((DataService) dataService).estimateRowCountFromPrimaryKeyRange(table,
+                "test", 1000);
+        assertTrue(estimate > 0);
+        assertEquals(Integer.MAX_VALUE, getReloadRowCount(table));
+
+        mockKeyRange(Long.MAX_VALUE - 5, Long.MAX_VALUE, 1);
+        assertEquals(6, getReloadRowCount(table));
+    }
+
+    @Test
+    public void testReloadRowCountCountsSparseKeys() throws Exception {
+        when(platform.getEstimatedRowCount(Matchers.any(Table.class))).thenReturn(101L);
+        // ids 1 to 100 and one id of 10^15, so only the first slice finds rows
+        mockKeyRange(1, 1000000000000000L, 0);
+        when(sqlTemplate.queryForLong(Matchers.anyString(), Matchers.anyVararg())).thenReturn(100L, 0L);
+        when(sqlTemplate.queryForInt(Matchers.anyString(), Matchers.anyVararg())).thenReturn(101);
+        assertEquals(101, getReloadRowCount(createTable(Types.BIGINT)));
+    }
+
+    @Test
+    public void testReloadRowCountCountsSkewedKeys() throws Exception {
+        when(platform.getEstimatedRowCount(Matchers.any(Table.class))).thenReturn(-1L);
+        mockKeyRange(1, 1000000, 0);
+        when(sqlTemplate.queryForLong(Matchers.anyString(), Matchers.anyVararg())).thenReturn(
+                1000L, 1000L, 1000L, 1000L, 1000L, 1000L, 1000L, 1000L, 1000L, 10L);
+        when(sqlTemplate.queryForInt(Matchers.anyString(), Matchers.anyVararg())).thenReturn(900010);
+        assertEquals(900010, getReloadRowCount(createTable(Types.INTEGER)));
+    }
+
+    @Test
+    public void testReloadRowCountExactMethodCountsRows() throws Exception {
+        when(parameterService.getString(ParameterConstants.INITIAL_LOAD_ROW_COUNT_METHOD)).thenReturn(
+                Constants.INITIAL_LOAD_ROW_COUNT_METHOD_EXACT);
+        mockKeyRange(1, 1000000, 1000);
+        when(sqlTemplate.queryForInt(Matchers.anyString(), Matchers.anyVararg())).thenReturn(500);
+        assertEquals(500, getReloadRowCount(createTable(Types.INTEGER)));
+    }
+
+    protected int getReloadRowCount(Table table) {
+        return ((DataService) dataService).getReloadRowCount(new Node("00001", "client"), table,
+                Constants.ALWAYS_TRUE_CONDITION, 1000);
+    }
+
+    protected void mockKeyRange(long minId, long maxId, long countPerSlice) {
+        Row range = new Row(2);
+        range.put("min_id", minId);
+        range.put("max_id", maxId);
+        when(sqlTemplate.queryForRow(Matchers.anyString())).thenReturn(range);
+        when(sqlTemplate.queryForLong(Matchers.anyString(), Matchers.anyVararg())).thenReturn(
+                countPerSlice);
+    }
+
+    protected Table createTable(int pkType) {
+        return new Table("test", new Column("id", true, pkType, 0, 0), new Column("name", false,
+                Types.VARCHAR, 50, 0));
+    }
+
 }
@@ -0,0 +1,177 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jumpmind.db.platform.DatabaseInfo;
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.sql.ISqlTemplate;
+import org.jumpmind.symmetric.db.AbstractSymmetricDialect;
+import org.jumpmind.symmetric.db.ISymmetricDialect;
+import org.jumpmind.symmetric.model.Channel;
+import org.jumpmind.symmetric.model.DatabaseParameter;
+import org.jumpmind.symmetric.model.Node;
+import org.jumpmind.symmetric.model.NodeCommunication;
+import org.jumpmind.symmetric.model.NodeCommunication.CommunicationType;
+import org.jumpmind.symmetric.model.NodeGroupLinkAction;
+import org.jumpmind.symmetric.service.IClusterService;
+import org.jumpmind.symmetric.service.IConfigurationService;
+import org.jumpmind.symmetric.service.INodeService;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.jumpmind.symmetric.service.impl.NodeCommunicationService.CommunicationTargets;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NodeCommunicationServiceTest {
+
+    INodeService nodeService;
+    IConfigurationService configurationService;
+    IParameterService parameterService;
+    NodeCommunicationService nodeCommunicationService;
+    Map<String, Channel> channels;
+
+    @Before
+    public void setUp() throws Exception {
+        IDatabasePlatform platform = mock(IDatabasePlatform.class);
+        when(platform.getDatabaseInfo()).thenReturn(new DatabaseInfo());
+        when(platform.getSqlTemplate()).thenReturn(mock(ISqlTemplate.class));
+        ISymmetricDialect symmetricDialect = mock(AbstractSymmetricDialect.class);
+        when(symmetricDialect.getPlatform()).thenReturn(platform);
+
+        parameterService = mock(ParameterService.class);
+        when(parameterService.getTablePrefix()).thenReturn("sym");
+        when(parameterService.getOfflineNodeParameters()).thenReturn(
+                new ArrayList<DatabaseParameter>());
+
+        channels = new HashMap<String, Channel>();
+        channels.put("default", createChannel("default", "default"));
+        configurationService = mock(IConfigurationService.class);
+        when(configurationService.getChannels(false)).thenReturn(channels);
+
+        nodeService = mock(INodeService.class);
+        nodeCommunicationService = new NodeCommunicationService(mock(IClusterService.class),
+                nodeService, parameterService, configurationService, symmetricDialect);
+    }
+
+    @Test
+    public void testTargetsCachedWhileInputsUnchanged() {
+        List<Node> pushNodes = createNodes("00001", "00002");
+        when(nodeService.findNodesToPushTo()).thenReturn(pushNodes);
+
+        CommunicationTargets targets = nodeCommunicationService
+                .getCommunicationTargets(CommunicationType.PUSH);
+        assertEquals(2, targets.communications.size());
+        assertSame(targets, nodeCommunicationService.getCommunicationTargets(CommunicationType.PUSH));
+    }
+
+    @Test
+    public void testTargetsRefreshedWhenNodesChange() {
+        when(nodeService.findNodesToPushTo()).thenReturn(createNodes("00001", "00002"));
+        CommunicationTargets targets = nodeCommunicationService
+                .getCommunicationTargets(CommunicationType.PUSH);
+
+        /* a node registered, so the node service hands out a new list */
+        when(nodeService.findNodesToPushTo()).thenReturn(createNodes("00001", "00002", "00003"));
+        CommunicationTargets refreshed = nodeCommunicationService
+                .getCommunicationTargets(CommunicationType.PUSH);
+        assertNotSame(targets, refreshed);
+        assertEquals(set("00001", "00002", "00003"), refreshed.nodes.keySet());
+
+        /* a node was deleted */
+        when(nodeService.findNodesToPushTo()).thenReturn(createNodes("00001"));
+        assertEquals(set("00001"),
+                nodeCommunicationService.getCommunicationTargets(CommunicationType.PUSH).nodes.keySet());
+    }
+
+    @Test
+    public void testTargetsRefreshedWhenNodeGroupLinksChange() {
+        when(nodeService.findNodesToPull()).thenReturn(createNodes("00001"));
+        when(nodeService.findSourceNodesFor(NodeGroupLinkAction.P)).thenReturn(new ArrayList<Node>());
+        assertEquals(set("00001"),
+                nodeCommunicationService.getCommunicationTargets(CommunicationType.PULL).nodes.keySet());
+        CommunicationTargets offline = nodeCommunicationService
+                .getCommunicationTargets(CommunicationType.OFFLN_PULL);
+
+        /*
+         * the link from the other group was changed from wait to push, so the
+         * node service's flushed link cache hands out new lists
+         */
+        when(nodeService.findNodesToPull()).thenReturn(new ArrayList<Node>());
+        when(nodeService.findSourceNodesFor(NodeGroupLinkAction.P)).thenReturn(createNodes("00001"));
+        assertTrue(nodeCommunicationService.getCommunicationTargets(CommunicationType.PULL).nodes
+                .isEmpty());
+        assertNotSame(offline,
+                nodeCommunicationService.getCommunicationTargets(CommunicationType.OFFLN_PULL));
+    }
+
+    @Test
+    public void testTargetsRefreshedWhenQueuesChange() {
+        when(nodeService.findNodesToPushTo()).thenReturn(createNodes("00001"));
+        assertEquals(1, nodeCommunicationService.getCommunicationTargets(CommunicationType.PUSH)
+                .communications.size());
+
+        channels.put("reload", createChannel("reload", "reload"));
+        Set<String> queues = new HashSet<String>();
+        for (NodeCommunication communication : nodeCommunicationService
+                .getCommunicationTargets(CommunicationType.PUSH).communications) {
+            queues.add(communication.getQueue());
+        }
+        assertEquals(set("default", "reload"), queues);
+    }
+
+    protected Channel createChannel(String channelId, String queue) {
+        Channel channel = new Channel(channelId, 1);
+        channel.setQueue(queue);
+        return channel;
+    }
+
+    protected List<Node> createNodes(String... nodeIds) {
+        List<Node> nodes = new ArrayList<Node>();
+        for (String nodeId : nodeIds) {
+            Node node = new Node(nodeId, "client");
+            node.setSymmetricVersion("3.8.0");
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    protected Set<String> set(String... values) {
+        Set<String> set = new HashSet<String>();
+        for (String value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+}
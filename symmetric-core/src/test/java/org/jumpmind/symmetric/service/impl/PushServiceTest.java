@@ -0,0 +1,118 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.service.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.sql.ISqlTemplate;
+import org.jumpmind.symmetric.db.AbstractSymmetricDialect;
+import org.jumpmind.symmetric.db.ISymmetricDialect;
+import org.jumpmind.symmetric.model.Channel;
+import org.jumpmind.symmetric.model.Node;
+import org.jumpmind.symmetric.model.NodeCommunication;
+import org.jumpmind.symmetric.model.NodeCommunication.CommunicationType;
+import org.jumpmind.symmetric.model.NodeSecurity;
+import org.jumpmind.symmetric.model.RemoteNodeStatuses;
+import org.jumpmind.symmetric.service.IAcknowledgeService;
+import org.jumpmind.symmetric.service.IClusterService;
+import org.jumpmind.symmetric.service.IConfigurationService;
+import org.jumpmind.symmetric.service.IDataExtractorService;
+import org.jumpmind.symmetric.service.IExtensionService;
+import org.jumpmind.symmetric.service.INodeCommunicationService;
+import org.jumpmind.symmetric.service.INodeService;
+import org.jumpmind.symmetric.service.IOutgoingBatchService;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.jumpmind.symmetric.statistic.IStatisticManager;
+import org.jumpmind.symmetric.transport.ITransportManager;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PushServiceTest {
+
+    IOutgoingBatchService outgoingBatchService;
+    INodeCommunicationService nodeCommunicationService;
+    PushService pushService;
+
+    @Before
+    public void setUp() throws Exception {
+        IDatabasePlatform platform = mock(IDatabasePlatform.class);
+        when(platform.getSqlTemplate()).thenReturn(mock(ISqlTemplate.class));
+        ISymmetricDialect symmetricDialect = mock(AbstractSymmetricDialect.class);
+        when(symmetricDialect.getPlatform()).thenReturn(platform);
+
+        IParameterService parameterService = mock(ParameterService.class);
+        when(parameterService.getTablePrefix()).thenReturn("sym");
+
+        Node identity = new Node("00000", "corp");
+        INodeService nodeService = mock(INodeService.class);
+        when(nodeService.findIdentity()).thenReturn(identity);
+        when(nodeService.findNodeSecurity("00000", true)).thenReturn(new NodeSecurity());
+
+        IConfigurationService configurationService = mock(IConfigurationService.class);
+        when(configurationService.getChannels(false)).thenReturn(new HashMap<String, Channel>());
+
+        outgoingBatchService = mock(IOutgoingBatchService.class);
+        nodeCommunicationService = mock(INodeCommunicationService.class);
+        when(nodeCommunicationService.getAvailableThreads(CommunicationType.PUSH)).thenReturn(10);
+
+        pushService = new PushService(parameterService, symmetricDialect, mock(IDataExtractorService.class),
+                outgoingBatchService, mock(IAcknowledgeService.class), mock(ITransportManager.class), nodeService,
+                mock(IClusterService.class), nodeCommunicationService, mock(IStatisticManager.class),
+                configurationService, mock(IExtensionService.class));
+    }
+
+    @Test
+    public void testPushSkipsIdleNodes() {
+        NodeCommunication idle = createNodeCommunication("00001");
+        NodeCommunication pending = createNodeCommunication("00002");
+        List<NodeCommunication> nodes = new ArrayList<NodeCommunication>();
+        nodes.add(idle);
+        nodes.add(pending);
+        when(nodeCommunicationService.list(CommunicationType.PUSH)).thenReturn(nodes);
+        when(outgoingBatchService.isOutgoingBatchesIdle("00001", "default")).thenReturn(true);
+
+        pushService.pushData(false);
+
+        verify(nodeCommunicationService, never()).execute(same(idle), any(RemoteNodeStatuses.class),
+                eq(pushService));
+        verify(nodeCommunicationService).execute(same(pending), any(RemoteNodeStatuses.class), eq(pushService));
+    }
+
+    protected NodeCommunication createNodeCommunication(String nodeId) {
+        NodeCommunication nodeCommunication = new NodeCommunication();
+        nodeCommunication.setNodeId(nodeId);
+        nodeCommunication.setQueue("default");
+        nodeCommunication.setCommunicationType(CommunicationType.PUSH);
+        return nodeCommunication;
+    }
+
+}
@@ -123,6 +123,17 @@ public class MockStatisticManager implements IStatisticManager {
         return null;
     }
 
+    public Map<String, ChannelStats> getTotalChannelStats() {
+        return null;
+    }
+
+    public void addLatency(String name, String channelId, String nodeId, long timeInMs) {
+    }
+
+    public List<LatencyHistogram> getLatencyHistograms() {
+        return null;
+    }
+
     public void incrementNodesLoaded(long count) {
 
     }
@@ -0,0 +1,121 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.jumpmind.symmetric.service.IClusterService;
+import org.jumpmind.symmetric.service.IConfigurationService;
+import org.jumpmind.symmetric.service.INodeService;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.jumpmind.symmetric.service.IStatisticService;
+import org.junit.Test;
+
+public class StatisticManagerTest {
+
+    private static final int THREADS = 8;
+
+    private static final int INCREMENTS = 10000;
+
+    @Test
+    public void testCounterSumUnderConcurrentIncrements() throws Exception {
+        final StatisticCounter counter = new StatisticCounter();
+        runConcurrently(new Runnable() {
+            public void run() {
+                for (int i = 0; i < INCREMENTS; i++) {
+                    counter.increment();
+                    counter.add(2);
+                }
+            }
+        });
+        assertEquals(3l * THREADS * INCREMENTS, counter.sum());
+    }
+
+    @Test
+    public void testChannelTotalsUnderConcurrentIncrements() throws Exception {
+        final StatisticManager statisticManager = new StatisticManager(
+                mock(IParameterService.class), mock(INodeService.class),
+                mock(IConfigurationService.class), mock(IStatisticService.class),
+                mock(IClusterService.class));
+        runConcurrently(new Runnable() {
+            public void run() {
+                for (int i = 0; i < INCREMENTS; i++) {
+                    statisticManager.incrementDataRouted("default", 1);
+                    statisticManager.incrementDataExtracted("default", 2);
+                    statisticManager.incrementDataLoaded("config", 1);
+                }
+            }
+        });
+        statisticManager.setDataUnRouted("default", 5);
+
+        Map<String, ChannelStats> totals = statisticManager.getTotalChannelStats();
+        assertEquals(2, totals.size());
+        assertEquals((long) THREADS * INCREMENTS, totals.get("default").getDataRouted());
+        assertEquals(2l * THREADS * INCREMENTS, totals.get("default").getDataExtracted());
+        assertEquals(5l, totals.get("default").getDataUnRouted());
+        assertEquals((long) THREADS * INCREMENTS, totals.get("config").getDataLoaded());
+        assertEquals(0l, totals.get("config").getDataRouted());
+    }
+
+    @Test
+    public void testLatencyHistogramUnderConcurrentRecords() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram("extract", "default", "00001");
+        runConcurrently(new Runnable() {
+            public void run() {
+                for (int i = 0; i < INCREMENTS; i++) {
+                    histogram.record(i % 2 == 0 ? 3 : 3000);
+                }
+            }
+        });
+        assertEquals((long) THREADS * INCREMENTS, histogram.getCount());
+        assertEquals((long) THREADS * INCREMENTS / 2 * 3003, histogram.getSum());
+    }
+
+    protected void runConcurrently(final Runnable runnable) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    runnable.run();
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.junit.Test;
+
+public class HttpCompressionLevelSelectorTest {
+
+    private static final long ONE_SECOND = 1000000000l;
+
+    @Test
+    public void testDisabled() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(false);
+        selector.recordTransfer("00001", 1024 * 1024 * 1024, ONE_SECOND);
+        assertEquals(6, selector.getCompressionLevel("00001"));
+        InputStream in = new ByteArrayInputStream(new byte[0]);
+        assertEquals(in, selector.meter("00001", in));
+    }
+
+    @Test
+    public void testLevelByLinkSpeed() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(true);
+        assertEquals(6, selector.getCompressionLevel("00001"));
+
+        selector.recordTransfer("00001", 1024 * 1024 * 1024, ONE_SECOND);
+        assertEquals(Deflater.NO_COMPRESSION, selector.getCompressionLevel("00001"));
+
+        selector.recordTransfer("00002", 128 * 1024, ONE_SECOND);
+        assertEquals(Deflater.BEST_COMPRESSION, selector.getCompressionLevel("00002"));
+
+        selector.recordTransfer("00003", 10 * 1024 * 1024, ONE_SECOND);
+        assertEquals(6, selector.getCompressionLevel("00003"));
+    }
+
+    @Test
+    public void testSmallTransfersIgnored() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(true);
+        selector.recordTransfer("00001", 1024, ONE_SECOND);
+        assertNull(selector.getKbps("00001"));
+    }
+
+    @Test
+    public void testMeteredStreamRecordsOnClose() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(true);
+        InputStream in = selector.meter("00001", new ByteArrayInputStream(new byte[256 * 1024]));
+        IOUtils.toByteArray(in);
+        assertNull(selector.getKbps("00001"));
+        in.close();
+        assertEquals(Deflater.NO_COMPRESSION, selector.getCompressionLevel("00001"));
+    }
+
+    @Test
+    public void testSlowProducerOnFastLink() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(true);
+        selector.stallNanos = 100000000l;
+        InputStream in = selector.meter("00001", new SlowProducerInputStream(4, 64 * 1024, 300));
+        IOUtils.toByteArray(in);
+        in.close();
+        assertEquals(Deflater.NO_COMPRESSION, selector.getCompressionLevel("00001"));
+    }
+
+    @Test
+    public void testDeflateBoundLinkUsesFastestCompression() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(true);
+        selector.recordTransfer("00001", 10 * 1024 * 1024, ONE_SECOND, 2 * ONE_SECOND);
+        assertEquals(Deflater.BEST_SPEED, selector.getCompressionLevel("00001"));
+
+        selector.recordTransfer("00002", 128 * 1024, ONE_SECOND, ONE_SECOND / 10);
+        assertEquals(Deflater.BEST_COMPRESSION, selector.getCompressionLevel("00002"));
+    }
+
+    @Test
+    public void testMeteredCompressionRecordsDeflateTime() throws Exception {
+        HttpCompressionLevelSelector selector = getSelector(true);
+        OutputStream metered = selector.meter("00001", new ByteArrayOutputStream());
+        OutputStream out = selector.meterCompression(metered, new GZIPOutputStream(metered));
+        byte[] data = new byte[1024 * 1024];
+        new Random(0).nextBytes(data);
+        out.write(data);
+        assertNull(selector.getKbps("00001"));
+        out.close();
+        assertTrue(selector.getDeflateRatio("00001") > 0);
+    }
+
+    protected HttpCompressionLevelSelector getSelector(boolean enabled) {
+        IParameterService parameterService = mock(IParameterService.class);
+        when(parameterService.is(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_ENABLED))
+                .thenReturn(enabled);
+        when(parameterService.getInt(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_LEVEL))
+                .thenReturn(6);
+        when(parameterService.getLong(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_FAST_KBPS))
+                .thenReturn(500000l);
+        when(parameterService.getLong(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_ADAPTIVE_SLOW_KBPS))
+                .thenReturn(2000l);
+        return new HttpCompressionLevelSelector(parameterService);
+    }
+
+    /**
+     * A remote node that sends each chunk as soon as it is extracted, with a
+     * pause to extract the next one
+     */
+    static class SlowProducerInputStream extends InputStream {
+
+        int chunks;
+
+        int chunkSize;
+
+        long pauseMs;
+
+        int remaining;
+
+        SlowProducerInputStream(int chunks, int chunkSize, long pauseMs) {
+            this.chunks = chunks;
+            this.chunkSize = chunkSize;
+            this.pauseMs = pauseMs;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                if (chunks == 0) {
+                    return -1;
+                }
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                }
+                chunks--;
+                remaining = chunkSize;
+            }
+            int count = Math.min(len, remaining);
+            remaining -= count;
+            return count;
+        }
+    }
+
+}
@@ -61,6 +61,7 @@ import org.jumpmind.db.sql.DmlStatement;
 import org.jumpmind.db.sql.DmlStatement.DmlType;
 import org.jumpmind.db.sql.ISqlTemplate;
 import org.jumpmind.db.sql.Row;
+import org.jumpmind.db.sql.SqlException;
 import org.jumpmind.db.sql.SqlScript;
 import org.jumpmind.db.util.BinaryEncoding;
 import org.jumpmind.exception.IoException;
@@ -916,4 +917,27 @@ public abstract class AbstractDatabasePlatform implements IDatabasePlatform {
         }
     }
 
+    public long getEstimatedRowCount(Table table) {
+        return -1;
+    }
+
+    /**
+     * Runs a catalog query that selects a single row count. No row, a null or
+     * negative count and a failed query all mean there is no estimate.
+     */
+    protected long queryForEstimatedRowCount(String sql, Object... args) {
+        try {
+            Row row = getSqlTemplate().queryForRow(sql, args);
+            if (row != null && row.size() > 0) {
+                Object value = row.values().iterator().next();
+                if (value instanceof Number && ((Number) value).longValue() >= 0) {
+                    return ((Number) value).longValue();
+                }
+            }
+        } catch (SqlException ex) {
+            log.debug("Could not read the estimated row count: {}", ex.getMessage());
+        }
+        return -1;
+    }
+
 }
@@ -182,5 +182,13 @@ public interface IDatabasePlatform {
     public boolean canColumnBeUsedInWhereClause(Column column);
     
     public void makePlatformSpecific(Database database);
+
+    /**
+     * Returns the number of rows in a table according to the statistics kept
+     * in the database catalog, or -1 if the platform does not keep them or
+     * they have not been gathered for the table. The estimate is only as
+     * current as the statistics.
+     */
+    public long getEstimatedRowCount(Table table);
     
 }
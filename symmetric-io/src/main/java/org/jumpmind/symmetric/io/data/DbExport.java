@@ -28,10 +28,20 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.math.BigInteger;
+import java.sql.Types;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -104,6 +114,10 @@ public class DbExport {
 
     private boolean useJdbcTimestampFormat = true;
 
+    private int threadCount = 1;
+
+    private long rowsPerFile;
+
     private IDatabasePlatform platform;
 
     public DbExport(IDatabasePlatform platform) {
@@ -133,6 +147,20 @@ public class DbExport {
     }
 
     public void exportTables(OutputStream output) throws IOException {
+        if (isParallel()) {
+            /*
+             * Let the export threads read the table definitions instead of
+             * reading the whole schema on this thread
+             */
+            List<String> tableNames = platform.getDdlReader().getTableNames(getCatalogToUse(),
+                    getSchemaToUse(), new String[] { "TABLE" });
+            Table[] tables = new Table[tableNames.size()];
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = new Table(getCatalogToUse(), getSchemaToUse(), tableNames.get(i));
+            }
+            exportTables(output, tables);
+            return;
+        }
         Database database = platform.readDatabase(getCatalogToUse(), getSchemaToUse(),
                 new String[] { "TABLE" });
         exportTables(output, database.getTables());
@@ -141,6 +169,14 @@ public class DbExport {
     public void exportTables(OutputStream output, String[] tableNames) throws IOException {
         ArrayList<Table> tableList = new ArrayList<Table>();
 
+        if (isParallel()) {
+            for (String tableName : tableNames) {
+                tableList.add(new Table(getCatalogToUse(), getSchemaToUse(), tableName));
+            }
+            exportTables(output, tableList.toArray(new Table[tableList.size()]));
+            return;
+        }
+
         for (String tableName : tableNames) {
             Table table = platform.readTableFromDatabase(getCatalogToUse(), getSchemaToUse(),
                     tableName);
@@ -165,6 +201,10 @@ public class DbExport {
     }
 
     public void exportTables(OutputStream output, Table[] tables, String sql) throws IOException {
+        if (isParallel()) {
+            exportTablesInParallel(tables, sql);
+            return;
+        }
 
         for (int i = 0; i < tables.length; i++) {
             // if the table definition did not come from the database, then read
@@ -195,6 +235,186 @@ public class DbExport {
         }
     }
 
+    protected boolean isParallel() {
+        return threadCount > 1 && StringUtils.isNotBlank(dir);
+    }
+
+    /**
+     * Write each table to its own file on a pool of {@link #threadCount}
+     * threads. Large tables with a single integer primary key are split into
+     * key ranges of about {@link #rowsPerFile} rows that are written to
+     * separate files named table.part.format.
+     */
+    protected void exportTablesInParallel(Table[] tables, final String sql) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new DbExportThreadFactory());
+        final List<Future<?>> futures = Collections.synchronizedList(new ArrayList<Future<?>>());
+        try {
+            tables = readTablesInParallel(tables, executor);
+            for (final Table table : tables) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        Table tableToExport = table;
+                        List<String> rangeSqls = sql == null ? getKeyRangeSqls(tableToExport) : null;
+                        if (rangeSqls == null) {
+                            writeTablePart(tableToExport.copy(), sql, 0);
+                        } else {
+                            for (int i = 1; i < rangeSqls.size(); i++) {
+                                final Table part = tableToExport.copy();
+                                final String partSql = rangeSqls.get(i);
+                                final int partNumber = i;
+                                futures.add(executor.submit(new Runnable() {
+                                    public void run() {
+                                        writeTablePart(part, partSql, partNumber);
+                                    }
+                                }));
+                            }
+                            writeTablePart(tableToExport.copy(), rangeSqls.get(0), 0);
+                        }
+                    }
+                }));
+            }
+
+            /*
+             * Parts are added before the task that planned them completes, so
+             * the list is complete once every earlier future is done
+             */
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (InterruptedException e) {
+                    throw new IoException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IoException("Failed to export tables", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the definitions of tables that did not come from the database on
+     * the export threads, then sort them by foreign key. Sorting needs the
+     * foreign keys, which a table created from a name alone does not have.
+     */
+    protected Table[] readTablesInParallel(Table[] tables, ExecutorService executor) {
+        List<Future<Table>> futures = new ArrayList<Future<Table>>(tables.length);
+        for (final Table table : tables) {
+            futures.add(executor.submit(new Callable<Table>() {
+                public Table call() {
+                    if (table.containsJdbcTypes()) {
+                        return table;
+                    }
+                    Table tableFromDatabase = platform.readTableFromDatabase(getCatalogToUse(),
+                            getSchemaToUse(), table.getName());
+                    if (tableFromDatabase == null && !ignoreMissingTables) {
+                        throw new RuntimeException("Cannot find table " + table.getName()
+                                + " in catalog " + getCatalogToUse() + " and schema "
+                                + getSchemaToUse());
+                    }
+                    return tableFromDatabase;
+                }
+            }));
+        }
+
+        List<Table> tableList = new ArrayList<Table>(tables.length);
+        for (Future<Table> future : futures) {
+            try {
+                Table table = future.get();
+                if (table != null) {
+                    tableList.add(table);
+                }
+            } catch (InterruptedException e) {
+                throw new IoException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IoException("Failed to read tables", e.getCause());
+            }
+        }
+        return Database.sortByForeignKeys(tableList.toArray(new Table[tableList.size()]));
+    }
+
+    protected void writeTablePart(Table table, String sql, int part) {
+        WriterWrapper writerWrapper = new WriterWrapper(null, part);
+        try {
+            writeTable(writerWrapper, table, sql);
+        } catch (IOException e) {
+            throw new IoException(e);
+        } finally {
+            writerWrapper.close();
+        }
+    }
+
+    /**
+     * Split a table into primary key ranges when its estimated row count is
+     * larger than {@link #rowsPerFile}.
+     * 
+     * @return the select statement for each range or null if the table should
+     *         be written as a whole
+     */
+    protected List<String> getKeyRangeSqls(Table table) {
+        Column[] pkColumns = table.getPrimaryKeyColumns();
+        if (rowsPerFile <= 0 || noData || StringUtils.isNotBlank(whereClause)
+                || maxRows != Integer.MAX_VALUE || pkColumns.length != 1
+                || !isIntegerColumn(pkColumns[0])) {
+            return null;
+        }
+        long rowCount = platform.getEstimatedRowCount(table);
+        if (rowCount <= rowsPerFile) {
+            return null;
+        }
+
+        String quote = platform.getDatabaseInfo().getDelimiterToken();
+        String pkName = quote + pkColumns[0].getName() + quote;
+        String tableName = table.getQualifiedTableName(quote, platform.getDatabaseInfo()
+                .getCatalogSeparator(), platform.getDatabaseInfo().getSchemaSeparator());
+        Row range = platform.getSqlTemplate().queryForRow(String.format(
+                "select min(%s) as min_id, max(%s) as max_id from %s", pkName, pkName, tableName));
+        if (range == null || range.get("min_id") == null) {
+            return null;
+        }
+        BigInteger minId = BigInteger.valueOf(range.getLong("min_id"));
+        BigInteger maxId = BigInteger.valueOf(range.getLong("max_id"));
+        /* the span of a long key range does not always fit in a long */
+        BigInteger keySpan = maxId.subtract(minId).add(BigInteger.ONE);
+        long parts = (rowCount + rowsPerFile - 1) / rowsPerFile;
+        if (keySpan.compareTo(BigInteger.valueOf(parts)) < 0) {
+            parts = keySpan.longValue();
+        }
+        if (parts < 2) {
+            return null;
+        }
+
+        String selectSql = getSelectSql(table);
+        BigInteger rangeSize = keySpan.divide(BigInteger.valueOf(parts));
+        List<String> sqls = new ArrayList<String>();
+        for (long i = 0; i < parts; i++) {
+            BigInteger start = minId.add(rangeSize.multiply(BigInteger.valueOf(i)));
+            BigInteger end = start.add(rangeSize);
+            if (i == 0) {
+                sqls.add(String.format("%s where %s < %s", selectSql, pkName, end));
+            } else if (i == parts - 1) {
+                sqls.add(String.format("%s where %s >= %s", selectSql, pkName, start));
+            } else {
+                sqls.add(String.format("%s where %s >= %s and %s < %s", selectSql, pkName, start,
+                        pkName, end));
+            }
+        }
+        return sqls;
+    }
+
+    protected boolean isIntegerColumn(Column column) {
+        int type = column.getMappedTypeCode();
+        return type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT
+                || type == Types.TINYINT
+                || ((type == Types.NUMERIC || type == Types.DECIMAL) && column.getScale() == 0);
+    }
+
     protected String getSchemaToUse() {
         if (StringUtils.isBlank(schema)) {
             return platform.getDefaultSchema();
@@ -218,13 +438,7 @@ public class DbExport {
 
         if (!noData) {
             if (sql == null) {
-                if (excludeColumns == null || excludeColumns.length == 0) {
-                    sql = platform.createDmlStatement(DmlType.SELECT_ALL, table, null).getSql();
-                } else {
-                    Column[] columnsToExport = getColumnsToExport(table);
-                    sql = platform.createDmlStatement(DmlType.SELECT_ALL, table.getCatalog(), table.getSchema(), table.getName(), 
-                            table.getPrimaryKeyColumns(), columnsToExport, null,null).getSql();
-                }
+                sql = getSelectSql(table);
             }
 
             if (StringUtils.isNotBlank(whereClause)) {
@@ -247,6 +461,16 @@ public class DbExport {
 
     }
 
+    protected String getSelectSql(Table table) {
+        if (excludeColumns == null || excludeColumns.length == 0) {
+            return platform.createDmlStatement(DmlType.SELECT_ALL, table, null).getSql();
+        } else {
+            Column[] columnsToExport = getColumnsToExport(table);
+            return platform.createDmlStatement(DmlType.SELECT_ALL, table.getCatalog(), table.getSchema(), table.getName(), 
+                    table.getPrimaryKeyColumns(), columnsToExport, null,null).getSql();
+        }
+    }
+
     protected Column[] getColumnsToExport(Table table) {
         Column[] tableColumns = table.getColumns();
         List<Column> columnsToExport = new ArrayList<Column>();
@@ -445,6 +669,22 @@ public class DbExport {
         return maxRows;
     }
 
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setRowsPerFile(long rowsPerFile) {
+        this.rowsPerFile = rowsPerFile;
+    }
+
+    public long getRowsPerFile() {
+        return rowsPerFile;
+    }
+
     protected String getDatabaseName() {
         Compatible mappedCompatible = compatible;
         
@@ -462,8 +702,14 @@ public class DbExport {
         private Table table;
         private DmlStatement insertSql;
         private boolean startedWriting = false;
+        private int part;
 
         public WriterWrapper(OutputStream os) {
+            this(os, 0);
+        }
+
+        public WriterWrapper(OutputStream os, int part) {
+            this.part = part;
             if (StringUtils.isBlank(dir) && os != null) {
                 try {
                     writer = new OutputStreamWriter(os, IoConstants.ENCODING);
@@ -483,8 +729,9 @@ public class DbExport {
                         directory.mkdirs();
                     }
 
-                    File file = new File(dir, String.format("%s.%s", table.getName(), format
-                            .toString().replace('_', '.').toLowerCase()));
+                    String extension = format.toString().replace('_', '.').toLowerCase();
+                    File file = new File(dir, part == 0 ? String.format("%s.%s", table.getName(),
+                            extension) : String.format("%s.%d.%s", table.getName(), part, extension));
                     FileUtils.deleteQuietly(file);
                     try {
                         writer = new FileWriter(file);
@@ -538,7 +785,9 @@ public class DbExport {
                     }
                 }
 
-                if (!noCreateInfo) {
+                if (part > 0) {
+                    // the first part of a split table carries the table definition
+                } else if (!noCreateInfo) {
                     if (format == Format.SQL) {
                         IDdlBuilder target = DdlBuilderFactory.createDdlBuilder(databaseName);
                         target.setDelimitedIdentifierModeOn(useQuotedIdentifiers);
@@ -666,6 +915,9 @@ public class DbExport {
         }
 
         public void close() {
+            if (writer == null) {
+                return;
+            }
 
             writeComment("Completed on " + df.format(new Date()));
 
@@ -689,4 +941,15 @@ public class DbExport {
 
     }
 
+    class DbExportThreadFactory implements ThreadFactory {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setName("dbexport-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
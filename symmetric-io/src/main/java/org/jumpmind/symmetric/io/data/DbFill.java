@@ -35,7 +35,16 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
@@ -107,6 +116,16 @@ public class DbFill {
     private boolean useRandomCount = false;
     
     private String textColumnExpression;
+
+    private int threadCount = 1;
+
+    // Target rows per second for each table, 0 for no limit
+    private int rate = 0;
+
+    // Milliseconds to keep generating changes, 0 to use count and repeat
+    private long duration = 0;
+
+    private int keyCacheSize = 10000;
     
     // Weights given to insert, update, and delete commands when
     // randomly selecting a command for any given table.
@@ -222,7 +241,11 @@ public class DbFill {
         tables = Database.sortByForeignKeys(tables);
         buildForeignKeyReferences(tables);
         buildDependentColumnValues(tables);        
-        fillTables(tables, tableProperties);
+        if (isFillInParallel()) {
+            fillTablesInParallel(tables, tableProperties);
+        } else {
+            fillTables(tables, tableProperties);
+        }
     }
     
     protected void buildForeignTables(List<Table> tables) {
@@ -444,6 +467,271 @@ public class DbFill {
         }
     }
 
+    protected boolean isFillInParallel() {
+        return !print && (threadCount > 1 || rate > 0 || duration > 0);
+    }
+
+    /**
+     * Generate changes on {@link #threadCount} threads. Each step applies
+     * {@link #maxRowsCommit} rows of one table and one DML type as a JDBC
+     * batch and commits them. Foreign key values are picked from an in memory
+     * cache of parent rows that is filled from the database at the start and
+     * from committed inserts afterwards. Rows are not deleted from a table
+     * that another table in the fill references, because a child row could
+     * be inserted with a cached key of the parent row while it is being
+     * deleted. A delete from such a table is done as an update instead.
+     *
+     * @param tables Tables in insert order.
+     */
+    protected void fillTablesInParallel(final List<Table> tables, final Map<String, int[]> tableProperties) {
+        if (cascading || cascadingSelect || truncate || percentRollback > 0) {
+            log.warn("The cascade, select, truncate and rollback options are not used when filling tables in parallel");
+        }
+        final Map<String, FillTableState> states = new HashMap<String, FillTableState>();
+        for (Table table : tables) {
+            states.put(table.getName(), new FillTableState(table, (long) repeat * inputLength));
+            for (ForeignKey fk : table.getForeignKeys()) {
+                if (!states.containsKey(fk.getForeignTableName())) {
+                    Table foreignTable = getDbTable(fk.getForeignTableName());
+                    if (foreignTable != null) {
+                        states.put(foreignTable.getName(), new FillTableState(foreignTable, 0));
+                    }
+                }
+            }
+        }
+        List<String> referencedTableNames = new ArrayList<String>();
+        for (Table table : tables) {
+            for (ForeignKey fk : table.getForeignKeys()) {
+                Table foreignTable = getDbTable(fk.getForeignTableName());
+                FillTableState state = foreignTable != null ? states.get(foreignTable.getName()) : null;
+                if (state != null && !state.referenced) {
+                    state.referenced = true;
+                    referencedTableNames.add(foreignTable.getName());
+                }
+            }
+        }
+        if (referencedTableNames.size() > 0) {
+            log.info("Deletes are done as updates on tables referenced by other tables when filling in parallel: {}",
+                    referencedTableNames);
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final long endTime = duration > 0 ? startTime + duration : Long.MAX_VALUE;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new DbFillThreadFactory());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        fillTablesWorker(tables, tableProperties, states, endTime);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(10, TimeUnit.SECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        logFillProgress(tables, states, startTime);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof RuntimeException) {
+                            throw (RuntimeException) e.getCause();
+                        }
+                        throw new RuntimeException(e.getCause());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        logFillProgress(tables, states, startTime);
+    }
+
+    protected void fillTablesWorker(List<Table> tables, Map<String, int[]> tableProperties,
+            Map<String, FillTableState> states, long endTime) {
+        ISqlTransaction tran = platform.getSqlTemplate().startSqlTransaction();
+        try {
+            tran.setInBatchMode(true);
+            boolean worked = true;
+            while (worked && System.currentTimeMillis() < endTime) {
+                worked = false;
+                for (Table table : tables) {
+                    FillTableState state = states.get(table.getName());
+                    int rows = duration > 0 ? maxRowsCommit : state.claim(maxRowsCommit);
+                    if (rows <= 0 || System.currentTimeMillis() >= endTime) {
+                        continue;
+                    }
+                    worked = true;
+                    state.throttle(rows);
+
+                    int dmlType = INSERT;
+                    if (tableProperties != null && tableProperties.containsKey(table.getName())) {
+                        dmlType = randomIUD(tableProperties.get(table.getName()));
+                    } else if (dmlWeight != null) {
+                        dmlType = randomIUD(dmlWeight);
+                    }
+                    if (table.getPrimaryKeyColumnCount() == 0) {
+                        dmlType = INSERT;
+                    } else if (dmlType == DELETE && state.referenced) {
+                        dmlType = UPDATE;
+                    }
+
+                    try {
+                        if (dmlType == INSERT) {
+                            insertRandomRecords(tran, state, states, rows);
+                        } else if (dmlType == UPDATE) {
+                            updateRandomRecords(tran, state, rows);
+                        } else {
+                            deleteRandomRecords(tran, state, rows);
+                        }
+                    } catch (SqlException ex) {
+                        tran.rollback();
+                        tran.setInBatchMode(true);
+                        log.info("Failed to change {}: {}", table.getName(), ex.getMessage());
+                        if (continueOnError) {
+                            if (debug) {
+                                log.info("", ex);
+                            }
+                        } else {
+                            throw ex;
+                        }
+                    }
+                    if (interval > 0) {
+                        AppUtils.sleep(interval);
+                    }
+                }
+            }
+        } finally {
+            tran.close();
+        }
+    }
+
+    private void insertRandomRecords(ISqlTransaction tran, FillTableState state,
+            Map<String, FillTableState> states, int count) {
+        Table table = state.table;
+        DmlStatement insertStatement = createInsertDmlStatement(table);
+        List<Row> rows = new ArrayList<Row>(count);
+        tran.prepare(insertStatement.getSql());
+        for (int i = 0; i < count; i++) {
+            Row row = createRandomInsertRow(insertStatement, state, states);
+            if (row != null) {
+                tran.addRow(null, insertStatement.getValueArray(row.toArray(table.getColumnNames()),
+                        row.toArray(table.getPrimaryKeyColumnNames())), null);
+                rows.add(row);
+            }
+        }
+        commitBatch(tran);
+        state.keys.addAll(rows);
+        state.inserts.addAndGet(rows.size());
+    }
+
+    private void updateRandomRecords(ISqlTransaction tran, FillTableState state, int count) {
+        Table table = state.table;
+        DmlStatement updStatement = createUpdateDmlStatement(table);
+        List<String> localFkRefColumns = getLocalFkRefColumns(table);
+        Column[] nonPkColumns = table.getNonPrimaryKeyColumns();
+        Column[] pkColumns = table.getPrimaryKeyColumns();
+        int updated = 0;
+        tran.prepare(updStatement.getSql());
+        for (int i = 0; i < count; i++) {
+            Row row = state.keys.random();
+            if (row == null) {
+                break;
+            }
+            Object[] values = new Object[nonPkColumns.length + pkColumns.length];
+            for (int j = 0; j < nonPkColumns.length; j++) {
+                values[j] = localFkRefColumns.contains(nonPkColumns[j].getName()) ? row.get(nonPkColumns[j]
+                        .getName()) : generateRandomValueForColumn(nonPkColumns[j]);
+            }
+            for (int j = 0; j < pkColumns.length; j++) {
+                values[nonPkColumns.length + j] = row.get(pkColumns[j].getName());
+            }
+            tran.addRow(null, values, null);
+            updated++;
+        }
+        commitBatch(tran);
+        state.updates.addAndGet(updated);
+    }
+
+    private void deleteRandomRecords(ISqlTransaction tran, FillTableState state, int count) {
+        Table table = state.table;
+        DmlStatement deleteStatement = createDeleteDmlStatement(table);
+        int deleted = 0;
+        tran.prepare(deleteStatement.getSql());
+        for (int i = 0; i < count; i++) {
+            Row row = state.keys.take();
+            if (row == null) {
+                break;
+            }
+            tran.addRow(null, row.toArray(table.getPrimaryKeyColumnNames()), null);
+            deleted++;
+        }
+        commitBatch(tran);
+        state.deletes.addAndGet(deleted);
+    }
+
+    private void commitBatch(ISqlTransaction tran) {
+        tran.flush();
+        if (commitDelay > 0) {
+            AppUtils.sleep(commitDelay);
+        }
+        tran.commit();
+    }
+
+    private Row createRandomInsertRow(DmlStatement insertStatement, FillTableState state,
+            Map<String, FillTableState> states) {
+        Table table = state.table;
+        Column[] columns = insertStatement.getMetaData();
+        Row row = new Row(columns.length);
+        Map<ForeignKey, Row> parentRows = new HashMap<ForeignKey, Row>();
+        for (int i = 0; i < columns.length; i++) {
+            Object value = null;
+            ForeignKeyReference fkr = foreignKeyReferences.get(table.getQualifiedColumnName(columns[i]));
+            if (fkr != null) {
+                Row parentRow = parentRows.get(fkr.getForeignKey());
+                if (parentRow == null) {
+                    FillTableState parentState = states.get(fkr.getForeignKey().getForeignTableName());
+                    parentRow = parentState != null ? parentState.keys.random() : null;
+                    if (parentRow == null) {
+                        if (columns[i].isRequired()) {
+                            return null;
+                        }
+                    } else {
+                        parentRows.put(fkr.getForeignKey(), parentRow);
+                    }
+                }
+                if (parentRow != null) {
+                    value = parentRow.get(fkr.getReference().getForeignColumnName());
+                }
+            } else if (state.nextId != null && columns[i].isPrimaryKey()) {
+                value = state.nextId.getAndIncrement();
+            } else {
+                value = generateRandomValueForColumn(columns[i]);
+            }
+            row.put(columns[i].getName(), value);
+        }
+        return row;
+    }
+
+    private void logFillProgress(List<Table> tables, Map<String, FillTableState> states, long startTime) {
+        long millis = Math.max(System.currentTimeMillis() - startTime, 1);
+        long total = 0;
+        for (Table table : tables) {
+            FillTableState state = states.get(table.getName());
+            long rows = state.inserts.get() + state.updates.get() + state.deletes.get();
+            total += rows;
+            if (verbose) {
+                log.info("Table {}: {} inserts, {} updates, {} deletes ({} rows/sec)", new Object[] {
+                        table.getName(), state.inserts.get(), state.updates.get(), state.deletes.get(),
+                        rows * 1000 / millis });
+            }
+        }
+        log.info("Changed {} rows in {} ms ({} rows/sec)", new Object[] { total, millis, total * 1000 / millis });
+    }
+
     private void truncateTable(ISqlTransaction tran, Table table) {
     	if (verbose) {
     		log.info("Truncating table " + table.getFullyQualifiedTableName());
@@ -1068,7 +1356,7 @@ public class DbFill {
 
     public Random getRand() {
         if (rand == null) {
-            rand = ThreadLocalRandom.current();
+            return ThreadLocalRandom.current();
         }
         return rand;
     }
@@ -1137,6 +1425,154 @@ public class DbFill {
         return textColumnExpression;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public int getKeyCacheSize() {
+        return keyCacheSize;
+    }
+
+    public void setKeyCacheSize(int keyCacheSize) {
+        this.keyCacheSize = keyCacheSize;
+    }
+
+    class FillTableState {
+        Table table;
+        AtomicLong remaining;
+        AtomicLong nextId;
+        AtomicLong inserts = new AtomicLong();
+        AtomicLong updates = new AtomicLong();
+        AtomicLong deletes = new AtomicLong();
+        KeyCache keys = new KeyCache(keyCacheSize);
+        boolean referenced;
+        long throttleStartTime = System.currentTimeMillis();
+        long throttleRowCount;
+
+        public FillTableState(Table table, long rowCount) {
+            this.table = table;
+            this.remaining = new AtomicLong(rowCount);
+            String sql = platform.createDmlStatement(DmlType.SELECT_ALL, table.getCatalog(), table.getSchema(),
+                    table.getName(), table.getPrimaryKeyColumns(), table.getColumns(), null, textColumnExpression)
+                    .getSql();
+            keys.addAll(platform.getSqlTemplate().query(sql, keyCacheSize, new ISqlRowMapper<Row>() {
+                public Row mapRow(Row row) {
+                    return row;
+                }
+            }, (Object[]) null, (int[]) null));
+
+            Column[] pkColumns = table.getPrimaryKeyColumns();
+            if (pkColumns.length == 1 && isIntegerColumn(pkColumns[0])) {
+                String quote = platform.getDdlBuilder().isDelimitedIdentifierModeOn() ? platform.getDatabaseInfo()
+                        .getDelimiterToken() : "";
+                long maxId = platform.getSqlTemplate().queryForLong(
+                        "select max(" + quote + pkColumns[0].getName() + quote + ") from "
+                                + table.getQualifiedTableName(quote, platform.getDatabaseInfo().getCatalogSeparator(),
+                                        platform.getDatabaseInfo().getSchemaSeparator()));
+                nextId = new AtomicLong(maxId + 1);
+            }
+        }
+
+        public int claim(int rows) {
+            long left = remaining.addAndGet(-rows);
+            return left >= 0 ? rows : (int) Math.max(0, rows + left);
+        }
+
+        /**
+         * Sleep until the rows can be applied without going over the rate
+         * for the table.
+         */
+        public void throttle(int rows) {
+            if (rate > 0) {
+                long applyTime;
+                synchronized (this) {
+                    applyTime = throttleStartTime + throttleRowCount * 1000 / rate;
+                    throttleRowCount += rows;
+                }
+                long sleepTime = applyTime - System.currentTimeMillis();
+                if (sleepTime > 0) {
+                    AppUtils.sleep(sleepTime);
+                }
+            }
+        }
+
+        protected boolean isIntegerColumn(Column column) {
+            int type = column.getMappedTypeCode();
+            return type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT || type == Types.TINYINT
+                    || ((type == Types.NUMERIC || type == Types.DECIMAL) && column.getScale() == 0);
+        }
+    }
+
+    /**
+     * A bounded set of rows shared by the fill threads. Once full, new rows
+     * replace random existing ones.
+     */
+    static class KeyCache {
+        List<Row> rows;
+        int maxSize;
+
+        public KeyCache(int maxSize) {
+            this.maxSize = Math.max(maxSize, 1);
+            this.rows = new ArrayList<Row>();
+        }
+
+        public synchronized void addAll(List<Row> newRows) {
+            for (Row row : newRows) {
+                if (rows.size() < maxSize) {
+                    rows.add(row);
+                } else {
+                    rows.set(ThreadLocalRandom.current().nextInt(maxSize), row);
+                }
+            }
+        }
+
+        public synchronized Row random() {
+            return rows.size() > 0 ? rows.get(ThreadLocalRandom.current().nextInt(rows.size())) : null;
+        }
+
+        public synchronized Row take() {
+            if (rows.size() > 0) {
+                int index = ThreadLocalRandom.current().nextInt(rows.size());
+                Row row = rows.get(index);
+                rows.set(index, rows.get(rows.size() - 1));
+                rows.remove(rows.size() - 1);
+                return row;
+            }
+            return null;
+        }
+    }
+
+    class DbFillThreadFactory implements ThreadFactory {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setName("dbfill-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     class ForeignKeyReference {
         ForeignKey fk;
         Reference ref;
@@ -41,12 +41,33 @@ O * Licensed to JumpMind Inc under one or more contributor
 
 package org.jumpmind.symmetric.io.data;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.jumpmind.db.model.Database;
+import org.jumpmind.db.model.ForeignKey;
 import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.IDatabasePlatform;
 import org.jumpmind.db.util.BinaryEncoding;
@@ -55,19 +76,32 @@ import org.jumpmind.symmetric.io.data.reader.CsvTableDataReader;
 import org.jumpmind.symmetric.io.data.reader.SqlDataReader;
 import org.jumpmind.symmetric.io.data.reader.SymXmlDataReader;
 import org.jumpmind.symmetric.io.data.reader.XmlDataReader;
+import org.jumpmind.symmetric.io.data.writer.BatchInsertDatabaseWriter;
 import org.jumpmind.symmetric.io.data.writer.Conflict;
 import org.jumpmind.symmetric.io.data.writer.Conflict.DetectConflict;
 import org.jumpmind.symmetric.io.data.writer.Conflict.ResolveConflict;
 import org.jumpmind.symmetric.io.data.writer.DefaultDatabaseWriter;
 import org.jumpmind.symmetric.io.data.writer.DatabaseWriterErrorIgnorer;
 import org.jumpmind.symmetric.io.data.writer.DatabaseWriterSettings;
+import org.jumpmind.symmetric.io.data.writer.DataWriterStatisticConstants;
 import org.jumpmind.symmetric.io.data.writer.IDatabaseWriterFilter;
+import org.jumpmind.util.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Import data from file to database tables.
  */
 public class DbImport {
 
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    protected static final Pattern SQL_FOREIGN_TABLE = Pattern.compile(
+            "FOREIGN\\s+KEY\\s*\\([^)]*\\)\\s*REFERENCES\\s+([^\\s(]+)", Pattern.CASE_INSENSITIVE);
+
+    protected static final Pattern XML_FOREIGN_TABLE = Pattern.compile(
+            "<foreign-key\\s[^>]*foreignTable=\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+
     public enum Format {
         SQL, CSV, XML, SYM_XML
     };
@@ -107,6 +141,14 @@ public class DbImport {
     
     private boolean ignoreMissingTables = true;
 
+    private int threadCount = 1;
+
+    /**
+     * Send inserts to the database in JDBC batches when no conflict
+     * resolution has been requested.
+     */
+    private boolean useBatching = false;
+
     protected IDatabasePlatform platform;
     
     protected List<IDatabaseWriterFilter> databaseWriterFilters;
@@ -146,15 +188,242 @@ public class DbImport {
     }
 
     public void importTables(InputStream in, String tableName) {
+        importRows(in, tableName);
+    }
+
+    /**
+     * Import files written by DbExport, one or more per table. The table for
+     * each file is taken from its name (table.format or table.part.format).
+     * Tables are loaded on {@link #threadCount} threads. A table is not
+     * started until the tables it references with a foreign key have been
+     * loaded. The foreign keys of tables that do not exist yet are read from
+     * the table definition in their first file. The first file of a table is
+     * loaded before its other parts, because it creates or drops the table.
+     */
+    public void importTables(File[] files) {
+        Map<String, List<File>> filesByTable = new LinkedHashMap<String, List<File>>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                continue;
+            }
+            String tableName = getTableName(file);
+            List<File> tableFiles = filesByTable.get(tableName);
+            if (tableFiles == null) {
+                tableFiles = new ArrayList<File>();
+                filesByTable.put(tableName, tableFiles);
+            }
+            tableFiles.add(file);
+        }
+        for (List<File> tableFiles : filesByTable.values()) {
+            Collections.sort(tableFiles, new Comparator<File>() {
+                public int compare(File file1, File file2) {
+                    long part1 = getPartNumber(file1);
+                    long part2 = getPartNumber(file2);
+                    return part1 < part2 ? -1 : (part1 == part2 ? 0 : 1);
+                }
+            });
+        }
+
+        List<Table> tables = new ArrayList<Table>();
+        for (String tableName : new ArrayList<String>(filesByTable.keySet())) {
+            Table table = platform.readTableFromDatabase(catalog, schema, tableName);
+            if (table != null) {
+                if (!table.getName().equals(tableName)) {
+                    filesByTable.put(table.getName(), filesByTable.get(tableName));
+                }
+            } else {
+                table = new Table(tableName);
+                for (String foreignTableName : getReferencedTableNames(filesByTable.get(tableName).get(0))) {
+                    table.addForeignKey(new ForeignKey(null, foreignTableName));
+                }
+            }
+            tables.add(table);
+        }
+        matchForeignTableNames(tables);
+
+        Table[] sortedTables = Database.sortByForeignKeys(tables.toArray(new Table[tables.size()]));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threadCount, 1),
+                new DbImportThreadFactory());
+        Map<String, List<Future<?>>> futuresByTable = new HashMap<String, List<Future<?>>>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        long ts = System.currentTimeMillis();
+        try {
+            for (Table table : sortedTables) {
+                /*
+                 * Only wait on tasks that were submitted earlier, so the
+                 * oldest running task never waits and a cycle can't deadlock
+                 */
+                List<Future<?>> parentFutures = new ArrayList<Future<?>>();
+                for (ForeignKey foreignKey : table.getForeignKeys()) {
+                    List<Future<?>> tableFutures = futuresByTable.get(foreignKey.getForeignTableName());
+                    if (tableFutures != null && !foreignKey.getForeignTableName().equals(table.getName())) {
+                        parentFutures.addAll(tableFutures);
+                    }
+                }
+
+                List<Future<?>> tableFutures = new ArrayList<Future<?>>();
+                final String tableName = table.getName();
+                for (final File file : filesByTable.get(tableName)) {
+                    final List<Future<?>> waitForFutures = new ArrayList<Future<?>>(parentFutures);
+                    if (tableFutures.size() > 0) {
+                        waitForFutures.add(tableFutures.get(0));
+                    }
+                    tableFutures.add(executor.submit(new Runnable() {
+                        public void run() {
+                            waitFor(waitForFutures);
+                            importFile(file, tableName);
+                        }
+                    }));
+                }
+                futuresByTable.put(tableName, tableFutures);
+                futures.addAll(tableFutures);
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                waitFor(futures.subList(i, i + 1));
+                log.info("Imported {} of {} files", i + 1, futures.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Imported {} tables in {} ms", filesByTable.size(), System.currentTimeMillis() - ts);
+    }
+
+    /**
+     * @return the part number of a file written by DbExport, which is 0 for
+     *         the first file of a table
+     */
+    protected long getPartNumber(File file) {
+        String name = file.getName();
+        String extension = "." + format.toString().replace('_', '.').toLowerCase();
+        if (name.toLowerCase().endsWith(extension)) {
+            name = name.substring(0, name.length() - extension.length());
+        }
+        int index = name.lastIndexOf('.');
+        if (index > 0 && name.substring(index + 1).matches("\\d+")) {
+            return Long.parseLong(name.substring(index + 1));
+        }
+        return 0;
+    }
+
+    /**
+     * Read the names of the tables referenced by foreign keys in the table
+     * definition at the start of an SQL or XML export file. The rows that
+     * follow the definition are not read.
+     */
+    protected List<String> getReferencedTableNames(File file) {
+        List<String> tableNames = new ArrayList<String>();
+        Pattern pattern = null;
+        String firstDataLine = null;
         if (format == Format.SQL) {
-            importTablesFromSql(in);
+            pattern = SQL_FOREIGN_TABLE;
+            firstDataLine = "insert";
+        } else if (format == Format.XML) {
+            pattern = XML_FOREIGN_TABLE;
+            firstDataLine = "<table_data";
+        } else {
+            return tableNames;
+        }
+
+        StringBuilder definition = new StringBuilder();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = null;
+            while ((line = reader.readLine()) != null
+                    && !line.trim().toLowerCase().startsWith(firstDataLine)) {
+                definition.append(line).append("\n");
+            }
+        } catch (IOException e) {
+            throw new IoException(e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+
+        Matcher matcher = pattern.matcher(definition);
+        while (matcher.find()) {
+            String name = matcher.group(1).replaceAll("[\"`\\[\\]]", "");
+            tableNames.add(name.substring(name.lastIndexOf('.') + 1));
+        }
+        return tableNames;
+    }
+
+    /**
+     * Use the name of the table being imported for foreign keys that name it
+     * in a different case, so they can be sorted
+     */
+    protected void matchForeignTableNames(List<Table> tables) {
+        Map<String, String> tableNames = new HashMap<String, String>();
+        for (Table table : tables) {
+            tableNames.put(table.getName().toLowerCase(), table.getName());
+        }
+        for (Table table : tables) {
+            for (ForeignKey foreignKey : table.getForeignKeys()) {
+                String foreignTableName = foreignKey.getForeignTableName();
+                String tableName = foreignTableName != null ? tableNames.get(foreignTableName
+                        .toLowerCase()) : null;
+                if (tableName != null && !tableName.equals(foreignTableName)) {
+                    foreignKey.setForeignTableName(tableName);
+                }
+            }
+        }
+    }
+
+    protected void importFile(File file, String tableName) {
+        long ts = System.currentTimeMillis();
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            long rows = importRows(in, tableName);
+            long millis = Math.max(System.currentTimeMillis() - ts, 1);
+            log.info("Imported {} rows into {} from {} in {} ms ({} rows/sec)", new Object[] { rows,
+                    tableName, file.getName(), millis, rows * 1000 / millis });
+        } catch (IOException e) {
+            throw new IoException(e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    protected void waitFor(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw new IoException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IoException("Failed to import tables", e.getCause());
+            }
+        }
+    }
+
+    protected String getTableName(File file) {
+        String name = file.getName();
+        String extension = "." + format.toString().replace('_', '.').toLowerCase();
+        if (name.toLowerCase().endsWith(extension)) {
+            name = name.substring(0, name.length() - extension.length());
+        }
+        int index = name.lastIndexOf('.');
+        if (index > 0 && name.substring(index + 1).matches("\\d+")) {
+            name = name.substring(0, index);
+        }
+        return name;
+    }
+
+    protected long importRows(InputStream in, String tableName) {
+        if (format == Format.SQL) {
+            return importTablesFromSql(in);
         } else if (format == Format.CSV) {
-            importTablesFromCsv(in, tableName);
+            return importTablesFromCsv(in, tableName);
         } else if (format == Format.XML) {
-            importTablesFromXml(in);
+            return importTablesFromXml(in);
         } else if (format == Format.SYM_XML) {
-            importTablesFromSymXml(in);
+            return importTablesFromSymXml(in);
         }
+        return 0;
     }
 
     protected Conflict buildConflictSettings() {
@@ -188,7 +457,26 @@ public class DbImport {
         return settings;
     }
 
-    protected void importTablesFromCsv(InputStream in, String tableName) {
+    protected DefaultDatabaseWriter buildDatabaseWriter() {
+        if (useBatching && !replaceRows && !forceImport && !ignoreCollisions) {
+            return new BatchInsertDatabaseWriter(platform, buildDatabaseWriterSettings());
+        } else {
+            return new DefaultDatabaseWriter(platform, buildDatabaseWriterSettings());
+        }
+    }
+
+    protected long process(IDataReader reader) {
+        DefaultDatabaseWriter writer = buildDatabaseWriter();
+        DataProcessor dataProcessor = new DataProcessor(reader, writer, "import");
+        dataProcessor.process();
+        long count = 0;
+        for (Statistics statistics : writer.getStatistics().values()) {
+            count += statistics.get(DataWriterStatisticConstants.STATEMENTCOUNT);
+        }
+        return count;
+    }
+
+    protected long importTablesFromCsv(InputStream in, String tableName) {
         Table table = platform.readTableFromDatabase(catalog, schema, tableName);
         if (table == null) {
             throw new RuntimeException("Unable to find table");
@@ -196,30 +484,19 @@ public class DbImport {
 
         CsvTableDataReader reader = new CsvTableDataReader(BinaryEncoding.HEX, table.getCatalog(),
                 table.getSchema(), table.getName(), in);
-        DefaultDatabaseWriter writer = new DefaultDatabaseWriter(platform, buildDatabaseWriterSettings());
-        DataProcessor dataProcessor = new DataProcessor(reader, writer, "import");
-        dataProcessor.process();
+        return process(reader);
     }
 
-    protected void importTablesFromXml(InputStream in) {        
-        XmlDataReader reader = new XmlDataReader(in);
-        DefaultDatabaseWriter writer = new DefaultDatabaseWriter(platform, buildDatabaseWriterSettings());
-        DataProcessor dataProcessor = new DataProcessor(reader, writer, "import");
-        dataProcessor.process();
+    protected long importTablesFromXml(InputStream in) {        
+        return process(new XmlDataReader(in));
     }
     
-    protected void importTablesFromSymXml(InputStream in) {
-        SymXmlDataReader reader = new SymXmlDataReader(in);
-        DefaultDatabaseWriter writer = new DefaultDatabaseWriter(platform, buildDatabaseWriterSettings());
-        DataProcessor dataProcessor = new DataProcessor(reader, writer, "import");
-        dataProcessor.process();
+    protected long importTablesFromSymXml(InputStream in) {
+        return process(new SymXmlDataReader(in));
     }
 
-    protected void importTablesFromSql(InputStream in) {
-        SqlDataReader reader = new SqlDataReader(in);
-        DefaultDatabaseWriter writer = new DefaultDatabaseWriter(platform, buildDatabaseWriterSettings());
-        DataProcessor dataProcessor = new DataProcessor(reader, writer, "import");
-        dataProcessor.process();
+    protected long importTablesFromSql(InputStream in) {
+        return process(new SqlDataReader(in));
     }
 
     public Format getFormat() {
@@ -342,4 +619,31 @@ public class DbImport {
         this.interval = interval;
     }
 
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setUseBatching(boolean useBatching) {
+        this.useBatching = useBatching;
+    }
+
+    public boolean isUseBatching() {
+        return useBatching;
+    }
+
+    class DbImportThreadFactory implements ThreadFactory {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setName("dbimport-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
\ No newline at end of file
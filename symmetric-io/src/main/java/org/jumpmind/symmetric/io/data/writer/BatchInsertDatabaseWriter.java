@@ -0,0 +1,90 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.io.data.writer;
+
+import org.jumpmind.db.model.Table;
+import org.jumpmind.db.platform.IDatabasePlatform;
+import org.jumpmind.db.sql.DmlStatement.DmlType;
+import org.jumpmind.symmetric.io.data.CsvData;
+import org.jumpmind.symmetric.io.data.DataContext;
+import org.jumpmind.symmetric.io.data.DataEventType;
+
+/**
+ * A database writer that sends inserts to the database in JDBC batches. Every
+ * insert is counted as successful when it is added to the batch, so it should
+ * only be used when a failed insert is an error and no conflict resolution is
+ * expected. Other events are applied one at a time after the pending inserts
+ * have been flushed.
+ */
+public class BatchInsertDatabaseWriter extends DefaultDatabaseWriter {
+
+    public BatchInsertDatabaseWriter(IDatabasePlatform platform, DatabaseWriterSettings settings) {
+        super(platform, settings);
+    }
+
+    @Override
+    public void open(DataContext context) {
+        super.open(context);
+        transaction.setInBatchMode(true);
+    }
+
+    @Override
+    public void write(CsvData data) {
+        if (data.getDataEventType() == DataEventType.INSERT) {
+            if (requireNewStatement(DmlType.INSERT, data, false, true, null)) {
+                flush();
+            }
+            super.write(data);
+        } else {
+            flush();
+            transaction.setInBatchMode(false);
+            try {
+                super.write(data);
+            } finally {
+                transaction.setInBatchMode(true);
+            }
+        }
+    }
+
+    @Override
+    public void end(Table table) {
+        flush();
+        super.end(table);
+    }
+
+    @Override
+    protected int execute(CsvData data, String[] values) {
+        int count = super.execute(data, values);
+        return transaction.isInBatchMode() ? 1 : count;
+    }
+
+    protected void flush() {
+        if (transaction != null) {
+            try {
+                statistics.get(batch).startTimer(DataWriterStatisticConstants.DATABASEMILLIS);
+                transaction.flush();
+            } finally {
+                statistics.get(batch).stopTimer(DataWriterStatisticConstants.DATABASEMILLIS);
+            }
+        }
+    }
+
+}
@@ -21,11 +21,11 @@
 package org.jumpmind.symmetric.io.data.writer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.db.model.Table;
@@ -62,7 +62,10 @@ public class TransformWriter extends NestedDataWriter {
     protected Batch batch;
     protected Map<String, IColumnTransform<?>> columnTransforms;
     protected Table lastTransformedTable;
-    
+    protected String[] sourceColumnNames;
+    protected Map<DataEventType, TransformPlan> transformPlans = new HashMap<DataEventType, TransformPlan>();
+    protected Map<TransformTable, TargetTable> targetTables = new HashMap<TransformTable, TargetTable>();
+
     public TransformWriter(IDatabasePlatform platform, TransformPoint transformPoint,
             IDataWriter targetWriter, Map<String, IColumnTransform<?>> columnTransforms, 
             TransformTable... transforms) {
@@ -102,15 +105,19 @@ public class TransformWriter extends NestedDataWriter {
         List<TransformTable> activeTransformsTemp = transformsBySourceTable.get(table.getFullyQualifiedTableNameLowerCase());
         if (activeTransformsTemp != null && activeTransformsTemp.size() > 0) { 
             this.sourceTable = table;
+            this.sourceColumnNames = table.getColumnNames();
+            this.transformPlans.clear();
+            this.targetTables.clear();
             activeTransforms = new ArrayList<TransformTable>(activeTransformsTemp.size());
             for (TransformTable transformation : activeTransformsTemp) {
                 activeTransforms.add(transformation.enhanceWithImpliedColumns(
                         this.sourceTable.getPrimaryKeyColumnNames(),
-                        this.sourceTable.getColumnNames()));
+                        this.sourceColumnNames));
             }
             return true;
         } else {
             this.sourceTable = null;
+            this.sourceColumnNames = null;
             return super.start(table);
         }
     }
@@ -131,12 +138,12 @@ public class TransformWriter extends NestedDataWriter {
             }
 
             long ts = System.currentTimeMillis();
-            Map<String, String> sourceValues = data.toColumnNameValuePairs(this.sourceTable.getColumnNames(),
+            Map<String, String> sourceValues = data.toColumnNameValuePairs(this.sourceColumnNames,
                     CsvData.ROW_DATA);
             
             Map<String, String> oldSourceValues = null;
             if (data.contains(CsvData.OLD_DATA)) {
-                oldSourceValues = data.toColumnNameValuePairs(this.sourceTable.getColumnNames(),
+                oldSourceValues = data.toColumnNameValuePairs(this.sourceColumnNames,
                         CsvData.OLD_DATA);
             }
             
@@ -161,25 +168,18 @@ public class TransformWriter extends NestedDataWriter {
             }
 
             List<TransformedData> dataThatHasBeenTransformed = new ArrayList<TransformedData>();
-            TransformTable[] transformTables = activeTransforms.toArray(new TransformTable[activeTransforms.size()]);
-            if (eventType == DataEventType.DELETE) {
-                CollectionUtils.reverseArray(transformTables);
-            }
-
-            for (TransformTable transformation : transformTables) {
-                if (eventType == DataEventType.INSERT && transformation.isUpdateFirst()) {
-                    eventType = DataEventType.UPDATE;
-                }
-                dataThatHasBeenTransformed.addAll(transform(eventType, context, transformation,
-                        sourceKeyValues, oldSourceValues, sourceValues));
+            for (TransformStep step : getTransformPlan(eventType).steps) {
+                dataThatHasBeenTransformed.addAll(transform(context, step, sourceKeyValues,
+                        oldSourceValues, sourceValues));
             }
 
             for (TransformedData transformedData : dataThatHasBeenTransformed) {
-                Table transformedTable = transformedData.buildTargetTable();
+                Table transformedTable = getTargetTable(transformedData);
                 CsvData csvData = transformedData.buildTargetCsvData();
                 long transformTimeInMs = System.currentTimeMillis() - ts;
                 boolean processData = true;
-                if (lastTransformedTable == null || !lastTransformedTable.equals(transformedTable)) {
+                if (lastTransformedTable == null || (lastTransformedTable != transformedTable
+                        && !lastTransformedTable.equals(transformedTable))) {
                     if (lastTransformedTable != null) {
                         this.nestedWriter.end(lastTransformedTable);
                     }
@@ -212,12 +212,76 @@ public class TransformWriter extends NestedDataWriter {
 
     }
 
+    /**
+     * Returns the transforms to run for an event type on the current source
+     * table. The plan is compiled the first time the event type is seen after
+     * {@link #start(Table)}: the transforms are ordered (reversed for deletes),
+     * an insert is switched to an update from the first update first
+     * transform on, and the key and non key columns that apply to the event
+     * are selected along with their column transform implementations.
+     */
+    protected TransformPlan getTransformPlan(DataEventType eventType) {
+        TransformPlan plan = transformPlans.get(eventType);
+        if (plan == null) {
+            int size = activeTransforms.size();
+            TransformStep[] steps = new TransformStep[size];
+            DataEventType stepEventType = eventType;
+            for (int i = 0; i < size; i++) {
+                TransformTable transformation = activeTransforms.get(eventType == DataEventType.DELETE ? size - 1 - i : i);
+                if (stepEventType == DataEventType.INSERT && transformation.isUpdateFirst()) {
+                    stepEventType = DataEventType.UPDATE;
+                }
+                steps[i] = new TransformStep(transformation, stepEventType);
+            }
+            plan = new TransformPlan(steps);
+            transformPlans.put(eventType, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the target table for transformed data, reusing the table built
+     * for the previous row of the same transformation when the mapped column
+     * and key names have not changed.
+     */
+    protected Table getTargetTable(TransformedData data) {
+        String[] columnNames = data.getColumnNames();
+        String[] keyNames = data.getKeyNames();
+        TargetTable targetTable = targetTables.get(data.getTransformation());
+        if (targetTable == null || !Arrays.equals(targetTable.columnNames, columnNames)
+                || !Arrays.equals(targetTable.keyNames, keyNames)) {
+            targetTable = new TargetTable(columnNames, keyNames, data.buildTargetTable());
+            targetTables.put(data.getTransformation(), targetTable);
+        }
+        return targetTable.table;
+    }
+
+    protected IColumnTransform<?> getColumnTransform(TransformColumn transformColumn) {
+        return columnTransforms != null ? columnTransforms.get(transformColumn.getTransformType()) : null;
+    }
+
+    protected static boolean isIncludedOn(TransformColumn transformColumn, DataEventType eventType) {
+        IncludeOnType includeOn = transformColumn.getIncludeOn();
+        return includeOn == IncludeOnType.ALL
+                || (includeOn == IncludeOnType.INSERT && eventType == DataEventType.INSERT)
+                || (includeOn == IncludeOnType.UPDATE && eventType == DataEventType.UPDATE)
+                || (includeOn == IncludeOnType.DELETE && eventType == DataEventType.DELETE);
+    }
+
     protected List<TransformedData> transform(DataEventType eventType, DataContext context,
             TransformTable transformation, Map<String, String> sourceKeyValues,
             Map<String, String> oldSourceValues, Map<String, String> sourceValues) {
+        return transform(context, new TransformStep(transformation, eventType), sourceKeyValues,
+                oldSourceValues, sourceValues);
+    }
+
+    protected List<TransformedData> transform(DataContext context, TransformStep step,
+            Map<String, String> sourceKeyValues, Map<String, String> oldSourceValues,
+            Map<String, String> sourceValues) {
+        TransformTable transformation = step.transformation;
         try {
-            List<TransformedData> dataToTransform = create(context, eventType, transformation,
-                    sourceKeyValues, oldSourceValues, sourceValues);
+            List<TransformedData> dataToTransform = create(context, step, sourceKeyValues,
+                    oldSourceValues, sourceValues);
             List<TransformedData> dataThatHasBeenTransformed = new ArrayList<TransformedData>(
                     dataToTransform.size());
             if (log.isDebugEnabled()) {
@@ -229,7 +293,7 @@ public class TransformWriter extends NestedDataWriter {
             int transformNumber = 0;
             for (TransformedData targetData : dataToTransform) {
                 transformNumber++;
-                if (perform(context, targetData, transformation, sourceValues, oldSourceValues)) {
+                if (perform(context, targetData, step, sourceValues, oldSourceValues)) {
                     if (log.isDebugEnabled()) {
                         log.debug(
                                 "Data has been transformed to a {} for the #{} transform.  The mapped target columns are: {}. The mapped target values are: {}",
@@ -260,57 +324,58 @@ public class TransformWriter extends NestedDataWriter {
     protected boolean perform(DataContext context, TransformedData data,
             TransformTable transformation, Map<String, String> sourceValues,
             Map<String, String> oldSourceValues) throws IgnoreRowException {
+        return perform(context, data, new TransformStep(transformation, data.getSourceDmlType()),
+                sourceValues, oldSourceValues);
+    }
+
+    protected boolean perform(DataContext context, TransformedData data, TransformStep step,
+            Map<String, String> sourceValues, Map<String, String> oldSourceValues)
+            throws IgnoreRowException {
+        TransformTable transformation = step.transformation;
         boolean persistData = false;
         try {
             DataEventType eventType = data.getSourceDmlType();
-            for (TransformColumn transformColumn : transformation.getTransformColumns()) {
-                if (!transformColumn.isPk()) {
-                    IncludeOnType includeOn = transformColumn.getIncludeOn();
-                    if (includeOn == IncludeOnType.ALL
-                            || (includeOn == IncludeOnType.INSERT && eventType == DataEventType.INSERT)
-                            || (includeOn == IncludeOnType.UPDATE && eventType == DataEventType.UPDATE)
-                            || (includeOn == IncludeOnType.DELETE && eventType == DataEventType.DELETE)) {
-                        if (StringUtils.isBlank(transformColumn.getSourceColumnName())
-                                || sourceValues.containsKey(transformColumn.getSourceColumnName())) {
-                            try {
-                                Object value = transformColumn(context, data, transformColumn,
-                                        sourceValues, oldSourceValues);
-                                if (value instanceof NewAndOldValue) {
-                                    data.put(transformColumn,
-                                            ((NewAndOldValue) value).getNewValue(),
-                                            oldSourceValues != null ? ((NewAndOldValue) value).getOldValue() : null, false);
-                                } else if (value == null || value instanceof String) {
-                                    data.put(transformColumn, (String) value, null, false);
-                                } else if (value instanceof List) {
-                                    throw new IllegalStateException(String.format("Column transform failed %s.%s. Transforms that multiply rows must be marked as part of the primary key", 
-                                            transformColumn.getTransformId(), transformColumn.getTargetColumnName()));                                    
-                                } else {                                    
-                                    throw new IllegalStateException(String.format("Column transform failed %s.%s. It returned an unexpected type of %s", 
-                                            transformColumn.getTransformId(), transformColumn.getTargetColumnName(), 
-                                            value.getClass().getSimpleName()));
-                                }
-                            } catch (IgnoreColumnException e) {
-                                // Do nothing. We are ignoring the column
-                                if (log.isDebugEnabled()) {
-                                    log.debug(
-                                            "A transform indicated we should ignore the target column {}",
-                                            transformColumn.getTargetColumnName());
-                                }
-                            }
-                        } else {
-                            if (eventType != DataEventType.DELETE) {
-                                log.warn(
-                                        "Could not find a source column of {} for the transformation: {}",
-                                        transformColumn.getSourceColumnName(),
-                                        transformation.getTransformId());
-                            } else {
-                                log.debug(
-                                        "Could not find a source column of {} for the transformation: {}.  This is probably because this was a DELETE event and no old data was captured.",
-                                        transformColumn.getSourceColumnName(),
-                                        transformation.getTransformId());
-                            }
+            for (int i = 0; i < step.columns.length; i++) {
+                TransformColumn transformColumn = step.columns[i];
+                if (StringUtils.isBlank(transformColumn.getSourceColumnName())
+                        || sourceValues.containsKey(transformColumn.getSourceColumnName())) {
+                    try {
+                        Object value = transformColumn(context, data, transformColumn,
+                                step.columnTransforms[i], sourceValues, oldSourceValues);
+                        if (value instanceof NewAndOldValue) {
+                            data.put(transformColumn,
+                                    ((NewAndOldValue) value).getNewValue(),
+                                    oldSourceValues != null ? ((NewAndOldValue) value).getOldValue() : null, false);
+                        } else if (value == null || value instanceof String) {
+                            data.put(transformColumn, (String) value, null, false);
+                        } else if (value instanceof List) {
+                            throw new IllegalStateException(String.format("Column transform failed %s.%s. Transforms that multiply rows must be marked as part of the primary key", 
+                                    transformColumn.getTransformId(), transformColumn.getTargetColumnName()));                                    
+                        } else {                                    
+                            throw new IllegalStateException(String.format("Column transform failed %s.%s. It returned an unexpected type of %s", 
+                                    transformColumn.getTransformId(), transformColumn.getTargetColumnName(), 
+                                    value.getClass().getSimpleName()));
+                        }
+                    } catch (IgnoreColumnException e) {
+                        // Do nothing. We are ignoring the column
+                        if (log.isDebugEnabled()) {
+                            log.debug(
+                                    "A transform indicated we should ignore the target column {}",
+                                    transformColumn.getTargetColumnName());
                         }
                     }
+                } else {
+                    if (eventType != DataEventType.DELETE) {
+                        log.warn(
+                                "Could not find a source column of {} for the transformation: {}",
+                                transformColumn.getSourceColumnName(),
+                                transformation.getTransformId());
+                    } else {
+                        log.debug(
+                                "Could not find a source column of {} for the transformation: {}.  This is probably because this was a DELETE event and no old data was captured.",
+                                transformColumn.getSourceColumnName(),
+                                transformation.getTransformId());
+                    }
                 }
             }
 
@@ -373,59 +438,60 @@ public class TransformWriter extends NestedDataWriter {
             TransformTable transformation, Map<String, String> sourceKeyValues,
             Map<String, String> oldSourceValues, Map<String, String> sourceValues)
             throws IgnoreRowException {
-        List<TransformColumn> columns = transformation.getPrimaryKeyColumns();
-        if (columns == null || columns.size() == 0) {
+        return create(context, new TransformStep(transformation, dataEventType), sourceKeyValues,
+                oldSourceValues, sourceValues);
+    }
+
+    protected List<TransformedData> create(DataContext context, TransformStep step,
+            Map<String, String> sourceKeyValues, Map<String, String> oldSourceValues,
+            Map<String, String> sourceValues) throws IgnoreRowException {
+        TransformTable transformation = step.transformation;
+        if (!step.hasPrimaryKey) {
             log.error("No primary key defined for the transformation: {}",
                     transformation.getTransformId());
             return new ArrayList<TransformedData>(0);
         } else {
             List<TransformedData> datas = new ArrayList<TransformedData>();
-            TransformedData data = new TransformedData(transformation, dataEventType,
+            TransformedData data = new TransformedData(transformation, step.eventType,
                     sourceKeyValues, oldSourceValues, sourceValues);
             datas.add(data);
-            DataEventType eventType = data.getSourceDmlType();
-            for (TransformColumn transformColumn : columns) {
-                IncludeOnType includeOn = transformColumn.getIncludeOn();
-                if (includeOn == IncludeOnType.ALL
-                        || (includeOn == IncludeOnType.INSERT && eventType == DataEventType.INSERT)
-                        || (includeOn == IncludeOnType.UPDATE && eventType == DataEventType.UPDATE)
-                        || (includeOn == IncludeOnType.DELETE && eventType == DataEventType.DELETE)) {
-                    List<TransformedData> newDatas = null;
-                    try {
-                        Object columnValue = transformColumn(context, data, transformColumn,
-                                sourceValues, oldSourceValues);
-                        if (columnValue instanceof List) {
-                            @SuppressWarnings("unchecked")
-                            List<String> values = (List<String>) columnValue;
-                            if (values.size() > 0) {
-                                data.put(transformColumn, values.get(0), oldSourceValues != null ? values.get(0) : null, true);
-                                if (values.size() > 1) {
-                                    if (newDatas == null) {
-                                        newDatas = new ArrayList<TransformedData>(values.size() - 1);
-                                    }
-                                    for (int i = 1; i < values.size(); i++) {
-                                        TransformedData newData = data.copy();
-                                        newData.put(transformColumn, values.get(i), oldSourceValues != null ? values.get(i) : null, true);
-                                        newDatas.add(newData);
-                                    }
+            for (int j = 0; j < step.keyColumns.length; j++) {
+                TransformColumn transformColumn = step.keyColumns[j];
+                List<TransformedData> newDatas = null;
+                try {
+                    Object columnValue = transformColumn(context, data, transformColumn,
+                            step.keyColumnTransforms[j], sourceValues, oldSourceValues);
+                    if (columnValue instanceof List) {
+                        @SuppressWarnings("unchecked")
+                        List<String> values = (List<String>) columnValue;
+                        if (values.size() > 0) {
+                            data.put(transformColumn, values.get(0), oldSourceValues != null ? values.get(0) : null, true);
+                            if (values.size() > 1) {
+                                if (newDatas == null) {
+                                    newDatas = new ArrayList<TransformedData>(values.size() - 1);
+                                }
+                                for (int i = 1; i < values.size(); i++) {
+                                    TransformedData newData = data.copy();
+                                    newData.put(transformColumn, values.get(i), oldSourceValues != null ? values.get(i) : null, true);
+                                    newDatas.add(newData);
                                 }
-                            } else {
-                                throw new IgnoreRowException();
                             }
-                        } else if (columnValue instanceof NewAndOldValue) {
-                            data.put(transformColumn, ((NewAndOldValue) columnValue).getNewValue(),
-                                    oldSourceValues != null ? ((NewAndOldValue) columnValue).getOldValue() : null, true);
                         } else {
-                            data.put(transformColumn, (String) columnValue, oldSourceValues != null ? (String) columnValue : null, true);                            
+                            throw new IgnoreRowException();
                         }
-                    } catch (IgnoreColumnException e) {
-                        // Do nothing. We are suppose to ignore the column.
+                    } else if (columnValue instanceof NewAndOldValue) {
+                        data.put(transformColumn, ((NewAndOldValue) columnValue).getNewValue(),
+                                oldSourceValues != null ? ((NewAndOldValue) columnValue).getOldValue() : null, true);
+                    } else {
+                        data.put(transformColumn, (String) columnValue, oldSourceValues != null ? (String) columnValue : null, true);                            
                     }
+                } catch (IgnoreColumnException e) {
+                    // Do nothing. We are suppose to ignore the column.
+                }
 
-                    if (newDatas != null) {
-                        datas.addAll(newDatas);
-                        newDatas = null;
-                    }
+                if (newDatas != null) {
+                    datas.addAll(newDatas);
+                    newDatas = null;
                 }
             }
 
@@ -436,12 +502,18 @@ public class TransformWriter extends NestedDataWriter {
     protected Object transformColumn(DataContext context, TransformedData data,
             TransformColumn transformColumn, Map<String, String> sourceValues,
             Map<String, String> oldSourceValues) throws IgnoreRowException, IgnoreColumnException {
+        return transformColumn(context, data, transformColumn, getColumnTransform(transformColumn),
+                sourceValues, oldSourceValues);
+    }
+
+    protected Object transformColumn(DataContext context, TransformedData data,
+            TransformColumn transformColumn, IColumnTransform<?> transform,
+            Map<String, String> sourceValues, Map<String, String> oldSourceValues)
+            throws IgnoreRowException, IgnoreColumnException {
         Object returnValue = null;
         String value = transformColumn.getSourceColumnName() != null ? sourceValues
                 .get(transformColumn.getSourceColumnName()) : null;
         returnValue = value;
-        IColumnTransform<?> transform = columnTransforms != null ? columnTransforms
-                .get(transformColumn.getTransformType()) : null;
         if (transform != null) {
             try {
                 String oldValue = null;
@@ -473,4 +545,84 @@ public class TransformWriter extends NestedDataWriter {
 
     }
 
+    /**
+     * The transforms to run, in order, for one event type on the current
+     * source table.
+     */
+    protected static class TransformPlan {
+
+        protected TransformStep[] steps;
+
+        protected TransformPlan(TransformStep[] steps) {
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * A transformation together with the event type it runs as and the key
+     * and non key columns that are included on that event type.
+     */
+    protected class TransformStep {
+
+        protected TransformTable transformation;
+
+        protected DataEventType eventType;
+
+        protected boolean hasPrimaryKey;
+
+        protected TransformColumn[] keyColumns;
+
+        protected IColumnTransform<?>[] keyColumnTransforms;
+
+        protected TransformColumn[] columns;
+
+        protected IColumnTransform<?>[] columnTransforms;
+
+        protected TransformStep(TransformTable transformation, DataEventType eventType) {
+            this.transformation = transformation;
+            this.eventType = eventType;
+            List<TransformColumn> primaryKeyColumns = transformation.getPrimaryKeyColumns();
+            this.hasPrimaryKey = primaryKeyColumns != null && primaryKeyColumns.size() > 0;
+            List<TransformColumn> keys = new ArrayList<TransformColumn>();
+            List<TransformColumn> nonKeys = new ArrayList<TransformColumn>();
+            if (hasPrimaryKey) {
+                for (TransformColumn transformColumn : primaryKeyColumns) {
+                    if (isIncludedOn(transformColumn, eventType)) {
+                        keys.add(transformColumn);
+                    }
+                }
+            }
+            for (TransformColumn transformColumn : transformation.getTransformColumns()) {
+                if (!transformColumn.isPk() && isIncludedOn(transformColumn, eventType)) {
+                    nonKeys.add(transformColumn);
+                }
+            }
+            this.keyColumns = keys.toArray(new TransformColumn[keys.size()]);
+            this.keyColumnTransforms = new IColumnTransform<?>[keyColumns.length];
+            for (int i = 0; i < keyColumns.length; i++) {
+                keyColumnTransforms[i] = getColumnTransform(keyColumns[i]);
+            }
+            this.columns = nonKeys.toArray(new TransformColumn[nonKeys.size()]);
+            this.columnTransforms = new IColumnTransform<?>[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                columnTransforms[i] = getColumnTransform(columns[i]);
+            }
+        }
+    }
+
+    protected static class TargetTable {
+
+        protected String[] columnNames;
+
+        protected String[] keyNames;
+
+        protected Table table;
+
+        protected TargetTable(String[] columnNames, String[] keyNames, Table table) {
+            this.columnNames = columnNames;
+            this.keyNames = keyNames;
+            this.table = table;
+        }
+    }
+
 }
@@ -39,6 +39,8 @@ public class MockDataWriter implements IDataWriter {
     protected Map<String, List<CsvData>> writtenDatas = new HashMap<String, List<CsvData>>();
 
     protected Table currentTable;
+
+    protected List<Table> startedTables = new ArrayList<Table>();
     
     protected Map<Batch, Statistics> statistics = new HashMap<Batch, Statistics>();
 
@@ -55,6 +57,7 @@ public class MockDataWriter implements IDataWriter {
 
     public boolean start(Table table) {
         this.currentTable = table;
+        this.startedTables.add(table);
         if (!writtenDatas.containsKey(table.getFullyQualifiedTableName())) {
             writtenDatas.put(table.getFullyQualifiedTableName(), new ArrayList<CsvData>());
         }
@@ -73,6 +76,7 @@ public class MockDataWriter implements IDataWriter {
     
     protected void reset() {
         writtenDatas.clear();
+        startedTables.clear();
     }
     
     public Map<Batch, Statistics> getStatistics() {
@@ -30,6 +30,7 @@ import org.jumpmind.db.model.Table;
 import org.jumpmind.symmetric.io.AbstractWriterTest;
 import org.jumpmind.symmetric.io.data.*;
 import org.jumpmind.symmetric.io.data.transform.*;
+import org.jumpmind.symmetric.io.data.transform.TransformColumn.IncludeOnType;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -107,6 +108,88 @@ public class TransformWriterTest extends AbstractWriterTest {
     }
 
 
+    @Test
+    public void testUpdateFirstSwitchesInsertToUpdate() throws Exception {
+        mockWriter.reset();
+        Table table = new Table("s4", new Column("id"));
+        writeData(getTransformWriter(), new TableCsvData(table,
+           new CsvData(DataEventType.INSERT, new String[]{"1"}),
+           new CsvData(DataEventType.INSERT, new String[]{"2"})));
+        List<CsvData> datas = mockWriter.writtenDatas.get("t4a");
+        Assert.assertEquals(2, datas.size());
+        Assert.assertEquals(DataEventType.INSERT, datas.get(0).getDataEventType());
+        Assert.assertEquals(DataEventType.INSERT, datas.get(1).getDataEventType());
+        datas = mockWriter.writtenDatas.get("t4b");
+        Assert.assertEquals(2, datas.size());
+        Assert.assertEquals(DataEventType.UPDATE, datas.get(0).getDataEventType());
+        Assert.assertEquals(DataEventType.UPDATE, datas.get(1).getDataEventType());
+        datas = mockWriter.writtenDatas.get("t4c");
+        Assert.assertEquals(2, datas.size());
+        Assert.assertEquals(DataEventType.UPDATE, datas.get(0).getDataEventType());
+        Assert.assertEquals(DataEventType.UPDATE, datas.get(1).getDataEventType());
+    }
+
+    @Test
+    public void testDeleteRunsTransformsInReverseOrder() throws Exception {
+        mockWriter.reset();
+        Table table = new Table("s4", new Column("id"));
+        CsvData delete = new CsvData(DataEventType.DELETE);
+        delete.putParsedData(CsvData.OLD_DATA, new String[]{"1"});
+        writeData(getTransformWriter(), new TableCsvData(table, delete));
+        Assert.assertEquals(3, mockWriter.startedTables.size());
+        Assert.assertEquals("t4c", mockWriter.startedTables.get(0).getName());
+        Assert.assertEquals("t4b", mockWriter.startedTables.get(1).getName());
+        Assert.assertEquals("t4a", mockWriter.startedTables.get(2).getName());
+        for (Table targetTable : mockWriter.startedTables) {
+            List<CsvData> datas = mockWriter.writtenDatas.get(targetTable.getName());
+            Assert.assertEquals(1, datas.size());
+            Assert.assertEquals(DataEventType.DELETE, datas.get(0).getDataEventType());
+            Assert.assertEquals("1", datas.get(0).getParsedData(CsvData.PK_DATA)[0]);
+        }
+    }
+
+    @Test
+    public void testIncludeOnSelectsColumnsByEventType() throws Exception {
+        mockWriter.reset();
+        Table table = new Table("s5", new Column("id"));
+        writeData(getTransformWriter(), new TableCsvData(table,
+           new CsvData(DataEventType.INSERT, new String[]{"1"}),
+           new CsvData(DataEventType.UPDATE, new String[]{"1"}),
+           new CsvData(DataEventType.INSERT, new String[]{"2"})));
+        List<CsvData> datas = mockWriter.writtenDatas.get("t5");
+        Assert.assertEquals(3, datas.size());
+        Assert.assertEquals(3, mockWriter.startedTables.size());
+        Table insertTable = mockWriter.startedTables.get(0);
+        Assert.assertNotNull(insertTable.getColumnWithName("inserted"));
+        Assert.assertNull(insertTable.getColumnWithName("updated"));
+        Assert.assertEquals("ins", datas.get(0).getParsedData(CsvData.ROW_DATA)[1]);
+        Table updateTable = mockWriter.startedTables.get(1);
+        Assert.assertNull(updateTable.getColumnWithName("inserted"));
+        Assert.assertNotNull(updateTable.getColumnWithName("updated"));
+        Assert.assertEquals("upd", datas.get(1).getParsedData(CsvData.ROW_DATA)[1]);
+        Table secondInsertTable = mockWriter.startedTables.get(2);
+        Assert.assertNotNull(secondInsertTable.getColumnWithName("inserted"));
+        Assert.assertNull(secondInsertTable.getColumnWithName("updated"));
+        Assert.assertEquals("ins", datas.get(2).getParsedData(CsvData.ROW_DATA)[1]);
+    }
+
+    @Test
+    public void testTargetTableRebuiltWhenSourceTableChanges() throws Exception {
+        mockWriter.reset();
+        TransformWriter writer = getTransformWriter();
+        writeData(writer, new TableCsvData(new Table("s1", new Column("id")),
+           new CsvData(DataEventType.INSERT, new String[]{"1"})),
+           new TableCsvData(new Table("s1", new Column("id"), new Column("name")),
+           new CsvData(DataEventType.INSERT, new String[]{"2", "two"})));
+        Assert.assertEquals(2, mockWriter.startedTables.size());
+        Assert.assertNull(mockWriter.startedTables.get(0).getColumnWithName("name"));
+        Assert.assertNotNull(mockWriter.startedTables.get(1).getColumnWithName("name"));
+        List<CsvData> datas = mockWriter.writtenDatas.get("t1");
+        Assert.assertEquals(2, datas.size());
+        Assert.assertEquals(1, datas.get(0).getParsedData(CsvData.ROW_DATA).length);
+        Assert.assertEquals("two", datas.get(1).getParsedData(CsvData.ROW_DATA)[1]);
+    }
+
     @Test
     public void testSimpleTableBeanShellMapping() throws Exception {
     }
@@ -129,11 +212,23 @@ public class TransformWriterTest extends AbstractWriterTest {
         transformTable3.setUpdateAction("switch (id) { case \"1\": return \"INS_ROW\"; case \"2\": "
            + "return \"DEL_ROW\"; case \"3\": return \"UPD_ROW\"; case \"4\": return \"NONE\"; case \"5\": "
            + "return \"UPDATE_COL\"; }");
+        TransformTable transformTable4b =
+           new TransformTable("s4", "t4b", TransformPoint.LOAD, new TransformColumn("id", "id", true));
+        transformTable4b.setUpdateFirst(true);
+        TransformColumn insertedColumn = new TransformColumn(null, "inserted", false, "const", "ins");
+        insertedColumn.setIncludeOn(IncludeOnType.INSERT);
+        TransformColumn updatedColumn = new TransformColumn(null, "updated", false, "const", "upd");
+        updatedColumn.setIncludeOn(IncludeOnType.UPDATE);
         return new TransformWriter(platform, TransformPoint.LOAD, mockWriter, buildDefaultColumnTransforms(), new TransformTable[] {
                 new TransformTable("s1", "t1", TransformPoint.LOAD, new TransformColumn("id", "id", true)),
                 new TransformTable("s2", "t2", TransformPoint.LOAD, new TransformColumn("id", "id", true),
                    new TransformColumn(null, "col2", false, "const", "added")),
-                transformTable3
+                transformTable3,
+                new TransformTable("s4", "t4a", TransformPoint.LOAD, new TransformColumn("id", "id", true)),
+                transformTable4b,
+                new TransformTable("s4", "t4c", TransformPoint.LOAD, new TransformColumn("id", "id", true)),
+                new TransformTable("s5", "t5", TransformPoint.LOAD, new TransformColumn("id", "id", true),
+                   insertedColumn, updatedColumn)
         });
     }
     
@@ -22,6 +22,7 @@ package org.jumpmind.db.platform.h2;
 import javax.sql.DataSource;
 
 import org.apache.commons.lang.StringUtils;
+import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.AbstractJdbcDatabasePlatform;
 import org.jumpmind.db.platform.DatabaseNamesConstants;
 import org.jumpmind.db.platform.IDatabasePlatform;
@@ -78,4 +79,12 @@ public class H2DatabasePlatform extends AbstractJdbcDatabasePlatform implements
         return defaultCatalog;
     }
 
+    @Override
+    public long getEstimatedRowCount(Table table) {
+        return queryForEstimatedRowCount(
+                "select row_count_estimate from information_schema.tables where table_schema=? and table_name=?",
+                StringUtils.isBlank(table.getSchema()) ? getDefaultSchema() : table.getSchema(),
+                table.getName());
+    }
+
 }
\ No newline at end of file
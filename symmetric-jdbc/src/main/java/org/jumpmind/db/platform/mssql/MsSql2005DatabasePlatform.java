@@ -23,6 +23,7 @@ package org.jumpmind.db.platform.mssql;
 import javax.sql.DataSource;
 
 import org.apache.commons.lang.StringUtils;
+import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.DatabaseNamesConstants;
 import org.jumpmind.db.platform.IDdlBuilder;
 import org.jumpmind.db.sql.SqlTemplateSettings;
@@ -57,4 +58,16 @@ public class MsSql2005DatabasePlatform extends MsSql2000DatabasePlatform {
         }
         return defaultSchema;
     }
+
+    @Override
+    public long getEstimatedRowCount(Table table) {
+        if (StringUtils.isNotBlank(table.getCatalog())
+                && !table.getCatalog().equalsIgnoreCase(getDefaultCatalog())) {
+            return -1;
+        }
+        String schema = StringUtils.isBlank(table.getSchema()) ? getDefaultSchema() : table.getSchema();
+        return queryForEstimatedRowCount(
+                "select sum(p.rows) from sys.partitions p where p.object_id=object_id(?) and p.index_id in (0,1)",
+                "[" + schema + "].[" + table.getName() + "]");
+    }
 }
@@ -23,6 +23,7 @@ import javax.sql.DataSource;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.AbstractJdbcDatabasePlatform;
 import org.jumpmind.db.platform.DatabaseNamesConstants;
 import org.jumpmind.db.sql.SqlTemplateSettings;
@@ -91,4 +92,12 @@ public class OracleDatabasePlatform extends AbstractJdbcDatabasePlatform {
         return !column.isOfBinaryType() || "RAW".equals(jdbcTypeName);
     }
 
+    @Override
+    public long getEstimatedRowCount(Table table) {
+        return queryForEstimatedRowCount(
+                "select num_rows from all_tables where owner=? and table_name=?",
+                StringUtils.isBlank(table.getSchema()) ? getDefaultSchema() : table.getSchema(),
+                table.getName());
+    }
+
 }
@@ -30,6 +30,7 @@ import javax.sql.rowset.serial.SerialBlob;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
 import org.jumpmind.db.platform.AbstractJdbcDatabasePlatform;
 import org.jumpmind.db.platform.DatabaseNamesConstants;
 import org.jumpmind.db.sql.SqlTemplateSettings;
@@ -194,5 +195,13 @@ public class PostgreSqlDatabasePlatform extends AbstractJdbcDatabasePlatform {
         }
         return objectValues;
     }
+
+    @Override
+    public long getEstimatedRowCount(Table table) {
+        return queryForEstimatedRowCount(
+                "select cast(c.reltuples as bigint) from pg_class c join pg_namespace n on n.oid=c.relnamespace where n.nspname=? and c.relname=? and c.relpages > 0",
+                StringUtils.isBlank(table.getSchema()) ? getDefaultSchema() : table.getSchema(),
+                table.getName());
+    }
     
 }
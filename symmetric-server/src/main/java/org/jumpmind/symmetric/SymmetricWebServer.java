@@ -276,6 +276,7 @@ public class SymmetricWebServer {
         webapp.getSessionHandler().setSessionManager(sm);
 
         FilterHolder filterHolder = new FilterHolder(HttpMethodFilter.class);
+        filterHolder.setAsyncSupported(true);
         filterHolder.setInitParameter("server.allow.http.methods", allowedMethods);
         filterHolder.setInitParameter("server.disallow.http.methods", disallowedMethods);
         webapp.addFilter(filterHolder, "/*", EnumSet.of(DispatcherType.REQUEST));
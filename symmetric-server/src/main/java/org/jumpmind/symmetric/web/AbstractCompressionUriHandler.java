@@ -22,11 +22,13 @@ package org.jumpmind.symmetric.web;
 
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.service.IParameterService;
 import org.jumpmind.symmetric.web.compression.CompressionServletResponseWrapper;
@@ -43,8 +45,7 @@ abstract public class AbstractCompressionUriHandler extends AbstractUriHandler {
         boolean compressionEnabled = !parameterService
                 .is(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_DISABLED_SERVLET);
         if (compressionEnabled) {
-            int compressionLevel = parameterService
-                    .getInt(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_LEVEL);
+            int compressionLevel = getCompressionLevel(req);
             int compressionStrategy = parameterService
                     .getInt(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_STRATEGY);
             log.debug("@doFilter");
@@ -93,6 +94,21 @@ abstract public class AbstractCompressionUriHandler extends AbstractUriHandler {
 
     }
 
+    /**
+     * @return the compression level the client asked for when it chose one
+     *         for this link, otherwise the level configured on this node
+     */
+    protected int getCompressionLevel(HttpServletRequest req) {
+        int compressionLevel = NumberUtils.toInt(req.getHeader(WebConstants.COMPRESSION_LEVEL),
+                Integer.MIN_VALUE);
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+                || compressionLevel > Deflater.BEST_COMPRESSION) {
+            compressionLevel = parameterService
+                    .getInt(ParameterConstants.TRANSPORT_HTTP_COMPRESSION_LEVEL);
+        }
+        return compressionLevel;
+    }
+
     abstract protected void handleWithCompression(HttpServletRequest req, HttpServletResponse res)
             throws IOException, ServletException;
 
@@ -0,0 +1,250 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jumpmind.symmetric.model.ProcessInfo;
+import org.jumpmind.symmetric.model.ProcessInfo.Status;
+import org.jumpmind.symmetric.service.IClusterService;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.jumpmind.symmetric.statistic.ChannelStats;
+import org.jumpmind.symmetric.statistic.IStatisticManager;
+import org.jumpmind.symmetric.statistic.LatencyHistogram;
+import org.jumpmind.symmetric.statistic.LockWaitStats;
+
+/**
+ * Writes the live statistics of the engine in the plain text format that
+ * metrics collectors scrape. Counters are totals since the engine started.
+ */
+public class MetricsUriHandler extends AbstractUriHandler {
+
+    private IStatisticManager statisticManager;
+
+    private IClusterService clusterService;
+
+    public MetricsUriHandler(IParameterService parameterService,
+            IStatisticManager statisticManager, IClusterService clusterService) {
+        super("/metrics/*", parameterService);
+        this.statisticManager = statisticManager;
+        this.clusterService = clusterService;
+    }
+
+    public void handle(HttpServletRequest req, HttpServletResponse res) throws IOException,
+            ServletException {
+        res.setContentType("text/plain; version=0.0.4");
+        PrintWriter writer = res.getWriter();
+        String engine = "engine=\"" + escape(parameterService.getEngineName()) + "\"";
+
+        List<ChannelStats> channelStats = new ArrayList<ChannelStats>(statisticManager
+                .getTotalChannelStats().values());
+        writeChannelCounter(writer, engine, "symmetric_data_routed_total", "counter", channelStats,
+                new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataRouted();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_unrouted", "gauge", channelStats,
+                new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataUnRouted();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_event_inserted_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataEventInserted();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_extracted_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataExtracted();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_extracted_bytes_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataBytesExtracted();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_extracted_errors_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataExtractedErrors();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_sent_total", "counter", channelStats,
+                new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataSent();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_sent_bytes_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataBytesSent();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_sent_errors_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataSentErrors();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_loaded_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataLoaded();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_loaded_bytes_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataBytesLoaded();
+                    }
+                });
+        writeChannelCounter(writer, engine, "symmetric_data_loaded_errors_total", "counter",
+                channelStats, new ChannelValue() {
+                    public long get(ChannelStats stats) {
+                        return stats.getDataLoadedErrors();
+                    }
+                });
+
+        writeProcesses(writer, engine);
+        writeLatencies(writer, engine);
+        writeLockWaits(writer, engine);
+        res.flushBuffer();
+    }
+
+    protected void writeChannelCounter(PrintWriter writer, String engine, String name,
+            String type, List<ChannelStats> channelStats, ChannelValue value) {
+        writer.print("# TYPE " + name + " " + type + "\n");
+        for (ChannelStats stats : channelStats) {
+            writer.print(name + "{" + engine + ",channel=\"" + escape(stats.getChannelId())
+                    + "\"} " + value.get(stats) + "\n");
+        }
+    }
+
+    protected void writeProcesses(PrintWriter writer, String engine) {
+        int running = 0;
+        int error = 0;
+        for (ProcessInfo processInfo : statisticManager.getProcessInfos()) {
+            if (processInfo.getStatus() == Status.ERROR) {
+                error++;
+            } else if (processInfo.getStatus() != Status.OK) {
+                running++;
+            }
+        }
+        writer.print("# TYPE symmetric_processes gauge\n");
+        writer.print("symmetric_processes{" + engine + ",status=\"running\"} " + running + "\n");
+        writer.print("symmetric_processes{" + engine + ",status=\"error\"} " + error + "\n");
+    }
+
+    protected void writeLatencies(PrintWriter writer, String engine) {
+        List<LatencyHistogram> histograms = statisticManager.getLatencyHistograms();
+        Collections.sort(histograms, new Comparator<LatencyHistogram>() {
+            public int compare(LatencyHistogram o1, LatencyHistogram o2) {
+                return labels(o1).compareTo(labels(o2));
+            }
+        });
+        writer.print("# TYPE symmetric_latency_ms histogram\n");
+        for (LatencyHistogram histogram : histograms) {
+            String labels = engine + "," + labels(histogram);
+            long[] counts = histogram.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String bound = i < LatencyHistogram.BUCKET_BOUNDS_MS.length ? Long
+                        .toString(LatencyHistogram.BUCKET_BOUNDS_MS[i]) : "+Inf";
+                writer.print("symmetric_latency_ms_bucket{" + labels + ",le=\"" + bound + "\"} "
+                        + cumulative + "\n");
+            }
+            writer.print("symmetric_latency_ms_sum{" + labels + "} " + histogram.getSum() + "\n");
+            writer.print("symmetric_latency_ms_count{" + labels + "} " + cumulative + "\n");
+        }
+    }
+
+    protected void writeLockWaits(PrintWriter writer, String engine) {
+        List<LockWaitStats> lockWaits = new ArrayList<LockWaitStats>(clusterService
+                .getLockWaitStats().values());
+        Collections.sort(lockWaits, new Comparator<LockWaitStats>() {
+            public int compare(LockWaitStats o1, LockWaitStats o2) {
+                return o1.getAction().compareTo(o2.getAction());
+            }
+        });
+        writer.print("# TYPE symmetric_lock_wait_total counter\n");
+        for (LockWaitStats stats : lockWaits) {
+            String labels = engine + ",action=\"" + escape(stats.getAction()) + "\"";
+            writer.print("symmetric_lock_wait_total{" + labels + ",result=\"acquired\"} "
+                    + stats.getAcquiredCount() + "\n");
+            writer.print("symmetric_lock_wait_total{" + labels + ",result=\"timeout\"} "
+                    + stats.getTimedOutCount() + "\n");
+        }
+        writer.print("# TYPE symmetric_lock_wait_retries_total counter\n");
+        for (LockWaitStats stats : lockWaits) {
+            writer.print("symmetric_lock_wait_retries_total{" + engine + ",action=\""
+                    + escape(stats.getAction()) + "\"} " + stats.getRetryCount() + "\n");
+        }
+        writer.print("# TYPE symmetric_lock_wait_ms_total counter\n");
+        for (LockWaitStats stats : lockWaits) {
+            writer.print("symmetric_lock_wait_ms_total{" + engine + ",action=\""
+                    + escape(stats.getAction()) + "\"} " + stats.getTotalWaitMillis() + "\n");
+        }
+        writer.print("# TYPE symmetric_lock_wait_ms_max gauge\n");
+        for (LockWaitStats stats : lockWaits) {
+            writer.print("symmetric_lock_wait_ms_max{" + engine + ",action=\""
+                    + escape(stats.getAction()) + "\"} " + stats.getMaxWaitMillis() + "\n");
+        }
+    }
+
+    protected String labels(LatencyHistogram histogram) {
+        StringBuilder labels = new StringBuilder("operation=\"").append(
+                escape(histogram.getName())).append("\"");
+        if (histogram.getChannelId() != null) {
+            labels.append(",channel=\"").append(escape(histogram.getChannelId())).append("\"");
+        }
+        if (histogram.getNodeId() != null) {
+            labels.append(",node=\"").append(escape(histogram.getNodeId())).append("\"");
+        }
+        return labels.toString();
+    }
+
+    protected String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    interface ChannelValue {
+        public long get(ChannelStats stats);
+    }
+
+}
@@ -24,12 +24,14 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.jumpmind.symmetric.common.ParameterConstants;
 import org.jumpmind.symmetric.model.ChannelMap;
 import org.jumpmind.symmetric.model.Node;
@@ -65,6 +67,8 @@ public class PullUriHandler extends AbstractCompressionUriHandler {
     private IStatisticManager statisticManager;
     
     private IOutgoingBatchService outgoingBatchService;
+
+    private AtomicInteger longPollCount = new AtomicInteger();
     
     public PullUriHandler(IParameterService parameterService,
             INodeService nodeService,
@@ -95,6 +99,11 @@ public class PullUriHandler extends AbstractCompressionUriHandler {
         map.addSuspendChannels(req.getHeader(WebConstants.SUSPENDED_CHANNELS));
         map.addIgnoreChannels(req.getHeader(WebConstants.IGNORED_CHANNELS));
         map.setThreadChannel(req.getHeader(WebConstants.THREAD_CHANNEL));
+
+        long longPollTimeout = NumberUtils.toLong(req.getHeader(WebConstants.LONG_POLL_TIMEOUT));
+        if (longPollTimeout > 0) {
+            waitForOutgoingBatches(nodeId, map, longPollTimeout);
+        }
         
         // pull out headers and pass to pull() method
         pull(nodeId, req.getRemoteHost(), req.getRemoteAddr(), res.getOutputStream(), req.getHeader(WebConstants.HEADER_ACCEPT_CHARSET), res, map);
@@ -151,6 +160,45 @@ public class PullUriHandler extends AbstractCompressionUriHandler {
         }
     }
     
+    /**
+     * Hold a pull request until the router creates batches for the node or the
+     * timeout passes. The request keeps its connection reservation and its
+     * thread while it waits, so only a quarter of the threads that serve pulls
+     * may be held at one time.
+     */
+    protected void waitForOutgoingBatches(String nodeId, ChannelMap map, long requestedTimeout) {
+        long timeout = Math.min(requestedTimeout,
+                parameterService.getLong(ParameterConstants.PULL_LONG_POLL_MAX_TIMEOUT_MS));
+        if (timeout <= 0 || !parameterService.is(ParameterConstants.START_ROUTE_JOB)) {
+            return;
+        }
+
+        NodeSecurity nodeSecurity = nodeService.findNodeSecurity(nodeId, true);
+        if (nodeSecurity == null || nodeSecurity.isRegistrationEnabled()) {
+            return;
+        }
+
+        if (longPollCount.incrementAndGet() > getMaxLongPollRequests()) {
+            longPollCount.decrementAndGet();
+            return;
+        }
+
+        try {
+            log.debug("Holding pull request from {} for up to {} ms", nodeId, timeout);
+            outgoingBatchService.waitForOutgoingBatches(nodeId, map, timeout);
+        } finally {
+            longPollCount.decrementAndGet();
+        }
+    }
+
+    protected int getMaxLongPollRequests() {
+        int threadCount = parameterService.is(ParameterConstants.WEB_ASYNC_ENABLED) ? parameterService
+                .getInt(ParameterConstants.WEB_ASYNC_EXTRACT_THREAD_COUNT, 10) : parameterService
+                .getInt(ParameterConstants.CONCURRENT_WORKERS);
+        return Math.min(parameterService.getInt(ParameterConstants.PULL_LONG_POLL_MAX_REQUESTS),
+                Math.max(threadCount / 4, 1));
+    }
+
     private void addPendingBatchCounts(String targetNodeId, HttpServletResponse res) {
         if (this.parameterService.is(ParameterConstants.HYBRID_PUSH_PULL_ENABLED))   {            
             Map<String, Integer> batchesToSendByChannel = 
@@ -23,6 +23,12 @@ package org.jumpmind.symmetric.web;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jumpmind.security.SecurityServiceFactory.SecurityServiceType;
 import org.jumpmind.symmetric.ClientSymmetricEngine;
@@ -35,6 +41,16 @@ public class ServerSymmetricEngine extends ClientSymmetricEngine {
     
     protected SymmetricEngineHolder engineHolder;
 
+    protected IUriHandler pushUriHandler;
+
+    protected IUriHandler pullUriHandler;
+
+    protected ThreadPoolExecutor asyncLoadExecutor;
+
+    protected ThreadPoolExecutor asyncExtractExecutor;
+
+    private final Object asyncExecutorLock = new Object();
+
     public ServerSymmetricEngine(File propertiesFile) {
         super(propertiesFile);
     }
@@ -72,11 +88,13 @@ public class ServerSymmetricEngine extends ClientSymmetricEngine {
         this.uriHandlers
                 .add(new InfoUriHandler(parameterService, nodeService, configurationService));
         this.uriHandlers.add(new BandwidthSamplerUriHandler(parameterService));
-        this.uriHandlers.add(new PullUriHandler(parameterService, nodeService,
+        this.pullUriHandler = new PullUriHandler(parameterService, nodeService,
                 configurationService, dataExtractorService, registrationService, statisticManager, outgoingBatchService,
-                concurrencyInterceptor, authInterceptor));
-        this.uriHandlers.add(new PushUriHandler(parameterService, dataLoaderService,
-                statisticManager, nodeService, concurrencyInterceptor, authInterceptor));
+                concurrencyInterceptor, authInterceptor);
+        this.uriHandlers.add(pullUriHandler);
+        this.pushUriHandler = new PushUriHandler(parameterService, dataLoaderService,
+                statisticManager, nodeService, concurrencyInterceptor, authInterceptor);
+        this.uriHandlers.add(pushUriHandler);
         this.uriHandlers.add(new PushStatusUriHandler(parameterService, nodeCommunicationService, 
                 concurrencyInterceptor, authInterceptor));
         this.uriHandlers.add(new RegistrationUriHandler(parameterService, registrationService,
@@ -87,10 +105,80 @@ public class ServerSymmetricEngine extends ClientSymmetricEngine {
         if (parameterService.is(ParameterConstants.WEB_BATCH_URI_HANDLER_ENABLE)) {
             this.uriHandlers.add(new BatchUriHandler(parameterService, dataExtractorService));
         }
+        if (parameterService.is(ParameterConstants.WEB_METRICS_URI_HANDLER_ENABLE)) {
+            this.uriHandlers.add(new MetricsUriHandler(parameterService, statisticManager,
+                    clusterService));
+        }
     }
 
     public List<IUriHandler> getUriHandlers() {
         return uriHandlers;
     }
 
+    /**
+     * @return the executor that a push or pull request should be handed off to
+     *         when asynchronous processing is enabled, otherwise null and the
+     *         request is handled on the servlet container thread
+     */
+    public ExecutorService getAsyncExecutor(IUriHandler handler) {
+        if (!parameterService.is(ParameterConstants.WEB_ASYNC_ENABLED)) {
+            return null;
+        }
+        synchronized (asyncExecutorLock) {
+            if (handler == pushUriHandler) {
+                if (asyncLoadExecutor == null) {
+                    asyncLoadExecutor = newAsyncExecutor("load",
+                            parameterService.getInt(ParameterConstants.WEB_ASYNC_LOAD_THREAD_COUNT, 10));
+                }
+                return asyncLoadExecutor;
+            } else if (handler == pullUriHandler) {
+                if (asyncExtractExecutor == null) {
+                    asyncExtractExecutor = newAsyncExecutor("extract",
+                            parameterService.getInt(ParameterConstants.WEB_ASYNC_EXTRACT_THREAD_COUNT, 10));
+                }
+                return asyncExtractExecutor;
+            }
+        }
+        return null;
+    }
+
+    protected ThreadPoolExecutor newAsyncExecutor(final String name, int threadCount) {
+        threadCount = Math.max(threadCount, 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(
+                        parameterService.getInt(ParameterConstants.WEB_ASYNC_QUEUE_SIZE, 20), 1)),
+                new ThreadFactory() {
+                    final AtomicInteger threadNumber = new AtomicInteger(1);
+                    final String namePrefix = parameterService.getEngineName().toLowerCase()
+                            + "-web-" + name + "-";
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setName(namePrefix + threadNumber.getAndIncrement());
+                        t.setDaemon(true);
+                        if (t.getPriority() != Thread.NORM_PRIORITY) {
+                            t.setPriority(Thread.NORM_PRIORITY);
+                        }
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public synchronized void stop() {
+        synchronized (asyncExecutorLock) {
+            if (asyncLoadExecutor != null) {
+                asyncLoadExecutor.shutdown();
+                asyncLoadExecutor = null;
+            }
+            if (asyncExtractExecutor != null) {
+                asyncExtractExecutor.shutdown();
+                asyncExtractExecutor = null;
+            }
+        }
+        super.stop();
+    }
+
 }
@@ -26,7 +26,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -34,6 +40,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
 import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.common.ParameterConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -49,6 +56,7 @@ import org.slf4j.MDC;
  *    &lt;servlet-class&gt;
  *      org.jumpmind.symmetric.web.SymmetricServlet
  *    &lt;/servlet-class&gt;
+ *    &lt;async-supported&gt;true&lt;/async-supported&gt;
  *  &lt;/servlet&gt;
  * 
  *  &lt;servlet-mapping&gt;
@@ -96,6 +104,7 @@ public class SymmetricServlet extends HttpServlet {
             if (handler != null) {
                 List<IInterceptor> beforeInterceptors = handler.getInterceptors();
                 List<IInterceptor> afterInterceptors = null;
+                boolean dispatched = false;
                 try {
                     if (beforeInterceptors != null) {
                         afterInterceptors = new ArrayList<IInterceptor>(beforeInterceptors.size());
@@ -107,18 +116,17 @@ public class SymmetricServlet extends HttpServlet {
                             }
                         }
                     }
-                    handler.handle(req, res);
-                } catch (Exception e) {
-                    logException(req, e,
-                            !(e instanceof IOException && StringUtils.isNotBlank(e.getMessage())));
-                    if (!res.isCommitted()) {
-                        ServletUtils.sendError(res, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    ExecutorService executor = engine.getAsyncExecutor(handler);
+                    if (executor != null && req.isAsyncSupported()) {
+                        dispatched = dispatch(executor, engine, handler, afterInterceptors, req, res);
+                    } else {
+                        handler.handle(req, res);
                     }
+                } catch (Exception e) {
+                    handleException(req, res, e);
                 } finally {
-                    if (afterInterceptors != null) {
-                        for (IInterceptor interceptor : afterInterceptors) {
-                            interceptor.after(req, res);
-                        }
+                    if (!dispatched) {
+                        after(afterInterceptors, req, res);
                     }
                 }
             } else {
@@ -159,6 +167,135 @@ public class SymmetricServlet extends HttpServlet {
 
     }
 
+    /**
+     * Hand the request off to the executor so the container thread is free
+     * while the data is loaded or extracted. The after interceptors run and
+     * the request is completed on the executor thread.
+     * 
+     * @return false if the executor is full and the client was told to come
+     *         back later
+     */
+    protected boolean dispatch(ExecutorService executor, ServerSymmetricEngine engine,
+            IUriHandler handler, List<IInterceptor> afterInterceptors,
+            HttpServletRequest req, HttpServletResponse res) throws IOException {
+        AsyncContext asyncContext = req.startAsync(req, res);
+        asyncContext.setTimeout(engine.getParameterService().getLong(
+                ParameterConstants.WEB_ASYNC_TIMEOUT_MS, 0));
+        AsyncRequest asyncRequest = new AsyncRequest(asyncContext, engine.getEngineName(),
+                handler, afterInterceptors);
+        asyncContext.addListener(asyncRequest);
+        try {
+            executor.execute(asyncRequest);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("The request {} from {} is being rejected because all of the web threads are busy",
+                    ServletUtils.normalizeRequestUri(req), req.getRemoteHost());
+            ServletUtils.sendError(res, WebConstants.SC_SERVICE_BUSY);
+            asyncRequest.complete();
+            return false;
+        }
+    }
+
+    /**
+     * A request that is handled on an executor thread. It is completed only
+     * once, either by the executor thread when the handler is done or by the
+     * container when the request times out or fails.
+     */
+    protected class AsyncRequest implements Runnable, AsyncListener {
+
+        protected AsyncContext asyncContext;
+
+        protected String engineName;
+
+        protected IUriHandler handler;
+
+        protected List<IInterceptor> afterInterceptors;
+
+        protected AtomicBoolean completed = new AtomicBoolean();
+
+        public AsyncRequest(AsyncContext asyncContext, String engineName, IUriHandler handler,
+                List<IInterceptor> afterInterceptors) {
+            this.asyncContext = asyncContext;
+            this.engineName = engineName;
+            this.handler = handler;
+            this.afterInterceptors = afterInterceptors;
+        }
+
+        public void run() {
+            HttpServletRequest req = (HttpServletRequest) asyncContext.getRequest();
+            HttpServletResponse res = (HttpServletResponse) asyncContext.getResponse();
+            MDC.put("engineName", engineName);
+            try {
+                handler.handle(req, res);
+            } catch (Exception e) {
+                handleException(req, res, e);
+            } finally {
+                try {
+                    after(afterInterceptors, req, res);
+                } catch (Exception e) {
+                    log.error("", e);
+                } finally {
+                    complete();
+                    MDC.remove("engineName");
+                }
+            }
+        }
+
+        public void complete() {
+            if (completed.compareAndSet(false, true)) {
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    log.debug("The request was already completed", e);
+                }
+            }
+        }
+
+        public boolean isCompleted() {
+            return completed.get();
+        }
+
+        public void onTimeout(AsyncEvent event) throws IOException {
+            HttpServletRequest req = (HttpServletRequest) asyncContext.getRequest();
+            log.warn("The request {} from {} timed out before it could be completed",
+                    ServletUtils.normalizeRequestUri(req), req.getRemoteHost());
+            ServletUtils.sendError(asyncContext.getResponse(), WebConstants.SC_SERVICE_UNAVAILABLE);
+            complete();
+        }
+
+        public void onError(AsyncEvent event) throws IOException {
+            HttpServletRequest req = (HttpServletRequest) asyncContext.getRequest();
+            log.warn("The request {} from {} failed: {}", new Object[] {
+                    ServletUtils.normalizeRequestUri(req), req.getRemoteHost(), event.getThrowable() });
+            complete();
+        }
+
+        public void onComplete(AsyncEvent event) throws IOException {
+            completed.set(true);
+        }
+
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
+
+    protected void handleException(HttpServletRequest req, HttpServletResponse res, Exception e) {
+        logException(req, e, !(e instanceof IOException && StringUtils.isNotBlank(e.getMessage())));
+        try {
+            ServletUtils.sendError(res, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } catch (IOException ex) {
+            log.debug("Failed to send the error response", ex);
+        }
+    }
+
+    protected void after(List<IInterceptor> afterInterceptors, HttpServletRequest req,
+            HttpServletResponse res) throws IOException, ServletException {
+        if (afterInterceptors != null) {
+            for (IInterceptor interceptor : afterInterceptors) {
+                interceptor.after(req, res);
+            }
+        }
+    }
+
     protected ServerSymmetricEngine findEngine(HttpServletRequest req) {
         String engineName = getEngineNameFromUrl((HttpServletRequest) req);
         ServerSymmetricEngine engine = null;
@@ -0,0 +1,112 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jumpmind.db.model.Column;
+import org.jumpmind.db.model.Table;
+import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.model.RemoteNodeStatuses;
+import org.jumpmind.util.AppUtils;
+
+public class LongPollPullTest extends AbstractTest {
+
+    private static final long LONG_POLL_TIMEOUT = 60000;
+
+    @Override
+    protected Table[] getTables(String name) {
+        Table a = new Table("a");
+        a.addColumn(new Column("id", true, Types.INTEGER, -1, -1));
+        a.addColumn(new Column("notes", false, Types.VARCHAR, 255, -1));
+        return new Table[] { a };
+    }
+
+    @Override
+    protected Properties getProperties(String name) {
+        Properties properties = super.getProperties(name);
+        if (name.equals(getGroupNames()[0])) {
+            /*
+             * Pulls are only held when data is routed by the route job instead
+             * of at the time of the pull
+             */
+            properties.setProperty(ParameterConstants.START_ROUTE_JOB, "true");
+            properties.setProperty("job.routing.period.time.ms", "3600000");
+        }
+        return properties;
+    }
+
+    @Override
+    protected void test(ISymmetricEngine rootServer, final ISymmetricEngine clientServer) throws Exception {
+        loadConfigAtRegistrationServer();
+        rootServer.openRegistration("client", "client");
+        rootServer.route();
+        pull("client");
+        assertNotNull(clientServer.getNodeService().findIdentity());
+
+        clientServer.getParameterService().saveParameter(
+                ParameterConstants.PULL_LONG_POLL_TIMEOUT_MS, LONG_POLL_TIMEOUT, "unit test");
+
+        /*
+         * Jobs run synchronously in the unit tests, so the pull is started on
+         * its own thread
+         */
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long ts = System.currentTimeMillis();
+            Future<RemoteNodeStatuses> future = executor.submit(new Callable<RemoteNodeStatuses>() {
+                public RemoteNodeStatuses call() throws Exception {
+                    return clientServer.pull();
+                }
+            });
+            AppUtils.sleep(2000);
+            assertFalse("The pull should be held open until there is data", future.isDone());
+
+            rootServer.getSqlTemplate().update("insert into a (id, notes) values(?,?)", 1, "long poll");
+            rootServer.route();
+
+            RemoteNodeStatuses statuses = future.get(LONG_POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertTrue(statuses.wasDataProcessed());
+            assertTrue("The pull should return as soon as data is routed",
+                    System.currentTimeMillis() - ts < LONG_POLL_TIMEOUT / 2);
+        } finally {
+            executor.shutdown();
+        }
+
+        clientServer.getParameterService().saveParameter(
+                ParameterConstants.PULL_LONG_POLL_TIMEOUT_MS, 0, "unit test");
+        pull("client");
+        assertEquals(1, clientServer.getSqlTemplate().queryForInt("select count(*) from a"));
+    }
+
+}
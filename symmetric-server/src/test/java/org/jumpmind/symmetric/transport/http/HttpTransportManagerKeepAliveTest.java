@@ -0,0 +1,118 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.jumpmind.symmetric.ISymmetricEngine;
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpTransportManagerKeepAliveTest {
+
+    private Server server;
+
+    private URL url;
+
+    private List<Integer> clientPorts = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new HttpServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+                    throws IOException {
+                IOUtils.toString(req.getInputStream());
+                clientPorts.add(req.getRemotePort());
+                resp.setContentType("text/plain");
+                resp.getWriter().print("ok");
+            }
+        }), "/*");
+        server.setHandler(context);
+        server.start();
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        url = new URL("http://localhost:" + port + "/ack");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testMessagesReuseConnection() throws Exception {
+        HttpTransportManager manager = createTransportManager(true);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, manager.sendMessage(url, "batch-" + i + "=ok"));
+        }
+        assertEquals(5, clientPorts.size());
+        assertEquals("Expected every request on one socket, client ports were " + clientPorts,
+                1, new HashSet<Integer>(clientPorts).size());
+    }
+
+    @Test
+    public void testMessagesDoNotReuseConnectionWhenDisabled() throws Exception {
+        HttpTransportManager manager = createTransportManager(false);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, manager.sendMessage(url, "batch-" + i + "=ok"));
+        }
+        assertEquals(3, clientPorts.size());
+        assertTrue("Expected a new socket per request, client ports were " + clientPorts,
+                new HashSet<Integer>(clientPorts).size() == 3);
+    }
+
+    protected HttpTransportManager createTransportManager(boolean keepAlive) {
+        IParameterService parameterService = mock(IParameterService.class);
+        when(parameterService.getInt(ParameterConstants.TRANSPORT_HTTP_TIMEOUT)).thenReturn(10000);
+        when(parameterService.is(ParameterConstants.TRANSPORT_HTTP_KEEP_ALIVE_ENABLED, true))
+                .thenReturn(keepAlive);
+        ISymmetricEngine engine = mock(ISymmetricEngine.class);
+        when(engine.getParameterService()).thenReturn(parameterService);
+        return new HttpTransportManager(engine);
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jumpmind.symmetric.model.ProcessInfo;
+import org.jumpmind.symmetric.model.ProcessInfo.Status;
+import org.jumpmind.symmetric.model.ProcessInfoKey;
+import org.jumpmind.symmetric.model.ProcessInfoKey.ProcessType;
+import org.jumpmind.symmetric.service.IClusterService;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.jumpmind.symmetric.statistic.ChannelStats;
+import org.jumpmind.symmetric.statistic.IStatisticManager;
+import org.jumpmind.symmetric.statistic.LatencyHistogram;
+import org.jumpmind.symmetric.statistic.LockWaitStats;
+import org.junit.Test;
+
+public class MetricsUriHandlerTest {
+
+    @Test
+    public void testMetricsFormat() throws Exception {
+        IParameterService parameterService = mock(IParameterService.class);
+        when(parameterService.getEngineName()).thenReturn("corp-000");
+
+        Map<String, ChannelStats> channelStats = new HashMap<String, ChannelStats>();
+        ChannelStats stats = new ChannelStats("000", "server", null, null, "default");
+        stats.setDataRouted(12);
+        stats.setDataExtracted(7);
+        channelStats.put("default", stats);
+
+        List<ProcessInfo> processInfos = new ArrayList<ProcessInfo>();
+        ProcessInfo running = new ProcessInfo(new ProcessInfoKey("000", "001", ProcessType.PUSH_JOB));
+        running.setStatus(Status.EXTRACTING);
+        processInfos.add(running);
+        ProcessInfo error = new ProcessInfo(new ProcessInfoKey("000", "002", ProcessType.PUSH_JOB));
+        error.setStatus(Status.ERROR);
+        processInfos.add(error);
+
+        LatencyHistogram histogram = new LatencyHistogram("extract", "default", "001");
+        histogram.record(3);
+        histogram.record(3000);
+
+        Map<String, LockWaitStats> lockWaits = new HashMap<String, LockWaitStats>();
+        LockWaitStats lockWait = new LockWaitStats("PUSH");
+        lockWait.record(true, 2, 40);
+        lockWaits.put("PUSH", lockWait);
+
+        IStatisticManager statisticManager = mock(IStatisticManager.class);
+        when(statisticManager.getTotalChannelStats()).thenReturn(channelStats);
+        when(statisticManager.getProcessInfos()).thenReturn(processInfos);
+        when(statisticManager.getLatencyHistograms()).thenReturn(
+                new ArrayList<LatencyHistogram>(Arrays.asList(histogram)));
+        IClusterService clusterService = mock(IClusterService.class);
+        when(clusterService.getLockWaitStats()).thenReturn(lockWaits);
+
+        StringWriter out = new StringWriter();
+        HttpServletResponse res = mock(HttpServletResponse.class);
+        when(res.getWriter()).thenReturn(new PrintWriter(out));
+        new MetricsUriHandler(parameterService, statisticManager, clusterService).handle(
+                mock(HttpServletRequest.class), res);
+
+        String text = out.toString();
+        List<String> lines = Arrays.asList(text.split("\n"));
+        assertTrue(lines.contains("# TYPE symmetric_data_routed_total counter"));
+        assertTrue(lines.contains("symmetric_data_routed_total{engine=\"corp-000\",channel=\"default\"} 12"));
+        assertTrue(lines.contains("# TYPE symmetric_data_unrouted gauge"));
+        assertTrue(lines.contains("symmetric_data_extracted_total{engine=\"corp-000\",channel=\"default\"} 7"));
+        assertTrue(lines.contains("symmetric_processes{engine=\"corp-000\",status=\"running\"} 1"));
+        assertTrue(lines.contains("symmetric_processes{engine=\"corp-000\",status=\"error\"} 1"));
+
+        String labels = "engine=\"corp-000\",operation=\"extract\",channel=\"default\",node=\"001\"";
+        assertTrue(lines.contains("# TYPE symmetric_latency_ms histogram"));
+        assertTrue(lines.contains("symmetric_latency_ms_bucket{" + labels + ",le=\"1\"} 0"));
+        assertTrue(lines.contains("symmetric_latency_ms_bucket{" + labels + ",le=\"5\"} 1"));
+        assertTrue(lines.contains("symmetric_latency_ms_bucket{" + labels + ",le=\"+Inf\"} 2"));
+        assertTrue(lines.contains("symmetric_latency_ms_sum{" + labels + "} 3003"));
+        assertTrue(lines.contains("symmetric_latency_ms_count{" + labels + "} 2"));
+
+        assertTrue(lines.contains("symmetric_lock_wait_total{engine=\"corp-000\",action=\"PUSH\",result=\"acquired\"} 1"));
+        assertTrue(lines.contains("symmetric_lock_wait_retries_total{engine=\"corp-000\",action=\"PUSH\"} 2"));
+
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("# TYPE ")
+                    || line.matches("[a-z_]+\\{[^}]*\\} -?[0-9]+"));
+        }
+        assertEquals('\n', text.charAt(text.length() - 1));
+    }
+
+    @Test
+    public void testEscapeLabelValues() {
+        MetricsUriHandler handler = new MetricsUriHandler(mock(IParameterService.class),
+                mock(IStatisticManager.class), mock(IClusterService.class));
+        assertEquals("a\\\"b\\\\c\\nd", handler.escape("a\"b\\c\nd"));
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to JumpMind Inc under one or more contributor
+ * license agreements.  See the NOTICE file distributed
+ * with this work for additional information regarding
+ * copyright ownership.  JumpMind Inc licenses this file
+ * to you under the GNU General Public License, version 3.0 (GPLv3)
+ * (the "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * version 3.0 (GPLv3) along with this library; if not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jumpmind.symmetric.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jumpmind.symmetric.common.ParameterConstants;
+import org.jumpmind.symmetric.service.IParameterService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.MDC;
+
+public class SymmetricServletTest {
+
+    SymmetricServlet servlet;
+
+    ServerSymmetricEngine engine;
+
+    HttpServletRequest req;
+
+    HttpServletResponse res;
+
+    AsyncContext asyncContext;
+
+    IUriHandler handler;
+
+    IInterceptor interceptor;
+
+    List<IInterceptor> afterInterceptors;
+
+    ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        servlet = new SymmetricServlet();
+
+        IParameterService parameterService = mock(IParameterService.class);
+        when(parameterService.getLong(ParameterConstants.WEB_ASYNC_TIMEOUT_MS, 0)).thenReturn(1000l);
+        engine = mock(ServerSymmetricEngine.class);
+        when(engine.getEngineName()).thenReturn("corp-000");
+        when(engine.getParameterService()).thenReturn(parameterService);
+
+        req = mock(HttpServletRequest.class);
+        when(req.getRequestURI()).thenReturn("/sync/corp-000/push");
+        when(req.getContextPath()).thenReturn("");
+        when(req.getServletPath()).thenReturn("/sync");
+        res = mock(HttpServletResponse.class);
+        asyncContext = mock(AsyncContext.class);
+        when(req.startAsync(req, res)).thenReturn(asyncContext);
+        when(asyncContext.getRequest()).thenReturn(req);
+        when(asyncContext.getResponse()).thenReturn(res);
+
+        handler = mock(IUriHandler.class);
+        interceptor = mock(IInterceptor.class);
+        afterInterceptors = new ArrayList<IInterceptor>();
+        afterInterceptors.add(interceptor);
+
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncRequestCompletes() throws Exception {
+        assertTrue(servlet.dispatch(executor, engine, handler, afterInterceptors, req, res));
+        awaitExecutor();
+
+        verify(asyncContext).setTimeout(1000l);
+        verify(handler).handle(req, res);
+        verify(interceptor).after(req, res);
+        verify(asyncContext, times(1)).complete();
+        assertNull(mdcOnExecutorThread());
+    }
+
+    @Test
+    public void testAsyncRequestError() throws Exception {
+        doThrow(new RuntimeException("load failed")).when(handler).handle(req, res);
+
+        assertTrue(servlet.dispatch(executor, engine, handler, afterInterceptors, req, res));
+        awaitExecutor();
+
+        verify(res).sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null);
+        verify(interceptor).after(req, res);
+        verify(asyncContext, times(1)).complete();
+        assertNull(mdcOnExecutorThread());
+    }
+
+    @Test
+    public void testAsyncRequestTimeout() throws Exception {
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                handling.countDown();
+                timedOut.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(handler).handle(req, res);
+
+        assertTrue(servlet.dispatch(executor, engine, handler, afterInterceptors, req, res));
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+        assertTrue(handling.await(10, TimeUnit.SECONDS));
+
+        listener.getValue().onTimeout(new AsyncEvent(asyncContext, req, res));
+        verify(res).sendError(WebConstants.SC_SERVICE_UNAVAILABLE, null);
+        verify(asyncContext, times(1)).complete();
+
+        timedOut.countDown();
+        awaitExecutor();
+        verify(interceptor).after(req, res);
+        verify(asyncContext, times(1)).complete();
+        assertNull(mdcOnExecutorThread());
+    }
+
+    @Test
+    public void testAsyncRequestRejectedWhenBusy() throws Exception {
+        executor.shutdown();
+
+        assertFalse(servlet.dispatch(executor, engine, handler, afterInterceptors, req, res));
+
+        verify(res).sendError(WebConstants.SC_SERVICE_BUSY, null);
+        verify(handler, times(0)).handle(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        verify(asyncContext, times(1)).complete();
+    }
+
+    protected void awaitExecutor() throws Exception {
+        executor.submit(new Runnable() {
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    protected String mdcOnExecutorThread() throws Exception {
+        return executor.submit(new Callable<String>() {
+            public String call() {
+                return MDC.get("engineName");
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+}